@@ -73,6 +73,9 @@ public class Configuration {
     public static class Sampling {
 
         public double percentage = 100;
+        // when positive, the sampling percentage adapts to keep about this many items per second,
+        // never going above the percentage configured above
+        public double targetItemsPerSecond;
     }
 
     public static class JmxMetric {
@@ -98,6 +101,114 @@ public class Configuration {
         public boolean developerMode;
         public List<ProcessorConfig> processors = new ArrayList<>();
         public boolean openTelemetryApiSupport;
+        public AsyncSpanExport asyncSpanExport = new AsyncSpanExport();
+        public boolean stripedTelemetryBuffer;
+        public boolean segmentedTransmissionSpool;
+        public boolean adaptiveBacklogDrain;
+        public boolean asyncHttpTransport;
+        public int maxInFlightRequests;
+        public boolean preAggregatedStandardMetrics;
+        // create the channel and start the heartbeat, performance counters and QuickPulse on a background thread
+        // instead of delaying the application's startup, telemetry tracked until then is buffered
+        public boolean deferredStartup;
+        public TailSampling tailSampling = new TailSampling();
+        public ExceptionSuppression exceptionSuppression = new ExceptionSuppression();
+    }
+
+    public static class AsyncSpanExport {
+
+        // when disabled, spans are exported synchronously on the application thread at span end
+        public boolean enabled;
+        public int maxQueueSize = 2048;
+        public int maxExportBatchSize = 512;
+        public long scheduleDelayMillis = 1000;
+        public long exportTimeoutMillis = 30000;
+
+        public void validate() {
+            if (maxQueueSize <= 0) {
+                throw new ConfigurationException("asyncSpanExport maxQueueSize must be a positive number: " + maxQueueSize);
+            }
+            if (maxExportBatchSize <= 0) {
+                throw new ConfigurationException("asyncSpanExport maxExportBatchSize must be a positive number: " + maxExportBatchSize);
+            }
+            if (maxExportBatchSize > maxQueueSize) {
+                throw new ConfigurationException("asyncSpanExport maxExportBatchSize must not be greater than maxQueueSize ("
+                        + maxQueueSize + "): " + maxExportBatchSize);
+            }
+            if (scheduleDelayMillis <= 0) {
+                throw new ConfigurationException("asyncSpanExport scheduleDelayMillis must be a positive number: " + scheduleDelayMillis);
+            }
+            if (exportTimeoutMillis <= 0) {
+                throw new ConfigurationException("asyncSpanExport exportTimeoutMillis must be a positive number: " + exportTimeoutMillis);
+            }
+        }
+    }
+
+    public static class TailSampling {
+
+        // when enabled, every span is recorded and the keep/drop decision is made per trace once its local root
+        // span has ended: failed traces, slow traces and traces matching one of the attributes are always kept,
+        // the rest is sampled by trace id at sampling.percentage
+        public boolean enabled;
+        public long decisionWaitMillis = 30000;
+        public int maxTraces = 10000;
+        public int maxSpans = 100000;
+        // root spans slower than this percentile of recent root durations are kept, 0 disables the rule
+        public double latencyPercentile = 99;
+        public List<TailSamplingAttribute> attributes = new ArrayList<>();
+
+        public void validate() {
+            if (decisionWaitMillis <= 0) {
+                throw new ConfigurationException("tailSampling decisionWaitMillis must be a positive number: " + decisionWaitMillis);
+            }
+            if (maxTraces <= 0) {
+                throw new ConfigurationException("tailSampling maxTraces must be a positive number: " + maxTraces);
+            }
+            if (maxSpans <= 0) {
+                throw new ConfigurationException("tailSampling maxSpans must be a positive number: " + maxSpans);
+            }
+            if (latencyPercentile < 0 || latencyPercentile >= 100) {
+                throw new ConfigurationException("tailSampling latencyPercentile must be in [0, 100): " + latencyPercentile);
+            }
+            for (TailSamplingAttribute attribute : attributes) {
+                if (attribute.key == null || attribute.key.isEmpty()) {
+                    throw new ConfigurationException("tailSampling attributes must have a key");
+                }
+            }
+        }
+    }
+
+    public static class ExceptionSuppression {
+
+        // when enabled, exceptions with the same type and top frames are rate limited per fingerprint,
+        // and the number of dropped occurrences is added to the next one which is sent
+        public boolean enabled;
+        public int topFrames = 10;
+        public int maxFingerprints = 1000;
+        public int burst = 10;
+        public double perMinute = 6;
+
+        public void validate() {
+            if (topFrames < 0) {
+                throw new ConfigurationException("exceptionSuppression topFrames must not be negative: " + topFrames);
+            }
+            if (maxFingerprints <= 0) {
+                throw new ConfigurationException("exceptionSuppression maxFingerprints must be a positive number: " + maxFingerprints);
+            }
+            if (burst <= 0) {
+                throw new ConfigurationException("exceptionSuppression burst must be a positive number: " + burst);
+            }
+            if (perMinute <= 0) {
+                throw new ConfigurationException("exceptionSuppression perMinute must be a positive number: " + perMinute);
+            }
+        }
+    }
+
+    public static class TailSamplingAttribute {
+
+        public String key;
+        // when null, any value of the attribute matches
+        public String value;
     }
 
     public static class SelfDiagnostics {
@@ -35,6 +35,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.JmxMetric;
 import com.microsoft.applicationinsights.agent.bootstrap.diagnostics.DiagnosticsHelper;
+import com.microsoft.applicationinsights.agent.bootstrap.diagnostics.SdkVersionFinder;
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.JsonReader;
 import com.squareup.moshi.Moshi;
@@ -46,12 +47,14 @@ import org.slf4j.LoggerFactory;
 public class ConfigurationBuilder {
 
     private static final String APPLICATIONINSIGHTS_CONFIGURATION_FILE = "APPLICATIONINSIGHTS_CONFIGURATION_FILE";
+    private static final String APPLICATIONINSIGHTS_CONFIGURATION_SNAPSHOT = "APPLICATIONINSIGHTS_CONFIGURATION_SNAPSHOT";
 
     private static final String APPLICATIONINSIGHTS_ROLE_NAME = "APPLICATIONINSIGHTS_ROLE_NAME";
     private static final String APPLICATIONINSIGHTS_ROLE_INSTANCE = "APPLICATIONINSIGHTS_ROLE_INSTANCE";
 
     private static final String APPLICATIONINSIGHTS_JMX_METRICS = "APPLICATIONINSIGHTS_JMX_METRICS";
     private static final String APPLICATIONINSIGHTS_SAMPLING_PERCENTAGE = "APPLICATIONINSIGHTS_SAMPLING_PERCENTAGE";
+    private static final String APPLICATIONINSIGHTS_SAMPLING_TARGET_ITEMS_PER_SECOND = "APPLICATIONINSIGHTS_SAMPLING_TARGET_ITEMS_PER_SECOND";
 
     private static final String APPLICATIONINSIGHTS_INSTRUMENTATION_LOGGING_LEVEL = "APPLICATIONINSIGHTS_INSTRUMENTATION_LOGGING_LEVEL";
 
@@ -128,7 +131,7 @@ public class ConfigurationBuilder {
         if (configPathStr != null) {
             Path configPath = agentJarPath.resolveSibling(configPathStr);
             if (Files.exists(configPath)) {
-                return loadJsonConfigFile(configPath);
+                return loadJsonConfigFile(configPath, agentJarPath);
             } else {
                 // fail fast any time configuration is invalid
                 throw new IllegalStateException("could not find requested configuration file: " + configPathStr);
@@ -137,7 +140,7 @@ public class ConfigurationBuilder {
 
         Path configPath = agentJarPath.resolveSibling("applicationinsights.json");
         if (Files.exists(configPath)) {
-            return loadJsonConfigFile(configPath);
+            return loadJsonConfigFile(configPath, agentJarPath);
         }
 
         if (Files.exists(agentJarPath.resolveSibling("ApplicationInsights.json"))) {
@@ -171,6 +174,7 @@ public class ConfigurationBuilder {
         config.role.instance = overlayWithEnvVars(APPLICATIONINSIGHTS_ROLE_INSTANCE, WEBSITE_INSTANCE_ID, config.role.instance);
 
         config.sampling.percentage = overlayWithEnvVar(APPLICATIONINSIGHTS_SAMPLING_PERCENTAGE, config.sampling.percentage);
+        config.sampling.targetItemsPerSecond = overlayWithEnvVar(APPLICATIONINSIGHTS_SAMPLING_TARGET_ITEMS_PER_SECOND, config.sampling.targetItemsPerSecond);
 
         loadLogCaptureEnvVar(config);
         loadJmxMetrics(config);
@@ -290,23 +294,60 @@ public class ConfigurationBuilder {
         // last modified doesn't change after that, the new updated file will not be read afterwards
         long lastModifiedTime = attributes.lastModifiedTime().toMillis();
         try (InputStream in = Files.newInputStream(configPath)) {
-            Moshi moshi = new Moshi.Builder().build();
-            JsonAdapter<Configuration> jsonAdapter = moshi.adapter(Configuration.class);
             Buffer buffer = new Buffer();
             buffer.readFrom(in);
+            Configuration configuration = parseJsonConfig(buffer, configPath);
+            configuration.configPath = configPath;
+            configuration.lastModifiedTime = lastModifiedTime;
+            return configuration;
+        }
+    }
+
+    // when enabled, the parsed json is cached in a binary snapshot next to the agent jar (see ConfigurationSnapshot)
+    private static Configuration loadJsonConfigFile(Path configPath, Path agentJarPath) throws IOException {
+        if (!Boolean.parseBoolean(getEnvVarOrProperty(APPLICATIONINSIGHTS_CONFIGURATION_SNAPSHOT, "applicationinsights.configuration.snapshot"))) {
+            return loadJsonConfigFile(configPath);
+        }
+        BasicFileAttributes attributes = Files.readAttributes(configPath, BasicFileAttributes.class);
+        // see above, last modified is read before reading the file
+        long lastModifiedTime = attributes.lastModifiedTime().toMillis();
+        byte[] json = Files.readAllBytes(configPath);
+
+        Path snapshotPath = agentJarPath.resolveSibling(configPath.getFileName() + ".snapshot");
+        String agentVersion = new SdkVersionFinder().getValue() + "/" + Files.getLastModifiedTime(agentJarPath).toMillis();
+        long key = ConfigurationSnapshot.key(json, agentVersion);
+        Configuration configuration = null;
+        try {
+            configuration = ConfigurationSnapshot.read(snapshotPath, key);
+        } catch (Exception e) {
+            configurationMessages.add(new ConfigurationMessage("could not read configuration snapshot {}: {}", snapshotPath, e.toString()));
+        }
+        if (configuration == null) {
+            configuration = parseJsonConfig(new Buffer().write(json), configPath);
             try {
-                Configuration configuration = jsonAdapter.fromJson(buffer);
-                if (configuration.instrumentationSettings != null) {
-                    throw new IllegalStateException("It looks like you are using an old applicationinsights.json file" +
-                            " which still has \"instrumentationSettings\", please see the docs for the new format:" +
-                            " https://docs.microsoft.com/en-us/azure/azure-monitor/app/java-standalone-config");
-                }
-                configuration.configPath = configPath;
-                configuration.lastModifiedTime = lastModifiedTime;
-                return configuration;
+                ConfigurationSnapshot.write(snapshotPath, key, configuration);
             } catch (Exception e) {
-                throw new ConfigurationException("Error parsing configuration file: " + configPath.toAbsolutePath().toString(), e);
+                configurationMessages.add(new ConfigurationMessage("could not write configuration snapshot {}: {}", snapshotPath, e.toString()));
+            }
+        }
+        configuration.configPath = configPath;
+        configuration.lastModifiedTime = lastModifiedTime;
+        return configuration;
+    }
+
+    private static Configuration parseJsonConfig(Buffer buffer, Path configPath) {
+        Moshi moshi = new Moshi.Builder().build();
+        JsonAdapter<Configuration> jsonAdapter = moshi.adapter(Configuration.class);
+        try {
+            Configuration configuration = jsonAdapter.fromJson(buffer);
+            if (configuration.instrumentationSettings != null) {
+                throw new IllegalStateException("It looks like you are using an old applicationinsights.json file" +
+                        " which still has \"instrumentationSettings\", please see the docs for the new format:" +
+                        " https://docs.microsoft.com/en-us/azure/azure-monitor/app/java-standalone-config");
             }
+            return configuration;
+        } catch (Exception e) {
+            throw new ConfigurationException("Error parsing configuration file: " + configPath.toAbsolutePath().toString(), e);
         }
     }
 }
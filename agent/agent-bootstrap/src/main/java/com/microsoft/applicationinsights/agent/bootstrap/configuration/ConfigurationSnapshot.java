@@ -0,0 +1,282 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent.bootstrap.configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary copy of a parsed json configuration file, so that later starts of the agent can skip parsing
+ * the json, which is noticeable for short-lived JVMs.
+ *
+ * The snapshot is keyed by a hash of the json file contents and of the agent version, and is only used when its
+ * key matches, so it is invalidated as soon as either changes. Only the values read from the json file are kept,
+ * environment variables are still applied on top of them on each start.
+ *
+ * Fields are written by name, reflectively, as moshi binds them: all non-static, non-transient fields.
+ */
+class ConfigurationSnapshot {
+
+    private static final int MAGIC = 0x41494353; // "AICS"
+    private static final int FORMAT_VERSION = 1;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte STRING = 6;
+    private static final byte ENUM = 7;
+    private static final byte LIST = 8;
+    private static final byte MAP = 9;
+    private static final byte OBJECT = 10;
+
+    private ConfigurationSnapshot() {
+    }
+
+    static long key(byte[] json, String agentVersion) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : json) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        for (byte b : agentVersion.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns null when there is no snapshot, or it was written for another json file or agent version.
+     */
+    static Configuration read(Path snapshotPath, long key) throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(snapshotPath)));
+        if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readLong() != key) {
+            return null;
+        }
+        return (Configuration) readValue(in, Configuration.class);
+    }
+
+    /**
+     * Writes the snapshot to a temporary file first, so that JVMs starting at the same time never read a partial one.
+     */
+    static void write(Path snapshotPath, long key, Configuration configuration) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(key);
+        writeValue(out, configuration);
+        out.flush();
+
+        Path tmpPath = Files.createTempFile(snapshotPath.toAbsolutePath().getParent(), snapshotPath.getFileName().toString(), ".tmp");
+        try {
+            Files.write(tmpPath, bytes.toByteArray());
+            Files.move(tmpPath, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpPath);
+        }
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Integer) {
+            out.writeByte(INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Enum) {
+            out.writeByte(ENUM);
+            writeString(out, ((Enum<?>) value).name());
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeInt(list.size());
+            for (Object element : list) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeString(out, (String) entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            List<Field> fields = getFields(value.getClass());
+            out.writeByte(OBJECT);
+            out.writeInt(fields.size());
+            for (Field field : fields) {
+                writeString(out, field.getName());
+                try {
+                    writeValue(out, field.get(value));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+    }
+
+    // the type is the declared type of the value, which is needed for objects, enums, and the elements of lists and maps
+    private static Object readValue(DataInputStream in, Type type) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case FALSE:
+                return false;
+            case TRUE:
+                return true;
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case STRING:
+                return readString(in);
+            case ENUM:
+                return readEnum(getRawType(type), readString(in));
+            case LIST: {
+                Type elementType = getTypeArgument(type, 0);
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readValue(in, elementType));
+                }
+                return list;
+            }
+            case MAP: {
+                Type valueType = getTypeArgument(type, 1);
+                int size = in.readInt();
+                Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < size; i++) {
+                    String key = readString(in);
+                    map.put(key, readValue(in, valueType));
+                }
+                return map;
+            }
+            case OBJECT:
+                return readObject(in, getRawType(type));
+            default:
+                throw new IOException("unexpected tag in configuration snapshot: " + tag);
+        }
+    }
+
+    private static Object readObject(DataInputStream in, Class<?> clazz) throws IOException {
+        try {
+            Constructor<?> constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            Object object = constructor.newInstance();
+            int fieldCount = in.readInt();
+            for (int i = 0; i < fieldCount; i++) {
+                Field field = clazz.getDeclaredField(readString(in));
+                field.setAccessible(true);
+                field.set(object, readValue(in, field.getGenericType()));
+            }
+            return object;
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("could not read configuration snapshot", e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Object readEnum(Class<?> clazz, String name) {
+        return Enum.valueOf((Class<? extends Enum>) clazz, name);
+    }
+
+    private static List<Field> getFields(Class<?> clazz) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !field.isSynthetic()) {
+                field.setAccessible(true);
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private static Class<?> getRawType(Type type) throws IOException {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        }
+        if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        }
+        throw new IOException("unexpected type in configuration snapshot: " + type);
+    }
+
+    // Object when the type is not parameterized, e.g. for the values of a Map<String, Object>
+    private static Type getTypeArgument(Type type, int index) {
+        if (type instanceof ParameterizedType) {
+            return ((ParameterizedType) type).getActualTypeArguments()[index];
+        }
+        return Object.class;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
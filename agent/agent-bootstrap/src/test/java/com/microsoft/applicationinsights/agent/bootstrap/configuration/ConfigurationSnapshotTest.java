@@ -0,0 +1,99 @@
+package com.microsoft.applicationinsights.agent.bootstrap.configuration;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorActionType;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorType;
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import org.junit.*;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.*;
+
+public class ConfigurationSnapshotTest {
+
+    private static final String JSON = "{" +
+            "\"connectionString\": \"InstrumentationKey=00000000-0000-0000-0000-000000000000\"," +
+            "\"role\": {\"name\": \"Something Good\"}," +
+            "\"customDimensions\": {\"team\": \"checkout\"}," +
+            "\"sampling\": {\"percentage\": 10}," +
+            "\"jmxMetrics\": [{\"name\": \"Thread Count\", \"objectName\": \"java.lang:type=Threading\", \"attribute\": \"ThreadCount\"}]," +
+            "\"instrumentation\": {\"logging\": {\"threshold\": \"WARN\", \"enabled\": true, \"levels\": [1, 2.5]}}," +
+            "\"preview\": {" +
+            "  \"deferredStartup\": true," +
+            "  \"tailSampling\": {\"enabled\": true, \"maxTraces\": 5}," +
+            "  \"processors\": [{\"type\": \"attribute\", \"processorName\": \"redact\"," +
+            "    \"actions\": [{\"key\": \"password\", \"action\": \"delete\"}]}]" +
+            "}}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldRoundTrip() throws IOException {
+        // given
+        Configuration configuration = parse(JSON);
+        Path snapshotPath = folder.getRoot().toPath().resolve("applicationinsights.json.snapshot");
+        long key = ConfigurationSnapshot.key(JSON.getBytes(StandardCharsets.UTF_8), "3.0.0");
+
+        // when
+        ConfigurationSnapshot.write(snapshotPath, key, configuration);
+        Configuration snapshot = ConfigurationSnapshot.read(snapshotPath, key);
+
+        // then
+        assertEquals(toJson(configuration), toJson(snapshot));
+        assertEquals("Something Good", snapshot.role.name);
+        assertEquals(10, snapshot.sampling.percentage, 0);
+        assertEquals("checkout", snapshot.customDimensions.get("team"));
+        assertEquals("WARN", snapshot.instrumentation.get("logging").get("threshold"));
+        assertTrue(snapshot.preview.deferredStartup);
+        assertEquals(5, snapshot.preview.tailSampling.maxTraces);
+        assertEquals(ProcessorType.attribute, snapshot.preview.processors.get(0).type);
+        assertEquals(ProcessorActionType.delete, snapshot.preview.processors.get(0).actions.get(0).action);
+        // defaults of the fields which were not in the json
+        assertEquals(2048, snapshot.preview.asyncSpanExport.maxQueueSize);
+    }
+
+    @Test
+    public void shouldIgnoreSnapshotWithOtherKey() throws IOException {
+        // given
+        Path snapshotPath = folder.getRoot().toPath().resolve("applicationinsights.json.snapshot");
+        byte[] json = JSON.getBytes(StandardCharsets.UTF_8);
+        ConfigurationSnapshot.write(snapshotPath, ConfigurationSnapshot.key(json, "3.0.0"), parse(JSON));
+
+        // when
+        Configuration otherVersion = ConfigurationSnapshot.read(snapshotPath, ConfigurationSnapshot.key(json, "3.0.1"));
+        Configuration otherJson = ConfigurationSnapshot.read(snapshotPath,
+                ConfigurationSnapshot.key(JSON.replace("10", "20").getBytes(StandardCharsets.UTF_8), "3.0.0"));
+
+        // then
+        assertNull(otherVersion);
+        assertNull(otherJson);
+    }
+
+    @Test
+    public void shouldIgnoreMissingOrForeignFile() throws IOException {
+        // given
+        Path snapshotPath = folder.getRoot().toPath().resolve("applicationinsights.json.snapshot");
+        assertNull(ConfigurationSnapshot.read(snapshotPath, 1));
+
+        // when
+        Files.write(snapshotPath, JSON.getBytes(StandardCharsets.UTF_8));
+
+        // then
+        assertNull(ConfigurationSnapshot.read(snapshotPath, 1));
+    }
+
+    private static Configuration parse(String json) throws IOException {
+        return new Moshi.Builder().build().adapter(Configuration.class).fromJson(json);
+    }
+
+    private static String toJson(Configuration configuration) {
+        JsonAdapter<Configuration> adapter = new Moshi.Builder().build().adapter(Configuration.class);
+        return adapter.toJson(configuration);
+    }
+}
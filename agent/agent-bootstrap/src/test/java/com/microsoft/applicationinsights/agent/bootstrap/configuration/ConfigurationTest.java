@@ -155,6 +155,15 @@ public class ConfigurationTest {
         assertEquals(60, configuration.heartbeat.intervalSeconds);
     }
 
+    @Test(expected = ConfigurationBuilder.ConfigurationException.class)
+    public void shouldRejectAsyncSpanExportBatchLargerThanQueue() {
+        Configuration.AsyncSpanExport asyncSpanExport = new Configuration.AsyncSpanExport();
+        asyncSpanExport.maxQueueSize = 100;
+        asyncSpanExport.maxExportBatchSize = 101;
+
+        asyncSpanExport.validate();
+    }
+
     @Test
     public void shouldOverrideSamplingPercentage() throws IOException {
         envVars.set("APPLICATIONINSIGHTS_SAMPLING_PERCENTAGE", "0.25");
@@ -165,6 +174,16 @@ public class ConfigurationTest {
         assertTrue(configuration.sampling.percentage == 0.25);
     }
 
+    @Test
+    public void shouldOverrideSamplingTargetItemsPerSecond() throws IOException {
+        envVars.set("APPLICATIONINSIGHTS_SAMPLING_TARGET_ITEMS_PER_SECOND", "50");
+
+        Configuration configuration = loadConfiguration();
+        ConfigurationBuilder.overlayEnvVars(configuration);
+
+        assertTrue(configuration.sampling.targetItemsPerSecond == 50);
+    }
+
     @Test
     public void shouldOverrideLogCaptureThreshold() throws IOException {
         envVars.set("APPLICATIONINSIGHTS_INSTRUMENTATION_LOGGING_LEVEL", "TRACE");
@@ -0,0 +1,272 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.internal.util.BoundedLockFreeQueue;
+import com.microsoft.applicationinsights.internal.util.ThreadPoolUtils;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Span processor which moves span export (span to telemetry mapping, attribute processors, etc.) off the
+ * application thread.
+ *
+ * Ended spans are put on a bounded lock-free queue, and a single daemon worker thread drains the queue in
+ * batches of up to {@code maxExportBatchSize} spans. If the queue is full the span is dropped and counted,
+ * so that a slow exporter never applies back pressure on the application.
+ */
+public class AsyncBatchSpanProcessor implements SpanProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncBatchSpanProcessor.class);
+
+    private static final long DROPPED_SPANS_LOGGING_INTERVAL_MILLIS = MINUTES.toMillis(1);
+
+    private final SpanExporter exporter;
+    private final BoundedLockFreeQueue<ReadableSpan> queue;
+    private final int maxExportBatchSize;
+    private final long scheduleDelayNanos;
+    private final long exportTimeoutMillis;
+
+    private final ConcurrentLinkedQueue<CompletableResultCode> pendingFlushes = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong droppedSpans = new AtomicLong();
+    private final AtomicLong exportedSpans = new AtomicLong();
+
+    // set by the producer which wakes up the worker, cleared by the worker before it drains the queue
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+
+    private final Thread workerThread;
+
+    private volatile boolean shutdown;
+
+    public AsyncBatchSpanProcessor(SpanExporter exporter, int maxQueueSize, int maxExportBatchSize,
+                                   long scheduleDelayMillis, long exportTimeoutMillis) {
+        Preconditions.checkNotNull(exporter, "exporter must be non-null value");
+        Preconditions.checkArgument(maxQueueSize > 0, "maxQueueSize must be a positive number");
+        Preconditions.checkArgument(maxExportBatchSize > 0, "maxExportBatchSize must be a positive number");
+        Preconditions.checkArgument(maxExportBatchSize <= maxQueueSize, "maxExportBatchSize must not be greater than maxQueueSize");
+        Preconditions.checkArgument(scheduleDelayMillis > 0, "scheduleDelayMillis must be a positive number");
+        Preconditions.checkArgument(exportTimeoutMillis > 0, "exportTimeoutMillis must be a positive number");
+
+        this.exporter = exporter;
+        this.queue = new BoundedLockFreeQueue<>(maxQueueSize);
+        this.maxExportBatchSize = maxExportBatchSize;
+        this.scheduleDelayNanos = MILLISECONDS.toNanos(scheduleDelayMillis);
+        this.exportTimeoutMillis = exportTimeoutMillis;
+
+        workerThread = ThreadPoolUtils.createDaemonThreadFactory(AsyncBatchSpanProcessor.class).newThread(new Worker());
+        workerThread.start();
+    }
+
+    @Override
+    public void onStart(ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        if (shutdown || !span.getSpanContext().isSampled()) {
+            return;
+        }
+        if (!queue.offer(span)) {
+            droppedSpans.incrementAndGet();
+        }
+        // only wake up the worker once a full batch is queued, otherwise it will pick up the spans on its next
+        // scheduled run; concurrent producers can move the size past the batch size, so the flag (instead of an
+        // exact size) keeps this to one wake up until the worker runs
+        if (queue.size() >= maxExportBatchSize && wakeUpPending.compareAndSet(false, true)) {
+            LockSupport.unpark(workerThread);
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    /**
+     * Exports all spans that are currently queued.
+     *
+     * This is called from the agent shutdown hook, and needs to complete before the telemetry client is flushed.
+     */
+    @Override
+    public CompletableResultCode forceFlush() {
+        CompletableResultCode result = new CompletableResultCode();
+        if (!workerThread.isAlive()) {
+            return result.succeed();
+        }
+        pendingFlushes.add(result);
+        LockSupport.unpark(workerThread);
+        return result;
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        if (shutdown) {
+            return CompletableResultCode.ofSuccess();
+        }
+        final CompletableResultCode result = new CompletableResultCode();
+        final CompletableResultCode flushResult = forceFlush();
+        shutdown = true;
+        flushResult.whenComplete(new Runnable() {
+            @Override
+            public void run() {
+                workerThread.interrupt();
+                final CompletableResultCode exporterShutdownResult = exporter.shutdown();
+                exporterShutdownResult.whenComplete(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (flushResult.isSuccess() && exporterShutdownResult.isSuccess()) {
+                            result.succeed();
+                        } else {
+                            result.fail();
+                        }
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the number of spans that were dropped because the queue was full.
+     */
+    public long getDroppedSpanCount() {
+        return droppedSpans.get();
+    }
+
+    /**
+     * @return the number of spans that were handed to the exporter.
+     */
+    public long getExportedSpanCount() {
+        return exportedSpans.get();
+    }
+
+    /**
+     * @return the number of spans currently waiting to be exported (this is only an estimate).
+     */
+    public int getQueuedSpanCount() {
+        return queue.size();
+    }
+
+    private class Worker implements Runnable {
+
+        private final List<ReadableSpan> drained = new ArrayList<>();
+        private final List<SpanData> batch = new ArrayList<>();
+
+        private long lastLoggedDroppedSpans;
+        private long lastLoggedDroppedSpansTimeMillis;
+
+        @Override
+        public void run() {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    if (queue.size() < maxExportBatchSize && pendingFlushes.isEmpty()) {
+                        LockSupport.parkNanos(AsyncBatchSpanProcessor.this, scheduleDelayNanos);
+                    }
+                    wakeUpPending.set(false);
+                    // drain everything that is there now, so that pending flushes include all spans ended before them
+                    CompletableResultCode flush = pendingFlushes.poll();
+                    boolean success = exportAll();
+                    while (flush != null) {
+                        if (success) {
+                            flush.succeed();
+                        } else {
+                            flush.fail();
+                        }
+                        flush = pendingFlushes.poll();
+                    }
+                    logDroppedSpans();
+                } catch (RuntimeException e) {
+                    // keep the worker alive, otherwise spans will pile up and get dropped forever
+                    logger.error("Unexpected error exporting spans: {}", e.toString(), e);
+                } catch (Error e) {
+                    logger.error("Unexpected error exporting spans, span export will stop: {}", e.toString(), e);
+                    throw e;
+                }
+            }
+            // fail flushes that arrived after the worker stopped, rather than leaving their callers waiting
+            CompletableResultCode flush;
+            while ((flush = pendingFlushes.poll()) != null) {
+                flush.fail();
+            }
+        }
+
+        private boolean exportAll() {
+            boolean success = true;
+            while (queue.drainTo(drained, maxExportBatchSize) > 0) {
+                for (ReadableSpan span : drained) {
+                    batch.add(span.toSpanData());
+                }
+                drained.clear();
+                try {
+                    CompletableResultCode result = exporter.export(batch).join(exportTimeoutMillis, MILLISECONDS);
+                    if (result.isSuccess()) {
+                        exportedSpans.addAndGet(batch.size());
+                    } else {
+                        success = false;
+                    }
+                } finally {
+                    batch.clear();
+                }
+            }
+            return success;
+        }
+
+        private void logDroppedSpans() {
+            long dropped = droppedSpans.get();
+            if (dropped == lastLoggedDroppedSpans) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastLoggedDroppedSpansTimeMillis < DROPPED_SPANS_LOGGING_INTERVAL_MILLIS) {
+                return;
+            }
+            logger.warn("{} spans were dropped because the span export queue (capacity {}) was full",
+                    dropped - lastLoggedDroppedSpans, queue.capacity());
+            lastLoggedDroppedSpans = dropped;
+            lastLoggedDroppedSpansTimeMillis = now;
+        }
+    }
+}
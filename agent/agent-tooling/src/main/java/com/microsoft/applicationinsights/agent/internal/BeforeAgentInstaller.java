@@ -48,10 +48,13 @@ import com.microsoft.applicationinsights.agent.internal.instrumentation.sdk.Quic
 import com.microsoft.applicationinsights.agent.internal.instrumentation.sdk.TelemetryClientClassFileTransformer;
 import com.microsoft.applicationinsights.agent.internal.instrumentation.sdk.WebRequestTrackingFilterClassFileTransformer;
 import com.microsoft.applicationinsights.agent.internal.sampling.SamplingPercentage;
+import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.channel.concrete.inprocess.InProcessTelemetryChannel;
 import com.microsoft.applicationinsights.common.CommonUtils;
 import com.microsoft.applicationinsights.extensibility.initializer.ResourceAttributesContextInitializer;
 import com.microsoft.applicationinsights.extensibility.initializer.SdkVersionContextInitializer;
 import com.microsoft.applicationinsights.internal.channel.common.ApacheSender43;
+import com.microsoft.applicationinsights.internal.channel.common.DeferredTelemetryChannel;
 import com.microsoft.applicationinsights.internal.config.AddTypeXmlElement;
 import com.microsoft.applicationinsights.internal.config.ApplicationInsightsXmlConfiguration;
 import com.microsoft.applicationinsights.internal.config.JmxXmlElement;
@@ -64,12 +67,14 @@ import com.microsoft.applicationinsights.web.internal.correlation.CdsProfileFetc
 import io.opentelemetry.instrumentation.api.aiappid.AiAppId;
 import io.opentelemetry.instrumentation.api.aiconnectionstring.AiConnectionString;
 import io.opentelemetry.instrumentation.api.config.Config;
+import io.opentelemetry.sdk.trace.SpanProcessor;
 import org.apache.http.HttpHost;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 public class BeforeAgentInstaller {
@@ -80,19 +85,25 @@ public class BeforeAgentInstaller {
     }
 
     public static void beforeInstallBytebuddyAgent(Instrumentation instrumentation) throws Exception {
-        instrumentation.addTransformer(new CommonsLogFactoryClassFileTransformer());
-        start(instrumentation);
+        // a single transformer looks up the transformer for each loaded class, instead of each one checking every class
+        DispatchingClassFileTransformer transformer =
+                new DispatchingClassFileTransformer(BeforeAgentInstaller.class.getClassLoader());
+        instrumentation.addTransformer(transformer);
+        transformer.add(new CommonsLogFactoryClassFileTransformer());
+        start(transformer);
         // add sdk instrumentation after ensuring Global.getTelemetryClient() will not return null
-        instrumentation.addTransformer(new TelemetryClientClassFileTransformer());
-        instrumentation.addTransformer(new DependencyTelemetryClassFileTransformer());
-        instrumentation.addTransformer(new PerformanceCounterModuleClassFileTransformer());
-        instrumentation.addTransformer(new QuickPulseClassFileTransformer());
-        instrumentation.addTransformer(new HeartBeatModuleClassFileTransformer());
-        instrumentation.addTransformer(new ApplicationInsightsAppenderClassFileTransformer());
-        instrumentation.addTransformer(new WebRequestTrackingFilterClassFileTransformer());
+        transformer.add(new TelemetryClientClassFileTransformer());
+        transformer.add(new DependencyTelemetryClassFileTransformer());
+        transformer.add(new PerformanceCounterModuleClassFileTransformer());
+        transformer.add(new QuickPulseClassFileTransformer());
+        transformer.add(new HeartBeatModuleClassFileTransformer());
+        transformer.add(new ApplicationInsightsAppenderClassFileTransformer());
+        transformer.add(new WebRequestTrackingFilterClassFileTransformer());
     }
 
-    private static void start(Instrumentation instrumentation) throws Exception {
+    private static void start(final DispatchingClassFileTransformer transformer) throws Exception {
+
+        StartupTimings timings = new StartupTimings();
 
         String codelessSdkNamePrefix = getCodelessSdkNamePrefix();
         if (codelessSdkNamePrefix != null) {
@@ -113,7 +124,10 @@ public class BeforeAgentInstaller {
         }
         // Function to validate user provided processor configuration
         validateProcessorConfiguration(config);
-
+        config.preview.asyncSpanExport.validate();
+        config.preview.tailSampling.validate();
+        config.preview.exceptionSuppression.validate();
+        timings.endPhase("configuration");
 
         Map<String, String> properties = new HashMap<>();
         properties.put("additional.bootstrap.package.prefixes", "com.microsoft.applicationinsights.agent.bootstrap");
@@ -138,6 +152,7 @@ public class BeforeAgentInstaller {
         if (Config.get().getListProperty("additional.bootstrap.package.prefixes").isEmpty()) {
             throw new IllegalStateException("underlying config not initialized in time");
         }
+        timings.endPhase("instrumentation configuration");
 
         // FIXME do something with config
 
@@ -152,7 +167,7 @@ public class BeforeAgentInstaller {
             // java.util.logging (starting with Java 8u231)
             // and JBoss/Wildfly need to install their own JUL manager before JUL is initialized
             ApacheSender43.safeToInitLatch = new CountDownLatch(1);
-            instrumentation.addTransformer(new JulListeningClassFileTransformer(ApacheSender43.safeToInitLatch));
+            transformer.add(new JulListeningClassFileTransformer(ApacheSender43.safeToInitLatch));
         }
 
         if (config.proxy.host != null) {
@@ -162,9 +177,20 @@ public class BeforeAgentInstaller {
         }
 
         TelemetryConfiguration configuration = TelemetryConfiguration.getActiveWithoutInitializingConfig();
-        TelemetryConfigurationFactory.INSTANCE.initialize(configuration, buildXmlConfiguration(config));
+        ApplicationInsightsXmlConfiguration xmlConfiguration = buildXmlConfiguration(config);
+        final CountDownLatch deferredStartupLatch;
+        if (config.preview.deferredStartup) {
+            TelemetryConfigurationFactory.INSTANCE.initializeValues(configuration, xmlConfiguration);
+            DeferredTelemetryChannel deferredChannel = new DeferredTelemetryChannel();
+            configuration.setChannel(deferredChannel);
+            deferredStartupLatch = startDeferred(configuration, xmlConfiguration, deferredChannel);
+        } else {
+            TelemetryConfigurationFactory.INSTANCE.initialize(configuration, xmlConfiguration);
+            deferredStartupLatch = null;
+        }
         configuration.getContextInitializers().add(new SdkVersionContextInitializer());
         configuration.getContextInitializers().add(new ResourceAttributesContextInitializer(config.customDimensions));
+        timings.endPhase("telemetry configuration");
 
         Global.setSamplingPercentage(SamplingPercentage.roundToNearest(config.sampling.percentage));
         final TelemetryClient telemetryClient = new TelemetryClient();
@@ -178,11 +204,23 @@ public class BeforeAgentInstaller {
 
         // this is currently used by Micrometer instrumentation in addition to 2.x SDK
         BytecodeUtil.setDelegate(new BytecodeUtilImpl());
+        timings.endPhase("telemetry client");
         Runtime.getRuntime().addShutdownHook(new Thread() {
             @Override
             public void run() {
                 startupLogger.debug("running shutdown hook");
+                startupLogger.debug("class file transformer inspected {} classes and transformed {} of them in {} ms",
+                        transformer.getInspectedCount(), transformer.getTransformedCount(),
+                        NANOSECONDS.toMillis(transformer.getNanos()));
                 try {
+                    if (deferredStartupLatch != null && !deferredStartupLatch.await(5, SECONDS)) {
+                        startupLogger.debug("deferred startup did not complete before shutdown");
+                    }
+                    SpanProcessor spanProcessor = Global.getSpanProcessor();
+                    if (spanProcessor != null) {
+                        // spans still queued for export need to reach the telemetry client before it is flushed
+                        spanProcessor.shutdown().join(5, SECONDS);
+                    }
                     telemetryClient.flush();
                     telemetryClient.shutdown(5, SECONDS);
                     startupLogger.debug("completed shutdown hook");
@@ -196,8 +234,48 @@ public class BeforeAgentInstaller {
 
         Path configPath = MainEntryPoint.getConfigPath();
         if (configPath != null) {
-            JsonConfigPolling.pollJsonConfigEveryMinute(configPath, MainEntryPoint.getLastModifiedTime(), config.sampling.percentage);
+            JsonConfigPolling.pollJsonConfigEveryMinute(configPath, MainEntryPoint.getLastModifiedTime(), config.sampling);
         }
+        timings.endPhase("shutdown hook and configuration polling");
+        startupLogger.info("startup phases: {}", timings.getBreakdown());
+    }
+
+    // creates the channel, and starts the heartbeat, performance counters and QuickPulse, on a background thread
+    private static CountDownLatch startDeferred(final TelemetryConfiguration configuration,
+                                               final ApplicationInsightsXmlConfiguration xmlConfiguration,
+                                               final DeferredTelemetryChannel deferredChannel) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Thread thread = new Thread("ApplicationInsights-DeferredStartup") {
+            @Override
+            public void run() {
+                StartupTimings timings = new StartupTimings();
+                TelemetryChannel channel = null;
+                try {
+                    TelemetryConfigurationFactory.INSTANCE.initializeChannelAndModules(configuration, xmlConfiguration);
+                    timings.endPhase("channel and modules");
+                    channel = configuration.getChannel();
+                } catch (Throwable t) {
+                    startupLogger.error("deferred startup failed", t);
+                }
+                try {
+                    if (channel == null || channel == deferredChannel) {
+                        // the configured channel could not be created, the buffered telemetry still has to go out
+                        startupLogger.warn("falling back to the default telemetry channel");
+                        channel = new InProcessTelemetryChannel(configuration);
+                    }
+                    deferredChannel.setDelegate(channel);
+                    timings.endPhase("buffered telemetry");
+                    startupLogger.info("deferred startup phases: {}", timings.getBreakdown());
+                } catch (Throwable t) {
+                    startupLogger.error("deferred startup failed", t);
+                } finally {
+                    latch.countDown();
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+        return latch;
     }
 
     private static void validateProcessorConfiguration(Configuration config) {
@@ -314,6 +392,11 @@ public class BeforeAgentInstaller {
         heartbeatModule.getParameters().add(newParamXml("HeartBeatInterval", Long.toString(intervalSeconds)));
         ArrayList<AddTypeXmlElement> modules = new ArrayList<>();
         modules.add(heartbeatModule);
+        if (config.preview.preAggregatedStandardMetrics) {
+            AddTypeXmlElement standardMetricsModule = new AddTypeXmlElement();
+            standardMetricsModule.setType("com.microsoft.applicationinsights.internal.metrics.StandardMetricsModule");
+            modules.add(standardMetricsModule);
+        }
         TelemetryModulesXmlElement modulesXml = new TelemetryModulesXmlElement();
         modulesXml.setAdds(modules);
         xmlConfiguration.setModules(modulesXml);
@@ -332,6 +415,21 @@ public class BeforeAgentInstaller {
         if (config.preview.developerMode) {
             xmlConfiguration.getChannel().setDeveloperMode(true);
         }
+        if (config.preview.stripedTelemetryBuffer) {
+            xmlConfiguration.getChannel().setStripedTelemetryBuffer(true);
+        }
+        if (config.preview.segmentedTransmissionSpool) {
+            xmlConfiguration.getChannel().setSegmentedTransmissionSpool(true);
+        }
+        if (config.preview.adaptiveBacklogDrain) {
+            xmlConfiguration.getChannel().setAdaptiveBacklogDrain(true);
+        }
+        if (config.preview.asyncHttpTransport) {
+            xmlConfiguration.getChannel().setAsyncHttpTransport(true);
+        }
+        if (config.preview.maxInFlightRequests > 0) {
+            xmlConfiguration.getChannel().setMaxInFlightRequests(String.valueOf(config.preview.maxInFlightRequests));
+        }
         return xmlConfiguration;
     }
 
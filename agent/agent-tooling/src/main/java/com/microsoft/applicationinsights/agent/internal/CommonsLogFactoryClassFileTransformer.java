@@ -20,8 +20,9 @@
  */
 package com.microsoft.applicationinsights.agent.internal;
 
-import java.lang.instrument.ClassFileTransformer;
 import java.security.ProtectionDomain;
+import java.util.Collection;
+import java.util.Collections;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 import net.bytebuddy.jar.asm.ClassReader;
@@ -35,7 +36,7 @@ import static net.bytebuddy.jar.asm.Opcodes.ASM7;
 
 // this is needed because gradle shadow doesn't shade the constant
 // "META-INF/services/org.apache.commons.logging.LogFactory" that is in commons-logging code
-class CommonsLogFactoryClassFileTransformer implements ClassFileTransformer {
+class CommonsLogFactoryClassFileTransformer implements TargetedClassFileTransformer {
 
     private static final Logger logger = LoggerFactory.getLogger(CommonsLogFactoryClassFileTransformer.class);
 
@@ -43,13 +44,26 @@ class CommonsLogFactoryClassFileTransformer implements ClassFileTransformer {
     // IMPORTANT FOR THIS NOT TO BE FINAL, OTHERWISE COMPILER MAY INLINE IT, WHICH WOULD PREVENT IT FROM BEING SHADED
     public static String SERVICE_ID = "org.apache.commons.logging.LogFactory";
 
+    // the shaded copy of commons logging is loaded by the agent's class loader
+    private static final String LOG_FACTORY_CLASS_NAME = "org/apache/commons/logging/LogFactory";
+
+    @Override
+    public Collection<String> getClassNames() {
+        return Collections.singletonList(LOG_FACTORY_CLASS_NAME);
+    }
+
+    @Override
+    public boolean isApplicationClassesOnly() {
+        return false;
+    }
+
     @Override
     public byte /*@Nullable*/[] transform(@Nullable ClassLoader loader, @Nullable String className,
                                           @Nullable Class<?> classBeingRedefined,
                                           @Nullable ProtectionDomain protectionDomain,
                                           byte[] classfileBuffer) {
 
-        if (!"org/apache/commons/logging/LogFactory".equals(className)) {
+        if (!LOG_FACTORY_CLASS_NAME.equals(className)) {
             return null;
         }
         if (!className.startsWith("com/microsoft/applicationinsights/")) {
@@ -0,0 +1,115 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent.internal;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.lang.instrument.IllegalClassFormatException;
+import java.security.ProtectionDomain;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The only {@link ClassFileTransformer} the agent registers for its own bytecode instrumentation, which hands each
+ * class to the {@link TargetedClassFileTransformer} registered for its name, if any.
+ *
+ * Every class the JVM loads goes through here, so the common case is kept short: one hash lookup of the class name,
+ * and not even that for classes loaded by the bootstrap or the agent's class loader when no transformer needs those.
+ */
+public class DispatchingClassFileTransformer implements ClassFileTransformer {
+
+    private final @Nullable ClassLoader agentClassLoader;
+
+    // replaced as a whole when a transformer is added, so that transform() never locks
+    private volatile Map<String, TargetedClassFileTransformer> transformers = Collections.emptyMap();
+    private volatile boolean anyNonApplicationClasses;
+
+    private final LongAdder inspectedCount = new LongAdder();
+    private final LongAdder transformedCount = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    public DispatchingClassFileTransformer(@Nullable ClassLoader agentClassLoader) {
+        this.agentClassLoader = agentClassLoader;
+    }
+
+    /**
+     * Adds a transformer for the classes it names, which are loaded from then on.
+     */
+    public synchronized void add(TargetedClassFileTransformer transformer) {
+        Map<String, TargetedClassFileTransformer> updated = new HashMap<>(transformers);
+        for (String className : transformer.getClassNames()) {
+            if (updated.put(className, transformer) != null) {
+                throw new IllegalStateException("a transformer has already been added for " + className);
+            }
+        }
+        if (!transformer.isApplicationClassesOnly()) {
+            anyNonApplicationClasses = true;
+        }
+        transformers = updated;
+    }
+
+    @Override
+    public byte /*@Nullable*/[] transform(@Nullable ClassLoader loader, @Nullable String className,
+                                          @Nullable Class<?> classBeingRedefined,
+                                          @Nullable ProtectionDomain protectionDomain,
+                                          byte[] classfileBuffer) throws IllegalClassFormatException {
+        long start = System.nanoTime();
+        try {
+            inspectedCount.increment();
+            if (className == null) {
+                return null;
+            }
+            boolean applicationClass = loader != null && loader != agentClassLoader;
+            if (!applicationClass && !anyNonApplicationClasses) {
+                return null;
+            }
+            TargetedClassFileTransformer transformer = transformers.get(className);
+            if (transformer == null || !applicationClass && transformer.isApplicationClassesOnly()) {
+                return null;
+            }
+            byte[] transformed = transformer.transform(loader, className, classBeingRedefined, protectionDomain,
+                    classfileBuffer);
+            if (transformed != null) {
+                transformedCount.increment();
+            }
+            return transformed;
+        } finally {
+            nanos.add(System.nanoTime() - start);
+        }
+    }
+
+    public long getInspectedCount() {
+        return inspectedCount.sum();
+    }
+
+    public long getTransformedCount() {
+        return transformedCount.sum();
+    }
+
+    public long getNanos() {
+        return nanos.sum();
+    }
+}
@@ -1,6 +1,7 @@
 package com.microsoft.applicationinsights.agent.internal;
 
 import com.microsoft.applicationinsights.TelemetryClient;
+import io.opentelemetry.sdk.trace.SpanProcessor;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class Global {
@@ -10,6 +11,9 @@ public class Global {
 
     private static volatile double samplingPercentage = 100;
 
+    @Nullable
+    private static volatile SpanProcessor spanProcessor;
+
     // this can be null if agent failed during startup
     @Nullable
     public static TelemetryClient getTelemetryClient() {
@@ -20,6 +24,12 @@ public class Global {
         return samplingPercentage;
     }
 
+    // this is null unless span export is asynchronous, in which case it needs to be flushed before the telemetry client
+    @Nullable
+    public static SpanProcessor getSpanProcessor() {
+        return spanProcessor;
+    }
+
     public static void setTelemetryClient(TelemetryClient telemetryClient) {
         Global.telemetryClient = telemetryClient;
     }
@@ -27,4 +37,8 @@ public class Global {
     public static void setSamplingPercentage(double samplingPercentage) {
         Global.samplingPercentage = samplingPercentage;
     }
+
+    public static void setSpanProcessor(SpanProcessor spanProcessor) {
+        Global.spanProcessor = spanProcessor;
+    }
 }
@@ -29,6 +29,7 @@ import java.nio.file.attribute.FileTime;
 import java.util.concurrent.Executors;
 
 import com.microsoft.applicationinsights.TelemetryConfiguration;
+import com.microsoft.applicationinsights.agent.bootstrap.MainEntryPoint;
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration;
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.Sampling;
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.ConfigurationBuilder;
@@ -46,17 +47,19 @@ public class JsonConfigPolling implements Runnable {
     private final Path path;
     private volatile long lastModifiedTime;
     private volatile double lastReadSamplingPercentage;
+    private volatile double lastReadSamplingTargetItemsPerSecond;
     private static final Logger logger = LoggerFactory.getLogger(JsonConfigPolling.class);
 
-    private JsonConfigPolling(Path path, long lastModifiedTime, double lastReadSamplingPercentage) {
+    private JsonConfigPolling(Path path, long lastModifiedTime, Sampling lastReadSampling) {
         this.path = path;
         this.lastModifiedTime = lastModifiedTime;
-        this.lastReadSamplingPercentage = lastReadSamplingPercentage;
+        this.lastReadSamplingPercentage = lastReadSampling.percentage;
+        this.lastReadSamplingTargetItemsPerSecond = lastReadSampling.targetItemsPerSecond;
     }
 
-    public static void pollJsonConfigEveryMinute(Path path, long lastModifiedTime, double lastReadSamplingPercentage) {
+    public static void pollJsonConfigEveryMinute(Path path, long lastModifiedTime, Sampling lastReadSampling) {
         Executors.newSingleThreadScheduledExecutor(ThreadPoolUtils.createDaemonThreadFactory(JsonConfigPolling.class))
-                .scheduleWithFixedDelay(new JsonConfigPolling(path, lastModifiedTime, lastReadSamplingPercentage), 60, 60, SECONDS);
+                .scheduleWithFixedDelay(new JsonConfigPolling(path, lastModifiedTime, lastReadSampling), 60, 60, SECONDS);
     }
 
     @Override
@@ -87,15 +90,27 @@ public class JsonConfigPolling implements Runnable {
 
                 // TODO only want to update sampling percentage with value from configuration file if original value
                 //  is from configuration file (not if original value is from APPLICATIONINSIGHTS_SAMPLING_PERCENTAGE env var)
-                if (configuration.sampling.percentage != lastReadSamplingPercentage) {
-                    logger.debug("Updating sampling percentage from {} to {}", lastReadSamplingPercentage, configuration.sampling.percentage);
+                if (configuration.sampling.percentage != lastReadSamplingPercentage
+                        || configuration.sampling.targetItemsPerSecond != lastReadSamplingTargetItemsPerSecond) {
+                    if (MainEntryPoint.getConfiguration().preview.tailSampling.enabled) {
+                        // the tail sampling exporter is built once at startup, and relies on the head sampler always
+                        // recording
+                        logger.warn("Sampling changes require a restart when tail sampling is enabled");
+                        lastReadSamplingPercentage = configuration.sampling.percentage;
+                        lastReadSamplingTargetItemsPerSecond = configuration.sampling.targetItemsPerSecond;
+                        return;
+                    }
+                    logger.debug("Updating sampling percentage from {} to {}, target items per second from {} to {}",
+                            lastReadSamplingPercentage, configuration.sampling.percentage,
+                            lastReadSamplingTargetItemsPerSecond, configuration.sampling.targetItemsPerSecond);
                     double roundedSamplingPercentage = SamplingPercentage.roundToNearest(configuration.sampling.percentage);
                     OpenTelemetrySdk.getTracerManagement().updateActiveTraceConfig(
                             OpenTelemetrySdk.getTracerManagement().getActiveTraceConfig().toBuilder()
-                                    .setSampler(Samplers.getSampler(roundedSamplingPercentage))
+                                    .setSampler(Samplers.getSampler(roundedSamplingPercentage, configuration.sampling.targetItemsPerSecond))
                                     .build());
                     Global.setSamplingPercentage(roundedSamplingPercentage);
                     lastReadSamplingPercentage = configuration.sampling.percentage;
+                    lastReadSamplingTargetItemsPerSecond = configuration.sampling.targetItemsPerSecond;
                 }
             }
         } catch (IOException e) {
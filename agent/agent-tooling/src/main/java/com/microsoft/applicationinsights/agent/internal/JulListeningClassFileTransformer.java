@@ -24,11 +24,12 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.instrument.ClassFileTransformer;
 import java.security.ProtectionDomain;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.concurrent.CountDownLatch;
 
-class JulListeningClassFileTransformer implements ClassFileTransformer {
+class JulListeningClassFileTransformer implements TargetedClassFileTransformer {
 
     // using constant here so that it will NOT get shaded
     // IMPORTANT FOR THIS NOT TO BE FINAL, OTHERWISE COMPILER COULD INLINE IT BELOW AND APPLY .substring(1)
@@ -43,6 +44,17 @@ class JulListeningClassFileTransformer implements ClassFileTransformer {
         this.latch = latch;
     }
 
+    @Override
+    public Collection<String> getClassNames() {
+        return Collections.singletonList(unshadedClassName);
+    }
+
+    // java.util.logging is loaded by the bootstrap class loader
+    @Override
+    public boolean isApplicationClassesOnly() {
+        return false;
+    }
+
     @Override
     public byte /*@Nullable*/[] transform(@Nullable ClassLoader loader, @Nullable String className,
                                           @Nullable Class<?> classBeingRedefined,
@@ -0,0 +1,74 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Measures the consecutive phases of a startup sequence, so that their breakdown can be written to the
+ * self-diagnostics log, e.g. "tmp dir 1 ms, telemetry configuration 120 ms, telemetry client 3 ms (total 124 ms)".
+ */
+class StartupTimings {
+
+    private final long startNanos;
+    private long phaseStartNanos;
+
+    private final List<String> phases = new ArrayList<>();
+    private final List<Long> phaseNanos = new ArrayList<>();
+
+    StartupTimings() {
+        this(System.nanoTime());
+    }
+
+    StartupTimings(long startNanos) {
+        this.startNanos = startNanos;
+        this.phaseStartNanos = startNanos;
+    }
+
+    /**
+     * Ends the current phase, which started when the previous one ended, and starts the next one.
+     */
+    void endPhase(String phase) {
+        endPhase(phase, System.nanoTime());
+    }
+
+    void endPhase(String phase, long nowNanos) {
+        phases.add(phase);
+        phaseNanos.add(nowNanos - phaseStartNanos);
+        phaseStartNanos = nowNanos;
+    }
+
+    String getBreakdown() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < phases.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(phases.get(i)).append(' ').append(NANOSECONDS.toMillis(phaseNanos.get(i))).append(" ms");
+        }
+        return sb.append(" (total ").append(NANOSECONDS.toMillis(phaseStartNanos - startNanos)).append(" ms)").toString();
+    }
+}
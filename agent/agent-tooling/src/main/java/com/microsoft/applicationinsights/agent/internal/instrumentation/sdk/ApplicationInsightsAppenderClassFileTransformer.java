@@ -20,6 +20,7 @@
  */
 package com.microsoft.applicationinsights.agent.internal.instrumentation.sdk;
 
+import com.microsoft.applicationinsights.agent.internal.TargetedClassFileTransformer;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import net.bytebuddy.jar.asm.ClassReader;
 import net.bytebuddy.jar.asm.ClassVisitor;
@@ -28,13 +29,14 @@ import net.bytebuddy.jar.asm.MethodVisitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.instrument.ClassFileTransformer;
 import java.security.ProtectionDomain;
+import java.util.Arrays;
+import java.util.Collection;
 
 import static net.bytebuddy.jar.asm.Opcodes.ASM7;
 import static net.bytebuddy.jar.asm.Opcodes.RETURN;
 
-public class ApplicationInsightsAppenderClassFileTransformer implements ClassFileTransformer {
+public class ApplicationInsightsAppenderClassFileTransformer implements TargetedClassFileTransformer {
 
     private static final Logger logger = LoggerFactory.getLogger(ApplicationInsightsAppenderClassFileTransformer.class);
 
@@ -42,6 +44,16 @@ public class ApplicationInsightsAppenderClassFileTransformer implements ClassFil
     private final String unshadedClassNameLog4jv2 = UnshadedSdkPackageName.get() + "/log4j/v2/ApplicationInsightsAppender";
     private final String unshadedClassNameLog4jv1_2 = UnshadedSdkPackageName.get() + "/log4j/v1_2/ApplicationInsightsAppender";
 
+    @Override
+    public Collection<String> getClassNames() {
+        return Arrays.asList(unshadedClassNameLogback, unshadedClassNameLog4jv2, unshadedClassNameLog4jv1_2);
+    }
+
+    @Override
+    public boolean isApplicationClassesOnly() {
+        return true;
+    }
+
     @Override
     public byte /*@Nullable*/[] transform(@Nullable ClassLoader loader, @Nullable String className,
                                           @Nullable Class<?> classBeingRedefined,
@@ -22,14 +22,16 @@ package com.microsoft.applicationinsights.agent.internal.instrumentation.sdk;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
-import java.lang.instrument.ClassFileTransformer;
 import java.net.MalformedURLException;
 import java.security.ProtectionDomain;
+import java.util.Collection;
+import java.util.Collections;
 
 import com.google.common.base.Charsets;
 import com.microsoft.applicationinsights.TelemetryConfiguration;
 import com.microsoft.applicationinsights.agent.bootstrap.BytecodeUtil;
 import com.microsoft.applicationinsights.agent.bootstrap.diagnostics.status.StatusFile;
+import com.microsoft.applicationinsights.agent.internal.TargetedClassFileTransformer;
 import com.microsoft.applicationinsights.telemetry.Duration;
 import com.microsoft.applicationinsights.telemetry.EventTelemetry;
 import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
@@ -81,7 +83,7 @@ import static net.bytebuddy.jar.asm.Opcodes.LSTORE;
 import static net.bytebuddy.jar.asm.Opcodes.NEW;
 import static net.bytebuddy.jar.asm.Opcodes.RETURN;
 
-public class TelemetryClientClassFileTransformer implements ClassFileTransformer {
+public class TelemetryClientClassFileTransformer implements TargetedClassFileTransformer {
 
     private static final Logger logger = LoggerFactory.getLogger(TelemetryClientClassFileTransformer.class);
 
@@ -90,6 +92,16 @@ public class TelemetryClientClassFileTransformer implements ClassFileTransformer
 
     private final String unshadedClassName = UnshadedSdkPackageName.get() + "/TelemetryClient";
 
+    @Override
+    public Collection<String> getClassNames() {
+        return Collections.singletonList(unshadedClassName);
+    }
+
+    @Override
+    public boolean isApplicationClassesOnly() {
+        return true;
+    }
+
     @Override
     public byte /*@Nullable*/[] transform(@Nullable ClassLoader loader, @Nullable String className,
                                           @Nullable Class<?> classBeingRedefined,
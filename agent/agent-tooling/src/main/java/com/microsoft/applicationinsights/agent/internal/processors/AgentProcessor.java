@@ -2,15 +2,19 @@ package com.microsoft.applicationinsights.agent.internal.processors;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorAttribute;
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorIncludeExclude;
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorMatchType;
 import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -36,20 +40,42 @@ public abstract class AgentProcessor {
         return exclude;
     }
 
+    // Function to process a span, which is skipped when it is not included or is excluded
+    void process(ProcessedSpan span) {
+        if (include != null && !include.isMatch(span.getName(), span)) {
+            return;
+        }
+        if (exclude != null && exclude.isMatch(span.getName(), span)) {
+            return;
+        }
+        processIncluded(span);
+    }
+
+    abstract void processIncluded(ProcessedSpan span);
+
     public static abstract class IncludeExclude {
         // Function to compare span with user provided span names or span patterns
-        public abstract boolean isMatch(SpanData span);
+        public boolean isMatch(SpanData span) {
+            return isMatch(span.getName(), span.getAttributes());
+        }
 
+        // same, for a span that may already have been changed by earlier processors
+        public abstract boolean isMatch(String spanName, ReadableAttributes attributes);
     }
 
     // ok to have this class cover both spanNames and logNames
     public static class StrictIncludeExclude extends IncludeExclude {
         private final List<ProcessorAttribute> attributes;
-        private final List<String> spanNames;
+        private final List<AttributeKey<String>> attributeKeys;
+        private final Set<String> spanNames;
 
         public StrictIncludeExclude(List<ProcessorAttribute> attributes, List<String> spanNames) {
             this.attributes = attributes;
-            this.spanNames = spanNames;
+            this.attributeKeys = new ArrayList<>();
+            for (ProcessorAttribute attribute : attributes) {
+                attributeKeys.add(AttributeKey.stringKey(attribute.key));
+            }
+            this.spanNames = new HashSet<>(spanNames);
         }
 
         public static StrictIncludeExclude create(ProcessorIncludeExclude includeExclude) {
@@ -65,19 +91,21 @@ public abstract class AgentProcessor {
         }
 
         // Function to compare span with user provided span names
-        public boolean isMatch(SpanData span) {
-            if (!spanNames.isEmpty() && !spanNames.contains(span.getName())) {
+        @Override
+        public boolean isMatch(String spanName, ReadableAttributes spanAttributes) {
+            if (!spanNames.isEmpty() && !spanNames.contains(spanName)) {
                 // span name doesn't match
                 return false;
             }
-            return this.checkAttributes(span);
+            return this.checkAttributes(spanAttributes);
         }
 
         // Function to compare span with user provided attributes list
-        private boolean checkAttributes(SpanData span) {
-            for (ProcessorAttribute attribute : attributes) {
+        private boolean checkAttributes(ReadableAttributes spanAttributes) {
+            for (int i = 0; i < attributes.size(); i++) {
+                ProcessorAttribute attribute = attributes.get(i);
                 //All of these attributes must match exactly for a match to occur.
-                Object existingAttributeValue = span.getAttributes().get(AttributeKey.stringKey(attribute.key));
+                Object existingAttributeValue = spanAttributes.get(attributeKeys.get(i));
                 // to get the string value
                 //existingAttributeValue.toString()
                 //String.valueOf(existingAttributeValue);
@@ -97,12 +125,31 @@ public abstract class AgentProcessor {
 
     public static class RegexpIncludeExclude extends IncludeExclude {
 
+        // span names usually repeat, while their number is unbounded when they contain ids
+        private static final int MAX_CACHED_SPAN_NAMES = 1000;
+
         private final List<Pattern> spanPatterns;
         private final Map<AttributeKey<?>, Pattern> attributeValuePatterns;
+        // the span patterns without regex syntax, matched before running the remaining patterns
+        private final LiteralTrie literalSpanPatterns = new LiteralTrie();
+        private final List<Pattern> regexSpanPatterns = new ArrayList<>();
+        private final Map<String, Boolean> spanNameMatches = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_CACHED_SPAN_NAMES;
+            }
+        };
 
         public RegexpIncludeExclude(List<Pattern> spanPatterns, Map<AttributeKey<?>, Pattern> attributeValuePatterns) {
             this.spanPatterns = spanPatterns;
             this.attributeValuePatterns = attributeValuePatterns;
+            for (Pattern pattern : spanPatterns) {
+                if (pattern.flags() == 0 && LiteralTrie.isLiteral(pattern.pattern())) {
+                    literalSpanPatterns.add(pattern.pattern());
+                } else {
+                    regexSpanPatterns.add(pattern);
+                }
+            }
         }
 
         public static RegexpIncludeExclude create(ProcessorIncludeExclude includeExclude) {
@@ -128,30 +175,49 @@ public abstract class AgentProcessor {
             return valuePattern.matcher(attributeValue).find();
         }
 
-        private boolean isPatternFound(SpanData span) {
-            for (Pattern pattern : spanPatterns) {
-                if (pattern.matcher(span.getName()).find()) {
+        private boolean isPatternFound(String spanName) {
+            if (literalSpanPatterns.containsAnyIn(spanName)) {
+                // pattern matches the span!!!
+                return true;
+            }
+            if (regexSpanPatterns.isEmpty()) {
+                return false;
+            }
+            Boolean cached;
+            synchronized (spanNameMatches) {
+                cached = spanNameMatches.get(spanName);
+            }
+            if (cached != null) {
+                return cached;
+            }
+            boolean found = false;
+            for (Pattern pattern : regexSpanPatterns) {
+                if (pattern.matcher(spanName).find()) {
                     // pattern matches the span!!!
-                    return true;
+                    found = true;
+                    break;
                 }
             }
-            //no pattern matched
-            return false;
+            synchronized (spanNameMatches) {
+                spanNameMatches.put(spanName, found);
+            }
+            return found;
         }
 
         // Function to compare span with user provided span patterns
-        public boolean isMatch(SpanData span) {
-            if (!spanPatterns.isEmpty() && !isPatternFound(span)) {
+        @Override
+        public boolean isMatch(String spanName, ReadableAttributes spanAttributes) {
+            if (!spanPatterns.isEmpty() && !isPatternFound(spanName)) {
                 return false;
             }
-            return checkAttributes(span);
+            return checkAttributes(spanAttributes);
         }
 
         // Function to compare span with user provided attributes list
-        private boolean checkAttributes(SpanData span) {
+        private boolean checkAttributes(ReadableAttributes spanAttributes) {
             for (Entry<AttributeKey<?>, Pattern> attributeEntry : attributeValuePatterns.entrySet()) {
                 //All of these attributes must match exactly for a match to occur.
-                Object existingAttributeValue = span.getAttributes().get(attributeEntry.getKey());
+                Object existingAttributeValue = spanAttributes.get(attributeEntry.getKey());
                 if (!(existingAttributeValue instanceof String)) {
                     // user specified key not found
                     return false;
@@ -1,16 +1,10 @@
 package com.microsoft.applicationinsights.agent.internal.processors;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorAction;
-import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorActionType;
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorConfig;
-import io.opentelemetry.common.AttributeConsumer;
 import io.opentelemetry.common.AttributeKey;
-import io.opentelemetry.common.Attributes;
-import io.opentelemetry.common.Attributes.Builder;
-import io.opentelemetry.common.ReadableAttributes;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -36,86 +30,63 @@ public class AttributeProcessor extends AgentProcessor {
     }
 
     // Copy from existing attribute.
-    // Returns true if attribute has been found and copied. Else returns false.
-    // ToDo store fromAttribute as AttributeKey<?> to avoid creating AttributeKey each time
-    private static boolean copyFromExistingAttribute(Attributes.Builder insertBuilder, ReadableAttributes existingSpanAttributes, ProcessorAction actionObj) {
-        Object existingSpanAttributeValue = existingSpanAttributes.get(AttributeKey.stringKey(actionObj.fromAttribute));
+    // Returns the value if attribute has been found. Else returns null.
+    private static @Nullable String getFromExistingAttribute(ProcessedSpan span, ProcessorAction actionObj) {
+        Object existingSpanAttributeValue = span.get(AttributeKey.stringKey(actionObj.fromAttribute));
         if (existingSpanAttributeValue instanceof String) {
-            insertBuilder.setAttribute(actionObj.key, (String) existingSpanAttributeValue);
-            return true;
+            return (String) existingSpanAttributeValue;
         }
-        return false;
+        return null;
     }
 
     // Function to process actions
     public SpanData processActions(SpanData span) {
-        SpanData updatedSpan = span;
-        for (ProcessorAction actionObj : actions) {
-            updatedSpan = actionObj.action == ProcessorActionType.insert ? processInsertAction(updatedSpan, actionObj) : processOtherAction(updatedSpan, actionObj);
-        }
-        return updatedSpan;
+        ProcessedSpan processedSpan = new ProcessedSpan(span);
+        processIncluded(processedSpan);
+        return processedSpan.toSpanData();
     }
 
-    private SpanData processOtherAction(SpanData span, ProcessorAction actionObj) {
-        ReadableAttributes existingSpanAttributes = span.getAttributes();
-        final Attributes.Builder builder = Attributes.newBuilder();
-        final boolean[] spanUpdateFlag = new boolean[1]; // This is for optimization. If none of the attributes are updated, we can skip the attributes.build step
-        existingSpanAttributes.forEach(new AttributeConsumer() {
-            @Override
-            public <T> void consume(AttributeKey<T> key, T value) {
-                boolean attributeUpdatedFlag = false;// flag to check if a attribute is updated
-                if (key.getKey().equals(actionObj.key)) {
-                    switch (actionObj.action) {
-                        case update:
-                            if (applyUpdateAction(actionObj, existingSpanAttributes, builder)) {
-                                attributeUpdatedFlag = true;
-                            }
-                            break;
-                        case delete:
-                            // Return without copying the existing span attribute, but still update spanUpdateFlag
-                            spanUpdateFlag[0] = true;
-                            return;
-                        case hash:
-                            if (value instanceof String) {
-                                // Currently we only support String
-                                builder.setAttribute(actionObj.key, DigestUtils.sha1Hex((String) value));
-                                attributeUpdatedFlag = true;
-                            }
-                            break;
-                        default:
-                            break; // no action. Added to escape spotbug failures.
+    @Override
+    void processIncluded(ProcessedSpan span) {
+        for (ProcessorAction actionObj : actions) {
+            switch (actionObj.action) {
+                case insert:
+                    // existing attributes are never overwritten by an insert
+                    if (!span.hasAttribute(actionObj.key)) {
+                        applyUpdateAction(actionObj, span);
                     }
-                }
-                if (!attributeUpdatedFlag) {
-                    builder.setAttribute(key, value);
-                } else {
-                    spanUpdateFlag[0] = true;
-                }
+                    break;
+                case update:
+                    if (span.hasAttribute(actionObj.key)) {
+                        applyUpdateAction(actionObj, span);
+                    }
+                    break;
+                case delete:
+                    span.removeAttribute(actionObj.key);
+                    break;
+                case hash:
+                    Object value = span.get(AttributeKey.stringKey(actionObj.key));
+                    if (value instanceof String) {
+                        // Currently we only support String
+                        span.setAttribute(actionObj.key, DigestUtils.sha1Hex((String) value));
+                    }
+                    break;
+                default:
+                    break; // no action. Added to escape spotbug failures.
             }
-        });
-        return spanUpdateFlag[0] ? new MySpanData(span, builder.build()) : span;
-    }
-
-    private SpanData processInsertAction(SpanData span, ProcessorAction actionObj) {
-        ReadableAttributes existingSpanAttributes = span.getAttributes();
-        final Builder insertBuilder = Attributes.newBuilder();
-        if (applyUpdateAction(actionObj, existingSpanAttributes, insertBuilder)) {
-            // Copy all existing attributes
-            existingSpanAttributes.forEach(insertBuilder::setAttribute);
-            return new MySpanData(span, insertBuilder.build());
         }
-        return span;
     }
 
-
-    private boolean applyUpdateAction(ProcessorAction actionObj, ReadableAttributes existingSpanAttributes, Attributes.Builder builder) {
+    private static void applyUpdateAction(ProcessorAction actionObj, ProcessedSpan span) {
         //Update from existing attribute
         if (actionObj.value != null) {
             //update to new value
-            builder.setAttribute(actionObj.key, actionObj.value);
-            return true;
-        } else return copyFromExistingAttribute(builder, existingSpanAttributes, actionObj);
+            span.setAttribute(actionObj.key, actionObj.value);
+        } else {
+            String value = getFromExistingAttribute(span, actionObj);
+            if (value != null) {
+                span.setAttribute(actionObj.key, value);
+            }
+        }
     }
-
-
 }
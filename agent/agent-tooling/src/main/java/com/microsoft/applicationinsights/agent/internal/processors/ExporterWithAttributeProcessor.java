@@ -6,7 +6,6 @@ import java.util.List;
 
 
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorConfig;
-import com.microsoft.applicationinsights.agent.internal.processors.AgentProcessor.IncludeExclude;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
@@ -34,16 +33,9 @@ public class ExporterWithAttributeProcessor implements SpanExporter {
     }
 
     private SpanData process(SpanData span) {
-        IncludeExclude include = attributeProcessor.getInclude();
-        if (include != null && !include.isMatch(span)) {
-            //If Not included we can skip further processing
-            return span;
-        }
-        IncludeExclude exclude = attributeProcessor.getExclude();
-        if (exclude != null && exclude.isMatch(span)) {
-            return span;
-        }
-        return attributeProcessor.processActions(span);
+        ProcessedSpan processedSpan = new ProcessedSpan(span);
+        attributeProcessor.process(processedSpan);
+        return processedSpan.toSpanData();
     }
 
     @Override
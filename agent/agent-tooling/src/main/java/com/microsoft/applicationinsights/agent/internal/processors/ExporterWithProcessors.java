@@ -0,0 +1,57 @@
+package com.microsoft.applicationinsights.agent.internal.processors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorConfig;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorType;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+// runs all configured processors in a single pass over each span,
+// which has the same result as chaining an ExporterWithAttributeProcessor or ExporterWithSpanProcessor per processor,
+// but copies the span attributes at most once and builds at most one MySpanData per span
+public class ExporterWithProcessors implements SpanExporter {
+
+    private final SpanExporter delegate;
+    private final List<AgentProcessor> processors;
+
+    // processors are applied in the order of the configuration
+    public ExporterWithProcessors(List<ProcessorConfig> configs, SpanExporter delegate) {
+        processors = new ArrayList<>();
+        for (ProcessorConfig config : configs) {
+            config.validate();
+            processors.add(config.type == ProcessorType.attribute ? AttributeProcessor.create(config) : SpanProcessor.create(config));
+        }
+        this.delegate = delegate;
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        List<SpanData> copy = new ArrayList<>(spans.size());
+        for (SpanData span : spans) {
+            copy.add(process(span));
+        }
+        return delegate.export(copy);
+    }
+
+    private SpanData process(SpanData span) {
+        ProcessedSpan processedSpan = new ProcessedSpan(span);
+        for (AgentProcessor processor : processors) {
+            processor.process(processedSpan);
+        }
+        return processedSpan.toSpanData();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        return delegate.shutdown();
+    }
+}
@@ -6,7 +6,6 @@ import java.util.List;
 
 
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorConfig;
-import com.microsoft.applicationinsights.agent.internal.processors.AgentProcessor.IncludeExclude;
 import io.opentelemetry.sdk.common.CompletableResultCode;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
@@ -36,18 +35,9 @@ public class ExporterWithSpanProcessor implements SpanExporter {
     }
 
     private SpanData process(SpanData span) {
-        IncludeExclude include = spanProcessor.getInclude();
-        if (include != null && !include.isMatch(span)) {
-            //If Not included we can skip further processing
-            return span;
-        }
-        IncludeExclude exclude = spanProcessor.getExclude();
-        if (exclude != null && exclude.isMatch(span)) {
-            return span;
-        }
-
-        SpanData updatedSpan = spanProcessor.processFromAttributes(span);
-        return spanProcessor.processToAttributes(updatedSpan);
+        ProcessedSpan processedSpan = new ProcessedSpan(span);
+        spanProcessor.process(processedSpan);
+        return processedSpan.toSpanData();
     }
 
     @Override
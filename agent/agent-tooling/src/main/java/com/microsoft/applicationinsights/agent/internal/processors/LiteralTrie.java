@@ -0,0 +1,60 @@
+package com.microsoft.applicationinsights.agent.internal.processors;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// span name patterns without any regex syntax are plain substrings,
+// this finds whether any of them occurs in a span name without running a regex per pattern
+final class LiteralTrie {
+
+    private final Node root = new Node();
+
+    // whether the pattern matches exactly the same strings with Matcher.find() as a plain substring search
+    static boolean isLiteral(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            if ("\\^$.|?*+()[]{}".indexOf(regex.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void add(String literal) {
+        Node node = root;
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            Node child = node.children.get(c);
+            if (child == null) {
+                child = new Node();
+                node.children.put(c, child);
+            }
+            node = child;
+        }
+        node.terminal = true;
+    }
+
+    boolean containsAnyIn(String text) {
+        if (root.terminal) {
+            // the empty pattern is found in every string
+            return true;
+        }
+        for (int start = 0; start < text.length(); start++) {
+            Node node = root;
+            for (int i = start; i < text.length(); i++) {
+                node = node.children.get(text.charAt(i));
+                if (node == null) {
+                    break;
+                }
+                if (node.terminal) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private boolean terminal;
+    }
+}
@@ -0,0 +1,128 @@
+package com.microsoft.applicationinsights.agent.internal.processors;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+// the state of a span while it passes through the processors
+//
+// the attributes are copied once, on the first change, and the span data is only rebuilt at the end,
+// instead of each processor step building new Attributes and a new MySpanData
+final class ProcessedSpan implements ReadableAttributes {
+
+    private final SpanData span;
+    private String name;
+    // keyed by attribute name, same as Attributes, where the last value set for a name wins regardless of its type
+    private @Nullable Map<String, Entry> attributes;
+
+    ProcessedSpan(SpanData span) {
+        this.span = span;
+        this.name = span.getName();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void setName(String name) {
+        this.name = name;
+    }
+
+    boolean hasAttribute(String key) {
+        if (attributes == null) {
+            return span.getAttributes().get(AttributeKey.stringKey(key)) != null;
+        }
+        return attributes.containsKey(key);
+    }
+
+    <T> void setAttribute(AttributeKey<T> key, T value) {
+        copyAttributes().put(key.getKey(), new Entry(key, value));
+    }
+
+    void setAttribute(String key, String value) {
+        setAttribute(AttributeKey.stringKey(key), value);
+    }
+
+    void removeAttribute(String key) {
+        if (hasAttribute(key)) {
+            copyAttributes().remove(key);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(AttributeKey<T> key) {
+        if (attributes == null) {
+            return span.getAttributes().get(key);
+        }
+        Entry entry = attributes.get(key.getKey());
+        // same as Attributes, the value is returned even when it was set with a key of another type
+        return entry == null ? null : (T) entry.value;
+    }
+
+    @Override
+    public int size() {
+        return attributes == null ? span.getAttributes().size() : attributes.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void forEach(AttributeConsumer consumer) {
+        if (attributes == null) {
+            span.getAttributes().forEach(consumer);
+            return;
+        }
+        for (Entry entry : attributes.values()) {
+            consumer.consume((AttributeKey<Object>) entry.key, entry.value);
+        }
+    }
+
+    SpanData toSpanData() {
+        if (attributes == null) {
+            return name.equals(span.getName()) ? span : new MySpanData(span, span.getAttributes(), name);
+        }
+        final Attributes.Builder builder = Attributes.newBuilder();
+        forEach(new AttributeConsumer() {
+            @Override
+            public <T> void consume(AttributeKey<T> key, T value) {
+                builder.setAttribute(key, value);
+            }
+        });
+        return new MySpanData(span, builder.build(), name);
+    }
+
+    private Map<String, Entry> copyAttributes() {
+        if (attributes == null) {
+            final Map<String, Entry> copy = new LinkedHashMap<>();
+            span.getAttributes().forEach(new AttributeConsumer() {
+                @Override
+                public <T> void consume(AttributeKey<T> key, T value) {
+                    copy.put(key.getKey(), new Entry(key, value));
+                }
+            });
+            attributes = copy;
+        }
+        return attributes;
+    }
+
+    private static final class Entry {
+        private final AttributeKey<?> key;
+        private final Object value;
+
+        private Entry(AttributeKey<?> key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -7,8 +7,6 @@ import java.util.regex.Pattern;
 
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorConfig;
 import io.opentelemetry.common.AttributeKey;
-import io.opentelemetry.common.Attributes;
-import io.opentelemetry.common.ReadableAttributes;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -73,76 +71,79 @@ public class SpanProcessor extends AgentProcessor {
 
     //fromAttributes represents the attribute keys to pull the values from to generate the new span name.
     public SpanData processFromAttributes(SpanData span) {
+        ProcessedSpan processedSpan = new ProcessedSpan(span);
+        processFromAttributes(processedSpan);
+        return processedSpan.toSpanData();
+    }
+
+    //The following function extracts attributes from span name and replaces extracted parts with attribute names
+    public SpanData processToAttributes(SpanData span) {
+        ProcessedSpan processedSpan = new ProcessedSpan(span);
+        processToAttributes(processedSpan);
+        return processedSpan.toSpanData();
+    }
+
+    @Override
+    void processIncluded(ProcessedSpan span) {
+        processFromAttributes(span);
+        processToAttributes(span);
+    }
+
+    private void processFromAttributes(ProcessedSpan span) {
         if (spanHasAllFromAttributeKeys(span)) {
-            StringBuffer updatedSpanBuffer = new StringBuffer();
-            ReadableAttributes existingSpanAttributes = span.getAttributes();
+            StringBuilder updatedSpanBuffer = new StringBuilder();
             for (AttributeKey<?> attributeKey : fromAttributes) {
-                updatedSpanBuffer.append(existingSpanAttributes.get(attributeKey));
+                updatedSpanBuffer.append(span.get(attributeKey));
                 updatedSpanBuffer.append(separator);
             }
             // Removing the last appended separator
             if (separator.length() > 0) {
                 updatedSpanBuffer.setLength(updatedSpanBuffer.length() - separator.length());
             }
-            return new MySpanData(span, span.getAttributes(), new String(updatedSpanBuffer));
+            span.setName(updatedSpanBuffer.toString());
         }
-        return span;
     }
 
-    private boolean spanHasAllFromAttributeKeys(SpanData span) {
+    private boolean spanHasAllFromAttributeKeys(ProcessedSpan span) {
         if (fromAttributes.isEmpty()) return false;
-        ReadableAttributes existingSpanAttributes = span.getAttributes();
         for (AttributeKey<?> attributeKey : fromAttributes) {
-            if (existingSpanAttributes.get(attributeKey) == null) return false;
+            if (span.get(attributeKey) == null) return false;
         }
         return true;
     }
 
-    //The following function extracts attributes from span name and replaces extracted parts with attribute names
-    public SpanData processToAttributes(SpanData span) {
-        if (toAttributeRulePatterns.isEmpty()) {
-            return span;
-        }
-
-        String spanName = span.getName();
-        final Attributes.Builder builder = Attributes.newBuilder();
-        // copy existing attributes.
+    private void processToAttributes(ProcessedSpan span) {
         // According to Collector docs, The matched portion
         // in the span name is replaced by extracted attribute name. If the attributes exist
-        // they will be overwritten. Need a way to optimize this.
-        span.getAttributes().forEach(builder::setAttribute);
+        // they will be overwritten.
+        String spanName = span.getName();
         for (int i = 0; i < groupNames.size(); i++) {
-            spanName = applyRule(groupNames.get(i), toAttributeRulePatterns.get(i), span, spanName, builder);
+            spanName = applyRule(groupNames.get(i), toAttributeRulePatterns.get(i), spanName, span);
         }
-        return new MySpanData(span, builder.build(), spanName);
-
+        span.setName(spanName);
     }
 
-    private String applyRule(List<String> groupNamesList, Pattern pattern,
-                             SpanData span, String spanName, Attributes.Builder builder) {
+    private static String applyRule(List<String> groupNamesList, Pattern pattern, String spanName, ProcessedSpan span) {
         if (groupNamesList.isEmpty()) return spanName;
         Matcher matcher = pattern.matcher(spanName);
-        StringBuilder sb = new StringBuilder();
-        int lastEnd = 0;
         // As of now we are considering only first match.
-        if (matcher.find()) {
-            sb.append(spanName, lastEnd, matcher.start());
-            int innerLastEnd = matcher.start();
-            for (int i = 1; i <= groupNamesList.size(); i++) {
-                sb.append(spanName, innerLastEnd, matcher.start(i));
-                sb.append("{");
-                sb.append(groupNamesList.get(i - 1));
-                // add attribute key=groupNames.get(i-1), value=matcher.group(i)
-                builder.setAttribute(groupNamesList.get(i - 1), matcher.group(i));
-                sb.append("}");
-                innerLastEnd = matcher.end(i);
-            }
-            sb.append(spanName, innerLastEnd, matcher.end());
-            lastEnd = matcher.end();
+        if (!matcher.find()) {
+            return spanName;
         }
-        sb.append(spanName, lastEnd, spanName.length());
-
+        StringBuilder sb = new StringBuilder();
+        sb.append(spanName, 0, matcher.start());
+        int innerLastEnd = matcher.start();
+        for (int i = 1; i <= groupNamesList.size(); i++) {
+            sb.append(spanName, innerLastEnd, matcher.start(i));
+            sb.append("{");
+            sb.append(groupNamesList.get(i - 1));
+            // add attribute key=groupNames.get(i-1), value=matcher.group(i)
+            span.setAttribute(groupNamesList.get(i - 1), matcher.group(i));
+            sb.append("}");
+            innerLastEnd = matcher.end(i);
+        }
+        sb.append(spanName, innerLastEnd, matcher.end());
+        sb.append(spanName, matcher.end(), spanName.length());
         return sb.toString();
     }
 }
-
@@ -0,0 +1,191 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent.internal.sampling;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+import com.microsoft.applicationinsights.agent.internal.Global;
+import com.microsoft.applicationinsights.agent.internal.sampling.TraceIdBasedSampler.FixedRateSamplerDecision;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.common.ReadableAttributes;
+import io.opentelemetry.sdk.trace.Sampler;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.SpanContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.microsoft.applicationinsights.agent.internal.sampling.TraceIdBasedSampler.AI_SAMPLING_PERCENTAGE;
+
+/**
+ * Trace id based sampler whose percentage follows the incoming item rate, so that roughly
+ * {@code targetItemsPerSecond} items are kept.
+ *
+ * Every span start counts as an incoming item. Once per second the rate of the last interval is folded into
+ * a moving average which rises immediately with a spike but decays over {@link #SMOOTHING_WINDOW_IN_SECONDS},
+ * so bursts are clamped right away and quiet periods are not over-sampled for long. The percentage is then
+ * recomputed as the largest 100/N that keeps the estimated rate under the target, capped by the configured
+ * sampling percentage.
+ *
+ * Local roots and spans with a remote parent are decided by the trace id score, exactly like
+ * {@link TraceIdBasedSampler}. A lower 100/N only ever drops a subset of the traces a higher one keeps.
+ * Spans with a local parent follow the parent's decision, so a trace is never cut apart when the percentage
+ * changes while it is in flight.
+ */
+public final class AdaptiveSampler implements Sampler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveSampler.class);
+
+    static final long UPDATE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    static final double SMOOTHING_WINDOW_IN_SECONDS = 10;
+
+    private final double maxSamplingPercentage;
+    private final double targetItemsPerSecond;
+
+    private final AtomicLong itemsInInterval = new AtomicLong();
+    private final AtomicLong nextUpdateNanos;
+    // only written by the thread that won the update of nextUpdateNanos
+    private volatile long lastUpdateNanos;
+    private volatile double estimatedItemsPerSecond = -1;
+
+    private volatile Decisions decisions;
+
+    /**
+     * @param maxSamplingPercentage The percentage used while the rate is under the target, already rounded to 100/N.
+     * @param targetItemsPerSecond The number of items per second to keep.
+     */
+    public AdaptiveSampler(double maxSamplingPercentage, double targetItemsPerSecond) {
+        this(maxSamplingPercentage, targetItemsPerSecond, System.nanoTime());
+    }
+
+    AdaptiveSampler(double maxSamplingPercentage, double targetItemsPerSecond, long nowNanos) {
+        if (maxSamplingPercentage <= 0 || maxSamplingPercentage > 100) {
+            throw new IllegalArgumentException("maxSamplingPercentage must be in (0, 100]");
+        }
+        if (targetItemsPerSecond <= 0) {
+            throw new IllegalArgumentException("targetItemsPerSecond must be a positive number");
+        }
+        this.maxSamplingPercentage = maxSamplingPercentage;
+        this.targetItemsPerSecond = targetItemsPerSecond;
+        this.lastUpdateNanos = nowNanos;
+        this.nextUpdateNanos = new AtomicLong(nowNanos + UPDATE_INTERVAL_NANOS);
+        this.decisions = new Decisions(maxSamplingPercentage);
+    }
+
+    @Override
+    public SamplingResult shouldSample(@Nullable SpanContext parentContext,
+                                       String traceId,
+                                       String name,
+                                       Span.Kind spanKind,
+                                       ReadableAttributes attributes,
+                                       List<SpanData.Link> parentLinks) {
+        return shouldSample(parentContext, traceId, System.nanoTime());
+    }
+
+    SamplingResult shouldSample(@Nullable SpanContext parentContext, String traceId, long nowNanos) {
+        itemsInInterval.incrementAndGet();
+        long next = nextUpdateNanos.get();
+        if (nowNanos - next >= 0 && nextUpdateNanos.compareAndSet(next, nowNanos + UPDATE_INTERVAL_NANOS)) {
+            update(nowNanos);
+        }
+
+        Decisions current = decisions;
+        if (parentContext != null && parentContext.isValid() && !parentContext.isRemote()) {
+            return parentContext.isSampled() ? current.recordAndSample : current.drop;
+        }
+        if (current.samplingPercentage == 100) {
+            return current.recordAndSample;
+        }
+        if (!SamplingScoreGeneratorV2.isSampledIn(traceId, current.samplingThreshold)) {
+            return current.drop;
+        }
+        return current.recordAndSample;
+    }
+
+    public double getSamplingPercentage() {
+        return decisions.samplingPercentage;
+    }
+
+    double getEstimatedItemsPerSecond() {
+        return estimatedItemsPerSecond;
+    }
+
+    @Override
+    public String getDescription() {
+        return "ApplicationInsights-specific adaptive trace id based sampler, with target items per second: "
+                + targetItemsPerSecond + ", max sampling percentage: " + maxSamplingPercentage;
+    }
+
+    private void update(long nowNanos) {
+        long items = itemsInInterval.getAndSet(0);
+        double elapsedSeconds = Math.max(1, nowNanos - lastUpdateNanos) / (double) TimeUnit.SECONDS.toNanos(1);
+        lastUpdateNanos = nowNanos;
+        double currentItemsPerSecond = items / elapsedSeconds;
+
+        double estimate = estimatedItemsPerSecond;
+        if (estimate < 0 || currentItemsPerSecond >= estimate) {
+            estimate = currentItemsPerSecond;
+        } else {
+            double alpha = 1 - Math.exp(-elapsedSeconds / SMOOTHING_WINDOW_IN_SECONDS);
+            estimate += alpha * (currentItemsPerSecond - estimate);
+        }
+        estimatedItemsPerSecond = estimate;
+
+        double samplingPercentage = computeSamplingPercentage(estimate, targetItemsPerSecond, maxSamplingPercentage);
+        if (samplingPercentage != decisions.samplingPercentage) {
+            logger.debug("Adjusting sampling percentage from {} to {} (estimated {} items per second)",
+                    decisions.samplingPercentage, samplingPercentage, estimate);
+            decisions = new Decisions(samplingPercentage);
+            // keeps 2.x SDK telemetry (see BytecodeUtilImpl) in line with the spans
+            Global.setSamplingPercentage(samplingPercentage);
+        }
+    }
+
+    // the portal only computes correct values for percentages of the form 100/N
+    static double computeSamplingPercentage(double itemsPerSecond, double targetItemsPerSecond, double maxSamplingPercentage) {
+        long minItemCount = Math.round(100 / maxSamplingPercentage);
+        long itemCount = (long) Math.ceil(itemsPerSecond / targetItemsPerSecond);
+        return 100.0 / Math.max(1, Math.max(minItemCount, itemCount));
+    }
+
+    private static final class Decisions {
+        final double samplingPercentage;
+        final int samplingThreshold;
+        final SamplingResult recordAndSample;
+        final SamplingResult drop;
+
+        Decisions(double samplingPercentage) {
+            this.samplingPercentage = samplingPercentage;
+            samplingThreshold = SamplingScoreGeneratorV2.getSamplingThreshold(samplingPercentage);
+            Attributes attributes = samplingPercentage != 100
+                    ? Attributes.of(AI_SAMPLING_PERCENTAGE, samplingPercentage)
+                    : Attributes.empty();
+            recordAndSample = new FixedRateSamplerDecision(Decision.RECORD_AND_SAMPLE, attributes);
+            drop = new FixedRateSamplerDecision(Decision.DROP, Attributes.empty());
+        }
+    }
+}
@@ -5,7 +5,14 @@ import io.opentelemetry.sdk.trace.Sampler;
 public class Samplers {
 
     public static Sampler getSampler(double samplingPercentage) {
-        if (samplingPercentage != 100) {
+        return getSampler(samplingPercentage, 0);
+    }
+
+    // targetItemsPerSecond <= 0 means fixed rate sampling
+    public static Sampler getSampler(double samplingPercentage, double targetItemsPerSecond) {
+        if (targetItemsPerSecond > 0 && samplingPercentage > 0) {
+            return new AdaptiveSampler(samplingPercentage, targetItemsPerSecond);
+        } else if (samplingPercentage != 100) {
             return new TraceIdBasedSampler(samplingPercentage);
         } else {
             // OpenTelemetry default sampling is "parent based", which means don't sample if remote traceparent sampled flag was not set,
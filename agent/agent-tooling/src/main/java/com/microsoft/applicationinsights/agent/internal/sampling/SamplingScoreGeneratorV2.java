@@ -1,61 +1,97 @@
 package com.microsoft.applicationinsights.agent.internal.sampling;
 
-import java.util.Random;
-
-import org.apache.commons.lang3.StringUtils;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by Dhaval Doshi Oct 2017
  * This class generates the sample using the random number generator.
  * It also contains the logic to preserve the correlated telemetry items.
+ *
+ * The score is the djb2 hash of the operation id, which has to stay bit-compatible with the other
+ * Application Insights SDKs so that all of them keep or drop the same distributed traces.
  */
 public class SamplingScoreGeneratorV2 {
 
-    private static Random random = new Random();
+    private static final int TRACE_ID_LENGTH = 32;
+
+    // powers of the djb2 multiplier, for hashing four characters at a time
+    private static final int M2 = 33 * 33;
+    private static final int M3 = 33 * 33 * 33;
+    private static final int M4 = 33 * 33 * 33 * 33;
 
     /**
      * This method takes the telemetry and returns the hash of the operation id if it is present already
      * or uses the random number generator to generate the sampling score.
      * @param operationId
-     * @return [0.0, 1.0)
+     * @return [0.0, 100.0)
      */
     public static double getSamplingScore(String operationId) {
+        return toSamplingScore(getSamplingHashCode(operationId));
+    }
 
-        double samplingScore;
-
-        if (!StringUtils.isEmpty(operationId)) {
-            samplingScore =  ((double) getSamplingHashCode(operationId) / Integer.MAX_VALUE);
-        } else {
-            samplingScore =  random.nextDouble(); // [0,1)
+    /**
+     * Returns the smallest hash code that is not sampled in at the given percentage, so that checking
+     * {@code getSamplingScore(operationId) < samplingPercentage} becomes a single integer comparison
+     * through {@link #isSampledIn(String, int)}, with exactly the same outcome.
+     * @param samplingPercentage
+     * @return [0, Integer.MAX_VALUE]
+     */
+    public static int getSamplingThreshold(double samplingPercentage) {
+        if (!(samplingPercentage > 0)) {
+            return 0;
+        }
+        if (samplingPercentage >= 100) {
+            return Integer.MAX_VALUE;
+        }
+        long threshold = (long) Math.ceil(samplingPercentage / 100.0 * Integer.MAX_VALUE);
+        // the estimate can be off by the rounding of the double math, which the score comparison is defined by
+        while (threshold > 0 && toSamplingScore((int) (threshold - 1)) >= samplingPercentage) {
+            threshold--;
+        }
+        while (threshold < Integer.MAX_VALUE && toSamplingScore((int) threshold) < samplingPercentage) {
+            threshold++;
         }
+        return (int) threshold;
+    }
 
-        return samplingScore * 100.0; // always < 100.0
+    /**
+     * @param operationId
+     * @param samplingThreshold from {@link #getSamplingThreshold(double)}
+     * @return whether the operation is kept
+     */
+    public static boolean isSampledIn(String operationId, int samplingThreshold) {
+        return getSamplingHashCode(operationId) < samplingThreshold;
+    }
+
+    private static double toSamplingScore(int samplingHashCode) {
+        return ((double) samplingHashCode / Integer.MAX_VALUE) * 100.0; // always < 100.0
     }
 
     /**
      * @param operationId
-     * @return [0, Integer.MAX_VALUE)
+     * @return [0, Integer.MAX_VALUE), random when there is no operation id
      */
     static int getSamplingHashCode(String operationId) {
-        if (StringUtils.isEmpty(operationId)) {
-            return 0;
+        if (operationId == null || operationId.isEmpty()) {
+            return ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
         }
 
-        CharSequence opId;
-        if (operationId.length() < 8) {
-            StringBuilder opIdBuilder = new StringBuilder(operationId);
-            while (opIdBuilder.length() < 8) {
-                opIdBuilder.append(operationId);
+        int hash;
+        int length = operationId.length();
+        if (length == TRACE_ID_LENGTH) {
+            hash = hashTraceId(operationId);
+        } else if (length < 8) {
+            // same as hashing the id repeated until it is at least 8 characters long
+            hash = 5381;
+            int paddedLength = length * ((8 + length - 1) / length);
+            for (int i = 0; i < paddedLength; ++i) {
+                hash = ((hash << 5) + hash) + (int) operationId.charAt(i % length);
             }
-            opId = opIdBuilder;
         } else {
-            opId = operationId;
-        }
-
-        int hash = 5381;
-
-        for (int i = 0; i < opId.length(); ++i) {
-            hash = ((hash << 5) + hash) + (int) opId.charAt(i);
+            hash = 5381;
+            for (int i = 0; i < length; ++i) {
+                hash = ((hash << 5) + hash) + (int) operationId.charAt(i);
+            }
         }
 
         if (hash == Integer.MIN_VALUE || hash == Integer.MAX_VALUE) {
@@ -63,4 +99,18 @@ public class SamplingScoreGeneratorV2 {
         }
         return Math.abs(hash);
     }
+
+    // W3C trace ids are the common case, the loop is unrolled four characters at a time which shortens the chain of
+    // dependent multiplications, the overflowing int arithmetic gives the same result as the one character loop
+    private static int hashTraceId(String traceId) {
+        int hash = 5381;
+        for (int i = 0; i < TRACE_ID_LENGTH; i += 4) {
+            hash = hash * M4
+                    + traceId.charAt(i) * M3
+                    + traceId.charAt(i + 1) * M2
+                    + traceId.charAt(i + 2) * 33
+                    + traceId.charAt(i + 3);
+        }
+        return hash;
+    }
 }
@@ -0,0 +1,370 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent.internal.sampling;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.TailSampling;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.TailSamplingAttribute;
+import com.microsoft.applicationinsights.agent.internal.processors.MySpanData;
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.trace.SpanId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.microsoft.applicationinsights.agent.internal.sampling.TraceIdBasedSampler.AI_SAMPLING_PERCENTAGE;
+
+/**
+ * Samples whole traces after the fact, so failed and slow traces survive even at low sampling percentages.
+ *
+ * Head sampling is turned off when this exporter is used, every ended span is buffered per trace id until
+ * the local root span of the trace ends. The trace is then kept entirely when any of its spans failed,
+ * matches one of the configured attributes, or when the root took longer than the configured percentile
+ * of recent root durations. Everything else is sampled by trace id score at the configured
+ * percentage, exactly as head sampling would have. Kept traces are stamped with the probability they were
+ * kept with (100 for the rule based decisions), so item counts in the portal stay unbiased.
+ *
+ * The buffer is bounded by the number of traces, the number of spans and the decision wait time. When any
+ * bound is hit, the oldest traces are decided early on whatever spans they have. Spans that end after their
+ * trace was decided follow the recorded decision.
+ */
+public final class TailSamplingExporter implements SpanExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(TailSamplingExporter.class);
+
+    private static final double KEEP_ALL = 100;
+    private static final double DROP = -1;
+
+    private final SpanExporter delegate;
+    private final double samplingPercentage;
+    private final int samplingThreshold;
+    private final long decisionWaitNanos;
+    private final int maxTraces;
+    private final int maxSpans;
+    private final double latencyPercentile;
+    private final List<AttributeRule> attributeRules;
+
+    private final Object lock = new Object();
+    // in order of the first span seen, so the head is always the oldest trace
+    private final LinkedHashMap<String, PendingTrace> pendingTraces = new LinkedHashMap<>();
+    private final Map<String, Double> decidedTraces;
+    private final LatencyHistogram rootLatencies = new LatencyHistogram();
+    private int bufferedSpans;
+
+    public TailSamplingExporter(SpanExporter delegate, double samplingPercentage, TailSampling config) {
+        this.delegate = delegate;
+        this.samplingPercentage = samplingPercentage;
+        this.samplingThreshold = SamplingScoreGeneratorV2.getSamplingThreshold(samplingPercentage);
+        this.decisionWaitNanos = TimeUnit.MILLISECONDS.toNanos(config.decisionWaitMillis);
+        this.maxTraces = config.maxTraces;
+        this.maxSpans = config.maxSpans;
+        this.latencyPercentile = config.latencyPercentile;
+        this.attributeRules = new ArrayList<>();
+        for (TailSamplingAttribute attribute : config.attributes) {
+            attributeRules.add(new AttributeRule(attribute.key, attribute.value));
+        }
+        final int maxDecidedTraces = config.maxTraces;
+        this.decidedTraces = new LinkedHashMap<String, Double>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Double> eldest) {
+                return size() > maxDecidedTraces;
+            }
+        };
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        return export(spans, System.nanoTime());
+    }
+
+    CompletableResultCode export(Collection<SpanData> spans, long nowNanos) {
+        List<SpanData> kept = new ArrayList<>();
+        synchronized (lock) {
+            for (SpanData span : spans) {
+                add(span, nowNanos, kept);
+            }
+            decideExpired(nowNanos, kept);
+        }
+        if (kept.isEmpty()) {
+            return CompletableResultCode.ofSuccess();
+        }
+        return delegate.export(kept);
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        List<SpanData> kept = new ArrayList<>();
+        synchronized (lock) {
+            decideExpired(System.nanoTime(), kept);
+        }
+        if (!kept.isEmpty()) {
+            delegate.export(kept);
+        }
+        return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        List<SpanData> kept = new ArrayList<>();
+        synchronized (lock) {
+            while (!pendingTraces.isEmpty()) {
+                decideOldest(kept);
+            }
+        }
+        if (!kept.isEmpty()) {
+            delegate.export(kept);
+        }
+        return delegate.shutdown();
+    }
+
+    int getPendingTraceCount() {
+        synchronized (lock) {
+            return pendingTraces.size();
+        }
+    }
+
+    int getBufferedSpanCount() {
+        synchronized (lock) {
+            return bufferedSpans;
+        }
+    }
+
+    private void add(SpanData span, long nowNanos, List<SpanData> kept) {
+        String traceId = span.getTraceId();
+        Double decided = decidedTraces.get(traceId);
+        if (decided != null) {
+            if (decided != DROP) {
+                kept.add(stamp(span, decided));
+            }
+            return;
+        }
+
+        PendingTrace trace = pendingTraces.get(traceId);
+        if (trace == null) {
+            if (pendingTraces.size() >= maxTraces) {
+                decideOldest(kept);
+            }
+            trace = new PendingTrace(nowNanos);
+            pendingTraces.put(traceId, trace);
+        }
+        while (bufferedSpans >= maxSpans && pendingTraces.size() > 1) {
+            // never evicts the trace just added to, which is the newest one
+            decideOldest(kept);
+        }
+        trace.spans.add(span);
+        bufferedSpans++;
+
+        if (isLocalRoot(span)) {
+            pendingTraces.remove(traceId);
+            decide(traceId, trace, span, kept);
+        } else if (bufferedSpans > maxSpans) {
+            // a single trace with more spans than the buffer can hold
+            pendingTraces.remove(traceId);
+            decide(traceId, trace, null, kept);
+        }
+    }
+
+    private void decideExpired(long nowNanos, List<SpanData> kept) {
+        Iterator<Map.Entry<String, PendingTrace>> i = pendingTraces.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<String, PendingTrace> entry = i.next();
+            if (nowNanos - entry.getValue().firstSeenNanos < decisionWaitNanos) {
+                break;
+            }
+            i.remove();
+            decide(entry.getKey(), entry.getValue(), null, kept);
+        }
+    }
+
+    private void decideOldest(List<SpanData> kept) {
+        Iterator<Map.Entry<String, PendingTrace>> i = pendingTraces.entrySet().iterator();
+        Map.Entry<String, PendingTrace> oldest = i.next();
+        i.remove();
+        decide(oldest.getKey(), oldest.getValue(), null, kept);
+    }
+
+    private void decide(String traceId, PendingTrace trace, SpanData root, List<SpanData> kept) {
+        bufferedSpans -= trace.spans.size();
+        double percentage = getKeptPercentage(traceId, trace, root);
+        decidedTraces.put(traceId, percentage);
+        if (percentage == DROP) {
+            return;
+        }
+        for (SpanData span : trace.spans) {
+            kept.add(stamp(span, percentage));
+        }
+    }
+
+    private double getKeptPercentage(String traceId, PendingTrace trace, SpanData root) {
+        boolean keep = false;
+        for (SpanData span : trace.spans) {
+            if (!span.getStatus().isOk() || matchesAttributeRule(span)) {
+                keep = true;
+                break;
+            }
+        }
+        if (root != null && latencyPercentile > 0) {
+            long durationNanos = root.getEndEpochNanos() - root.getStartEpochNanos();
+            // checked before recording, so a single outlier is compared against the traces before it
+            if (durationNanos > rootLatencies.getPercentileNanos(latencyPercentile)) {
+                keep = true;
+            }
+            rootLatencies.record(durationNanos);
+        }
+        if (keep) {
+            logger.debug("Trace {} kept by tail sampling", traceId);
+            return KEEP_ALL;
+        }
+        if (samplingPercentage == 100) {
+            return KEEP_ALL;
+        }
+        if (!SamplingScoreGeneratorV2.isSampledIn(traceId, samplingThreshold)) {
+            return DROP;
+        }
+        return samplingPercentage;
+    }
+
+    private boolean matchesAttributeRule(SpanData span) {
+        for (AttributeRule rule : attributeRules) {
+            if (rule.matches(span)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isLocalRoot(SpanData span) {
+        return span.getHasRemoteParent() || !SpanId.isValid(span.getParentSpanId());
+    }
+
+    private static SpanData stamp(SpanData span, double percentage) {
+        if (percentage == 100) {
+            return span;
+        }
+        Attributes attributes = Attributes.newBuilder(span.getAttributes())
+                .setAttribute(AI_SAMPLING_PERCENTAGE, percentage)
+                .build();
+        return new MySpanData(span, attributes);
+    }
+
+    private static final class PendingTrace {
+        final long firstSeenNanos;
+        final List<SpanData> spans = new ArrayList<>();
+
+        PendingTrace(long firstSeenNanos) {
+            this.firstSeenNanos = firstSeenNanos;
+        }
+    }
+
+    private static final class AttributeRule {
+        private final AttributeKey<String> stringKey;
+        private final String key;
+        private final String value;
+
+        AttributeRule(String key, String value) {
+            this.stringKey = AttributeKey.stringKey(key);
+            this.key = key;
+            this.value = value;
+        }
+
+        boolean matches(SpanData span) {
+            if (value != null) {
+                return value.equals(span.getAttributes().get(stringKey));
+            }
+            // any type of value, which the typed lookup cannot express
+            final boolean[] found = new boolean[1];
+            span.getAttributes().forEach(new AttributeConsumer() {
+                @Override
+                public <T> void consume(AttributeKey<T> attributeKey, T attributeValue) {
+                    if (attributeKey.getKey().equals(key)) {
+                        found[0] = true;
+                    }
+                }
+            });
+            return found[0];
+        }
+    }
+
+    /**
+     * Log-linear histogram of root durations, four buckets per doubling starting at one microsecond. Counts
+     * are halved whenever they reach {@link #DECAY_THRESHOLD}, so the percentile follows recent traffic.
+     */
+    static final class LatencyHistogram {
+        private static final int BUCKETS_PER_DOUBLING = 4;
+        private static final int NUMBER_OF_BUCKETS = 48 * BUCKETS_PER_DOUBLING;
+        static final int MIN_SAMPLES = 100;
+        static final long DECAY_THRESHOLD = 10000;
+
+        private final long[] counts = new long[NUMBER_OF_BUCKETS];
+        private long total;
+
+        void record(long durationNanos) {
+            counts[bucketOf(durationNanos)]++;
+            if (++total >= DECAY_THRESHOLD) {
+                total = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    counts[i] >>= 1;
+                    total += counts[i];
+                }
+            }
+        }
+
+        // upper bound of the bucket holding the percentile, so steady traffic of equal durations never exceeds it,
+        // Long.MAX_VALUE until there is enough history for the percentile to mean anything
+        long getPercentileNanos(double percentile) {
+            if (total < MIN_SAMPLES) {
+                return Long.MAX_VALUE;
+            }
+            long rank = (long) Math.ceil(total * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return i == counts.length - 1 ? Long.MAX_VALUE : lowerBoundOf(i + 1);
+                }
+            }
+            return Long.MAX_VALUE;
+        }
+
+        static int bucketOf(long durationNanos) {
+            double micros = Math.max(1, durationNanos / 1000.0);
+            int bucket = (int) (Math.log(micros) / Math.log(2) * BUCKETS_PER_DOUBLING);
+            return Math.min(bucket, NUMBER_OF_BUCKETS - 1);
+        }
+
+        static long lowerBoundOf(int bucket) {
+            return (long) (Math.pow(2, bucket / (double) BUCKETS_PER_DOUBLING) * 1000);
+        }
+    }
+}
@@ -17,19 +17,21 @@ public final class TraceIdBasedSampler implements Sampler {
 
     private static final Logger logger = LoggerFactory.getLogger(TraceIdBasedSampler.class);
 
-    private static final AttributeKey<Double> AI_SAMPLING_PERCENTAGE = AttributeKey.doubleKey("ai.internal.sampling.percentage");
+    static final AttributeKey<Double> AI_SAMPLING_PERCENTAGE = AttributeKey.doubleKey("ai.internal.sampling.percentage");
 
     // all sampling percentage must be in a ratio of 100/N where N is a whole number (2, 3, 4, …)
     // e.g. 50 for 1/2 or 33.33 for 1/3
     //
     // failure to follow this pattern can result in unexpected / incorrect computation of values in the portal
     private final double samplingPercentage;
+    private final int samplingThreshold;
 
     private final SamplingResult alwaysOnDecision;
     private final SamplingResult alwaysOffDecision;
 
     public TraceIdBasedSampler(double samplingPercentage) {
         this.samplingPercentage = samplingPercentage;
+        this.samplingThreshold = SamplingScoreGeneratorV2.getSamplingThreshold(samplingPercentage);
         Attributes alwaysOnAttributes;
         if (samplingPercentage != 100) {
             alwaysOnAttributes = Attributes.of(AI_SAMPLING_PERCENTAGE, samplingPercentage);
@@ -50,7 +52,7 @@ public final class TraceIdBasedSampler implements Sampler {
         if (samplingPercentage == 100) {
             return alwaysOnDecision;
         }
-        if (SamplingScoreGeneratorV2.getSamplingScore(traceId) >= samplingPercentage) {
+        if (!SamplingScoreGeneratorV2.isSampledIn(traceId, samplingThreshold)) {
             logger.debug("Item {} sampled out", name);
             return alwaysOffDecision;
         }
@@ -62,12 +64,12 @@ public final class TraceIdBasedSampler implements Sampler {
         return "ApplicationInsights-specific trace id based sampler, with sampling percentage: " + samplingPercentage;
     }
 
-    private static final class FixedRateSamplerDecision implements SamplingResult {
+    static final class FixedRateSamplerDecision implements SamplingResult {
 
         private final Decision decision;
         private final Attributes attributes;
 
-        private FixedRateSamplerDecision(Decision decision, Attributes attributes) {
+        FixedRateSamplerDecision(Decision decision, Attributes attributes) {
             this.decision = decision;
             this.attributes = attributes;
         }
@@ -1,35 +1,40 @@
 package io.opentelemetry.javaagent.tooling;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.agent.ExceptionSuppressor;
 import com.microsoft.applicationinsights.agent.Exporter;
 import com.microsoft.applicationinsights.agent.bootstrap.MainEntryPoint;
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.AsyncSpanExport;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ExceptionSuppression;
 import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorConfig;
-import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorType;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.TailSampling;
+import com.microsoft.applicationinsights.agent.internal.AsyncBatchSpanProcessor;
 import com.microsoft.applicationinsights.agent.internal.Global;
 import com.microsoft.applicationinsights.agent.internal.sampling.Samplers;
-import com.microsoft.applicationinsights.agent.internal.processors.ExporterWithAttributeProcessor;
-import com.microsoft.applicationinsights.agent.internal.processors.ExporterWithSpanProcessor;
+import com.microsoft.applicationinsights.agent.internal.sampling.TailSamplingExporter;
+import com.microsoft.applicationinsights.agent.internal.processors.ExporterWithProcessors;
 import io.opentelemetry.OpenTelemetry;
 import io.opentelemetry.context.propagation.DefaultContextPropagators;
 import io.opentelemetry.instrumentation.api.aiappid.AiHttpTraceContext;
 import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.trace.Sampler;
+import io.opentelemetry.sdk.trace.SpanProcessor;
 import io.opentelemetry.sdk.trace.config.TraceConfig;
 import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
 import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class TracerInstaller {
 
+    private static final Logger logger = LoggerFactory.getLogger(TracerInstaller.class);
+
     public static void installAgentTracer() {
         TelemetryClient telemetryClient = Global.getTelemetryClient();
         Configuration config = MainEntryPoint.getConfiguration();
-        List<ProcessorConfig> processors = new ArrayList<>(config.preview.processors);
-        // Reversing the order of processors before passing it to SpanProcessor
-        Collections.reverse(processors);
         if (telemetryClient == null) {
             // agent failed during startup
             return;
@@ -38,32 +43,45 @@ public class TracerInstaller {
         OpenTelemetry.setPropagators(
                 DefaultContextPropagators.builder().addTextMapPropagator(AiHttpTraceContext.getInstance()).build());
 
+        TailSampling tailSampling = config.preview.tailSampling;
+        Sampler sampler;
+        if (tailSampling.enabled) {
+            // every span has to be recorded for the keep/drop decision to be made once the trace has ended
+            if (config.sampling.targetItemsPerSecond > 0) {
+                logger.warn("sampling.targetItemsPerSecond is ignored when tail sampling is enabled");
+            }
+            sampler = Samplers.getSampler(100);
+        } else {
+            sampler = Samplers.getSampler(Global.getSamplingPercentage(), config.sampling.targetItemsPerSecond);
+        }
         OpenTelemetrySdk.getTracerManagement().updateActiveTraceConfig(
                 TraceConfig.getDefault().toBuilder()
-                        .setSampler(Samplers.getSampler(Global.getSamplingPercentage()))
+                        .setSampler(sampler)
                         .build());
-        // if changing the span processor to something async, flush it in the shutdown hook before flushing TelemetryClient
+        ExceptionSuppression exceptionSuppression = config.preview.exceptionSuppression;
+        SpanExporter exporter = new Exporter(telemetryClient, exceptionSuppression.enabled
+                ? new ExceptionSuppressor(exceptionSuppression.topFrames, exceptionSuppression.maxFingerprints,
+                        exceptionSuppression.burst, exceptionSuppression.perMinute)
+                : null);
+        List<ProcessorConfig> processors = config.preview.processors;
         if (!processors.isEmpty()) {
-            SpanExporter currExporter = null;
-            for (ProcessorConfig processorConfig : processors) {
-
-                if (currExporter == null) {
-                    currExporter = processorConfig.type == ProcessorType.attribute ?
-                            new ExporterWithAttributeProcessor(processorConfig, new Exporter(telemetryClient)) :
-                            new ExporterWithSpanProcessor(processorConfig, new Exporter(telemetryClient));
-
-                } else {
-                    currExporter = processorConfig.type == ProcessorType.attribute ?
-                            new ExporterWithAttributeProcessor(processorConfig, currExporter) :
-                            new ExporterWithSpanProcessor(processorConfig, currExporter);
-                }
-            }
-
-            OpenTelemetrySdk.getTracerManagement().addSpanProcessor(SimpleSpanProcessor.newBuilder(currExporter).build());
+            exporter = new ExporterWithProcessors(processors, exporter);
+        }
+        if (tailSampling.enabled) {
+            // outermost, so that processors only run on the spans that are kept
+            exporter = new TailSamplingExporter(exporter, Global.getSamplingPercentage(), tailSampling);
+        }
 
+        AsyncSpanExport asyncSpanExport = config.preview.asyncSpanExport;
+        if (asyncSpanExport.enabled) {
+            // the shutdown hook flushes this span processor before flushing TelemetryClient
+            SpanProcessor spanProcessor = new AsyncBatchSpanProcessor(exporter, asyncSpanExport.maxQueueSize,
+                    asyncSpanExport.maxExportBatchSize, asyncSpanExport.scheduleDelayMillis,
+                    asyncSpanExport.exportTimeoutMillis);
+            Global.setSpanProcessor(spanProcessor);
+            OpenTelemetrySdk.getTracerManagement().addSpanProcessor(spanProcessor);
         } else {
-            OpenTelemetrySdk.getTracerManagement()
-                    .addSpanProcessor(SimpleSpanProcessor.newBuilder(new Exporter(telemetryClient)).build());
+            OpenTelemetrySdk.getTracerManagement().addSpanProcessor(SimpleSpanProcessor.newBuilder(exporter).build());
         }
     }
 
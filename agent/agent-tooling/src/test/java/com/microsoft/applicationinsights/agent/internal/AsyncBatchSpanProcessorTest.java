@@ -0,0 +1,126 @@
+package com.microsoft.applicationinsights.agent.internal;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+
+import com.microsoft.applicationinsights.agent.internal.processors.MockExporter;
+import io.opentelemetry.OpenTelemetry;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.Span;
+import org.junit.*;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.*;
+
+public class AsyncBatchSpanProcessorTest {
+
+    @Test
+    public void forceFlushExportsAllQueuedSpans() {
+        MockExporter mockExporter = new MockExporter();
+        AsyncBatchSpanProcessor processor = new AsyncBatchSpanProcessor(mockExporter, 128, 10, 60000, 30000);
+
+        for (int i = 0; i < 25; i++) {
+            processor.onEnd(newSpan("span" + i));
+        }
+        assertTrue(processor.forceFlush().join(10, SECONDS).isSuccess());
+
+        assertEquals(25, mockExporter.getSpans().size());
+        assertEquals("span0", mockExporter.getSpans().get(0).getName());
+        assertEquals(25, processor.getExportedSpanCount());
+        assertEquals(0, processor.getDroppedSpanCount());
+        assertTrue(processor.shutdown().join(10, SECONDS).isSuccess());
+    }
+
+    @Test
+    public void spansAreDroppedWhenQueueIsFull() {
+        final CountDownLatch exportStarted = new CountDownLatch(1);
+        final CountDownLatch releaseExport = new CountDownLatch(1);
+        MockExporter blockingExporter = new MockExporter() {
+            @Override
+            public CompletableResultCode export(Collection<SpanData> spans) {
+                exportStarted.countDown();
+                try {
+                    releaseExport.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.export(spans);
+            }
+        };
+        AsyncBatchSpanProcessor processor = new AsyncBatchSpanProcessor(blockingExporter, 4, 1, 60000, 30000);
+
+        // first span wakes up the worker, which then blocks in the exporter
+        processor.onEnd(newSpan("first"));
+        try {
+            assertTrue(exportStarted.await(10, SECONDS));
+        } catch (InterruptedException e) {
+            fail();
+        }
+        for (int i = 0; i < 10; i++) {
+            processor.onEnd(newSpan("span" + i));
+        }
+        assertEquals(6, processor.getDroppedSpanCount());
+
+        releaseExport.countDown();
+        assertTrue(processor.shutdown().join(10, SECONDS).isSuccess());
+        assertEquals(5, blockingExporter.getSpans().size());
+        assertEquals(5, processor.getExportedSpanCount());
+    }
+
+    @Test
+    public void spansEndedAfterShutdownAreIgnored() {
+        MockExporter mockExporter = new MockExporter();
+        AsyncBatchSpanProcessor processor = new AsyncBatchSpanProcessor(mockExporter, 128, 10, 60000, 30000);
+        assertTrue(processor.shutdown().join(10, SECONDS).isSuccess());
+
+        processor.onEnd(newSpan("late"));
+        assertEquals(0, processor.getQueuedSpanCount());
+        assertTrue(mockExporter.getSpans().isEmpty());
+    }
+
+    @Test
+    public void concurrentProducersWakeUpTheWorkerForEveryFullBatch() throws InterruptedException {
+        MockExporter mockExporter = new MockExporter();
+        // the worker is only ever woken up by full batches, the scheduled run is too far out to help
+        final AsyncBatchSpanProcessor processor = new AsyncBatchSpanProcessor(mockExporter, 1000, 10, 60000, 30000);
+
+        Thread[] producers = new Thread[8];
+        for (int i = 0; i < producers.length; i++) {
+            producers[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        processor.onEnd(newSpan("span"));
+                    }
+                }
+            };
+            producers[i].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        // whatever the sizes seen by the producers, at most a partial batch is left waiting for the scheduled run
+        long deadline = System.currentTimeMillis() + SECONDS.toMillis(10);
+        while (processor.getQueuedSpanCount() >= 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(processor.getQueuedSpanCount() < 10);
+        assertEquals(0, processor.getDroppedSpanCount());
+        assertTrue(processor.shutdown().join(10, SECONDS).isSuccess());
+        assertEquals(800, processor.getExportedSpanCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void batchesCannotBeLargerThanTheQueue() {
+        new AsyncBatchSpanProcessor(new MockExporter(), 10, 11, 60000, 30000);
+    }
+
+    private static ReadableSpan newSpan(String name) {
+        Span span = OpenTelemetry.getTracer("test").spanBuilder(name).startSpan();
+        span.end();
+        return (ReadableSpan) span;
+    }
+}
@@ -0,0 +1,129 @@
+package com.microsoft.applicationinsights.agent.internal;
+
+import java.security.ProtectionDomain;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class DispatchingClassFileTransformerTest {
+
+    private static final byte[] ORIGINAL = new byte[] {1};
+    private static final byte[] TRANSFORMED = new byte[] {2};
+
+    private final ClassLoader agentClassLoader = new ClassLoader() {};
+    private final ClassLoader applicationClassLoader = new ClassLoader() {};
+
+    private DispatchingClassFileTransformer dispatcher;
+
+    @Before
+    public void setUp() {
+        dispatcher = new DispatchingClassFileTransformer(agentClassLoader);
+    }
+
+    @Test
+    public void shouldDispatchByClassName() throws Exception {
+        // given
+        TestTransformer first = new TestTransformer(true, "a/First");
+        TestTransformer second = new TestTransformer(true, "b/Second", "b/Third");
+        dispatcher.add(first);
+        dispatcher.add(second);
+
+        // when
+        byte[] result = dispatcher.transform(applicationClassLoader, "b/Third", null, null, ORIGINAL);
+        byte[] other = dispatcher.transform(applicationClassLoader, "c/Other", null, null, ORIGINAL);
+
+        // then
+        assertSame(TRANSFORMED, result);
+        assertNull(other);
+        assertEquals(0, first.calls.get());
+        assertEquals(1, second.calls.get());
+    }
+
+    @Test
+    public void shouldSkipBootstrapAndAgentClassesForApplicationTransformers() throws Exception {
+        // given
+        TestTransformer transformer = new TestTransformer(true, "a/First");
+        dispatcher.add(transformer);
+
+        // when
+        byte[] bootstrap = dispatcher.transform(null, "a/First", null, null, ORIGINAL);
+        byte[] agent = dispatcher.transform(agentClassLoader, "a/First", null, null, ORIGINAL);
+
+        // then
+        assertNull(bootstrap);
+        assertNull(agent);
+        assertEquals(0, transformer.calls.get());
+    }
+
+    @Test
+    public void shouldPassBootstrapAndAgentClassesToOtherTransformers() throws Exception {
+        // given
+        TestTransformer transformer = new TestTransformer(false, "a/First");
+        dispatcher.add(transformer);
+
+        // when
+        byte[] bootstrap = dispatcher.transform(null, "a/First", null, null, ORIGINAL);
+        byte[] agent = dispatcher.transform(agentClassLoader, "a/First", null, null, ORIGINAL);
+
+        // then
+        assertSame(TRANSFORMED, bootstrap);
+        assertSame(TRANSFORMED, agent);
+        assertEquals(2, transformer.calls.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void shouldRejectSecondTransformerForSameClass() throws Exception {
+        dispatcher.add(new TestTransformer(true, "a/First"));
+        dispatcher.add(new TestTransformer(false, "a/First"));
+    }
+
+    @Test
+    public void shouldCountInspectedAndTransformedClasses() throws Exception {
+        // given
+        dispatcher.add(new TestTransformer(true, "a/First"));
+
+        // when
+        dispatcher.transform(applicationClassLoader, "a/First", null, null, ORIGINAL);
+        dispatcher.transform(applicationClassLoader, "a/Other", null, null, ORIGINAL);
+        dispatcher.transform(null, "java/lang/Object", null, null, ORIGINAL);
+        dispatcher.transform(applicationClassLoader, null, null, null, ORIGINAL);
+
+        // then
+        assertEquals(4, dispatcher.getInspectedCount());
+        assertEquals(1, dispatcher.getTransformedCount());
+        assertTrue(dispatcher.getNanos() >= 0);
+    }
+
+    private static class TestTransformer implements TargetedClassFileTransformer {
+
+        private final boolean applicationClassesOnly;
+        private final Collection<String> classNames;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private TestTransformer(boolean applicationClassesOnly, String... classNames) {
+            this.applicationClassesOnly = applicationClassesOnly;
+            this.classNames = Arrays.asList(classNames);
+        }
+
+        @Override
+        public Collection<String> getClassNames() {
+            return classNames;
+        }
+
+        @Override
+        public boolean isApplicationClassesOnly() {
+            return applicationClassesOnly;
+        }
+
+        @Override
+        public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                                ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+            calls.incrementAndGet();
+            return TRANSFORMED;
+        }
+    }
+}
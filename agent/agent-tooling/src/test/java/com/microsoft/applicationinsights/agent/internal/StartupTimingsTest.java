@@ -0,0 +1,24 @@
+package com.microsoft.applicationinsights.agent.internal;
+
+import org.junit.*;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.*;
+
+public class StartupTimingsTest {
+
+    @Test
+    public void shouldReportConsecutivePhases() {
+        // given
+        StartupTimings timings = new StartupTimings(0);
+
+        // when
+        timings.endPhase("configuration", MILLISECONDS.toNanos(5));
+        timings.endPhase("telemetry configuration", MILLISECONDS.toNanos(125));
+        timings.endPhase("telemetry client", MILLISECONDS.toNanos(126));
+
+        // then
+        assertEquals("configuration 5 ms, telemetry configuration 120 ms, telemetry client 1 ms (total 126 ms)",
+                timings.getBreakdown());
+    }
+}
@@ -0,0 +1,175 @@
+package com.microsoft.applicationinsights.agent.internal.processors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.NameConfig;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorAction;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorActionType;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorAttribute;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorConfig;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorIncludeExclude;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorMatchType;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ProcessorType;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.ToAttributeConfig;
+import io.opentelemetry.OpenTelemetry;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.trace.Span;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class ExporterWithProcessorsTest {
+
+    @Test
+    public void sameResultAsChainedExportersTest() {
+        List<ProcessorConfig> configs = Arrays.asList(
+                attributeProcessor(ProcessorActionType.insert, "region", "westus", null),
+                attributeProcessor(ProcessorActionType.hash, "user", null, null),
+                spanProcessorFromAttributes(Arrays.asList("region", "operation"), "::"),
+                spanProcessorToAttributes("^/api/(?<version>v[0-9]+)/"),
+                attributeProcessor(ProcessorActionType.delete, "secret", null, null),
+                attributeProcessor(ProcessorActionType.update, "operation", null, "region"));
+        // the delete only applies to spans renamed by the earlier processors
+        configs.get(4).include = regexpSpanNames("westus::", "^/api/\\{version\\}");
+
+        List<SpanData> spans = new ArrayList<>();
+        spans.add(toSpanData(OpenTelemetry.getTracer("test").spanBuilder("svcA")
+                .setAttribute("operation", "get")
+                .setAttribute("user", "somebody")
+                .setAttribute("secret", "password")
+                .setAttribute("count", 3L)
+                .startSpan()));
+        spans.add(toSpanData(OpenTelemetry.getTracer("test").spanBuilder("/api/v2/orders")
+                .setAttribute("region", "eastus")
+                .setAttribute("secret", "password")
+                .startSpan()));
+        spans.add(toSpanData(OpenTelemetry.getTracer("test").spanBuilder("/health")
+                .setAttribute("secret", "password")
+                .startSpan()));
+
+        MockExporter fused = new MockExporter();
+        new ExporterWithProcessors(configs, fused).export(spans);
+
+        // the way the processors used to be chained, the first processor being the outermost exporter
+        MockExporter chained = new MockExporter();
+        SpanExporter exporter = chained;
+        List<ProcessorConfig> reversed = new ArrayList<>(configs);
+        Collections.reverse(reversed);
+        for (ProcessorConfig config : reversed) {
+            exporter = config.type == ProcessorType.attribute ?
+                    new ExporterWithAttributeProcessor(config, exporter) :
+                    new ExporterWithSpanProcessor(config, exporter);
+        }
+        exporter.export(spans);
+
+        assertEquals(3, fused.getSpans().size());
+        for (int i = 0; i < spans.size(); i++) {
+            assertEquals(chained.getSpans().get(i).getName(), fused.getSpans().get(i).getName());
+            assertEquals(chained.getSpans().get(i).getAttributes(), fused.getSpans().get(i).getAttributes());
+        }
+        assertEquals("westus::get", fused.getSpans().get(0).getName());
+        assertEquals("/api/{version}/orders", fused.getSpans().get(1).getName());
+        assertEquals("/health", fused.getSpans().get(2).getName());
+    }
+
+    @Test
+    public void unchangedSpanIsNotCopiedTest() {
+        ProcessorConfig config = attributeProcessor(ProcessorActionType.delete, "secret", null, null);
+        MockExporter mockExporter = new MockExporter();
+        SpanExporter exporter = new ExporterWithProcessors(Collections.singletonList(config), mockExporter);
+
+        SpanData spanData = toSpanData(OpenTelemetry.getTracer("test").spanBuilder("svcA")
+                .setAttribute("one", "1")
+                .startSpan());
+        exporter.export(Collections.singletonList(spanData));
+
+        assertSame(spanData, mockExporter.getSpans().get(0));
+    }
+
+    @Test
+    public void regexpSpanNamesTest() {
+        AgentProcessor.IncludeExclude includeExclude =
+                AgentProcessor.RegexpIncludeExclude.create(regexpSpanNames("orders", "^svc[0-9]+$"));
+
+        for (int i = 0; i < 2; i++) {
+            // the second time around the regex decisions come from the cache
+            assertTrue(includeExclude.isMatch(toSpanData(OpenTelemetry.getTracer("test").spanBuilder("GET /orders/1").startSpan())));
+            assertTrue(includeExclude.isMatch(toSpanData(OpenTelemetry.getTracer("test").spanBuilder("svc42").startSpan())));
+            assertFalse(includeExclude.isMatch(toSpanData(OpenTelemetry.getTracer("test").spanBuilder("svc42a").startSpan())));
+            assertFalse(includeExclude.isMatch(toSpanData(OpenTelemetry.getTracer("test").spanBuilder("order").startSpan())));
+        }
+    }
+
+    @Test
+    public void literalTrieTest() {
+        assertTrue(LiteralTrie.isLiteral("GET /orders"));
+        assertFalse(LiteralTrie.isLiteral("GET /orders.*"));
+        assertFalse(LiteralTrie.isLiteral("^GET"));
+        assertFalse(LiteralTrie.isLiteral("a\\d"));
+
+        LiteralTrie trie = new LiteralTrie();
+        assertFalse(trie.containsAnyIn("anything"));
+        trie.add("order");
+        trie.add("orders/1");
+        trie.add("xyz");
+        assertTrue(trie.containsAnyIn("GET /orders/2"));
+        assertTrue(trie.containsAnyIn("xyz"));
+        assertTrue(trie.containsAnyIn("wxyz"));
+        assertFalse(trie.containsAnyIn("ord"));
+        assertFalse(trie.containsAnyIn("xy"));
+        assertFalse(trie.containsAnyIn(""));
+
+        trie.add("");
+        assertTrue(trie.containsAnyIn(""));
+    }
+
+    private static ProcessorConfig attributeProcessor(ProcessorActionType actionType, String key, String value, String fromAttribute) {
+        ProcessorAction action = new ProcessorAction();
+        action.key = key;
+        action.action = actionType;
+        action.value = value;
+        action.fromAttribute = fromAttribute;
+        ProcessorConfig config = new ProcessorConfig();
+        config.type = ProcessorType.attribute;
+        config.processorName = actionType + " " + key;
+        config.actions = Collections.singletonList(action);
+        return config;
+    }
+
+    private static ProcessorConfig spanProcessorFromAttributes(List<String> fromAttributes, String separator) {
+        ProcessorConfig config = new ProcessorConfig();
+        config.type = ProcessorType.span;
+        config.processorName = "fromAttributes";
+        config.name = new NameConfig();
+        config.name.fromAttributes = fromAttributes;
+        config.name.separator = separator;
+        return config;
+    }
+
+    private static ProcessorConfig spanProcessorToAttributes(String rule) {
+        ProcessorConfig config = new ProcessorConfig();
+        config.type = ProcessorType.span;
+        config.processorName = "toAttributes";
+        config.name = new NameConfig();
+        config.name.toAttributes = new ToAttributeConfig();
+        config.name.toAttributes.rules = Collections.singletonList(rule);
+        return config;
+    }
+
+    private static ProcessorIncludeExclude regexpSpanNames(String... spanNames) {
+        ProcessorIncludeExclude includeExclude = new ProcessorIncludeExclude();
+        includeExclude.matchType = ProcessorMatchType.regexp;
+        includeExclude.spanNames = Arrays.asList(spanNames);
+        includeExclude.attributes = new ArrayList<ProcessorAttribute>();
+        return includeExclude;
+    }
+
+    private static SpanData toSpanData(Span span) {
+        return ((ReadableSpan) span).toSpanData();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent.internal.sampling;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.agent.internal.Global;
+import io.opentelemetry.sdk.trace.Sampler.Decision;
+import io.opentelemetry.sdk.trace.Sampler.SamplingResult;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AdaptiveSamplerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Random random = new Random(42);
+
+    @After
+    public void tearDown() {
+        Global.setSamplingPercentage(100);
+    }
+
+    @Test
+    public void testComputeSamplingPercentage() {
+        assertEquals(100, AdaptiveSampler.computeSamplingPercentage(0, 100, 100), 0);
+        assertEquals(100, AdaptiveSampler.computeSamplingPercentage(100, 100, 100), 0);
+        assertEquals(50, AdaptiveSampler.computeSamplingPercentage(10, 100, 50), 0);
+        assertEquals(10, AdaptiveSampler.computeSamplingPercentage(1000, 100, 100), 0);
+        assertEquals(10, AdaptiveSampler.computeSamplingPercentage(1000, 100, 50), 0);
+        assertEquals(33.333, AdaptiveSampler.computeSamplingPercentage(250, 100, 100), 0.01);
+        assertEquals(25, AdaptiveSampler.computeSamplingPercentage(250, 100, 25), 0);
+    }
+
+    @Test
+    public void testKeepsEverythingUnderTheTarget() {
+        long now = 0;
+        AdaptiveSampler sampler = new AdaptiveSampler(100, 100, now);
+        for (int second = 0; second < 5; second++) {
+            int kept = 0;
+            for (int i = 0; i < 50; i++) {
+                if (isSampled(sampler.shouldSample(null, randomTraceId(), now + i))) {
+                    kept++;
+                }
+            }
+            assertEquals(50, kept);
+            now += SECOND;
+        }
+        assertEquals(100, sampler.getSamplingPercentage(), 0);
+    }
+
+    @Test
+    public void testSpikeIsClampedWithinOneInterval() {
+        long now = 0;
+        AdaptiveSampler sampler = new AdaptiveSampler(100, 100, now);
+        // the call that crosses the interval boundary is counted too
+        for (int i = 0; i < 9999; i++) {
+            sampler.shouldSample(null, randomTraceId(), now + i);
+        }
+        now += SECOND;
+        sampler.shouldSample(null, randomTraceId(), now);
+        assertEquals(1, sampler.getSamplingPercentage(), 0);
+        assertEquals(1, Global.getSamplingPercentage(), 0);
+
+        int kept = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (isSampled(sampler.shouldSample(null, randomTraceId(), now + 1 + i))) {
+                kept++;
+            }
+        }
+        // 1% of 10000, with generous room for the hash distribution
+        assertTrue("kept " + kept, kept > 50 && kept < 200);
+    }
+
+    @Test
+    public void testPercentageRecoversGraduallyAfterSpike() {
+        long now = 0;
+        AdaptiveSampler sampler = new AdaptiveSampler(100, 100, now);
+        for (int i = 0; i < 999; i++) {
+            sampler.shouldSample(null, randomTraceId(), now + i);
+        }
+        now += SECOND;
+        sampler.shouldSample(null, randomTraceId(), now);
+        assertEquals(10, sampler.getSamplingPercentage(), 0);
+
+        // traffic drops to 10 per second, the estimate decays rather than collapsing at once
+        double previous = sampler.getSamplingPercentage();
+        for (int second = 0; second < 60; second++) {
+            for (int i = 0; i < 9; i++) {
+                sampler.shouldSample(null, randomTraceId(), now + i);
+            }
+            now += SECOND;
+            sampler.shouldSample(null, randomTraceId(), now);
+            assertTrue(sampler.getSamplingPercentage() >= previous);
+            previous = sampler.getSamplingPercentage();
+            if (second == 0) {
+                assertTrue(sampler.getSamplingPercentage() < 100);
+            }
+        }
+        assertEquals(100, sampler.getSamplingPercentage(), 0);
+    }
+
+    @Test
+    public void testSampledItemsAreStampedWithThePercentage() {
+        AdaptiveSampler sampler = new AdaptiveSampler(50, 100, 0);
+        SamplingResult result = null;
+        while (result == null || !isSampled(result)) {
+            result = sampler.shouldSample(null, randomTraceId(), 1);
+        }
+        assertEquals(50.0, result.getAttributes().get(TraceIdBasedSampler.AI_SAMPLING_PERCENTAGE), 0);
+
+        AdaptiveSampler unsampled = new AdaptiveSampler(100, 100, 0);
+        assertNull(unsampled.shouldSample(null, randomTraceId(), 1).getAttributes().get(TraceIdBasedSampler.AI_SAMPLING_PERCENTAGE));
+    }
+
+    @Test
+    public void testLocalChildrenFollowTheirParent() {
+        AdaptiveSampler sampler = new AdaptiveSampler(1, 100, 0);
+        for (int i = 0; i < 100; i++) {
+            String traceId = randomTraceId();
+            SpanContext sampledParent = SpanContext.create(traceId, randomSpanId(), TraceFlags.getSampled(), TraceState.getDefault());
+            SpanContext unsampledParent = SpanContext.create(traceId, randomSpanId(), TraceFlags.getDefault(), TraceState.getDefault());
+            assertTrue(isSampled(sampler.shouldSample(sampledParent, traceId, 1)));
+            assertFalse(isSampled(sampler.shouldSample(unsampledParent, traceId, 1)));
+        }
+    }
+
+    @Test
+    public void testRemoteParentsAreDecidedByTraceId() {
+        AdaptiveSampler sampler = new AdaptiveSampler(100.0 / 3, 100, 0);
+        for (int i = 0; i < 100; i++) {
+            String traceId = randomTraceId();
+            // Application Insights SDKs do not propagate the sampled flag
+            SpanContext remoteParent = SpanContext.createFromRemoteParent(traceId, randomSpanId(), TraceFlags.getDefault(), TraceState.getDefault());
+            boolean expected = SamplingScoreGeneratorV2.getSamplingScore(traceId) < 100.0 / 3;
+            assertEquals(expected, isSampled(sampler.shouldSample(remoteParent, traceId, 1)));
+        }
+    }
+
+    private static boolean isSampled(SamplingResult result) {
+        return result.getDecision() == Decision.RECORD_AND_SAMPLE;
+    }
+
+    private String randomTraceId() {
+        return randomHex(32);
+    }
+
+    private String randomSpanId() {
+        return randomHex(16);
+    }
+
+    private String randomHex(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(Character.forDigit(random.nextInt(16), 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent.internal.sampling;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SamplingScoreGeneratorV2Test {
+
+    private final Random random = new Random(42);
+
+    // computed by the original StringBuilder based implementation, the other SDKs must agree on these
+    @Test
+    public void testGoldenValues() {
+        assertEquals(348946573, SamplingScoreGeneratorV2.getSamplingHashCode("a"));
+        assertEquals(1641601553, SamplingScoreGeneratorV2.getSamplingHashCode("ab"));
+        assertEquals(883298903, SamplingScoreGeneratorV2.getSamplingHashCode("abc"));
+        assertEquals(256960957, SamplingScoreGeneratorV2.getSamplingHashCode("abcdefg"));
+        assertEquals(1722392489, SamplingScoreGeneratorV2.getSamplingHashCode("abcdefgh"));
+        assertEquals(1435634811, SamplingScoreGeneratorV2.getSamplingHashCode("0"));
+        assertEquals(1967658585, SamplingScoreGeneratorV2.getSamplingHashCode("|3d5f1b2a."));
+        assertEquals(718577102, SamplingScoreGeneratorV2.getSamplingHashCode("4bf92f3577b34da6a3ce929d0e0e4736"));
+        assertEquals(50237189, SamplingScoreGeneratorV2.getSamplingHashCode("00000000000000000000000000000000"));
+        assertEquals(2146653755, SamplingScoreGeneratorV2.getSamplingHashCode("ffffffffffffffffffffffffffffffff"));
+        assertEquals(1133633597, SamplingScoreGeneratorV2.getSamplingHashCode("0af7651916cd43dd8448eb211c80319c"));
+        assertEquals(1859446213, SamplingScoreGeneratorV2.getSamplingHashCode("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFF"));
+        assertEquals(1466086322, SamplingScoreGeneratorV2.getSamplingHashCode("3f6d2a1b-7c4e-4e2a-9b1d-0c5e8f2a6b7d"));
+        assertEquals(1026420343, SamplingScoreGeneratorV2.getSamplingHashCode("\u00e9t\u00e9"));
+
+        assertEquals(33.46135385030012, SamplingScoreGeneratorV2.getSamplingScore("4bf92f3577b34da6a3ce929d0e0e4736"), 0);
+        assertEquals(16.249091046046974, SamplingScoreGeneratorV2.getSamplingScore("a"), 0);
+    }
+
+    @Test
+    public void testMatchesReferenceImplementation() {
+        String alphabet = "0123456789abcdefABCDEF-|.\u00e9\uffff";
+        for (int i = 0; i < 100000; i++) {
+            int length = 1 + random.nextInt(48);
+            StringBuilder sb = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String operationId = sb.toString();
+            assertEquals(operationId, referenceSamplingHashCode(operationId),
+                    SamplingScoreGeneratorV2.getSamplingHashCode(operationId));
+        }
+    }
+
+    @Test
+    public void testEmptyOperationIdIsRandom() {
+        for (int i = 0; i < 1000; i++) {
+            double score = SamplingScoreGeneratorV2.getSamplingScore("");
+            assertTrue(score >= 0 && score < 100);
+            score = SamplingScoreGeneratorV2.getSamplingScore(null);
+            assertTrue(score >= 0 && score < 100);
+        }
+    }
+
+    @Test
+    public void testSamplingThresholdIsExact() {
+        for (int n = 1; n <= 1000; n++) {
+            assertThresholdIsExact(100.0 / n);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertThresholdIsExact(random.nextDouble() * 100);
+        }
+        assertEquals(0, SamplingScoreGeneratorV2.getSamplingThreshold(0));
+        assertEquals(Integer.MAX_VALUE, SamplingScoreGeneratorV2.getSamplingThreshold(100));
+    }
+
+    @Test
+    public void testIsSampledInMatchesScore() {
+        for (int i = 0; i < 10000; i++) {
+            String traceId = String.format("%016x%016x", random.nextLong(), random.nextLong());
+            double samplingPercentage = 100.0 / (1 + random.nextInt(100));
+            int threshold = SamplingScoreGeneratorV2.getSamplingThreshold(samplingPercentage);
+            assertEquals(traceId, SamplingScoreGeneratorV2.getSamplingScore(traceId) < samplingPercentage,
+                    SamplingScoreGeneratorV2.isSampledIn(traceId, threshold));
+        }
+    }
+
+    private static void assertThresholdIsExact(double samplingPercentage) {
+        int threshold = SamplingScoreGeneratorV2.getSamplingThreshold(samplingPercentage);
+        if (threshold > 0) {
+            assertTrue(score(threshold - 1) < samplingPercentage);
+        }
+        if (threshold < Integer.MAX_VALUE) {
+            assertTrue(score(threshold) >= samplingPercentage);
+        }
+    }
+
+    private static double score(int samplingHashCode) {
+        return ((double) samplingHashCode / Integer.MAX_VALUE) * 100.0;
+    }
+
+    private static int referenceSamplingHashCode(String operationId) {
+        CharSequence opId;
+        if (operationId.length() < 8) {
+            StringBuilder opIdBuilder = new StringBuilder(operationId);
+            while (opIdBuilder.length() < 8) {
+                opIdBuilder.append(operationId);
+            }
+            opId = opIdBuilder;
+        } else {
+            opId = operationId;
+        }
+        int hash = 5381;
+        for (int i = 0; i < opId.length(); ++i) {
+            hash = ((hash << 5) + hash) + (int) opId.charAt(i);
+        }
+        if (hash == Integer.MIN_VALUE || hash == Integer.MAX_VALUE) {
+            return Integer.MAX_VALUE - 1;
+        }
+        return Math.abs(hash);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent.internal.sampling;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.TailSampling;
+import com.microsoft.applicationinsights.agent.bootstrap.configuration.Configuration.TailSamplingAttribute;
+import com.microsoft.applicationinsights.agent.internal.processors.MockExporter;
+import io.opentelemetry.OpenTelemetry;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.EndSpanOptions;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.StatusCanonicalCode;
+import io.opentelemetry.trace.TracingContextUtils;
+import io.grpc.Context;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.microsoft.applicationinsights.agent.internal.sampling.TraceIdBasedSampler.AI_SAMPLING_PERCENTAGE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TailSamplingExporterTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private MockExporter mockExporter;
+    private TailSampling config;
+
+    @Before
+    public void setUp() {
+        mockExporter = new MockExporter();
+        config = new TailSampling();
+        config.enabled = true;
+    }
+
+    @Test
+    public void failedTraceIsKeptEntirely() {
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 0, config);
+
+        Span root = startSpan("root", null);
+        SpanData child = endSpan(startSpan("child", root), 0, MILLI, true);
+        exporter.export(Collections.singletonList(child), 0);
+        assertEquals(0, mockExporter.getSpans().size());
+        assertEquals(1, exporter.getPendingTraceCount());
+
+        exporter.export(Collections.singletonList(endSpan(root, 0, 2 * MILLI, false)), 0);
+
+        assertEquals(2, mockExporter.getSpans().size());
+        assertEquals(0, exporter.getPendingTraceCount());
+        assertEquals(0, exporter.getBufferedSpanCount());
+        for (SpanData span : mockExporter.getSpans()) {
+            assertNull(span.getAttributes().get(AI_SAMPLING_PERCENTAGE));
+        }
+    }
+
+    @Test
+    public void healthyTracesAreSampledByTraceId() {
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 50, config);
+
+        int expected = 0;
+        for (int i = 0; i < 200; i++) {
+            Span root = startSpan("root", null);
+            SpanData child = endSpan(startSpan("child", root), 0, MILLI, false);
+            SpanData rootData = endSpan(root, 0, 2 * MILLI, false);
+            if (SamplingScoreGeneratorV2.getSamplingScore(rootData.getTraceId()) < 50) {
+                expected += 2;
+            }
+            exporter.export(Arrays.asList(child, rootData), 0);
+        }
+
+        assertEquals(expected, mockExporter.getSpans().size());
+        assertTrue(expected > 0 && expected < 400);
+        for (SpanData span : mockExporter.getSpans()) {
+            assertEquals(50, span.getAttributes().get(AI_SAMPLING_PERCENTAGE), 0);
+        }
+    }
+
+    @Test
+    public void slowTraceIsKept() {
+        config.latencyPercentile = 90;
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 0, config);
+
+        for (int i = 0; i < 200; i++) {
+            exporter.export(Collections.singletonList(endSpan(startSpan("fast", null), 0, MILLI, false)), 0);
+        }
+        assertEquals(0, mockExporter.getSpans().size());
+
+        SpanData slow = endSpan(startSpan("slow", null), 0, 100 * MILLI, false);
+        exporter.export(Collections.singletonList(slow), 0);
+
+        assertEquals(1, mockExporter.getSpans().size());
+        assertEquals("slow", mockExporter.getSpans().get(0).getName());
+    }
+
+    @Test
+    public void latencyRuleNeedsHistoryFirst() {
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 0, config);
+
+        exporter.export(Collections.singletonList(endSpan(startSpan("slow", null), 0, 1000 * MILLI, false)), 0);
+
+        assertEquals(0, mockExporter.getSpans().size());
+    }
+
+    @Test
+    public void traceMatchingAttributeIsKept() {
+        TailSamplingAttribute attribute = new TailSamplingAttribute();
+        attribute.key = "tenant";
+        attribute.value = "important";
+        config.attributes.add(attribute);
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 0, config);
+
+        Span root = startSpan("root", null);
+        Span child = startSpan("child", root);
+        child.setAttribute("tenant", "important");
+        SpanData childData = endSpan(child, 0, MILLI, false);
+        exporter.export(Arrays.asList(childData, endSpan(root, 0, 2 * MILLI, false)), 0);
+
+        Span other = startSpan("other", null);
+        other.setAttribute("tenant", "other");
+        exporter.export(Collections.singletonList(endSpan(other, 0, MILLI, false)), 0);
+
+        assertEquals(2, mockExporter.getSpans().size());
+    }
+
+    @Test
+    public void attributeWithoutValueMatchesAnyValue() {
+        TailSamplingAttribute attribute = new TailSamplingAttribute();
+        attribute.key = "retry";
+        config.attributes.add(attribute);
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 0, config);
+
+        Span root = startSpan("root", null);
+        root.setAttribute("retry", 3);
+        exporter.export(Collections.singletonList(endSpan(root, 0, MILLI, false)), 0);
+
+        assertEquals(1, mockExporter.getSpans().size());
+    }
+
+    @Test
+    public void traceWithoutRootIsDecidedAfterDecisionWait() {
+        config.decisionWaitMillis = 1000;
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 0, config);
+
+        Span root = startSpan("root", null);
+        SpanData child = endSpan(startSpan("child", root), 0, MILLI, true);
+        exporter.export(Collections.singletonList(child), 0);
+        exporter.export(Collections.<SpanData>emptyList(), 999 * MILLI);
+        assertEquals(0, mockExporter.getSpans().size());
+
+        exporter.export(Collections.<SpanData>emptyList(), 1000 * MILLI);
+
+        assertEquals(1, mockExporter.getSpans().size());
+        assertEquals(0, exporter.getPendingTraceCount());
+    }
+
+    @Test
+    public void oldestTraceIsDecidedWhenBufferIsFull() {
+        config.maxTraces = 2;
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 0, config);
+
+        Span first = startSpan("first", null);
+        exporter.export(Collections.singletonList(endSpan(startSpan("child", first), 0, MILLI, true)), 0);
+        Span second = startSpan("second", null);
+        exporter.export(Collections.singletonList(endSpan(startSpan("child", second), 0, MILLI, false)), 0);
+        Span third = startSpan("third", null);
+        exporter.export(Collections.singletonList(endSpan(startSpan("child", third), 0, MILLI, false)), 0);
+
+        assertEquals(1, mockExporter.getSpans().size());
+        assertEquals(first.getContext().getTraceIdAsHexString(), mockExporter.getSpans().get(0).getTraceId());
+        assertEquals(2, exporter.getPendingTraceCount());
+    }
+
+    @Test
+    public void spansAreBoundedAcrossTraces() {
+        config.maxSpans = 3;
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 0, config);
+
+        Span first = startSpan("first", null);
+        exporter.export(Arrays.asList(endSpan(startSpan("a", first), 0, MILLI, true),
+                endSpan(startSpan("b", first), 0, MILLI, false)), 0);
+        Span second = startSpan("second", null);
+        exporter.export(Arrays.asList(endSpan(startSpan("c", second), 0, MILLI, false),
+                endSpan(startSpan("d", second), 0, MILLI, false)), 0);
+
+        assertEquals(2, mockExporter.getSpans().size());
+        assertEquals(1, exporter.getPendingTraceCount());
+        assertEquals(2, exporter.getBufferedSpanCount());
+    }
+
+    @Test
+    public void lateSpansFollowTheTraceDecision() {
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 0, config);
+
+        Span root = startSpan("root", null);
+        Span late = startSpan("late", root);
+        exporter.export(Collections.singletonList(endSpan(root, 0, MILLI, true)), 0);
+        exporter.export(Collections.singletonList(endSpan(late, 0, 2 * MILLI, false)), 0);
+
+        Span droppedRoot = startSpan("root", null);
+        Span droppedLate = startSpan("late", droppedRoot);
+        exporter.export(Collections.singletonList(endSpan(droppedRoot, 0, MILLI, false)), 0);
+        exporter.export(Collections.singletonList(endSpan(droppedLate, 0, 2 * MILLI, true)), 0);
+
+        assertEquals(2, mockExporter.getSpans().size());
+        assertEquals(root.getContext().getTraceIdAsHexString(), mockExporter.getSpans().get(1).getTraceId());
+        assertEquals(0, exporter.getPendingTraceCount());
+    }
+
+    @Test
+    public void shutdownDecidesPendingTraces() {
+        TailSamplingExporter exporter = new TailSamplingExporter(mockExporter, 0, config);
+
+        Span root = startSpan("root", null);
+        exporter.export(Collections.singletonList(endSpan(startSpan("child", root), 0, MILLI, true)), 0);
+        exporter.shutdown();
+
+        assertEquals(1, mockExporter.getSpans().size());
+        assertEquals(0, exporter.getPendingTraceCount());
+    }
+
+    @Test
+    public void testLatencyHistogram() {
+        TailSamplingExporter.LatencyHistogram histogram = new TailSamplingExporter.LatencyHistogram();
+        assertEquals(Long.MAX_VALUE, histogram.getPercentileNanos(99));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * MILLI);
+        }
+        long p50 = histogram.getPercentileNanos(50);
+        long p99 = histogram.getPercentileNanos(99);
+        // buckets are a quarter doubling wide, so the upper bound is within 19% of the true value
+        assertTrue("p50 " + p50, p50 >= 500 * MILLI && p50 < 595 * MILLI);
+        assertTrue("p99 " + p99, p99 >= 990 * MILLI && p99 < 1180 * MILLI);
+    }
+
+    private static Span startSpan(String name, Span parent) {
+        Span.Builder builder = OpenTelemetry.getTracer("test").spanBuilder(name).setStartTimestamp(1);
+        if (parent == null) {
+            builder.setNoParent();
+        } else {
+            builder.setParent(TracingContextUtils.withSpan(parent, Context.current()));
+        }
+        return builder.startSpan();
+    }
+
+    private static SpanData endSpan(Span span, long startNanos, long durationNanos, boolean failed) {
+        if (failed) {
+            span.setStatus(StatusCanonicalCode.ERROR);
+        }
+        span.end(EndSpanOptions.builder().setEndTimestamp(1 + startNanos + durationNanos).build());
+        return ((ReadableSpan) span).toSpanData();
+    }
+}
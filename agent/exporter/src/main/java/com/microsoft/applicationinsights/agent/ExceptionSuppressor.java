@@ -0,0 +1,170 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rate limits exceptions which keep failing the same way, e.g. the same stack trace logged for every request
+ * during an incident.
+ *
+ * An exception is identified by a fingerprint over its type and its top frames (not its message, which usually
+ * carries ids). Each fingerprint gets a token bucket; once a fingerprint has used up its bucket, further
+ * occurrences are dropped and counted, and the count is handed to the next occurrence which is let through.
+ * Only the most recently seen fingerprints are tracked, so an evicted fingerprint starts over with a full bucket;
+ * occurrences it still had pending are logged since there is no next occurrence left to report them.
+ */
+public class ExceptionSuppressor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExceptionSuppressor.class);
+
+    public static final String SUPPRESSED_COUNT_PROPERTY = "Suppressed Occurrences";
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static class Bucket {
+        double tokens;
+        long lastRefillNanos;
+        long suppressed;
+    }
+
+    private final int topFrames;
+    private final double burst;
+    private final double tokensPerNano;
+
+    // access ordered, guarded by itself
+    private final Map<Long, Bucket> buckets;
+
+    public ExceptionSuppressor(int topFrames, final int maxFingerprints, int burst, double perMinute) {
+        this.topFrames = topFrames;
+        this.burst = burst;
+        this.tokensPerNano = perMinute / 60e9;
+        this.buckets = new LinkedHashMap<Long, Bucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Bucket> eldest) {
+                if (size() <= maxFingerprints) {
+                    return false;
+                }
+                long suppressed = eldest.getValue().suppressed;
+                if (suppressed > 0) {
+                    logger.warn("{} occurrences of exception {} were suppressed and not reported",
+                            suppressed, Long.toHexString(eldest.getKey()));
+                }
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns -1 when this occurrence should be dropped, otherwise the number of occurrences with the same
+     * fingerprint which were dropped since the last one let through.
+     */
+    public long acquire(String errorStack) {
+        return acquire(fingerprint(errorStack, topFrames), System.nanoTime());
+    }
+
+    long acquire(long fingerprint, long nowNanos) {
+        synchronized (buckets) {
+            Bucket bucket = buckets.get(fingerprint);
+            if (bucket == null) {
+                bucket = new Bucket();
+                bucket.tokens = burst;
+                bucket.lastRefillNanos = nowNanos;
+                buckets.put(fingerprint, bucket);
+            } else {
+                bucket.tokens = Math.min(burst, bucket.tokens + (nowNanos - bucket.lastRefillNanos) * tokensPerNano);
+                bucket.lastRefillNanos = nowNanos;
+            }
+            if (bucket.tokens < 1) {
+                bucket.suppressed++;
+                return -1;
+            }
+            bucket.tokens--;
+            long suppressed = bucket.suppressed;
+            bucket.suppressed = 0;
+            return suppressed;
+        }
+    }
+
+    int getTrackedFingerprintCount() {
+        synchronized (buckets) {
+            return buckets.size();
+        }
+    }
+
+    /**
+     * FNV-1a over the exception type of the first line and the first {@code topFrames} "at ..." lines of the
+     * outermost exception, hashed in place without splitting the stack trace into lines.
+     */
+    static long fingerprint(String stack, int topFrames) {
+        int length = stack.length();
+        int newline = newline(stack, 0);
+        int typeEnd = stack.indexOf(": ");
+        if (typeEnd == -1 || typeEnd > newline) {
+            typeEnd = lineEnd(stack, 0, newline);
+        }
+        long hash = hash(FNV_OFFSET_BASIS, stack, 0, typeEnd);
+
+        int frames = 0;
+        int lineStart = newline + 1;
+        while (frames < topFrames && lineStart < length) {
+            newline = newline(stack, lineStart);
+            int start = lineStart;
+            while (start < newline && Character.isWhitespace(stack.charAt(start))) {
+                start++;
+            }
+            if (stack.startsWith("at ", start)) {
+                hash = (hash ^ '\n') * FNV_PRIME;
+                hash = hash(hash, stack, start + 3, lineEnd(stack, start, newline));
+                frames++;
+            } else if (stack.startsWith("Caused by: ", start)) {
+                break;
+            }
+            lineStart = newline + 1;
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, String value, int start, int end) {
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // the index of the \n ending the line which starts at from, or the length of the value
+    private static int newline(String value, int from) {
+        int newline = value.indexOf('\n', from);
+        return newline == -1 ? value.length() : newline;
+    }
+
+    // the end of a line's content, without the \r of a \r\n line ending
+    private static int lineEnd(String value, int from, int newline) {
+        return newline > from && value.charAt(newline - 1) == '\r' ? newline - 1 : newline;
+    }
+}
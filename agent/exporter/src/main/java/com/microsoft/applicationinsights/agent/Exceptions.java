@@ -1,87 +1,290 @@
 package com.microsoft.applicationinsights.agent;
 
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
-import com.google.common.base.CharMatcher;
-import com.google.common.base.Splitter;
 import com.microsoft.applicationinsights.internal.schemav2.ExceptionDetails;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.microsoft.applicationinsights.internal.schemav2.StackFrame;
 
 public class Exceptions {
 
-    private static final Logger logger = LoggerFactory.getLogger(Exceptions.class);
+    // frames beyond these caps are dropped, and the exception is marked as not having its full stack
+    static final int MAX_FRAMES_PER_EXCEPTION = 100;
+    static final int MAX_PARSED_CHARS = 32768;
 
-    private static final Splitter lineSplitter = Splitter.on(CharMatcher.anyOf("\r\n")).omitEmptyStrings();
+    private static final String CAUSED_BY = "Caused by: ";
+    private static final String SUPPRESSED = "Suppressed: ";
+    private static final String THREAD_PREFIX = "Exception in thread \"";
 
     public static List<ExceptionDetails> minimalParse(String str) {
         ExceptionDetails details = new ExceptionDetails();
-        String line = lineSplitter.split(str).iterator().next();
-        int index = line.indexOf(": ");
-        if (index != -1) {
-            details.setTypeName(line.substring(0, index));
-            details.setMessage(line.substring(index + 2));
+        int start = 0;
+        int end = lineEnd(str, start);
+        // skip leading empty lines
+        while (start == end && end < str.length()) {
+            start = nextLine(str, end);
+            end = lineEnd(str, start);
+        }
+        int index = str.indexOf(": ", start);
+        if (index != -1 && index < end) {
+            details.setTypeName(str.substring(start, index));
+            details.setMessage(str.substring(index + 2, end));
         } else {
-            details.setTypeName(line);
+            details.setTypeName(str.substring(start, end));
         }
         details.setStack(str);
-        return Arrays.asList(details);
+        return Collections.singletonList(details);
     }
 
-    // THIS IS UNFINISHED WORK
-    // NOT SURE IF IT'S NEEDED
-    // TESTING WITH minimalParse() first
+    /**
+     * Parses the text of a java stack trace (as printed by {@link Throwable#printStackTrace()}) into the exception
+     * and its causes, each with its parsed frames. Suppressed exceptions are skipped.
+     *
+     * Falls back to {@link #minimalParse(String)} when the text has no frames, so that text which is not a java
+     * stack trace is still sent as is.
+     */
     public static List<ExceptionDetails> fullParse(String str) {
-        Parser parser = new Parser();
-        for (String line : lineSplitter.split(str)) {
-            try {
-                parser.process(line);
-            } catch (ParseException e) {
-                logger.error(e.getMessage());
-                return new ArrayList<>();
-            }
+        return fullParse(str, MAX_FRAMES_PER_EXCEPTION, MAX_PARSED_CHARS);
+    }
+
+    static List<ExceptionDetails> fullParse(String str, int maxFramesPerException, int maxParsedChars) {
+        Parser parser = new Parser(str, maxFramesPerException, maxParsedChars);
+        parser.parse();
+        if (!parser.hasFrames) {
+            return minimalParse(str);
         }
-        return parser.getDetails();
+        return parser.list;
     }
 
-    static class Parser {
+    /**
+     * Walks the text once, line by line, keeping indexes into it; strings are only created for the fields which
+     * are sent.
+     */
+    private static class Parser {
+
+        private final String str;
+        private final int maxFramesPerException;
+        private int remainingChars;
+
+        private final List<ExceptionDetails> list = new ArrayList<>();
+        private boolean hasFrames;
 
         private ExceptionDetails current;
-        private List<ExceptionDetails> list = new ArrayList<>();
+        private int frameCount;
 
-        void process(String line) throws ParseException {
-            if (line.charAt(0) != '\t') {
-                if (current != null) {
-                    list.add(current);
+        // the type and message of the current exception, until they are emitted at its first frame or at its end
+        private int typeStart;
+        private int typeEnd;
+        private int messageStart;
+        private int messageEnd;
+        private boolean headerPending;
+
+        private Parser(String str, int maxFramesPerException, int maxParsedChars) {
+            this.str = str;
+            this.maxFramesPerException = maxFramesPerException;
+            this.remainingChars = maxParsedChars;
+        }
+
+        private void parse() {
+            int length = str.length();
+            // the indentation of the suppressed exception being skipped, or -1
+            int suppressedIndent = -1;
+            int lineStart = 0;
+            while (lineStart < length) {
+                int lineEnd = lineEnd(str, lineStart);
+                int next = nextLine(str, lineEnd);
+                int start = lineStart;
+                while (start < lineEnd && (str.charAt(start) == '\t' || str.charAt(start) == ' ')) {
+                    start++;
                 }
-                if (line.startsWith("Caused by: ")) {
-                    line = line.substring("Caused by: ".length());
+                int indent = start - lineStart;
+                lineStart = next;
+
+                if (start == lineEnd) {
+                    continue;
+                }
+                if (suppressedIndent != -1) {
+                    // the frames of a suppressed exception are indented further, its causes are indented the same
+                    if (indent > suppressedIndent || indent == suppressedIndent && str.startsWith(CAUSED_BY, start)) {
+                        continue;
+                    }
+                    suppressedIndent = -1;
                 }
-                current = new ExceptionDetails();
-                int index = line.indexOf(": ");
-                if (index != -1) {
-                    current.setTypeName(line.substring(0, index));
-                    current.setMessage(line.substring(index + 2));
-                } else {
-                    current.setTypeName(line);
+
+                if (current == null) {
+                    if (str.startsWith(THREAD_PREFIX, start)) {
+                        int threadEnd = str.indexOf("\" ", start + THREAD_PREFIX.length());
+                        if (threadEnd != -1 && threadEnd < lineEnd) {
+                            start = threadEnd + 2;
+                        }
+                    }
+                    startException(start, lineEnd);
+                } else if (str.startsWith("at ", start)) {
+                    addFrame(start + 3, lineEnd);
+                } else if (str.startsWith(CAUSED_BY, start)) {
+                    endException();
+                    if (remainingChars <= 0) {
+                        // no room left for the causes
+                        current.setHasFullStack(false);
+                        return;
+                    }
+                    startException(start + CAUSED_BY.length(), lineEnd);
+                } else if (str.startsWith(SUPPRESSED, start)) {
+                    suppressedIndent = indent;
+                } else if (headerPending && !str.startsWith("... ", start)) {
+                    // multi-line message
+                    if (messageStart == -1) {
+                        messageStart = start;
+                    }
+                    messageEnd = lineEnd;
                 }
+                // anything else, e.g. "... 5 more" (frames in common with the enclosing exception), is skipped
+            }
+            if (current != null) {
+                endException();
             }
-            System.out.println(line);
         }
 
-        public List<ExceptionDetails> getDetails() {
-            if (current != null) {
-                list.add(current);
+        private void startException(int start, int end) {
+            current = new ExceptionDetails();
+            frameCount = 0;
+            typeStart = start;
+            int index = str.indexOf(": ", start);
+            if (index != -1 && index < end) {
+                typeEnd = index;
+                messageStart = index + 2;
+                messageEnd = end;
+            } else {
+                typeEnd = end;
+                messageStart = -1;
+                messageEnd = -1;
+            }
+            headerPending = true;
+        }
+
+        private void endException() {
+            emitHeader();
+            list.add(current);
+        }
+
+        private void emitHeader() {
+            if (!headerPending) {
+                return;
+            }
+            headerPending = false;
+            current.setId(list.size() + 1);
+            if (!list.isEmpty()) {
+                current.setOuterId(list.get(list.size() - 1).getId());
+            }
+            current.setTypeName(str.substring(typeStart, typeEnd));
+            remainingChars -= typeEnd - typeStart;
+            if (messageStart != -1) {
+                // the message is kept whole and left out of the budget, the pipeline truncates it, so that a long
+                // message does not starve the frames
+                current.setMessage(str.substring(messageStart, messageEnd));
+            }
+        }
+
+        private void addFrame(int start, int end) {
+            emitHeader();
+            hasFrames = true;
+            int level = frameCount++;
+
+            int open = str.indexOf('(', start);
+            if (open == -1 || open > end) {
+                open = end;
+            }
+            int methodStart = start;
+            // module and class loader names, e.g. "java.base/" or "app//"
+            int slash = str.lastIndexOf('/', open - 1);
+            if (slash >= start) {
+                methodStart = slash + 1;
+            }
+            int fileStart = -1;
+            int fileEnd = -1;
+            int line = 0;
+            if (open < end) {
+                int close = str.indexOf(')', open);
+                if (close == -1 || close > end) {
+                    close = end;
+                }
+                if (str.startsWith("Native Method)", open + 1)) {
+                    // as in ExceptionTelemetry, native frames are not sent
+                    return;
+                }
+                if (!str.startsWith("Unknown Source)", open + 1)) {
+                    fileStart = open + 1;
+                    fileEnd = close;
+                    int colon = str.lastIndexOf(':', close - 1);
+                    if (colon > open) {
+                        int parsed = parseLine(colon + 1, close);
+                        if (parsed != -1) {
+                            fileEnd = colon;
+                            line = parsed;
+                        }
+                    }
+                }
+            }
+
+            if (level >= maxFramesPerException) {
+                current.setHasFullStack(false);
+                return;
+            }
+            int chars = open - methodStart + Math.max(0, fileEnd - fileStart);
+            if (chars > remainingChars) {
+                current.setHasFullStack(false);
+                remainingChars = 0;
+                return;
             }
-            return list;
+            remainingChars -= chars;
+
+            StackFrame frame = new StackFrame();
+            frame.setLevel(level);
+            frame.setMethod(str.substring(methodStart, open));
+            if (fileStart != -1) {
+                frame.setFileName(str.substring(fileStart, fileEnd));
+                frame.setLine(line);
+            }
+            current.getParsedStack().add(frame);
+        }
+
+        private int parseLine(int start, int end) {
+            if (start == end || end - start > 9) {
+                return -1;
+            }
+            int line = 0;
+            for (int i = start; i < end; i++) {
+                char c = str.charAt(i);
+                if (c < '0' || c > '9') {
+                    return -1;
+                }
+                line = line * 10 + c - '0';
+            }
+            return line;
         }
     }
 
-    static class ParseException extends Exception {
-        ParseException(String message) {
-            super(message);
+    // the end of the line starting at from, without its line terminator
+    private static int lineEnd(String str, int from) {
+        int length = str.length();
+        for (int i = from; i < length; i++) {
+            char c = str.charAt(i);
+            if (c == '\n' || c == '\r') {
+                return i;
+            }
+        }
+        return length;
+    }
+
+    // the start of the line after the line terminator at lineEnd
+    private static int nextLine(String str, int lineEnd) {
+        if (lineEnd < str.length() && str.charAt(lineEnd) == '\r') {
+            lineEnd++;
+        }
+        if (lineEnd < str.length() && str.charAt(lineEnd) == '\n') {
+            lineEnd++;
         }
+        return lineEnd;
     }
 }
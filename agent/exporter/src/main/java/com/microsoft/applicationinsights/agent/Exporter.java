@@ -24,10 +24,10 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -48,9 +48,9 @@ import com.microsoft.applicationinsights.telemetry.TraceTelemetry;
 import io.opentelemetry.common.AttributeConsumer;
 import io.opentelemetry.common.AttributeKey;
 import io.opentelemetry.common.Attributes;
-import io.opentelemetry.common.ReadableAttributes;
 import io.opentelemetry.instrumentation.api.aiappid.AiAppId;
 import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
 import io.opentelemetry.sdk.trace.data.SpanData;
 import io.opentelemetry.sdk.trace.data.SpanData.Event;
 import io.opentelemetry.sdk.trace.data.SpanData.Link;
@@ -72,6 +72,9 @@ public class Exporter implements SpanExporter {
 
     private static final Joiner JOINER = Joiner.on(", ");
 
+    // empty string for instrumentation libraries that don't match COMPONENT_PATTERN
+    private static final Map<InstrumentationLibraryInfo, String> stdComponents = new ConcurrentHashMap<>();
+
     private static final AttributeKey<Double> AI_SAMPLING_PERCENTAGE = AttributeKey.doubleKey("ai.internal.sampling.percentage");
 
     private static final AttributeKey<Boolean> AI_INTERNAL_LOG = AttributeKey.booleanKey("ai.internal.log");
@@ -81,8 +84,16 @@ public class Exporter implements SpanExporter {
 
     private final TelemetryClient telemetryClient;
 
+    // null when repeated exceptions are not rate limited
+    private final ExceptionSuppressor exceptionSuppressor;
+
     public Exporter(TelemetryClient telemetryClient) {
+        this(telemetryClient, null);
+    }
+
+    public Exporter(TelemetryClient telemetryClient, ExceptionSuppressor exceptionSuppressor) {
         this.telemetryClient = telemetryClient;
+        this.exceptionSuppressor = exceptionSuppressor;
     }
 
     @Override
@@ -106,9 +117,7 @@ public class Exporter implements SpanExporter {
 
     private void export(SpanData span) {
         Kind kind = span.getKind();
-        String instrumentationName = span.getInstrumentationLibraryInfo().getName();
-        Matcher matcher = COMPONENT_PATTERN.matcher(instrumentationName);
-        String stdComponent = matcher.matches() ? matcher.group(1) : null;
+        String stdComponent = getStdComponent(span.getInstrumentationLibraryInfo());
 
         if ("jms".equals(stdComponent) && !SpanId.isValid(span.getParentSpanId()) && kind == Kind.CONSUMER) {
             // no need to capture these, at least is consistent with prior behavior
@@ -116,9 +125,9 @@ public class Exporter implements SpanExporter {
             // where we capture them
             return;
         }
-        Map<AttributeKey<?>, Object> attributes = getAttributesCopy(span.getAttributes());
+        SpanAttributes attributes = new SpanAttributes(span.getAttributes());
         if (kind == Kind.INTERNAL) {
-            boolean isLog = removeAttributeBoolean(attributes, AI_INTERNAL_LOG);
+            boolean isLog = attributes.consumeBoolean(AI_INTERNAL_LOG);
             if (isLog) {
                 exportLogSpan(span, attributes);
             } else if ("spring-scheduling".equals(stdComponent) && !SpanId.isValid(span.getParentSpanId())) {
@@ -141,33 +150,45 @@ public class Exporter implements SpanExporter {
         }
     }
 
-    private void exportRequest(SpanData span, Map<AttributeKey<?>, Object> attributes) {
+    // null when the span is not from one of the standard instrumentations
+    static String getStdComponent(InstrumentationLibraryInfo instrumentationLibraryInfo) {
+        String stdComponent = stdComponents.get(instrumentationLibraryInfo);
+        if (stdComponent == null) {
+            Matcher matcher = COMPONENT_PATTERN.matcher(instrumentationLibraryInfo.getName());
+            stdComponent = matcher.matches() ? matcher.group(1) : "";
+            // there is one entry per instrumentation library, so this does not need a bound
+            stdComponents.put(instrumentationLibraryInfo, stdComponent);
+        }
+        return stdComponent.isEmpty() ? null : stdComponent;
+    }
+
+    private void exportRequest(SpanData span, SpanAttributes attributes) {
 
         RequestTelemetry telemetry = new RequestTelemetry();
 
         String source = null;
-        String sourceAppId = removeAttributeString(attributes, SPAN_SOURCE_ATTRIBUTE_NAME);
+        String sourceAppId = attributes.consumeString(SPAN_SOURCE_ATTRIBUTE_NAME);
         if (sourceAppId != null && !AiAppId.getAppId().equals(sourceAppId)) {
             source = sourceAppId;
         }
-        if (source == null && attributes.containsKey(SemanticAttributes.MESSAGING_SYSTEM)) {
+        if (source == null && attributes.contains(SemanticAttributes.MESSAGING_SYSTEM)) {
             // TODO should this pass default port for messaging.system?
             source = nullAwareConcat(getTargetFromPeerAttributes(attributes, 0),
-                    removeAttributeString(attributes, SemanticAttributes.MESSAGING_DESTINATION), "/");
+                    attributes.consumeString(SemanticAttributes.MESSAGING_DESTINATION), "/");
             if (source == null) {
-                source = removeAttributeString(attributes, SemanticAttributes.MESSAGING_SYSTEM);
+                source = attributes.consumeString(SemanticAttributes.MESSAGING_SYSTEM);
             }
         }
         telemetry.setSource(source);
 
         addLinks(telemetry.getProperties(), span.getLinks());
 
-        Object httpStatusCode = attributes.remove(SemanticAttributes.HTTP_STATUS_CODE);
-        if (httpStatusCode instanceof Long) {
-            telemetry.setResponseCode(Long.toString((Long) httpStatusCode));
+        Long httpStatusCode = attributes.consumeLong(SemanticAttributes.HTTP_STATUS_CODE);
+        if (httpStatusCode != null) {
+            telemetry.setResponseCode(Long.toString(httpStatusCode));
         }
 
-        String httpUrl = removeAttributeString(attributes, SemanticAttributes.HTTP_URL);
+        String httpUrl = attributes.consumeString(SemanticAttributes.HTTP_URL);
         if (httpUrl != null) {
             telemetry.setUrl(httpUrl);
         }
@@ -209,13 +230,7 @@ public class Exporter implements SpanExporter {
         trackEvents(span, samplingPercentage);
     }
 
-    private Map<AttributeKey<?>, Object> getAttributesCopy(ReadableAttributes attributes) {
-        Map<AttributeKey<?>, Object> copy = new HashMap<>();
-        attributes.forEach(copy::put);
-        return copy;
-    }
-
-    private void exportRemoteDependency(SpanData span, Map<AttributeKey<?>, Object> attributes, boolean inProc) {
+    private void exportRemoteDependency(SpanData span, SpanAttributes attributes, boolean inProc) {
 
         RemoteDependencyTelemetry telemetry = new RemoteDependencyTelemetry();
 
@@ -250,23 +265,23 @@ public class Exporter implements SpanExporter {
         trackEvents(span, samplingPercentage);
     }
 
-    private void applySemanticConventions(Map<AttributeKey<?>, Object> attributes, RemoteDependencyTelemetry telemetry, Span.Kind spanKind) {
-        String httpMethod = removeAttributeString(attributes, SemanticAttributes.HTTP_METHOD);
+    private void applySemanticConventions(SpanAttributes attributes, RemoteDependencyTelemetry telemetry, Span.Kind spanKind) {
+        String httpMethod = attributes.consumeString(SemanticAttributes.HTTP_METHOD);
         if (httpMethod != null) {
             applyHttpClientSpan(attributes, telemetry);
             return;
         }
-        String rpcSystem = removeAttributeString(attributes, SemanticAttributes.RPC_SYSTEM);
+        String rpcSystem = attributes.consumeString(SemanticAttributes.RPC_SYSTEM);
         if (rpcSystem != null) {
             applyRpcClientSpan(attributes, telemetry, rpcSystem);
             return;
         }
-        String dbSystem = removeAttributeString(attributes, SemanticAttributes.DB_SYSTEM);
+        String dbSystem = attributes.consumeString(SemanticAttributes.DB_SYSTEM);
         if (dbSystem != null) {
             applyDatabaseClientSpan(attributes, telemetry, dbSystem);
             return;
         }
-        String messagingSystem = removeAttributeString(attributes, SemanticAttributes.MESSAGING_SYSTEM);
+        String messagingSystem = attributes.consumeString(SemanticAttributes.MESSAGING_SYSTEM);
         if (messagingSystem != null) {
             applyMessagingClientSpan(attributes, telemetry, messagingSystem, spanKind);
             return;
@@ -277,11 +292,11 @@ public class Exporter implements SpanExporter {
     private static final AttributeKey<String> LOGGER_LOGGER_NAME = AttributeKey.stringKey("loggerName");
     private static final AttributeKey<String> LOGGER_ERROR_STACK = AttributeKey.stringKey("error.stack");
 
-    private void exportLogSpan(SpanData span, Map<AttributeKey<?>, Object> attributes) {
+    private void exportLogSpan(SpanData span, SpanAttributes attributes) {
         String message = span.getName();
-        String level = removeAttributeString(attributes, LOGGER_LEVEL);
-        String loggerName = removeAttributeString(attributes, LOGGER_LOGGER_NAME);
-        String errorStack = removeAttributeString(attributes, LOGGER_ERROR_STACK);
+        String level = attributes.consumeString(LOGGER_LEVEL);
+        String loggerName = attributes.consumeString(LOGGER_LOGGER_NAME);
+        String errorStack = attributes.consumeString(LOGGER_ERROR_STACK);
         Double samplingPercentage = removeAiSamplingPercentage(attributes);
         if (errorStack == null) {
             trackTrace(message, span.getStartEpochNanos(), level, loggerName, span.getTraceId(),
@@ -320,7 +335,7 @@ public class Exporter implements SpanExporter {
     }
 
     private void trackTrace(String message, long timeEpochNanos, String level, String loggerName, String traceId,
-                            String parentSpanId, Double samplingPercentage, Map<AttributeKey<?>, Object> attributes) {
+                            String parentSpanId, Double samplingPercentage, SpanAttributes attributes) {
         TraceTelemetry telemetry = new TraceTelemetry(message, toSeverityLevel(level));
 
         if (SpanId.isValid(parentSpanId)) {
@@ -335,7 +350,11 @@ public class Exporter implements SpanExporter {
 
     private void trackTraceAsException(String message, long timeEpochNanos, String level, String loggerName,
                                        String errorStack, String traceId, String parentSpanId,
-                                       Double samplingPercentage, Map<AttributeKey<?>, Object> attributes) {
+                                       Double samplingPercentage, SpanAttributes attributes) {
+        long suppressed = acquireException(errorStack);
+        if (suppressed == -1) {
+            return;
+        }
         ExceptionTelemetry telemetry = new ExceptionTelemetry();
 
         telemetry.setTimestamp(new Date());
@@ -345,24 +364,41 @@ public class Exporter implements SpanExporter {
             telemetry.getContext().getOperation().setParentId(parentSpanId);
         }
 
-        telemetry.getData().setExceptions(Exceptions.minimalParse(errorStack));
+        telemetry.getData().setExceptions(Exceptions.fullParse(errorStack));
         telemetry.setSeverityLevel(toSeverityLevel(level));
         telemetry.getProperties().put("Logger Message", message);
         setProperties(telemetry.getProperties(), level, loggerName, attributes);
+        setSuppressedCount(telemetry, suppressed);
         telemetry.setTimestamp(new Date(NANOSECONDS.toMillis(timeEpochNanos)));
         track(telemetry, samplingPercentage);
     }
 
     private void trackException(String errorStack, SpanData span, Telemetry telemetry,
                                 String id, Double samplingPercentage) {
+        long suppressed = acquireException(errorStack);
+        if (suppressed == -1) {
+            return;
+        }
         ExceptionTelemetry exceptionTelemetry = new ExceptionTelemetry();
-        exceptionTelemetry.getData().setExceptions(Exceptions.minimalParse(errorStack));
+        setSuppressedCount(exceptionTelemetry, suppressed);
+        exceptionTelemetry.getData().setExceptions(Exceptions.fullParse(errorStack));
         exceptionTelemetry.getContext().getOperation().setId(telemetry.getContext().getOperation().getId());
         exceptionTelemetry.getContext().getOperation().setParentId(id);
         exceptionTelemetry.setTimestamp(new Date(NANOSECONDS.toMillis(span.getEndEpochNanos())));
         track(exceptionTelemetry, samplingPercentage);
     }
 
+    // returns -1 when the exception is dropped, otherwise the number of its occurrences dropped before it
+    private long acquireException(String errorStack) {
+        return exceptionSuppressor == null ? 0 : exceptionSuppressor.acquire(errorStack);
+    }
+
+    private static void setSuppressedCount(ExceptionTelemetry telemetry, long suppressed) {
+        if (suppressed > 0) {
+            telemetry.getProperties().put(ExceptionSuppressor.SUPPRESSED_COUNT_PROPERTY, Long.toString(suppressed));
+        }
+    }
+
     private void track(Telemetry telemetry, Double samplingPercentage) {
         if (telemetry instanceof SupportSampling) {
             ((SupportSampling) telemetry).setSamplingPercentage(samplingPercentage);
@@ -380,7 +416,7 @@ public class Exporter implements SpanExporter {
         return CompletableResultCode.ofSuccess();
     }
 
-    private static void setProperties(Map<String, String> properties, String level, String loggerName, Map<AttributeKey<?>, Object> attributes) {
+    private static void setProperties(Map<String, String> properties, String level, String loggerName, SpanAttributes attributes) {
         if (level != null) {
             properties.put("SourceType", "Logger");
             properties.put("LoggingLevel", level);
@@ -389,23 +425,25 @@ public class Exporter implements SpanExporter {
             properties.put("LoggerName", loggerName);
         }
         if (attributes != null) {
-            for (Map.Entry<AttributeKey<?>, Object> entry : attributes.entrySet()) {
-                Object value = entry.getValue();
-                if (value != null) {
-                    properties.put(entry.getKey().getKey(), String.valueOf(value));
+            attributes.forEach(new AttributeConsumer() {
+                @Override
+                public <T> void consume(AttributeKey<T> key, T value) {
+                    if (value != null) {
+                        properties.put(key.getKey(), String.valueOf(value));
+                    }
                 }
-            }
+            });
         }
     }
 
-    private static void applyHttpClientSpan(Map<AttributeKey<?>, Object> attributes, RemoteDependencyTelemetry telemetry) {
+    private static void applyHttpClientSpan(SpanAttributes attributes, RemoteDependencyTelemetry telemetry) {
 
         // from the spec, at least one of the following sets of attributes is required:
         // * http.url
         // * http.scheme, http.host, http.target
         // * http.scheme, net.peer.name, net.peer.port, http.target
         // * http.scheme, net.peer.ip, net.peer.port, http.target
-        String scheme = removeAttributeString(attributes, SemanticAttributes.HTTP_SCHEME);
+        String scheme = attributes.consumeString(SemanticAttributes.HTTP_SCHEME);
         int defaultPort;
         if ("http".equals(scheme)) {
             defaultPort = 80;
@@ -416,9 +454,9 @@ public class Exporter implements SpanExporter {
         }
         String target = getTargetFromPeerAttributes(attributes, defaultPort);
         if (target == null) {
-            target = removeAttributeString(attributes, SemanticAttributes.HTTP_HOST);
+            target = attributes.consumeString(SemanticAttributes.HTTP_HOST);
         }
-        String url = removeAttributeString(attributes, SemanticAttributes.HTTP_URL);
+        String url = attributes.consumeString(SemanticAttributes.HTTP_URL);
         if (target == null && url != null) {
             try {
                 URI uri = new URI(url);
@@ -437,7 +475,7 @@ public class Exporter implements SpanExporter {
             target = "Http";
         }
 
-        String targetAppId = removeAttributeString(attributes, SPAN_TARGET_ATTRIBUTE_NAME);
+        String targetAppId = attributes.consumeString(SPAN_TARGET_ATTRIBUTE_NAME);
         if (targetAppId == null || AiAppId.getAppId().equals(targetAppId)) {
             telemetry.setType("Http");
             telemetry.setTarget(target);
@@ -448,15 +486,15 @@ public class Exporter implements SpanExporter {
             telemetry.setTarget(target + " | " + targetAppId);
         }
 
-        Object httpStatusCode = attributes.remove(SemanticAttributes.HTTP_STATUS_CODE);
-        if (httpStatusCode instanceof Long) {
-            telemetry.setResultCode(Long.toString((Long) httpStatusCode));
+        Long httpStatusCode = attributes.consumeLong(SemanticAttributes.HTTP_STATUS_CODE);
+        if (httpStatusCode != null) {
+            telemetry.setResultCode(Long.toString(httpStatusCode));
         }
 
         telemetry.setCommandName(url);
     }
 
-    private static void applyRpcClientSpan(Map<AttributeKey<?>, Object> attributes, RemoteDependencyTelemetry telemetry, String rpcSystem) {
+    private static void applyRpcClientSpan(SpanAttributes attributes, RemoteDependencyTelemetry telemetry, String rpcSystem) {
         telemetry.setType(rpcSystem);
         String target = getTargetFromPeerAttributes(attributes, 0);
         // not appending /rpc.service for now since that seems too fine-grained
@@ -468,7 +506,7 @@ public class Exporter implements SpanExporter {
 
     private static final Set<String> SQL_DB_SYSTEMS = ImmutableSet.of("db2", "derby", "mariadb", "mssql", "mysql", "oracle", "postgresql", "sqlite", "other_sql", "hsqldb", "h2");
 
-    private static void applyDatabaseClientSpan(Map<AttributeKey<?>, Object> attributes, RemoteDependencyTelemetry telemetry, String dbSystem) {
+    private static void applyDatabaseClientSpan(SpanAttributes attributes, RemoteDependencyTelemetry telemetry, String dbSystem) {
         String type;
         if (SQL_DB_SYSTEMS.contains(dbSystem)) {
             type = "SQL";
@@ -480,23 +518,23 @@ public class Exporter implements SpanExporter {
         // while span name is a much more truncated version of the statement
         // (or at least will be in the future, see
         // https://github.com/open-telemetry/opentelemetry-java-instrumentation/issues/1409)
-        telemetry.setCommandName(removeAttributeString(attributes, SemanticAttributes.DB_STATEMENT));
+        telemetry.setCommandName(attributes.consumeString(SemanticAttributes.DB_STATEMENT));
         String target = nullAwareConcat(getTargetFromPeerAttributes(attributes, getDefaultPortForDbSystem(dbSystem)),
-                removeAttributeString(attributes, SemanticAttributes.DB_NAME), "/");
+                attributes.consumeString(SemanticAttributes.DB_NAME), "/");
         if (target == null) {
             target = dbSystem;
         }
         telemetry.setTarget(target);
     }
 
-    private void applyMessagingClientSpan(Map<AttributeKey<?>, Object> attributes, RemoteDependencyTelemetry telemetry, String messagingSystem, Kind spanKind) {
+    private void applyMessagingClientSpan(SpanAttributes attributes, RemoteDependencyTelemetry telemetry, String messagingSystem, Kind spanKind) {
         if (spanKind == Kind.PRODUCER) {
             telemetry.setType("Queue Message | " + messagingSystem);
         } else {
             // e.g. CONSUMER kind (without remote parent) and CLIENT kind
             telemetry.setType(messagingSystem);
         }
-        String destination = removeAttributeString(attributes, SemanticAttributes.MESSAGING_DESTINATION);
+        String destination = attributes.consumeString(SemanticAttributes.MESSAGING_DESTINATION);
         if (destination != null) {
             telemetry.setTarget(destination);
         } else {
@@ -504,21 +542,21 @@ public class Exporter implements SpanExporter {
         }
     }
 
-    private static String getTargetFromPeerAttributes(Map<AttributeKey<?>, Object> attributes, int defaultPort) {
-        String target = removeAttributeString(attributes, SemanticAttributes.PEER_SERVICE);
+    private static String getTargetFromPeerAttributes(SpanAttributes attributes, int defaultPort) {
+        String target = attributes.consumeString(SemanticAttributes.PEER_SERVICE);
         if (target != null) {
             // do not append port if peer.service is provided
             return target;
         }
-        target = removeAttributeString(attributes, SemanticAttributes.NET_PEER_NAME);
+        target = attributes.consumeString(SemanticAttributes.NET_PEER_NAME);
         if (target == null) {
-            target = removeAttributeString(attributes, SemanticAttributes.NET_PEER_IP);
+            target = attributes.consumeString(SemanticAttributes.NET_PEER_IP);
         }
         if (target == null) {
             return null;
         }
         // append net.peer.port to target
-        Long port = removeAttributeLong(attributes, SemanticAttributes.NET_PEER_PORT);
+        Long port = attributes.consumeLong(SemanticAttributes.NET_PEER_PORT);
         if (port != null && port != defaultPort) {
             return target + ":" + port;
         }
@@ -563,23 +601,19 @@ public class Exporter implements SpanExporter {
         properties.put("_MS.links", sb.toString());
     }
 
-    // TODO revisit this list and behavior of excluding these attributes
-    private static final Set<String> STANDARD_ATTRIBUTE_PREFIXES = ImmutableSet.of("http", "db", "message", "messaging", "rpc", "enduser", "net", "peer", "exception", "thread", "faas");
-
-    private static void addExtraAttributes(Map<String, String> properties, Map<AttributeKey<?>, Object> attributes) {
-        for (Map.Entry<AttributeKey<?>, Object> entry : attributes.entrySet()) {
-            AttributeKey<?> attributeKey = entry.getKey();
-            String stringKey = attributeKey.getKey();
-            int index = stringKey.indexOf(".");
-            String prefix = index == -1 ? stringKey : stringKey.substring(0, index);
-            if (STANDARD_ATTRIBUTE_PREFIXES.contains(prefix)) {
-                continue;
-            }
-            String value = getStringValue(attributeKey, entry.getValue());
-            if (value != null) {
-                properties.put(attributeKey.getKey(), value);
+    private static void addExtraAttributes(Map<String, String> properties, SpanAttributes attributes) {
+        attributes.forEach(new AttributeConsumer() {
+            @Override
+            public <T> void consume(AttributeKey<T> key, T value) {
+                if (SpanAttributes.isStandardAttribute(key)) {
+                    return;
+                }
+                String val = getStringValue(key, value);
+                if (val != null) {
+                    properties.put(key.getKey(), val);
+                }
             }
-        }
+        });
     }
 
     private static void addExtraAttributes(Map<String, String> properties, Attributes attributes) {
@@ -594,44 +628,8 @@ public class Exporter implements SpanExporter {
         });
     }
 
-    private static Double removeAiSamplingPercentage(Map<AttributeKey<?>, Object> attributes) {
-        return removeAttributeDouble(attributes, AI_SAMPLING_PERCENTAGE);
-    }
-
-    private static String removeAttributeString(Map<AttributeKey<?>, Object> attributes, AttributeKey<String> attributeKey) {
-        Object value = attributes.remove(attributeKey);
-        if (value instanceof String) {
-            return (String) value;
-        } else {
-            return null;
-        }
-    }
-
-    private static Long removeAttributeLong(Map<AttributeKey<?>, Object> attributes, AttributeKey<Long> attributeKey) {
-        Object value = attributes.remove(attributeKey);
-        if (value instanceof Long) {
-            return (Long) value;
-        } else {
-            return null;
-        }
-    }
-
-    private static Double removeAttributeDouble(Map<AttributeKey<?>, Object> attributes, AttributeKey<Double> attributeKey) {
-        Object value = attributes.remove(attributeKey);
-        if (value instanceof Double) {
-            return (Double) value;
-        } else {
-            return null;
-        }
-    }
-
-    private static boolean removeAttributeBoolean(Map<AttributeKey<?>, Object> attributes, AttributeKey<Boolean> attributeKey) {
-        Object value = attributes.remove(attributeKey);
-        if (value instanceof Boolean) {
-            return (Boolean) value;
-        } else {
-            return false;
-        }
+    private static Double removeAiSamplingPercentage(SpanAttributes attributes) {
+        return attributes.consumeDouble(AI_SAMPLING_PERCENTAGE);
     }
 
     private static String getStringValue(AttributeKey<?> attributeKey, Object value) {
@@ -0,0 +1,157 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.agent;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.collect.ImmutableSet;
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.ReadableAttributes;
+
+/**
+ * The attributes of a span, read in place while the span is mapped to telemetry.
+ *
+ * Attributes which are mapped to telemetry fields are marked as consumed, so that they are not also added as custom
+ * properties. This replaces copying the attributes into a map and removing the mapped ones from it.
+ */
+final class SpanAttributes {
+
+    // TODO revisit this list and behavior of excluding these attributes
+    private static final Set<String> STANDARD_ATTRIBUTE_PREFIXES = ImmutableSet.of("http", "db", "message", "messaging", "rpc", "enduser", "net", "peer", "exception", "thread", "faas");
+
+    // attribute keys are almost always constants, the bound only protects against keys that are created per span
+    private static final int MAX_CACHED_ATTRIBUTE_KEYS = 1000;
+
+    private static final Map<AttributeKey<?>, Boolean> standardAttributeKeys = new ConcurrentHashMap<>();
+
+    private final ReadableAttributes attributes;
+
+    // only a handful of attributes are mapped per span, so a linear scan beats hashing
+    private String[] consumed = new String[8];
+    private int consumedCount;
+
+    SpanAttributes(ReadableAttributes attributes) {
+        this.attributes = attributes;
+    }
+
+    boolean contains(AttributeKey<String> attributeKey) {
+        return attributes.get(attributeKey) instanceof String && !isConsumed(attributeKey.getKey());
+    }
+
+    String consumeString(AttributeKey<String> attributeKey) {
+        Object value = consume(attributeKey);
+        return value instanceof String ? (String) value : null;
+    }
+
+    Long consumeLong(AttributeKey<Long> attributeKey) {
+        Object value = consume(attributeKey);
+        return value instanceof Long ? (Long) value : null;
+    }
+
+    Double consumeDouble(AttributeKey<Double> attributeKey) {
+        Object value = consume(attributeKey);
+        return value instanceof Double ? (Double) value : null;
+    }
+
+    boolean consumeBoolean(AttributeKey<Boolean> attributeKey) {
+        Object value = consume(attributeKey);
+        return value instanceof Boolean ? (Boolean) value : false;
+    }
+
+    // the attributes which have not been consumed
+    void forEach(final AttributeConsumer consumer) {
+        if (consumedCount == 0) {
+            attributes.forEach(consumer);
+            return;
+        }
+        attributes.forEach(new AttributeConsumer() {
+            @Override
+            public <T> void consume(AttributeKey<T> key, T value) {
+                if (!isConsumed(key.getKey())) {
+                    consumer.consume(key, value);
+                }
+            }
+        });
+    }
+
+    static boolean isStandardAttribute(AttributeKey<?> attributeKey) {
+        Boolean standard = standardAttributeKeys.get(attributeKey);
+        if (standard != null) {
+            return standard;
+        }
+        String stringKey = attributeKey.getKey();
+        int index = stringKey.indexOf(".");
+        String prefix = index == -1 ? stringKey : stringKey.substring(0, index);
+        standard = STANDARD_ATTRIBUTE_PREFIXES.contains(prefix);
+        if (standardAttributeKeys.size() < MAX_CACHED_ATTRIBUTE_KEYS) {
+            standardAttributeKeys.put(attributeKey, standard);
+        }
+        return standard;
+    }
+
+    // same as removing the key from a copy of the attributes: attribute keys are equal by name, so a value of
+    // another type than the key is consumed too, it is just not returned
+    private Object consume(AttributeKey<?> attributeKey) {
+        String key = attributeKey.getKey();
+        if (isConsumed(key)) {
+            return null;
+        }
+        Object value = attributes.get(attributeKey);
+        if (value == null) {
+            return null;
+        }
+        if (consumedCount == consumed.length) {
+            consumed = Arrays.copyOf(consumed, consumedCount * 2);
+        }
+        consumed[consumedCount++] = key;
+        return hasType(value, attributeKey) ? value : null;
+    }
+
+    private boolean isConsumed(String key) {
+        for (int i = 0; i < consumedCount; i++) {
+            if (consumed[i].equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasType(Object value, AttributeKey<?> attributeKey) {
+        switch (attributeKey.getType()) {
+            case STRING:
+                return value instanceof String;
+            case BOOLEAN:
+                return value instanceof Boolean;
+            case LONG:
+                return value instanceof Long;
+            case DOUBLE:
+                return value instanceof Double;
+            default:
+                return true;
+        }
+    }
+}
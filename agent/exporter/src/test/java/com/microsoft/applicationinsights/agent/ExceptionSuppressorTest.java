@@ -0,0 +1,101 @@
+package com.microsoft.applicationinsights.agent;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class ExceptionSuppressorTest {
+
+    private static final String STACK = "java.lang.IllegalStateException: order 1234 not found\n" +
+            "\tat com.example.OrderService.find(OrderService.java:42)\n" +
+            "\tat com.example.OrderController.get(OrderController.java:17)\n" +
+            "\tat javax.servlet.http.HttpServlet.service(HttpServlet.java:750)\n" +
+            "Caused by: java.sql.SQLException: timeout\n" +
+            "\tat com.example.Dao.query(Dao.java:8)\n";
+
+    @Test
+    public void testFingerprintIgnoresMessage() {
+        String otherMessage = STACK.replace("order 1234 not found", "order 5678 not found");
+
+        assertEquals(ExceptionSuppressor.fingerprint(STACK, 10), ExceptionSuppressor.fingerprint(otherMessage, 10));
+    }
+
+    @Test
+    public void testFingerprintIgnoresLineEndingsAndCause() {
+        String windows = STACK.replace("\n", "\r\n");
+        String otherCause = STACK.replace("com.example.Dao.query(Dao.java:8)", "com.example.Dao.update(Dao.java:9)");
+
+        assertEquals(ExceptionSuppressor.fingerprint(STACK, 10), ExceptionSuppressor.fingerprint(windows, 10));
+        assertEquals(ExceptionSuppressor.fingerprint(STACK, 10), ExceptionSuppressor.fingerprint(otherCause, 10));
+    }
+
+    @Test
+    public void testFingerprintDependsOnTypeAndTopFrames() {
+        String otherType = STACK.replace("IllegalStateException", "IllegalArgumentException");
+        String otherTopFrame = STACK.replace("OrderService.java:42", "OrderService.java:43");
+        String otherThirdFrame = STACK.replace("HttpServlet.java:750", "HttpServlet.java:751");
+
+        assertNotEquals(ExceptionSuppressor.fingerprint(STACK, 10), ExceptionSuppressor.fingerprint(otherType, 10));
+        assertNotEquals(ExceptionSuppressor.fingerprint(STACK, 10), ExceptionSuppressor.fingerprint(otherTopFrame, 10));
+        assertNotEquals(ExceptionSuppressor.fingerprint(STACK, 10), ExceptionSuppressor.fingerprint(otherThirdFrame, 10));
+        assertEquals(ExceptionSuppressor.fingerprint(STACK, 2), ExceptionSuppressor.fingerprint(otherThirdFrame, 2));
+    }
+
+    @Test
+    public void testFingerprintWithoutMessageOrFrames() {
+        assertEquals(ExceptionSuppressor.fingerprint("java.lang.IllegalStateException", 10),
+                ExceptionSuppressor.fingerprint("java.lang.IllegalStateException: test", 10));
+    }
+
+    @Test
+    public void testBurstThenSuppress() {
+        // given
+        ExceptionSuppressor suppressor = new ExceptionSuppressor(10, 100, 3, 1);
+
+        // when
+        long[] results = new long[5];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = suppressor.acquire(1, 0);
+        }
+
+        // then
+        assertArrayEquals(new long[] {0, 0, 0, -1, -1}, results);
+        assertEquals(0, suppressor.acquire(2, 0));
+    }
+
+    @Test
+    public void testRefillHandsOverSuppressedCount() {
+        // given
+        ExceptionSuppressor suppressor = new ExceptionSuppressor(10, 100, 1, 6);
+        assertEquals(0, suppressor.acquire(1, 0));
+        assertEquals(-1, suppressor.acquire(1, TimeUnit.SECONDS.toNanos(1)));
+        assertEquals(-1, suppressor.acquire(1, TimeUnit.SECONDS.toNanos(2)));
+
+        // when
+        long afterRefill = suppressor.acquire(1, TimeUnit.SECONDS.toNanos(20));
+
+        // then
+        assertEquals(2, afterRefill);
+        assertEquals(-1, suppressor.acquire(1, TimeUnit.SECONDS.toNanos(21)));
+    }
+
+    @Test
+    public void testTrackedFingerprintsAreBounded() {
+        // given
+        ExceptionSuppressor suppressor = new ExceptionSuppressor(10, 2, 1, 1);
+        suppressor.acquire(1, 0);
+        suppressor.acquire(2, 0);
+        assertEquals(-1, suppressor.acquire(1, 0));
+
+        // when
+        suppressor.acquire(3, 0);
+
+        // then
+        assertEquals(2, suppressor.getTrackedFingerprintCount());
+        // 1 was used more recently than 2, so 2 was evicted and starts over
+        assertEquals(-1, suppressor.acquire(1, 0));
+        assertEquals(0, suppressor.acquire(2, 0));
+    }
+}
@@ -5,6 +5,7 @@ import java.io.StringWriter;
 import java.util.List;
 
 import com.microsoft.applicationinsights.internal.schemav2.ExceptionDetails;
+import com.microsoft.applicationinsights.internal.schemav2.StackFrame;
 import org.junit.*;
 
 import static org.junit.Assert.*;
@@ -84,6 +85,176 @@ public class ExceptionsTest {
         assertEquals("test", details.getMessage());
     }
 
+    @Test
+    public void shouldParseFrames() {
+        // given
+        String str = "java.lang.IllegalStateException: test\n" +
+                "\tat com.example.Foo.bar(Foo.java:12)\n" +
+                "\tat java.base/java.lang.Thread.run(Thread.java:834)\n" +
+                "\tat app//com.example.Baz.qux(Unknown Source)\n" +
+                "\tat sun.reflect.NativeMethodAccessorImpl.invoke0(Native Method)\n" +
+                "\tat com.example.Main.main(Main.java)\n";
+
+        // when
+        List<ExceptionDetails> list = Exceptions.fullParse(str);
+
+        // then
+        assertEquals(1, list.size());
+
+        ExceptionDetails details = list.get(0);
+        assertTrue(details.getHasFullStack());
+        assertNull(details.getStack());
+
+        List<StackFrame> frames = details.getParsedStack();
+        assertEquals(4, frames.size());
+        assertFrame(frames.get(0), 0, "com.example.Foo.bar", "Foo.java", 12);
+        assertFrame(frames.get(1), 1, "java.lang.Thread.run", "Thread.java", 834);
+        assertFrame(frames.get(2), 2, "com.example.Baz.qux", null, 0);
+        assertFrame(frames.get(3), 4, "com.example.Main.main", "Main.java", 0);
+    }
+
+    @Test
+    public void shouldLinkCausedBy() {
+        // given
+        RuntimeException causedBy = new RuntimeException("the cause");
+        String str = toString(new IllegalStateException("test", causedBy));
+
+        // when
+        List<ExceptionDetails> list = Exceptions.fullParse(str.replace("\n", "\r\n"));
+
+        // then
+        assertEquals(2, list.size());
+        assertEquals(0, list.get(0).getOuterId());
+        assertEquals(list.get(0).getId(), list.get(1).getOuterId());
+        assertFalse(list.get(0).getParsedStack().isEmpty());
+        assertEquals("shouldLinkCausedBy", methodName(list.get(1).getParsedStack().get(0)));
+    }
+
+    @Test
+    public void shouldParseMultiLineMessage() {
+        // given
+        String str = toString(new IllegalStateException("first line\nsecond line"));
+
+        // when
+        List<ExceptionDetails> list = Exceptions.fullParse(str);
+
+        // then
+        assertEquals(1, list.size());
+        assertEquals("first line\nsecond line", list.get(0).getMessage());
+        assertEquals("shouldParseMultiLineMessage", methodName(list.get(0).getParsedStack().get(0)));
+    }
+
+    @Test
+    public void shouldSkipThreadPrefix() {
+        // when
+        List<ExceptionDetails> list = Exceptions.fullParse("Exception in thread \"main\" java.lang.Error: test\n" +
+                "\tat com.example.Main.main(Main.java:3)\n");
+
+        // then
+        assertEquals("java.lang.Error", list.get(0).getTypeName());
+        assertEquals("test", list.get(0).getMessage());
+    }
+
+    @Test
+    public void shouldCapFramesPerException() {
+        // given
+        String str = "java.lang.IllegalStateException: test\n" +
+                "\tat com.example.Foo.bar(Foo.java:12)\n" +
+                "\tat com.example.Foo.baz(Foo.java:13)\n" +
+                "Caused by: java.lang.RuntimeException\n" +
+                "\tat com.example.Foo.qux(Foo.java:14)\n" +
+                "\t... 2 more\n";
+
+        // when
+        List<ExceptionDetails> list = Exceptions.fullParse(str, 1, Exceptions.MAX_PARSED_CHARS);
+
+        // then
+        assertEquals(2, list.size());
+        assertEquals(1, list.get(0).getParsedStack().size());
+        assertFalse(list.get(0).getHasFullStack());
+        assertEquals(1, list.get(1).getParsedStack().size());
+        assertTrue(list.get(1).getHasFullStack());
+    }
+
+    @Test
+    public void shouldCapParsedChars() {
+        // given
+        String str = "java.lang.IllegalStateException: test\n" +
+                "\tat com.example.Foo.bar(Foo.java:12)\n" +
+                "\tat com.example.Foo.baz(Foo.java:13)\n" +
+                "Caused by: java.lang.RuntimeException\n" +
+                "\tat com.example.Foo.qux(Foo.java:14)\n";
+
+        // when
+        List<ExceptionDetails> list = Exceptions.fullParse(str, Exceptions.MAX_FRAMES_PER_EXCEPTION, 70);
+
+        // then
+        assertEquals(1, list.size());
+        assertEquals(1, list.get(0).getParsedStack().size());
+        assertFalse(list.get(0).getHasFullStack());
+    }
+
+    @Test
+    public void shouldNotChargeMessageAgainstParsedChars() {
+        // given
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            message.append('x');
+        }
+        String str = "java.lang.IllegalStateException: " + message + "\n" +
+                "\tat com.example.Foo.bar(Foo.java:12)\n" +
+                "\tat com.example.Foo.baz(Foo.java:13)\n";
+
+        // when
+        List<ExceptionDetails> list = Exceptions.fullParse(str);
+
+        // then
+        assertEquals(1, list.size());
+        assertEquals(message.toString(), list.get(0).getMessage());
+        assertEquals(2, list.get(0).getParsedStack().size());
+        assertTrue(list.get(0).getHasFullStack());
+    }
+
+    @Test
+    public void shouldFallBackToMinimalParse() {
+        // given
+        String str = "Traceback (most recent call last):\n  File \"main.py\", line 1, in <module>\n";
+
+        // when
+        List<ExceptionDetails> list = Exceptions.fullParse(str);
+
+        // then
+        assertEquals(1, list.size());
+        assertEquals("Traceback (most recent call last):", list.get(0).getTypeName());
+        assertEquals(str, list.get(0).getStack());
+    }
+
+    @Test
+    public void minimalParseShouldKeepStack() {
+        // given
+        String str = "\njava.lang.IllegalStateException: test\n\tat com.example.Foo.bar(Foo.java:12)\n";
+
+        // when
+        List<ExceptionDetails> list = Exceptions.minimalParse(str);
+
+        // then
+        assertEquals(1, list.size());
+        assertEquals(IllegalStateException.class.getName(), list.get(0).getTypeName());
+        assertEquals("test", list.get(0).getMessage());
+        assertEquals(str, list.get(0).getStack());
+    }
+
+    private static void assertFrame(StackFrame frame, int level, String method, String fileName, int line) {
+        assertEquals(level, frame.getLevel());
+        assertEquals(method, frame.getMethod());
+        assertEquals(fileName, frame.getFileName());
+        assertEquals(line, frame.getLine());
+    }
+
+    private static String methodName(StackFrame frame) {
+        return frame.getMethod().substring(frame.getMethod().lastIndexOf('.') + 1);
+    }
+
     private static String toString(final Throwable t) {
         final StringWriter out = new StringWriter();
         t.printStackTrace(new PrintWriter(out));
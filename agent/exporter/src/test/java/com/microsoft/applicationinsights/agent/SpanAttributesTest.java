@@ -0,0 +1,117 @@
+package com.microsoft.applicationinsights.agent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.opentelemetry.common.AttributeConsumer;
+import io.opentelemetry.common.AttributeKey;
+import io.opentelemetry.common.Attributes;
+import io.opentelemetry.sdk.common.InstrumentationLibraryInfo;
+import org.junit.*;
+
+import static org.junit.Assert.*;
+
+public class SpanAttributesTest {
+
+    @Test
+    public void consumedAttributesAreSkipped() {
+        // given
+        SpanAttributes attributes = new SpanAttributes(Attributes.newBuilder()
+                .setAttribute("http.url", "http://example.com")
+                .setAttribute("http.status_code", 200L)
+                .setAttribute("one", "1")
+                .setAttribute("ai.internal.sampling.percentage", 50.0)
+                .build());
+
+        // when
+        String url = attributes.consumeString(AttributeKey.stringKey("http.url"));
+        Long statusCode = attributes.consumeLong(AttributeKey.longKey("http.status_code"));
+        Double samplingPercentage = attributes.consumeDouble(AttributeKey.doubleKey("ai.internal.sampling.percentage"));
+
+        // then
+        assertEquals("http://example.com", url);
+        assertEquals(200L, (long) statusCode);
+        assertEquals(50.0, samplingPercentage, 0);
+        assertEquals(1, remaining(attributes).size());
+        assertEquals("1", remaining(attributes).get("one"));
+
+        // consuming twice is the same as removing twice
+        assertNull(attributes.consumeString(AttributeKey.stringKey("http.url")));
+        assertFalse(attributes.contains(AttributeKey.stringKey("http.url")));
+        assertTrue(attributes.contains(AttributeKey.stringKey("one")));
+    }
+
+    @Test
+    public void valueOfAnotherTypeIsConsumedButNotReturned() {
+        // given
+        SpanAttributes attributes = new SpanAttributes(Attributes.newBuilder()
+                .setAttribute("http.status_code", "200")
+                .setAttribute("ai.internal.log", "true")
+                .setAttribute("one", "1")
+                .build());
+
+        // when
+        Long statusCode = attributes.consumeLong(AttributeKey.longKey("http.status_code"));
+        boolean isLog = attributes.consumeBoolean(AttributeKey.booleanKey("ai.internal.log"));
+
+        // then
+        assertNull(statusCode);
+        assertFalse(isLog);
+        // same as removing the keys, the mistyped values are not forwarded as custom properties
+        assertEquals(1, remaining(attributes).size());
+        assertEquals("1", remaining(attributes).get("one"));
+        assertFalse(attributes.contains(AttributeKey.stringKey("http.status_code")));
+    }
+
+    @Test
+    public void manyConsumedAttributes() {
+        // given
+        Attributes.Builder builder = Attributes.newBuilder();
+        for (int i = 0; i < 20; i++) {
+            builder.setAttribute("key" + i, "value" + i);
+        }
+        SpanAttributes attributes = new SpanAttributes(builder.build());
+
+        // when
+        for (int i = 0; i < 19; i++) {
+            assertEquals("value" + i, attributes.consumeString(AttributeKey.stringKey("key" + i)));
+        }
+
+        // then
+        assertEquals(1, remaining(attributes).size());
+        assertEquals("value19", remaining(attributes).get("key19"));
+    }
+
+    @Test
+    public void standardAttributes() {
+        assertTrue(SpanAttributes.isStandardAttribute(AttributeKey.stringKey("http.method")));
+        assertTrue(SpanAttributes.isStandardAttribute(AttributeKey.stringKey("thread")));
+        assertTrue(SpanAttributes.isStandardAttribute(AttributeKey.longKey("net.peer.port")));
+        assertFalse(SpanAttributes.isStandardAttribute(AttributeKey.stringKey("httpx.method")));
+        assertFalse(SpanAttributes.isStandardAttribute(AttributeKey.stringKey("custom")));
+        // cached the second time around
+        assertTrue(SpanAttributes.isStandardAttribute(AttributeKey.stringKey("http.method")));
+        assertFalse(SpanAttributes.isStandardAttribute(AttributeKey.stringKey("custom")));
+    }
+
+    @Test
+    public void stdComponent() {
+        assertEquals("jms", Exporter.getStdComponent(InstrumentationLibraryInfo.create("io.opentelemetry.auto.jms-1.1", null)));
+        assertEquals("spring-scheduling", Exporter.getStdComponent(InstrumentationLibraryInfo.create("io.opentelemetry.auto.spring-scheduling-3.1", "0.9.0")));
+        assertNull(Exporter.getStdComponent(InstrumentationLibraryInfo.create("test", null)));
+        // cached the second time around
+        assertEquals("jms", Exporter.getStdComponent(InstrumentationLibraryInfo.create("io.opentelemetry.auto.jms-1.1", null)));
+        assertNull(Exporter.getStdComponent(InstrumentationLibraryInfo.create("test", null)));
+    }
+
+    private static Map<String, Object> remaining(SpanAttributes attributes) {
+        final Map<String, Object> remaining = new HashMap<>();
+        attributes.forEach(new AttributeConsumer() {
+            @Override
+            public <T> void consume(AttributeKey<T> key, T value) {
+                remaining.put(key.getKey(), value);
+            }
+        });
+        return remaining;
+    }
+}
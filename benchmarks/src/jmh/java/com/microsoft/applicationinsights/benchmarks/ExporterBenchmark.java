@@ -0,0 +1,125 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.TelemetryConfiguration;
+import com.microsoft.applicationinsights.agent.Exporter;
+import io.grpc.Context;
+import io.opentelemetry.OpenTelemetry;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.trace.DefaultSpan;
+import io.opentelemetry.trace.Span;
+import io.opentelemetry.trace.Span.Kind;
+import io.opentelemetry.trace.SpanContext;
+import io.opentelemetry.trace.TraceFlags;
+import io.opentelemetry.trace.TraceState;
+import io.opentelemetry.trace.Tracer;
+import io.opentelemetry.trace.TracingContextUtils;
+import io.opentelemetry.trace.attributes.SemanticAttributes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link Exporter#export} of a single span per span kind, which maps the span to telemetry and tracks it.
+ * The channel is a stub, so this measures the mapping and {@link TelemetryClient#track}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExporterBenchmark {
+
+    @Param({"SERVER", "CLIENT", "PRODUCER", "CONSUMER", "INTERNAL"})
+    public Kind kind;
+
+    private final StubTelemetryChannel channel = new StubTelemetryChannel();
+
+    private Exporter exporter;
+
+    private List<SpanData> spans;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        TelemetryConfiguration configuration = TelemetryConfiguration.getActiveWithoutInitializingConfig();
+        configuration.setInstrumentationKey(Telemetries.INSTRUMENTATION_KEY);
+        configuration.setChannel(channel);
+        channel.setBlackhole(blackhole);
+        exporter = new Exporter(new TelemetryClient(configuration));
+        spans = Collections.singletonList(createSpan(kind));
+    }
+
+    @Benchmark
+    public CompletableResultCode export() {
+        return exporter.export(spans);
+    }
+
+    private static SpanData createSpan(Kind kind) {
+        Tracer tracer = OpenTelemetry.getTracer("io.opentelemetry.auto.benchmark");
+        Span.Builder builder = tracer.spanBuilder("GET /api/orders").setSpanKind(kind);
+        switch (kind) {
+            case SERVER:
+                builder.setAttribute(SemanticAttributes.HTTP_METHOD, "GET")
+                        .setAttribute(SemanticAttributes.HTTP_URL, "http://localhost:8080/api/orders?id=42")
+                        .setAttribute(SemanticAttributes.HTTP_STATUS_CODE, 200L);
+                break;
+            case CLIENT:
+                builder.setAttribute(SemanticAttributes.DB_SYSTEM, "postgresql")
+                        .setAttribute(SemanticAttributes.DB_NAME, "orders")
+                        .setAttribute(SemanticAttributes.DB_STATEMENT, "SELECT * FROM orders WHERE id = ?")
+                        .setAttribute(SemanticAttributes.NET_PEER_NAME, "orders-db")
+                        .setAttribute(SemanticAttributes.NET_PEER_PORT, 5432L);
+                break;
+            case PRODUCER:
+                builder.setAttribute(SemanticAttributes.MESSAGING_SYSTEM, "kafka")
+                        .setAttribute(SemanticAttributes.MESSAGING_DESTINATION, "orders");
+                break;
+            case CONSUMER:
+                // with a remote parent, so it is mapped to a request
+                SpanContext remoteParent = SpanContext.createFromRemoteParent("4bf92f3577b34da6a3ce929d0e0e4736",
+                        "00f067aa0ba902b7", TraceFlags.getSampled(), TraceState.getDefault());
+                builder.setParent(TracingContextUtils.withSpan(DefaultSpan.create(remoteParent), Context.ROOT))
+                        .setAttribute(SemanticAttributes.MESSAGING_SYSTEM, "kafka")
+                        .setAttribute(SemanticAttributes.MESSAGING_DESTINATION, "orders");
+                break;
+            default:
+                builder.setAttribute("order.id", "42");
+                break;
+        }
+        Span span = builder.startSpan();
+        span.end();
+        return ((ReadableSpan) span).toSpanData();
+    }
+}
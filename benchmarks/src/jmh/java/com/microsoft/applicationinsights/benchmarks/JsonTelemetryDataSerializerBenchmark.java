@@ -0,0 +1,86 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.telemetry.JsonTelemetryDataSerializer;
+import com.microsoft.applicationinsights.telemetry.JsonTelemetryEnvelopeWriter;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.squareup.moshi.JsonWriter;
+import okio.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * JSON serialization of a single item per telemetry type, without compression.
+ * {@code dataSerializer} is {@link Telemetry#serialize} with a new serializer per item,
+ * {@code envelopeWriter} is the path the channel uses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonTelemetryDataSerializerBenchmark {
+
+    @Param({"request", "dependency", "event", "trace", "exception", "metric", "pageView"})
+    public String type;
+
+    private final Buffer buffer = new Buffer();
+
+    private Telemetry telemetry;
+
+    private JsonTelemetryEnvelopeWriter envelopeWriter;
+
+    @Setup
+    public void setup() {
+        telemetry = Telemetries.create(type);
+        envelopeWriter = new JsonTelemetryEnvelopeWriter(buffer);
+    }
+
+    @Benchmark
+    public long dataSerializer() throws IOException {
+        JsonTelemetryDataSerializer serializer = new JsonTelemetryDataSerializer(JsonWriter.of(buffer));
+        telemetry.serialize(serializer);
+        serializer.close();
+        return drain();
+    }
+
+    @Benchmark
+    public long envelopeWriter() throws IOException {
+        envelopeWriter.write(telemetry);
+        return drain();
+    }
+
+    private long drain() {
+        long size = buffer.size();
+        buffer.clear();
+        return size;
+    }
+}
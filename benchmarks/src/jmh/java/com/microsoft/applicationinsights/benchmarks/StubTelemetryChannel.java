@@ -19,42 +19,48 @@
  * DEALINGS IN THE SOFTWARE.
  */
 
-package com.microsoft.applicationinsights.internal.perfcounter;
 
-import org.junit.Test;
+package com.microsoft.applicationinsights.benchmarks;
 
-import static org.junit.Assert.*;
+import java.util.concurrent.TimeUnit;
 
-public final class UnixProcessIOtParserTest {
-    @Test
-    public void testProcess() {
-        UnixProcessIOtParser parser = new UnixProcessIOtParser();
+import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import org.openjdk.jmh.infra.Blackhole;
 
-        parser.process("rchar: 1661777");
-        assertFalse(parser.done());
+/**
+ * Hands the telemetry to a {@link Blackhole} instead of sending it, so only the client side of the pipeline is measured.
+ */
+final class StubTelemetryChannel implements TelemetryChannel {
 
-        parser.process("wchar: 7431");
-        assertFalse(parser.done());
+    private volatile Blackhole blackhole;
 
-        parser.process("syscr: 1240");
-        assertFalse(parser.done());
+    void setBlackhole(Blackhole blackhole) {
+        this.blackhole = blackhole;
+    }
 
-        parser.process("syscw: 123");
-        assertFalse(parser.done());
+    @Override
+    public boolean isDeveloperMode() {
+        return false;
+    }
 
-        parser.process("read_bytes: 7335936");
-        assertFalse(parser.done());
+    @Override
+    public void setDeveloperMode(boolean value) {
+    }
 
-        parser.process("write_bytes: 12288");
-        assertTrue(parser.done());
-        assertEquals(7335936 + 12288, parser.getValue(), 0.0);
+    @Override
+    public void send(Telemetry item) {
+        Blackhole blackhole = this.blackhole;
+        if (blackhole != null) {
+            blackhole.consume(item);
+        }
+    }
 
-        parser.process("cancelled_write_bytes: 0");
-        assertTrue(parser.done());
-        assertEquals(7335936 + 12288, parser.getValue(), 0.0);
+    @Override
+    public void shutdown(long timeout, TimeUnit timeUnit) {
+    }
 
-        parser.process("write_bytes: 12288");
-        assertTrue(parser.done());
-        assertEquals(7335936 + 12288, parser.getValue(), 0.0);
+    @Override
+    public void flush() {
     }
 }
@@ -0,0 +1,100 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.telemetry.EventTelemetry;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import com.microsoft.applicationinsights.telemetry.PageViewTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.SeverityLevel;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.microsoft.applicationinsights.telemetry.TraceTelemetry;
+
+/**
+ * Creates telemetry items that look like the ones the agent produces.
+ */
+final class Telemetries {
+
+    static final String INSTRUMENTATION_KEY = "00000000-0000-0000-0000-000000000000";
+
+    private Telemetries() {
+    }
+
+    static Telemetry create(String type) {
+        Telemetry telemetry;
+        if ("request".equals(type)) {
+            RequestTelemetry request = new RequestTelemetry("GET /api/orders", new Date(), 42, "200", true);
+            request.setUrl("http://localhost:8080/api/orders?id=42");
+            request.setId("7e2a4f0c9a6b1d3e");
+            telemetry = request;
+        } else if ("dependency".equals(type)) {
+            RemoteDependencyTelemetry dependency = new RemoteDependencyTelemetry("SELECT orders", "SELECT * FROM orders WHERE id = ?", new Duration(3), true);
+            dependency.setType("SQL");
+            dependency.setTarget("orders-db");
+            dependency.setId("0c9a6b1d3e7e2a4f");
+            telemetry = dependency;
+        } else if ("event".equals(type)) {
+            EventTelemetry event = new EventTelemetry("order placed");
+            event.getMetrics().put("amount", 12.5);
+            telemetry = event;
+        } else if ("trace".equals(type)) {
+            telemetry = new TraceTelemetry("order 42 placed by customer 7", SeverityLevel.Information);
+        } else if ("exception".equals(type)) {
+            telemetry = new ExceptionTelemetry(new IllegalStateException("order 42 could not be placed"));
+        } else if ("metric".equals(type)) {
+            telemetry = new MetricTelemetry("orders", 17);
+        } else if ("pageView".equals(type)) {
+            telemetry = new PageViewTelemetry("orders");
+        } else {
+            throw new IllegalArgumentException(type);
+        }
+
+        telemetry.setTimestamp(new Date());
+        telemetry.getContext().setInstrumentationKey(INSTRUMENTATION_KEY);
+        telemetry.getContext().getCloud().setRole("orders-service");
+        telemetry.getContext().getCloud().setRoleInstance("orders-service-1");
+        telemetry.getContext().getOperation().setId("4bf92f3577b34da6a3ce929d0e0e4736");
+        telemetry.getContext().getOperation().setParentId("00f067aa0ba902b7");
+        telemetry.getProperties().put("tenant", "contoso");
+        return telemetry;
+    }
+
+    /**
+     * A mix of the different types, mostly requests, dependencies and traces.
+     */
+    static List<Telemetry> createBatch(int size) {
+        String[] types = {"request", "dependency", "dependency", "trace", "trace", "event", "metric", "exception"};
+        List<Telemetry> telemetries = new ArrayList<Telemetry>(size);
+        for (int i = 0; i < size; i++) {
+            telemetries.add(create(types[i % types.length]));
+        }
+        return telemetries;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
+import com.microsoft.applicationinsights.internal.channel.common.StripedTelemetryBuffer;
+import com.microsoft.applicationinsights.internal.channel.common.TelemetryBuffer;
+import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * {@link TelemetryBuffer#add} from 1, 8 and 32 application threads, for the default and the striped buffer.
+ * Full batches are handed to a transmitter that drops them, the timer based send is never triggered.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TelemetryBufferBenchmark {
+
+    @Param({"default", "striped"})
+    public String buffer;
+
+    private final Telemetry telemetry = Telemetries.create("trace");
+
+    private TelemetryBuffer<Telemetry> telemetryBuffer;
+
+    @Setup
+    public void setup() {
+        LimitsEnforcer maxTelemetriesInBatch = LimitsEnforcer.createWithClosestLimitOnError("MaxTelemetryBufferCapacity", 1, 1000, 500, 500);
+        LimitsEnforcer transmitBufferTimeoutInSeconds = LimitsEnforcer.createWithClosestLimitOnError("FlushIntervalInSeconds", 1, 300, 5, 5);
+        DroppingTransmitter transmitter = new DroppingTransmitter();
+        if ("striped".equals(buffer)) {
+            telemetryBuffer = new StripedTelemetryBuffer<Telemetry>(transmitter, maxTelemetriesInBatch, transmitBufferTimeoutInSeconds);
+        } else {
+            telemetryBuffer = new TelemetryBuffer<Telemetry>(transmitter, maxTelemetriesInBatch, transmitBufferTimeoutInSeconds);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void add1Thread() {
+        telemetryBuffer.add(telemetry);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void add8Threads() {
+        telemetryBuffer.add(telemetry);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public void add32Threads() {
+        telemetryBuffer.add(telemetry);
+    }
+
+    private static class DroppingTransmitter implements TelemetriesTransmitter<Telemetry> {
+
+        @Override
+        public boolean scheduleSend(TelemetriesFetcher<Telemetry> telemetriesFetcher, long value, TimeUnit timeUnit) {
+            return true;
+        }
+
+        @Override
+        public boolean sendNow(Collection<Telemetry> telemetries) {
+            return true;
+        }
+
+        @Override
+        public void shutdown(long timeout, TimeUnit timeUnit) {
+        }
+    }
+}
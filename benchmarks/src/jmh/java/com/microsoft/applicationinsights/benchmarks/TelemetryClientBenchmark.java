@@ -0,0 +1,78 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.TelemetryConfiguration;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.Duration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * {@link TelemetryClient#track} up to the channel, the channel itself is a stub.
+ * The telemetry is created in the benchmark, like the agent does for every span.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TelemetryClientBenchmark {
+
+    private final StubTelemetryChannel channel = new StubTelemetryChannel();
+
+    private TelemetryClient telemetryClient;
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        TelemetryConfiguration configuration = new TelemetryConfiguration();
+        configuration.setInstrumentationKey(Telemetries.INSTRUMENTATION_KEY);
+        configuration.setChannel(channel);
+        channel.setBlackhole(blackhole);
+        telemetryClient = new TelemetryClient(configuration);
+        telemetryClient.getContext().getCloud().setRole("orders-service");
+    }
+
+    @Benchmark
+    public void trackRequest() {
+        RequestTelemetry telemetry = new RequestTelemetry("GET /api/orders", new Date(), 42, "200", true);
+        telemetry.getContext().getOperation().setId("4bf92f3577b34da6a3ce929d0e0e4736");
+        telemetryClient.track(telemetry);
+    }
+
+    @Benchmark
+    public void trackDependency() {
+        RemoteDependencyTelemetry telemetry = new RemoteDependencyTelemetry("SELECT orders", "SELECT * FROM orders WHERE id = ?", new Duration(3), true);
+        telemetry.getContext().getOperation().setId("4bf92f3577b34da6a3ce929d0e0e4736");
+        telemetryClient.track(telemetry);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights;
+
+import java.util.List;
+
+import com.microsoft.applicationinsights.internal.metrics.MetricAggregator;
+
+/**
+ * A handle to a locally aggregated metric, obtained through {@link TelemetryClient#getMetric(String, String...)}.
+ *
+ * Values are not sent one by one. They are aggregated per combination of dimension values into count, sum,
+ * min, max and standard deviation, and a single {@link com.microsoft.applicationinsights.telemetry.MetricTelemetry}
+ * per series is tracked at the end of every aggregation period. Handles are cheap and thread-safe, keep one
+ * around rather than calling {@code getMetric} for every value.
+ */
+public final class Metric {
+
+    private final MetricAggregator aggregator;
+
+    Metric(MetricAggregator aggregator) {
+        this.aggregator = aggregator;
+    }
+
+    public String getName() {
+        return aggregator.getName();
+    }
+
+    public List<String> getDimensionNames() {
+        return aggregator.getDimensionNames();
+    }
+
+    /**
+     * Adds a value to the series of a metric that has no dimensions.
+     * @param value The value to aggregate.
+     */
+    public void trackValue(double value) {
+        aggregator.trackValue(value);
+    }
+
+    /**
+     * Adds a value to the series identified by the given dimension values.
+     * @param value The value to aggregate.
+     * @param dimensionValues One value per dimension name, in the order the names were given to {@code getMetric}.
+     * @throws IllegalArgumentException if the number of values does not match the number of dimensions.
+     */
+    public void trackValue(double value, String... dimensionValues) {
+        aggregator.trackValue(value, dimensionValues);
+    }
+}
@@ -30,8 +30,12 @@ import com.google.common.base.Strings;
 import com.microsoft.applicationinsights.channel.TelemetryChannel;
 import com.microsoft.applicationinsights.common.CommonUtils;
 import com.microsoft.applicationinsights.extensibility.ContextInitializer;
+import com.microsoft.applicationinsights.extensibility.TelemetryModule;
 import com.microsoft.applicationinsights.extensibility.context.InternalContext;
+import com.microsoft.applicationinsights.internal.metrics.MetricAggregationManager;
+import com.microsoft.applicationinsights.internal.metrics.StandardMetricsCollector;
 import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseDataCollector;
+import com.microsoft.applicationinsights.internal.shutdown.Stoppable;
 import com.microsoft.applicationinsights.internal.util.MapUtil;
 import com.microsoft.applicationinsights.telemetry.Duration;
 import com.microsoft.applicationinsights.telemetry.EventTelemetry;
@@ -269,6 +273,18 @@ public class TelemetryClient {
         track(telemetry);
     }
 
+    /**
+     * Gets a handle to a metric whose values are aggregated locally and sent once per aggregation period,
+     * instead of one {@link MetricTelemetry} per value. Use it for values recorded at a high rate.
+     * @param name The name of the metric. Max length 150.
+     * @param dimensionNames The names of the dimensions the values are split by, may be empty.
+     * @return The metric handle, backed by the same aggregates for every call with this name on this client.
+     * @throws IllegalArgumentException if name is null or empty, or if the metric already exists with other dimensions.
+     */
+    public Metric getMetric(String name, String... dimensionNames) {
+        return new Metric(MetricAggregationManager.INSTANCE.getAggregator(this, configuration, name, dimensionNames));
+    }
+
     /**
      * Sends an exception record to Application Insights. Appears in "exceptions" in Analytics and Search.
      * @param exception The exception to log information about.
@@ -435,6 +451,13 @@ public class TelemetryClient {
         } catch (Throwable t) {
         }
 
+        try {
+            StandardMetricsCollector.INSTANCE.add(telemetry);
+        } catch (ThreadDeath td) {
+            throw td;
+        } catch (Throwable t) {
+        }
+
         try {
             getChannel().send(telemetry);
         } catch (ThreadDeath td) {
@@ -451,12 +474,35 @@ public class TelemetryClient {
 
     /**
      * Flushes possible pending Telemetries in the channel. Not required for a continuously-running server application.
+     * The values of the metrics from {@link #getMetric(String, String...)} are aggregated and tracked first.
      */
     public void flush() {
+        MetricAggregationManager.INSTANCE.flush(configuration);
         getChannel().flush();
     }
 
     public void shutdown(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        // modules can track their last telemetry when stopped, it is flushed with the rest before the channel stops
+        for (TelemetryModule module : configuration.getTelemetryModules()) {
+            if (module instanceof Stoppable) {
+                try {
+                    ((Stoppable) module).stop(timeout, timeUnit);
+                } catch (ThreadDeath td) {
+                    throw td;
+                } catch (Throwable t) {
+                    try {
+                        logger.error("Error while stopping telemetry module {}", module.getClass().getName(), t);
+                    } catch (ThreadDeath td) {
+                        throw td;
+                    } catch (Throwable t2) {
+                        // chomp
+                    }
+                }
+            }
+        }
+        // tracks the last metric aggregates and releases them with this configuration
+        MetricAggregationManager.INSTANCE.stop(configuration, timeout, timeUnit);
+        getChannel().flush();
         getChannel().shutdown(timeout, timeUnit);
     }
 
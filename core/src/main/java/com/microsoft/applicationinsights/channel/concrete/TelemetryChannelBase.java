@@ -29,6 +29,7 @@ import com.microsoft.applicationinsights.channel.TelemetryChannel;
 import com.microsoft.applicationinsights.internal.channel.ConfiguredTransmitterFactory;
 import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
 import com.microsoft.applicationinsights.internal.channel.TransmitterFactory;
+import com.microsoft.applicationinsights.internal.channel.common.StripedTelemetryBuffer;
 import com.microsoft.applicationinsights.internal.channel.common.TelemetryBuffer;
 import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
 import com.microsoft.applicationinsights.internal.util.Sanitizer;
@@ -57,6 +58,10 @@ public abstract class TelemetryChannelBase<T> implements TelemetryChannel {
     public static final int MIN_FLUSH_BUFFER_TIMEOUT_IN_SECONDS = 1;
     public static final int MAX_FLUSH_BUFFER_TIMEOUT_IN_SECONDS = 300;
     public static final String DEVELOPER_MODE_SYSTEM_PROPRETY_NAME = "APPLICATION_INSIGHTS_DEVELOPER_MODE";
+    public static final String STRIPED_TELEMETRY_BUFFER_SYSTEM_PROPERTY_NAME = "APPLICATION_INSIGHTS_STRIPED_TELEMETRY_BUFFER";
+    public static final String SEGMENTED_TRANSMISSION_SPOOL_SYSTEM_PROPERTY_NAME = "APPLICATION_INSIGHTS_SEGMENTED_TRANSMISSION_SPOOL";
+    public static final String ADAPTIVE_BACKLOG_DRAIN_SYSTEM_PROPERTY_NAME = "APPLICATION_INSIGHTS_ADAPTIVE_BACKLOG_DRAIN";
+    public static final String ASYNC_HTTP_TRANSPORT_SYSTEM_PROPERTY_NAME = "APPLICATION_INSIGHTS_ASYNC_HTTP_TRANSPORT";
 
     public static final String MAX_TELEMETRY_BUFFER_CAPACITY_NAME = "MaxTelemetryBufferCapacity";
     public static final String INSTANT_RETRY_NAME = "MaxInstantRetry";
@@ -66,6 +71,11 @@ public abstract class TelemetryChannelBase<T> implements TelemetryChannel {
     public static final String MAX_TRANSMISSION_STORAGE_CAPACITY_NAME = "MaxTransmissionStorageFilesCapacityInMB";
     public static final int LOG_TELEMETRY_ITEMS_MODULUS = 10000;
     public static final String THROTTLING_ENABLED_NAME = "Throttling";
+    public static final String STRIPED_TELEMETRY_BUFFER_NAME = "StripedTelemetryBuffer";
+    public static final String SEGMENTED_TRANSMISSION_SPOOL_NAME = "SegmentedTransmissionSpool";
+    public static final String ADAPTIVE_BACKLOG_DRAIN_NAME = "AdaptiveBacklogDrain";
+    public static final String ASYNC_HTTP_TRANSPORT_NAME = "AsyncHttpTransport";
+    public static final String MAX_IN_FLIGHT_REQUESTS_NAME = "MaxInFlightRequests";
 
     private TransmitterFactory transmitterFactory;
     private AtomicLong itemsSent = new AtomicLong(0);
@@ -77,6 +87,19 @@ public abstract class TelemetryChannelBase<T> implements TelemetryChannel {
 
     private boolean developerMode = false;
 
+    // see StripedTelemetryBuffer, this must be set before initialize() is called
+    private boolean stripedTelemetryBuffer = Boolean.getBoolean(STRIPED_TELEMETRY_BUFFER_SYSTEM_PROPERTY_NAME);
+
+    // see TransmissionSpool, this must be set before initialize() is called
+    private boolean segmentedTransmissionSpool = Boolean.getBoolean(SEGMENTED_TRANSMISSION_SPOOL_SYSTEM_PROPERTY_NAME);
+
+    // see BacklogDrainRate, this must be set before initialize() is called
+    private boolean adaptiveBacklogDrain = Boolean.getBoolean(ADAPTIVE_BACKLOG_DRAIN_SYSTEM_PROPERTY_NAME);
+
+    // see AsyncTransmissionNetworkOutput, these must be set before initialize() is called
+    private boolean asyncHttpTransport = Boolean.getBoolean(ASYNC_HTTP_TRANSPORT_SYSTEM_PROPERTY_NAME);
+    private String maxInFlightRequests;
+
     private TelemetryConfiguration configuration;
 
     public TelemetryChannelBase(TelemetryConfiguration configuration) {
@@ -179,6 +202,20 @@ public abstract class TelemetryChannelBase<T> implements TelemetryChannel {
             maxTelemetryBufferCapacityEnforcer.normalizeStringValue(namesAndValues.get(MAX_TELEMETRY_BUFFER_CAPACITY_NAME));
             sendIntervalInSecondsEnforcer.normalizeStringValue(namesAndValues.get(FLUSH_BUFFER_TIMEOUT_IN_SECONDS_NAME));
             maxTransmissionStorageCapacity = namesAndValues.get(MAX_TRANSMISSION_STORAGE_CAPACITY_NAME);
+
+            if (Boolean.parseBoolean(namesAndValues.get(STRIPED_TELEMETRY_BUFFER_NAME))) {
+                stripedTelemetryBuffer = true;
+            }
+            if (Boolean.parseBoolean(namesAndValues.get(SEGMENTED_TRANSMISSION_SPOOL_NAME))) {
+                segmentedTransmissionSpool = true;
+            }
+            if (Boolean.parseBoolean(namesAndValues.get(ADAPTIVE_BACKLOG_DRAIN_NAME))) {
+                adaptiveBacklogDrain = true;
+            }
+            if (Boolean.parseBoolean(namesAndValues.get(ASYNC_HTTP_TRANSPORT_NAME))) {
+                asyncHttpTransport = true;
+            }
+            maxInFlightRequests = namesAndValues.get(MAX_IN_FLIGHT_REQUESTS_NAME);
         }
 
         initialize(configuration,
@@ -216,12 +253,62 @@ public abstract class TelemetryChannelBase<T> implements TelemetryChannel {
         } else {
             telemetriesTransmitter = transmitterFactory.create(endpointAddress, maxTransmissionStorageCapacity, throttling, maxInstantRetry);
         }
-        telemetryBuffer = new TelemetryBuffer<>(telemetriesTransmitter, maxTelemetryBufferCapacityEnforcer, sendIntervalInSeconds);
+        telemetryBuffer = createTelemetryBuffer(telemetriesTransmitter, maxTelemetryBufferCapacityEnforcer, sendIntervalInSeconds);
 
         setDeveloperMode(developerMode);
         isInitailized = true;
     }
 
+    /**
+     * Creates the buffer that telemetries are added to before being handed to the transmitter.
+     *
+     * A {@link StripedTelemetryBuffer} is used when {@link #STRIPED_TELEMETRY_BUFFER_NAME} is set in the channel
+     * configuration, or when the {@link #STRIPED_TELEMETRY_BUFFER_SYSTEM_PROPERTY_NAME} system property is true.
+     */
+    protected TelemetryBuffer<T> createTelemetryBuffer(TelemetriesTransmitter<T> telemetriesTransmitter,
+                                                       LimitsEnforcer maxTelemetryBufferCapacityEnforcer,
+                                                       LimitsEnforcer sendIntervalInSeconds) {
+        if (stripedTelemetryBuffer) {
+            logger.debug("Using striped telemetry buffer");
+            return new StripedTelemetryBuffer<>(telemetriesTransmitter, maxTelemetryBufferCapacityEnforcer, sendIntervalInSeconds);
+        }
+        return new TelemetryBuffer<>(telemetriesTransmitter, maxTelemetryBufferCapacityEnforcer, sendIntervalInSeconds);
+    }
+
+    /**
+     * Whether transmissions that cannot be sent should be persisted to a segmented spool rather than to a file each,
+     * which is the case when {@link #SEGMENTED_TRANSMISSION_SPOOL_NAME} is set in the channel configuration,
+     * or when the {@link #SEGMENTED_TRANSMISSION_SPOOL_SYSTEM_PROPERTY_NAME} system property is true.
+     */
+    protected boolean isSegmentedTransmissionSpool() {
+        return segmentedTransmissionSpool;
+    }
+
+    /**
+     * Whether the transmissions persisted to disk should be drained by several threads at an adaptive rate,
+     * which is the case when {@link #ADAPTIVE_BACKLOG_DRAIN_NAME} is set in the channel configuration,
+     * or when the {@link #ADAPTIVE_BACKLOG_DRAIN_SYSTEM_PROPERTY_NAME} system property is true.
+     */
+    protected boolean isAdaptiveBacklogDrain() {
+        return adaptiveBacklogDrain;
+    }
+
+    /**
+     * Whether transmissions should be sent with the non blocking http client, which is the case when
+     * {@link #ASYNC_HTTP_TRANSPORT_NAME} is set in the channel configuration,
+     * or when the {@link #ASYNC_HTTP_TRANSPORT_SYSTEM_PROPERTY_NAME} system property is true.
+     */
+    protected boolean isAsyncHttpTransport() {
+        return asyncHttpTransport;
+    }
+
+    /**
+     * @return The value of {@link #MAX_IN_FLIGHT_REQUESTS_NAME} in the channel configuration, or null.
+     */
+    protected String getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
     protected synchronized TransmitterFactory<T> getTransmitterFactory() {
         if (transmitterFactory == null) {
             transmitterFactory = createTransmitterFactory();
@@ -101,7 +101,8 @@ public final class InProcessTelemetryChannel extends TelemetryChannelBase<Teleme
 
     @Override
     protected ConfiguredTransmitterFactory<Telemetry> createTransmitterFactory() {
-        return new InProcessTelemetryTransmitterFactory();
+        return new InProcessTelemetryTransmitterFactory(isSegmentedTransmissionSpool(), isAdaptiveBacklogDrain(),
+                isAsyncHttpTransport(), getMaxInFlightRequests());
     }
 
 }
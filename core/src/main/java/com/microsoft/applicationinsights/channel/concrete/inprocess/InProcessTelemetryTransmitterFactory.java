@@ -26,10 +26,13 @@ import com.microsoft.applicationinsights.internal.channel.ConfiguredTransmitterF
 import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
 import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
 import com.microsoft.applicationinsights.internal.channel.TransmissionOutputAsync;
+import com.microsoft.applicationinsights.internal.channel.TransmissionStorage;
 import com.microsoft.applicationinsights.internal.channel.TransmissionsLoader;
 import com.microsoft.applicationinsights.internal.channel.common.ActiveTransmissionFileSystemOutput;
 import com.microsoft.applicationinsights.internal.channel.common.ActiveTransmissionLoader;
 import com.microsoft.applicationinsights.internal.channel.common.ActiveTransmissionNetworkOutput;
+import com.microsoft.applicationinsights.internal.channel.common.AsyncTransmissionNetworkOutput;
+import com.microsoft.applicationinsights.internal.channel.common.BacklogDrainRate;
 import com.microsoft.applicationinsights.internal.channel.common.ErrorHandler;
 import com.microsoft.applicationinsights.internal.channel.common.GzipTelemetrySerializer;
 import com.microsoft.applicationinsights.internal.channel.common.NonBlockingDispatcher;
@@ -39,14 +42,41 @@ import com.microsoft.applicationinsights.internal.channel.common.TransmissionFil
 import com.microsoft.applicationinsights.internal.channel.common.TransmissionNetworkOutput;
 import com.microsoft.applicationinsights.internal.channel.common.TransmissionPolicyManager;
 import com.microsoft.applicationinsights.internal.channel.common.TransmissionPolicyStateFetcher;
+import com.microsoft.applicationinsights.internal.channel.common.TransmissionSpool;
 import com.microsoft.applicationinsights.internal.channel.common.TransmitterImpl;
 
+import java.io.IOException;
+
 import javax.annotation.Nullable;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Created by gupele on 1/15/2015.
  */
 final class InProcessTelemetryTransmitterFactory implements ConfiguredTransmitterFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(InProcessTelemetryTransmitterFactory.class);
+
+    private final boolean segmentedTransmissionSpool;
+    private final boolean adaptiveBacklogDrain;
+    private final boolean asyncHttpTransport;
+    @Nullable
+    private final String maxInFlightRequests;
+
+    InProcessTelemetryTransmitterFactory() {
+        this(false, false, false, null);
+    }
+
+    InProcessTelemetryTransmitterFactory(boolean segmentedTransmissionSpool, boolean adaptiveBacklogDrain,
+                                         boolean asyncHttpTransport, @Nullable String maxInFlightRequests) {
+        this.segmentedTransmissionSpool = segmentedTransmissionSpool;
+        this.adaptiveBacklogDrain = adaptiveBacklogDrain;
+        this.asyncHttpTransport = asyncHttpTransport;
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
     @Deprecated
     @Override
     public TelemetriesTransmitter create(@Nullable String endpoint, String maxTransmissionStorageCapacity, boolean throttlingIsEnabled, int maxInstantRetries) {
@@ -78,9 +108,14 @@ final class InProcessTelemetryTransmitterFactory implements ConfiguredTransmitte
         TransmissionPolicyStateFetcher stateFetcher = transmissionPolicyManager.getTransmissionPolicyState();
 
 
-        TransmissionOutputAsync networkSender = new ActiveTransmissionNetworkOutput(actualNetworkSender, stateFetcher);
+        TransmissionOutputAsync networkSender;
+        if (asyncHttpTransport) {
+            networkSender = AsyncTransmissionNetworkOutput.create(actualNetworkSender, stateFetcher, maxInFlightRequests);
+        } else {
+            networkSender = new ActiveTransmissionNetworkOutput(actualNetworkSender, stateFetcher);
+        }
         // An active object with the file system sender
-        TransmissionFileSystemOutput fileSystemSender = new TransmissionFileSystemOutput(null, maxTransmissionStorageCapacity);
+        TransmissionStorage fileSystemSender = createTransmissionStorage(maxTransmissionStorageCapacity);
         TransmissionOutputAsync activeFileSystemOutput = new ActiveTransmissionFileSystemOutput(fileSystemSender, stateFetcher);
 
         // The dispatcher works with the two active senders
@@ -89,10 +124,27 @@ final class InProcessTelemetryTransmitterFactory implements ConfiguredTransmitte
 
 
         // The loader works with the file system loader as the active one does
-        TransmissionsLoader transmissionsLoader = new ActiveTransmissionLoader(fileSystemSender, stateFetcher, dispatcher);
+        TransmissionsLoader transmissionsLoader;
+        if (adaptiveBacklogDrain) {
+            transmissionsLoader = new ActiveTransmissionLoader(fileSystemSender, dispatcher, stateFetcher,
+                    ActiveTransmissionLoader.DEFAULT_NUMBER_OF_ADAPTIVE_THREADS, new BacklogDrainRate());
+        } else {
+            transmissionsLoader = new ActiveTransmissionLoader(fileSystemSender, stateFetcher, dispatcher);
+        }
 
         // The Transmitter manage all
 
         return new TransmitterImpl(dispatcher, new GzipTelemetrySerializer(), transmissionsLoader);
     }
+
+    private TransmissionStorage createTransmissionStorage(String maxTransmissionStorageCapacity) {
+        if (segmentedTransmissionSpool) {
+            try {
+                return new TransmissionSpool(null, maxTransmissionStorageCapacity);
+            } catch (IOException e) {
+                logger.error("Failed to open the transmission spool, transmissions will be persisted to a file each: {}", e.toString());
+            }
+        }
+        return new TransmissionFileSystemOutput(null, maxTransmissionStorageCapacity);
+    }
 }
@@ -0,0 +1,47 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel;
+
+import com.microsoft.applicationinsights.internal.channel.common.Transmission;
+
+/**
+ * A {@link TransmissionOutputSync} that keeps the transmissions it is given so they
+ * can be fetched back later, oldest first, for example to re-send them once the network is available.
+ */
+public interface TransmissionStorage extends TransmissionOutputSync {
+    /**
+     * Removes the oldest stored transmission and returns it.
+     *
+     * @return The oldest transmission, or null if there is none.
+     */
+    Transmission fetchOldest();
+
+    /**
+     * @return The number of transmissions that are stored and were not fetched yet.
+     */
+    long getCount();
+
+    /**
+     * @return The size in bytes of the transmissions that are stored and were not fetched yet.
+     */
+    long getSizeInBytes();
+}
@@ -21,6 +21,8 @@
 
 package com.microsoft.applicationinsights.internal.channel.common;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -93,5 +95,13 @@ public final class ActiveTransmissionFileSystemOutput implements TransmissionOut
     public void shutdown(long timeout, TimeUnit timeUnit) throws InterruptedException {
         threadPool.shutdown();
         threadPool.awaitTermination(timeout, timeUnit);
+        // e.g. the transmission spool, which holds mapped files and the lock of its folder
+        if (actualOutput instanceof Closeable) {
+            try {
+                ((Closeable) actualOutput).close();
+            } catch (IOException e) {
+                // chomp
+            }
+        }
     }
 }
@@ -22,10 +22,14 @@
 package com.microsoft.applicationinsights.internal.channel.common;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.annotation.Nullable;
+
 import com.google.common.base.Preconditions;
 import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
+import com.microsoft.applicationinsights.internal.channel.TransmissionStorage;
 import com.microsoft.applicationinsights.internal.channel.TransmissionsLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,6 +39,10 @@ import org.slf4j.LoggerFactory;
  *
  * The class will ask for the oldest transmission file and will hand it to the dispatcher
  *
+ * When created with a {@link BacklogDrainRate} the threads drain the backlog at the rate it sets instead of
+ * sleeping a fixed interval after every transmission, so a backlog left by an outage is sent as fast as
+ * the endpoint accepts it.
+ *
  * Created by gupele on 12/22/2014.
  */
 public final class ActiveTransmissionLoader implements TransmissionsLoader {
@@ -45,11 +53,15 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
 
     private static final int DEFAULT_NUMBER_OF_THREADS = 1;
 
+    public static final int DEFAULT_NUMBER_OF_ADAPTIVE_THREADS = 4;
+
     private static final long DEFAULT_SLEEP_INTERVAL_WHEN_NO_TRANSMISSIONS_FOUND_IN_MILLS = 2000;
     private static final long DEFAULT_SLEEP_INTERVAL_AFTER_DISPATCHING_IN_MILLS = 100;
 
+    private static final long DRAIN_RATE_MEASUREMENT_INTERVAL_IN_NANOS = TimeUnit.SECONDS.toNanos(10);
+
     // The helper class that encapsulates the file system access
-    private final TransmissionFileSystemOutput fileSystem;
+    private final TransmissionStorage fileSystem;
 
     // A synchronized flag to let us know when to stop
     private final AtomicBoolean done = new AtomicBoolean(false);
@@ -66,14 +78,31 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
 
     private final long sleepIntervalWhenNoTransmissionsFoundInMills;
 
-    public ActiveTransmissionLoader(TransmissionFileSystemOutput fileSystem, TransmissionPolicyStateFetcher transmissionPolicy, TransmissionDispatcher dispatcher) {
+    // Paces the threads when not null, otherwise they sleep a fixed interval after every transmission
+    private final BacklogDrainRate drainRate;
+
+    // The transmissions that were dispatched since the measurement started, see getDrainRatePerSecond()
+    private final Object drainMeasurementLock = new Object();
+    private long drainMeasurementStartInNanos = System.nanoTime();
+    private long drainedInMeasurement;
+    private double measuredDrainRatePerSecond;
+
+    public ActiveTransmissionLoader(TransmissionStorage fileSystem, TransmissionPolicyStateFetcher transmissionPolicy, TransmissionDispatcher dispatcher) {
         this(fileSystem, dispatcher, transmissionPolicy, DEFAULT_NUMBER_OF_THREADS);
     }
 
-    public ActiveTransmissionLoader(final TransmissionFileSystemOutput fileSystem,
+    public ActiveTransmissionLoader(final TransmissionStorage fileSystem,
                                     final TransmissionDispatcher dispatcher,
                                     final TransmissionPolicyStateFetcher transmissionPolicy,
                                     int numberOfThreads) {
+        this(fileSystem, dispatcher, transmissionPolicy, numberOfThreads, null);
+    }
+
+    public ActiveTransmissionLoader(final TransmissionStorage fileSystem,
+                                    final TransmissionDispatcher dispatcher,
+                                    final TransmissionPolicyStateFetcher transmissionPolicy,
+                                    int numberOfThreads,
+                                    @Nullable final BacklogDrainRate drainRate) {
         Preconditions.checkNotNull(fileSystem, "fileSystem must be a non-null value");
         Preconditions.checkNotNull(dispatcher, "dispatcher must be a non-null value");
         Preconditions.checkNotNull(transmissionPolicy, "transmissionPolicy must be a non-null value");
@@ -87,6 +116,7 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
 
         this.fileSystem = fileSystem;
         this.dispatcher = dispatcher;
+        this.drainRate = drainRate;
         threads = new Thread[numberOfThreads];
         latch = new CountDownLatch(numberOfThreads);
         final String threadNameFmt = String.format("%s-worker-%%d", ActiveTransmissionLoader.class.getSimpleName());
@@ -102,10 +132,16 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
                             TransmissionPolicy currentTransmissionState = transmissionPolicyFetcher.getCurrentState();
                             switch (currentTransmissionState) {
                                 case UNBLOCKED:
+                                    if (drainRate != null) {
+                                        drainRate.acquire();
+                                    }
                                     fetchNext(true);
                                     break;
                                 case BACKOFF:
                                 case BLOCKED_BUT_CAN_BE_PERSISTED:
+                                    if (drainRate != null) {
+                                        drainRate.onThrottled();
+                                    }
                                     Thread.sleep(DEFAULT_SLEEP_INTERVAL_AFTER_DISPATCHING_IN_MILLS);
                                     break;
 
@@ -161,6 +197,31 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
         interruptAllThreads();
     }
 
+    /**
+     * @return The number of transmissions in the backlog.
+     */
+    public long getBacklogCount() {
+        return fileSystem.getCount();
+    }
+
+    /**
+     * @return The size in bytes of the transmissions in the backlog.
+     */
+    public long getBacklogSizeInBytes() {
+        return fileSystem.getSizeInBytes();
+    }
+
+    /**
+     * @return The number of transmissions per second that were dispatched from the backlog
+     * during the last measurement interval.
+     */
+    public double getDrainRatePerSecond() {
+        synchronized (drainMeasurementLock) {
+            updateDrainMeasurement(System.nanoTime());
+            return measuredDrainRatePerSecond;
+        }
+    }
+
     private void interruptAllThreads() {
         for (Thread thread : threads) {
             thread.interrupt();
@@ -168,15 +229,46 @@ public final class ActiveTransmissionLoader implements TransmissionsLoader {
     }
 
     private void fetchNext(boolean shouldDispatch) throws InterruptedException {
-        Transmission transmission = fileSystem.fetchOldestFile();
+        Transmission transmission = fileSystem.fetchOldest();
         if (transmission == null) {
             Thread.sleep(sleepIntervalWhenNoTransmissionsFoundInMills);
         } else {
             if (shouldDispatch) {
                 dispatcher.dispatch(transmission);
+                onDispatched();
             }
 
-            Thread.sleep(DEFAULT_SLEEP_INTERVAL_AFTER_DISPATCHING_IN_MILLS);
+            if (drainRate == null || !shouldDispatch) {
+                Thread.sleep(DEFAULT_SLEEP_INTERVAL_AFTER_DISPATCHING_IN_MILLS);
+            }
+        }
+    }
+
+    private void onDispatched() {
+        if (drainRate != null) {
+            drainRate.onDrained();
+        }
+        synchronized (drainMeasurementLock) {
+            ++drainedInMeasurement;
+            updateDrainMeasurement(System.nanoTime());
+        }
+    }
+
+    // must be called while holding drainMeasurementLock
+    private void updateDrainMeasurement(long nowInNanos) {
+        long elapsedInNanos = nowInNanos - drainMeasurementStartInNanos;
+        if (elapsedInNanos < DRAIN_RATE_MEASUREMENT_INTERVAL_IN_NANOS) {
+            return;
+        }
+
+        measuredDrainRatePerSecond = drainedInMeasurement * (double) TimeUnit.SECONDS.toNanos(1) / elapsedInNanos;
+        drainMeasurementStartInNanos = nowInNanos;
+        drainedInMeasurement = 0;
+
+        if (measuredDrainRatePerSecond > 0) {
+            logger.debug("Transmission backlog: {} transmissions, {} bytes, draining {} per second (target {})",
+                    getBacklogCount(), getBacklogSizeInBytes(), String.format("%.1f", measuredDrainRatePerSecond),
+                    drainRate == null ? "none" : String.format("%.1f", drainRate.getTargetPerSecond()));
         }
     }
 }
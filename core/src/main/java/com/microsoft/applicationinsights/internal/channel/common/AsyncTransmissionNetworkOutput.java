@@ -0,0 +1,308 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.internal.channel.TransmissionOutputAsync;
+import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
+import com.microsoft.applicationinsights.internal.util.SSLOptionsUtil;
+import com.microsoft.applicationinsights.internal.util.ThreadPoolUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends transmissions with the non blocking Apache async client, as an alternative to
+ * {@link ActiveTransmissionNetworkOutput} which blocks one of its threads for every request in flight.
+ *
+ * Up to the configured number of requests are in flight at any time over pooled, kept alive connections,
+ * served by a couple of I/O threads. When that many requests are in flight the transmission is not accepted,
+ * so the dispatcher hands it to the next output, the same as when the queue of
+ * {@link ActiveTransmissionNetworkOutput} is full.
+ *
+ * The completion of a request is handled by the {@link TransmissionNetworkOutput} that created it,
+ * which notifies the {@link TransmissionPolicyManager} handlers just like after a synchronous send.
+ */
+public final class AsyncTransmissionNetworkOutput implements TransmissionOutputAsync {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncTransmissionNetworkOutput.class);
+
+    public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 64;
+    private static final int MIN_MAX_IN_FLIGHT_REQUESTS = 1;
+    private static final int MAX_MAX_IN_FLIGHT_REQUESTS = 1000;
+    private static final String MAX_IN_FLIGHT_REQUESTS_NAME = "Channel.MaxInFlightRequests";
+
+    private static final int MAX_IO_THREADS = 2;
+
+    private static final AtomicInteger INSTANCE_ID_POOL = new AtomicInteger(1);
+
+    private final TransmissionNetworkOutput actualOutput;
+    private final TransmissionPolicyStateFetcher transmissionPolicy;
+    private final int maxInFlightRequests;
+    private final Semaphore inFlightRequests;
+    private final int instanceId = INSTANCE_ID_POOL.getAndIncrement();
+
+    private volatile boolean stopped;
+
+    private final Object lock = new Object();
+
+    @GuardedBy("lock")
+    private CloseableHttpAsyncClient httpClient;
+    @GuardedBy("lock")
+    private boolean initFailed;
+
+    /**
+     * @param maxInFlightRequests The maximum number of requests in flight, the default is used when null or not a number.
+     */
+    public static AsyncTransmissionNetworkOutput create(TransmissionNetworkOutput actualOutput,
+                                                        TransmissionPolicyStateFetcher transmissionPolicy,
+                                                        String maxInFlightRequests) {
+        LimitsEnforcer maxInFlightRequestsEnforcer = LimitsEnforcer.createWithClosestLimitOnError(MIN_MAX_IN_FLIGHT_REQUESTS,
+                                                                                                 MAX_MAX_IN_FLIGHT_REQUESTS,
+                                                                                                 DEFAULT_MAX_IN_FLIGHT_REQUESTS,
+                                                                                                 MAX_IN_FLIGHT_REQUESTS_NAME,
+                                                                                                 maxInFlightRequests);
+        return new AsyncTransmissionNetworkOutput(actualOutput, transmissionPolicy, maxInFlightRequestsEnforcer.getCurrentValue());
+    }
+
+    AsyncTransmissionNetworkOutput(TransmissionNetworkOutput actualOutput, TransmissionPolicyStateFetcher transmissionPolicy, int maxInFlightRequests) {
+        Preconditions.checkNotNull(actualOutput, "actualOutput must be a valid non-null value");
+        Preconditions.checkNotNull(transmissionPolicy, "transmissionPolicy must be a valid non-null value");
+        Preconditions.checkArgument(maxInFlightRequests > 0, "maxInFlightRequests must be a positive number");
+
+        this.actualOutput = actualOutput;
+        this.transmissionPolicy = transmissionPolicy;
+        this.maxInFlightRequests = maxInFlightRequests;
+        this.inFlightRequests = new Semaphore(maxInFlightRequests);
+    }
+
+    @Override
+    public boolean sendAsync(final Transmission transmission) {
+        if (stopped || transmissionPolicy.getCurrentState() != TransmissionPolicy.UNBLOCKED) {
+            return false;
+        }
+
+        if (!inFlightRequests.tryAcquire()) {
+            return false;
+        }
+
+        try {
+            CloseableHttpAsyncClient client = getHttpClient();
+            if (client == null) {
+                inFlightRequests.release();
+                return false;
+            }
+
+            HttpPost request = actualOutput.createTransmissionPostRequest(transmission);
+            client.execute(request, new SendCallback(transmission));
+            return true;
+        } catch (ThreadDeath td) {
+            throw td;
+        } catch (Throwable t) {
+            inFlightRequests.release();
+            logger.error("Failed to send, unexpected exception", t);
+            return false;
+        }
+    }
+
+    @Override
+    public void shutdown(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        stopped = true;
+
+        // let the requests in flight complete
+        if (inFlightRequests.tryAcquire(maxInFlightRequests, timeout, timeUnit)) {
+            inFlightRequests.release(maxInFlightRequests);
+        }
+
+        synchronized (lock) {
+            if (httpClient != null) {
+                try {
+                    httpClient.close();
+                } catch (IOException e) {
+                    logger.error("Failed to close http client, exception: {}", e.toString());
+                }
+            }
+        }
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    int getNumberOfInFlightRequests() {
+        return maxInFlightRequests - inFlightRequests.availablePermits();
+    }
+
+    private CloseableHttpAsyncClient getHttpClient() {
+        synchronized (lock) {
+            if (httpClient != null || initFailed) {
+                return httpClient;
+            }
+
+            CountDownLatch safeToInitLatch = ApacheSender43.safeToInitLatch;
+            if (safeToInitLatch != null && safeToInitLatch.getCount() > 0) {
+                // SSL must not be initialized yet, see ApacheSender43, the transmission goes to the next output
+                return null;
+            }
+
+            try {
+                httpClient = createHttpClient();
+                httpClient.start();
+            } catch (IOReactorException e) {
+                initFailed = true;
+                logger.error("Failed to create the async http client, telemetry will not be sent: {}", e.toString());
+            }
+            return httpClient;
+        }
+    }
+
+    private CloseableHttpAsyncClient createHttpClient() throws IOReactorException {
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(Math.min(MAX_IO_THREADS, Runtime.getRuntime().availableProcessors()))
+                .setSoTimeout(ApacheSender.REQUEST_TIMEOUT_IN_MILLIS)
+                .setConnectTimeout(ApacheSender.REQUEST_TIMEOUT_IN_MILLIS)
+                .build();
+        DefaultConnectingIOReactor ioReactor = new DefaultConnectingIOReactor(ioReactorConfig,
+                ThreadPoolUtils.createDaemonThreadFactory(AsyncTransmissionNetworkOutput.class, instanceId));
+
+        final String[] allowedProtocols = SSLOptionsUtil.getAllowedProtocols();
+        PoolingNHttpClientConnectionManager cm = new PoolingNHttpClientConnectionManager(ioReactor,
+                RegistryBuilder.<SchemeIOSessionStrategy>create()
+                        .register("http", NoopIOSessionStrategy.INSTANCE)
+                        .register("https", new SSLIOSessionStrategy(SSLContexts.createDefault(), allowedProtocols, null,
+                                SSLIOSessionStrategy.getDefaultHostnameVerifier()))
+                        .build());
+        // every request in flight can have its own connection, idle ones are kept alive for the next requests
+        cm.setMaxTotal(maxInFlightRequests);
+        cm.setDefaultMaxPerRoute(maxInFlightRequests);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(ApacheSender.REQUEST_TIMEOUT_IN_MILLIS)
+                .setSocketTimeout(ApacheSender.REQUEST_TIMEOUT_IN_MILLIS)
+                .setConnectTimeout(ApacheSender.REQUEST_TIMEOUT_IN_MILLIS)
+                .build();
+
+        HttpAsyncClientBuilder builder = HttpAsyncClients.custom()
+                // see ApacheSender43 for why the User-Agent is empty
+                .setUserAgent("")
+                .setConnectionManager(cm)
+                .setDefaultRequestConfig(requestConfig)
+                .useSystemProperties();
+        if (ApacheSender43.proxy != null) {
+            builder.setProxy(ApacheSender43.proxy);
+        }
+        return builder.build();
+    }
+
+    @VisibleForTesting
+    final class SendCallback implements FutureCallback<HttpResponse> {
+        private final Transmission transmission;
+
+        SendCallback(Transmission transmission) {
+            this.transmission = transmission;
+        }
+
+        @Override
+        public void completed(HttpResponse response) {
+            int code = response.getStatusLine().getStatusCode();
+            String reason = response.getStatusLine().getReasonPhrase();
+            Header retryAfterHeader = response.getFirstHeader(TransmissionNetworkOutput.RESPONSE_THROTTLING_HEADER);
+            String responseBody = null;
+            Throwable ex = null;
+            try {
+                // the async client buffers the response, so this does not block the I/O thread
+                responseBody = response.getEntity() == null ? null : EntityUtils.toString(response.getEntity());
+            } catch (IOException e) {
+                ex = e;
+                logger.error("Failed to read the response", e);
+            }
+
+            // released first, the handlers might dispatch the transmission again
+            inFlightRequests.release();
+            try {
+                if (code == HttpStatus.SC_OK) {
+                    actualOutput.onSendSucceeded(transmission);
+                } else {
+                    actualOutput.onSendFailed(transmission, code, reason, responseBody, retryAfterHeader, ex);
+                }
+            } catch (ThreadDeath td) {
+                throw td;
+            } catch (Throwable t) {
+                // Avoid un-expected exit of the I/O thread
+                logger.error("Failed to handle the response", t);
+            }
+        }
+
+        @Override
+        public void failed(Exception ex) {
+            logger.error("Failed to send", ex);
+            handleFailure(ex);
+        }
+
+        @Override
+        public void cancelled() {
+            // e.g. when the client is closed with requests in flight, the transmission is handled like a failed one
+            // so it is persisted or sent again instead of being lost
+            logger.debug("Request was cancelled");
+            handleFailure(new CancellationException("The request was cancelled"));
+        }
+
+        private void handleFailure(Exception ex) {
+            inFlightRequests.release();
+            try {
+                actualOutput.onSendFailed(transmission, 0, null, null, null, ex);
+            } catch (ThreadDeath td) {
+                throw td;
+            } catch (Throwable t) {
+                logger.error("Failed to handle the failed request", t);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Paces the transmissions that {@link ActiveTransmissionLoader} drains from the disk backlog.
+ *
+ * The target rate is shared by all the loader threads. It grows additively while the backlog is sent
+ * without problems and is halved once every time the {@link TransmissionPolicyManager} backs off or suspends
+ * the sending, which is also what a 429 with a Retry-After header ends up doing.
+ */
+public final class BacklogDrainRate {
+
+    static final double DEFAULT_MIN_PER_SECOND = 1;
+    static final double DEFAULT_INITIAL_PER_SECOND = 10;
+    static final double DEFAULT_MAX_PER_SECOND = 100;
+
+    // how much the target grows during each second of sending without throttling
+    private static final double ADDITIVE_INCREASE_PER_SECOND = 5;
+
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final double minPerSecond;
+    private final double maxPerSecond;
+
+    private double targetPerSecond;
+    private long nextPermitInNanos;
+    private boolean throttled;
+
+    public BacklogDrainRate() {
+        this(DEFAULT_MIN_PER_SECOND, DEFAULT_INITIAL_PER_SECOND, DEFAULT_MAX_PER_SECOND);
+    }
+
+    BacklogDrainRate(double minPerSecond, double initialPerSecond, double maxPerSecond) {
+        Preconditions.checkArgument(minPerSecond > 0, "minPerSecond must be a positive number");
+        Preconditions.checkArgument(minPerSecond <= initialPerSecond && initialPerSecond <= maxPerSecond,
+                "initialPerSecond must be between minPerSecond and maxPerSecond");
+
+        this.minPerSecond = minPerSecond;
+        this.maxPerSecond = maxPerSecond;
+        this.targetPerSecond = initialPerSecond;
+        this.nextPermitInNanos = System.nanoTime();
+    }
+
+    /**
+     * Blocks until the next transmission may be drained according to the target rate.
+     */
+    public void acquire() throws InterruptedException {
+        long waitInNanos = reserve(System.nanoTime());
+        if (waitInNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitInNanos);
+        }
+    }
+
+    /**
+     * Called after a transmission from the backlog was handed to the dispatcher while sending was not blocked.
+     */
+    public synchronized void onDrained() {
+        throttled = false;
+        // every drained transmission stands for 1 / target seconds of sending
+        targetPerSecond = Math.min(maxPerSecond, targetPerSecond + ADDITIVE_INCREASE_PER_SECOND / targetPerSecond);
+    }
+
+    /**
+     * Called while sending is backed off or suspended, the target is only lowered once for each such period.
+     */
+    public synchronized void onThrottled() {
+        if (throttled) {
+            return;
+        }
+        throttled = true;
+        targetPerSecond = Math.max(minPerSecond, targetPerSecond / 2);
+    }
+
+    public synchronized double getTargetPerSecond() {
+        return targetPerSecond;
+    }
+
+    /**
+     * Reserves the next permit and returns how long to wait for it.
+     */
+    synchronized long reserve(long nowInNanos) {
+        // nano times are only comparable by their difference
+        long permitInNanos = nextPermitInNanos - nowInNanos > 0 ? nextPermitInNanos : nowInNanos;
+        nextPermitInNanos = permitInNanos + (long) (NANOS_PER_SECOND / targetPerSecond);
+        return permitInNanos - nowInNanos;
+    }
+}
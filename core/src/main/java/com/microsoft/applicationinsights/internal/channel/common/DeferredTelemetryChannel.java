@@ -0,0 +1,168 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A channel standing in for the real one while that is still being created, e.g. on a background thread so that
+ * the application's startup is not delayed by it.
+ *
+ * Telemetry sent until then is buffered, up to a limit, and is replayed to the real channel when it is set.
+ * Afterwards all calls are forwarded to it.
+ */
+public final class DeferredTelemetryChannel implements TelemetryChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeferredTelemetryChannel.class);
+
+    public static final int DEFAULT_MAX_BUFFERED = 10000;
+
+    private final int maxBuffered;
+
+    private volatile TelemetryChannel delegate;
+
+    // guarded by this, and only used until the delegate is set
+    private final Queue<Telemetry> buffer = new ArrayDeque<Telemetry>();
+    private long dropped;
+    private boolean developerMode;
+
+    public DeferredTelemetryChannel() {
+        this(DEFAULT_MAX_BUFFERED);
+    }
+
+    public DeferredTelemetryChannel(int maxBuffered) {
+        Preconditions.checkArgument(maxBuffered >= 0, "maxBuffered must not be negative");
+        this.maxBuffered = maxBuffered;
+    }
+
+    /**
+     * Sends the buffered telemetry through the given channel, which receives all the calls from then on.
+     */
+    public void setDelegate(TelemetryChannel channel) {
+        Preconditions.checkNotNull(channel, "channel must be a non-null value");
+        // delegating to itself would loop forever on the first call
+        Preconditions.checkArgument(channel != this, "channel must not be the deferred channel itself");
+        int replayed;
+        long droppedCount;
+        synchronized (this) {
+            Preconditions.checkState(delegate == null, "delegate has already been set");
+            if (developerMode) {
+                channel.setDeveloperMode(true);
+            }
+            replayed = buffer.size();
+            Telemetry telemetry;
+            while ((telemetry = buffer.poll()) != null) {
+                channel.send(telemetry);
+            }
+            droppedCount = dropped;
+            delegate = channel;
+        }
+        if (droppedCount > 0) {
+            logger.warn("{} telemetry items were dropped while the channel was being created", droppedCount);
+        }
+        logger.debug("{} telemetry items were sent after the channel was created", replayed);
+    }
+
+    public boolean isDelegateSet() {
+        return delegate != null;
+    }
+
+    @Override
+    public void send(Telemetry item) {
+        TelemetryChannel channel = delegate;
+        if (channel == null) {
+            synchronized (this) {
+                channel = delegate;
+                if (channel == null) {
+                    if (buffer.size() < maxBuffered) {
+                        buffer.add(item);
+                    } else {
+                        dropped++;
+                    }
+                    return;
+                }
+            }
+        }
+        channel.send(item);
+    }
+
+    @Override
+    public boolean isDeveloperMode() {
+        TelemetryChannel channel = delegate;
+        if (channel == null) {
+            synchronized (this) {
+                channel = delegate;
+                if (channel == null) {
+                    return developerMode;
+                }
+            }
+        }
+        return channel.isDeveloperMode();
+    }
+
+    @Override
+    public void setDeveloperMode(boolean value) {
+        TelemetryChannel channel = delegate;
+        if (channel == null) {
+            synchronized (this) {
+                channel = delegate;
+                if (channel == null) {
+                    developerMode = value;
+                    return;
+                }
+            }
+        }
+        channel.setDeveloperMode(value);
+    }
+
+    @Override
+    public void shutdown(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        TelemetryChannel channel = delegate;
+        if (channel != null) {
+            channel.shutdown(timeout, timeUnit);
+            return;
+        }
+        synchronized (this) {
+            if (!buffer.isEmpty()) {
+                logger.warn("{} telemetry items were dropped, the channel was not created before shutdown", buffer.size());
+                buffer.clear();
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        TelemetryChannel channel = delegate;
+        if (channel != null) {
+            channel.flush();
+        }
+    }
+}
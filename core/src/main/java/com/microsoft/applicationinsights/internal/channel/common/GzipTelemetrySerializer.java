@@ -27,9 +27,8 @@ import java.util.Collection;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.microsoft.applicationinsights.internal.channel.TelemetrySerializer;
-import com.microsoft.applicationinsights.telemetry.JsonTelemetryDataSerializer;
+import com.microsoft.applicationinsights.telemetry.JsonTelemetryEnvelopeWriter;
 import com.microsoft.applicationinsights.telemetry.Telemetry;
-import com.squareup.moshi.JsonWriter;
 import okio.Buffer;
 import okio.BufferedSink;
 import okio.GzipSink;
@@ -89,10 +88,11 @@ public final class GzipTelemetrySerializer implements TelemetrySerializer {
             } finally {
                 // The creation of the result must be done after the 'zipStream' is closed
                 if (succeeded) {
-                    // TODO further optimize by passing buffer and using okio http
-                    result = new Transmission(buffer.readByteArray(), GZIP_WEB_CONTENT_TYPE, GZIP_WEB_ENCODING_TYPE);
+                    // the buffer is handed over as is, it is only copied into a byte array if it needs to be persisted
+                    result = new Transmission(buffer, GZIP_WEB_CONTENT_TYPE, GZIP_WEB_ENCODING_TYPE);
+                } else {
+                    buffer.clear();
                 }
-                buffer.clear();
             }
         } catch(Exception e) {
             logger.error("Failed to serialize , exception: {}", e.toString());
@@ -133,10 +133,11 @@ public final class GzipTelemetrySerializer implements TelemetrySerializer {
             } finally {
                 // The creation of the result must be done after the 'zipStream' is closed
                 if (succeeded) {
-                    // TODO further optimize by passing buffer and using okio http
-                    result = new Transmission(buffer.readByteArray(), GZIP_WEB_CONTENT_TYPE, GZIP_WEB_ENCODING_TYPE);
+                    // the buffer is handed over as is, it is only copied into a byte array if it needs to be persisted
+                    result = new Transmission(buffer, GZIP_WEB_CONTENT_TYPE, GZIP_WEB_ENCODING_TYPE);
+                } else {
+                    buffer.clear();
                 }
-                buffer.clear();
             }
         } catch(Exception e) {
             logger.error("Failed to serialize , exception: {}", e.toString());
@@ -148,6 +149,8 @@ public final class GzipTelemetrySerializer implements TelemetrySerializer {
     private boolean compress(BufferedSink sink, Collection<Telemetry> telemetries) throws IOException {
         int counter = 0;
 
+        // one writer for the whole batch, so its caches are shared by all the items
+        JsonTelemetryEnvelopeWriter envelopeWriter = new JsonTelemetryEnvelopeWriter(sink);
 
         // The format is:
         // 1. Separate each Telemetry by newline
@@ -159,9 +162,7 @@ public final class GzipTelemetrySerializer implements TelemetrySerializer {
             }
 
             try {
-                JsonTelemetryDataSerializer jsonWriter = new JsonTelemetryDataSerializer(JsonWriter.of(sink));
-                telemetry.serialize(jsonWriter);
-                jsonWriter.close();
+                envelopeWriter.write(telemetry);
                 telemetry.markUsed();
                 ++counter;
             } catch (IOException e) {
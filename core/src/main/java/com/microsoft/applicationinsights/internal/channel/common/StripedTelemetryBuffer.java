@@ -0,0 +1,219 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
+import com.microsoft.applicationinsights.internal.util.BoundedLockFreeQueue;
+import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TelemetryBuffer} which does not take a lock when telemetry is added.
+ *
+ * Telemetries are spread over a number of lock-free stripes (one per available processor, selected by the
+ * adding thread), so that application threads running on different cores do not contend with each other.
+ *
+ * The batching semantics are the same as the ones of {@link TelemetryBuffer}: once
+ * {@code maxTelemetriesInBatch} telemetries are pending they are sent right away, otherwise the first
+ * telemetry schedules a pick-up by the transmitter thread after {@code transmitBufferTimeoutInSeconds}.
+ *
+ * Unlike {@link TelemetryBuffer}, no call to the sender is ever made while holding a lock.
+ */
+public class StripedTelemetryBuffer<T> extends TelemetryBuffer<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(StripedTelemetryBuffer.class);
+
+    private static final int MAX_STRIPES = 64;
+
+    /**
+     * Picked up by the transmitter thread once the buffer timeout expires.
+     */
+    private final class StripedTelemetriesFetcher implements TelemetriesTransmitter.TelemetriesFetcher<T> {
+
+        @Override
+        public Collection<T> fetch() {
+            // cleared before draining, so that a telemetry which is added while draining schedules its own pick-up
+            scheduled.set(false);
+            List<T> readyToBeSent = drain(getMaxTelemetriesInBatch());
+            if (pending.get() > 0) {
+                schedulePickUp();
+            }
+            return readyToBeSent;
+        }
+    }
+
+    private final TelemetriesTransmitter<T> sender;
+
+    private final BoundedLockFreeQueue<T>[] stripes;
+    private final int stripeMask;
+
+    /// The number of telemetries that were added and not yet drained, this can be briefly off while draining
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /// Set when a pick-up is scheduled with the transmitter, so that only one is outstanding at any time
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /// Set while a thread is sending a full batch, other threads just keep adding instead of waiting for it
+    private final AtomicBoolean sendingFullBatch = new AtomicBoolean();
+
+    public StripedTelemetryBuffer(TelemetriesTransmitter<T> sender, LimitsEnforcer maxTelemetriesInBatchEnforcer, LimitsEnforcer transmitBufferTimeoutInSecondsEnforcer) {
+        this(sender, maxTelemetriesInBatchEnforcer, transmitBufferTimeoutInSecondsEnforcer, Runtime.getRuntime().availableProcessors());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    StripedTelemetryBuffer(TelemetriesTransmitter<T> sender, LimitsEnforcer maxTelemetriesInBatchEnforcer, LimitsEnforcer transmitBufferTimeoutInSecondsEnforcer, int numberOfStripes) {
+        super(sender, maxTelemetriesInBatchEnforcer, transmitBufferTimeoutInSecondsEnforcer);
+        Preconditions.checkArgument(numberOfStripes > 0, "numberOfStripes must be a positive number");
+
+        this.sender = sender;
+
+        int stripeCount = Math.min(MAX_STRIPES, numberOfStripes == 1 ? 1 : Integer.highestOneBit(numberOfStripes - 1) << 1);
+        stripeMask = stripeCount - 1;
+        // each stripe can hold a full batch of the largest allowed size, so setMaxTelemetriesInBatch never needs to resize them
+        int stripeCapacity = Math.max(maxTelemetriesInBatchEnforcer.getMaximum(), maxTelemetriesInBatchEnforcer.getCurrentValue());
+        stripes = new BoundedLockFreeQueue[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new BoundedLockFreeQueue<>(stripeCapacity);
+        }
+    }
+
+    @Override
+    public void setMaxTelemetriesInBatch(int value) {
+        super.setMaxTelemetriesInBatch(value);
+        if (pending.get() >= getMaxTelemetriesInBatch()) {
+            // Request for smaller buffers, we flush if our buffer contains more elements
+            flush();
+        }
+    }
+
+    /**
+     * The method will add the incoming telemetry to the stripe of the calling thread.
+     *
+     * If that is the first pending telemetry, we schedule a 'pick-up' in a configurable amount of time.
+     * If by adding it we reached the maximum number of telemetries in a batch, we trigger a send request now.
+     *
+     * @param telemetry The {@link com.microsoft.applicationinsights.telemetry.Telemetry} to add to the buffer.
+     */
+    @Override
+    public void add(T telemetry) {
+        Preconditions.checkNotNull(telemetry, "Telemetry must be non null value");
+
+        BoundedLockFreeQueue<T> stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+        if (!stripe.offer(telemetry)) {
+            // the stripe holds more than a full batch, so the transmitter is not keeping up, send it from here
+            sendNow(drain(getMaxTelemetriesInBatch()));
+            if (!stripe.offer(telemetry)) {
+                logger.error("Telemetry buffer is full, telemetry is dropped");
+                return;
+            }
+        }
+
+        if (pending.incrementAndGet() >= getMaxTelemetriesInBatch()) {
+            sendFullBatches();
+        }
+        if (!scheduled.get() && pending.get() > 0) {
+            schedulePickUp();
+        }
+    }
+
+    /**
+     * The method will flush all the pending telemetries to the {@link TelemetriesTransmitter}
+     */
+    @Override
+    public void flush() {
+        int maxTelemetriesInBatch = getMaxTelemetriesInBatch();
+        while (true) {
+            List<T> readyToBeSent = drain(maxTelemetriesInBatch);
+            if (readyToBeSent.isEmpty()) {
+                return;
+            }
+            if (!sender.sendNow(readyToBeSent)) {
+                logger.error("Failed to flush buffer data to network");
+            }
+        }
+    }
+
+    private void sendFullBatches() {
+        int maxTelemetriesInBatch = getMaxTelemetriesInBatch();
+        // threads which lose the race just keep going, the winner re-checks after it is done
+        while (pending.get() >= maxTelemetriesInBatch && sendingFullBatch.compareAndSet(false, true)) {
+            try {
+                List<T> readyToBeSent = drain(maxTelemetriesInBatch);
+                if (readyToBeSent.isEmpty()) {
+                    return;
+                }
+                sendNow(readyToBeSent);
+            } finally {
+                sendingFullBatch.set(false);
+            }
+        }
+    }
+
+    private void sendNow(List<T> readyToBeSent) {
+        if (!readyToBeSent.isEmpty() && !sender.sendNow(readyToBeSent)) {
+            // the drained telemetries are lost, same as with the non-striped buffer
+            logger.error("Failed to send buffer data to network");
+        }
+    }
+
+    private void schedulePickUp() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        if (!sender.scheduleSend(new StripedTelemetriesFetcher(), getTransmitBufferTimeoutInSeconds(), TimeUnit.SECONDS)) {
+            // the pending telemetries are kept, the next telemetry that is added will try to schedule again
+            logger.error("Failed to schedule send of the buffer to network");
+            scheduled.set(false);
+        }
+    }
+
+    /**
+     * Removes up to {@code maxItems} telemetries, visiting the stripes round robin so that no stripe is starved.
+     */
+    private List<T> drain(int maxItems) {
+        List<T> drained = new ArrayList<>(Math.min(maxItems, Math.max(pending.get(), 1)));
+        int stripeCount = stripes.length;
+        int perStripe = Math.max(1, maxItems / stripeCount);
+        boolean progress = true;
+        while (drained.size() < maxItems && progress) {
+            progress = false;
+            for (int i = 0; i < stripeCount && drained.size() < maxItems; i++) {
+                int count = stripes[i].drainTo(drained, Math.min(perStripe, maxItems - drained.size()));
+                if (count > 0) {
+                    progress = true;
+                }
+            }
+        }
+        pending.addAndGet(-drained.size());
+        return drained;
+    }
+}
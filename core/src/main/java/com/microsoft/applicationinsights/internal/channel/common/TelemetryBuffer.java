@@ -86,10 +86,10 @@ public class TelemetryBuffer<T> {
 
     /// The maximum amount of Telemetries in a batch. If the buffer is
     /// full before the timeout expired, we will need to send it anyway and not wait for the timeout to expire
-    private int maxTelemetriesInBatch;
+    private volatile int maxTelemetriesInBatch;
     private LimitsEnforcer maxTelemetriesInBatchEnforcer;
 
-    private int transmitBufferTimeoutInSeconds;
+    private volatile int transmitBufferTimeoutInSeconds;
     private LimitsEnforcer transmitBufferTimeoutInSecondsEnforcer;
 
     /// The Telemetry instances are kept here
@@ -21,25 +21,42 @@
 
 package com.microsoft.applicationinsights.internal.channel.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import okio.Buffer;
 
 /**
  * Holds the stuff that defines a transmission of data to the server.
  * It also holds the meta data that describes the content, for example encoding type
  *
+ * The content is either a byte array, or an okio {@link Buffer} when it comes straight from the serializer.
+ * A buffer is written to the network segment by segment, and is only copied into a byte array
+ * when the transmission needs to be persisted or re-serialized.
+ *
  * Created by gupele on 12/17/2014.
  */
 public final class Transmission implements Serializable {
+    // explicit, so that transmissions persisted by previous versions can still be loaded
+    private static final long serialVersionUID = -7135156212077487555L;
+
     private int version;
 
     private int numberOfSends;
 
     private int numberOfPersistence;
 
-    private final byte[] content;
+    private byte[] content;
+
+    // not yet materialized content, null once it has been copied into 'content'
+    private transient Buffer buffer;
 
     private final String webContentType;
 
@@ -61,10 +78,71 @@ public final class Transmission implements Serializable {
         this(content, webContentType, webContentEncodingType, 1);
     }
 
-    public byte[] getContent() {
+    /**
+     * The transmission takes ownership of the buffer, the caller must not use it afterwards.
+     */
+    public Transmission(Buffer content, String webContentType, String webContentEncodingType) {
+        Preconditions.checkNotNull(content, "Content must be non-null value");
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(webContentType), "webContentType must be a non empty string");
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(webContentEncodingType), "webContentEncodingType must be a non empty string");
+
+        numberOfSends = numberOfPersistence = 0;
+        this.version = 1;
+        this.buffer = content;
+        this.webContentType = webContentType;
+        this.webContentEncodingType = webContentEncodingType;
+    }
+
+    /**
+     * Materializes the content into a byte array if it is still held in a buffer.
+     * Prefer {@link #writeContentTo(OutputStream)} when the content only needs to be sent.
+     */
+    public synchronized byte[] getContent() {
+        if (buffer != null) {
+            content = buffer.readByteArray();
+            buffer = null;
+        }
         return content;
     }
 
+    public synchronized long getContentLength() {
+        return buffer != null ? buffer.size() : content.length;
+    }
+
+    /**
+     * Writes the content without copying it into an intermediate byte array.
+     * The content is left intact, so it can be written again in case the transmission is retried.
+     */
+    public synchronized void writeContentTo(OutputStream out) throws IOException {
+        if (buffer != null) {
+            buffer.copyTo(out);
+        } else {
+            out.write(content);
+        }
+    }
+
+    /**
+     * Opens a channel that reads the content, the content itself is left intact
+     * so it can be read again in case the transmission is retried.
+     */
+    public synchronized ReadableByteChannel openContentChannel() {
+        if (buffer != null) {
+            // the clone shares the segments of the buffer rather than copying them
+            return buffer.clone();
+        }
+        return Channels.newChannel(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Returns the buffer segments to the pool once the transmission has been delivered.
+     * The content must not be used after that.
+     */
+    public synchronized void release() {
+        if (buffer != null) {
+            buffer.clear();
+        }
+    }
+
     public String getWebContentType() {
         return webContentType;
     }
@@ -100,4 +178,9 @@ public final class Transmission implements Serializable {
     public int getVersion() {
         return version;
     }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        getContent();
+        out.defaultWriteObject();
+    }
 }
@@ -0,0 +1,126 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import com.google.common.base.Preconditions;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+/**
+ * An {@link org.apache.http.HttpEntity} which writes the content of a {@link Transmission} straight to the
+ * connection, without first copying it into a byte array.
+ *
+ * It is also a {@link HttpAsyncContentProducer}, so the async client writes the content
+ * chunk by chunk as the connection becomes writable instead of reading it through {@link #getContent()}.
+ */
+final class TransmissionEntity extends AbstractHttpEntity implements HttpAsyncContentProducer {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Transmission transmission;
+
+    // the state of the async production, reset by close() so the content can be produced again
+    private ReadableByteChannel pendingContent;
+    private ByteBuffer chunk;
+
+    TransmissionEntity(Transmission transmission) {
+        Preconditions.checkNotNull(transmission, "transmission must be non-null value");
+        this.transmission = transmission;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return transmission.getContentLength();
+    }
+
+    @Override
+    public InputStream getContent() throws IOException {
+        // not used when sending, only when something wants to read the request back
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) getContentLength());
+        transmission.writeContentTo(out);
+        return new ByteArrayInputStream(out.toByteArray());
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        Preconditions.checkNotNull(outStream, "outStream must be non-null value");
+        transmission.writeContentTo(outStream);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+
+    @Override
+    public void produceContent(ContentEncoder encoder, IOControl ioControl) throws IOException {
+        if (pendingContent == null) {
+            pendingContent = transmission.openContentChannel();
+            chunk = ByteBuffer.allocate((int) Math.min(CHUNK_SIZE, Math.max(1, getContentLength())));
+            chunk.flip();
+        }
+
+        while (true) {
+            if (!chunk.hasRemaining()) {
+                chunk.clear();
+                int read = pendingContent.read(chunk);
+                chunk.flip();
+                if (read == -1) {
+                    encoder.complete();
+                    close();
+                    return;
+                }
+            }
+
+            encoder.write(chunk);
+            if (chunk.hasRemaining()) {
+                // the connection is not writable right now, this is called again once it is
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (pendingContent != null) {
+            pendingContent.close();
+            pendingContent = null;
+        }
+        chunk = null;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Charsets;
+
+/**
+ * The binary layout of a persisted {@link Transmission}, all numbers are big endian:
+ *
+ * <pre>
+ * magic                 4 bytes  "AITR"
+ * format version        1 byte
+ * transmission version  4 bytes
+ * number of sends       4 bytes
+ * number of persistence 4 bytes
+ * content type          2 bytes length + utf-8 bytes
+ * encoding type         2 bytes length + utf-8 bytes
+ * content length        4 bytes
+ * content               the (gzipped) payload as it is sent
+ * checksum              4 bytes  crc32 of everything above
+ * </pre>
+ *
+ * Files written with Java serialization by previous versions start with the serialization stream magic,
+ * so the two formats can be told apart by the first bytes, see {@link #isBinaryFormat(ByteBuffer)}.
+ */
+final class TransmissionFileFormat {
+
+    private static final int MAGIC = ('A' << 24) | ('I' << 16) | ('T' << 8) | 'R';
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final int CHECKSUM_LENGTH = 4;
+
+    private TransmissionFileFormat() {
+    }
+
+    static void write(Transmission transmission, FileChannel channel) throws IOException {
+        ByteBuffer[] buffers = encode(transmission);
+        ByteBuffer checksum = buffers[buffers.length - 1];
+        while (checksum.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    /**
+     * Returns the buffers that together hold the encoded transmission, the content is wrapped and not copied.
+     */
+    static ByteBuffer[] encode(Transmission transmission) throws IOException {
+        byte[] content = transmission.getContent();
+        byte[] contentType = transmission.getWebContentType().getBytes(Charsets.UTF_8);
+        byte[] encodingType = transmission.getWebContentEncodingType().getBytes(Charsets.UTF_8);
+
+        ByteBuffer header = ByteBuffer.allocate(4 + 1 + 4 + 4 + 4 + 2 + contentType.length + 2 + encodingType.length + 4);
+        header.putInt(MAGIC);
+        header.put(FORMAT_VERSION);
+        header.putInt(transmission.getVersion());
+        header.putInt(transmission.getNumberOfSends());
+        header.putInt(transmission.getNumberOfPersistence());
+        putString(header, contentType);
+        putString(header, encodingType);
+        header.putInt(content.length);
+        header.flip();
+
+        CRC32 crc = new CRC32();
+        crc.update(header.array(), 0, header.limit());
+        crc.update(content, 0, content.length);
+        ByteBuffer checksum = ByteBuffer.allocate(CHECKSUM_LENGTH);
+        checksum.putInt((int) crc.getValue());
+        checksum.flip();
+
+        return new ByteBuffer[]{header, ByteBuffer.wrap(content), checksum};
+    }
+
+    static boolean isBinaryFormat(ByteBuffer file) {
+        return file.remaining() >= 4 && file.getInt(file.position()) == MAGIC;
+    }
+
+    /**
+     * Reads the transmission from a heap buffer that holds the whole file.
+     *
+     * @throws IOException if the data is truncated, corrupted or of an unknown format version.
+     */
+    static Transmission read(ByteBuffer file) throws IOException {
+        int start = file.position();
+        try {
+            if (file.getInt() != MAGIC) {
+                throw new IOException("Not a transmission file");
+            }
+            byte formatVersion = file.get();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("Unknown transmission file format version " + formatVersion);
+            }
+            int version = file.getInt();
+            int numberOfSends = file.getInt();
+            int numberOfPersistence = file.getInt();
+            String contentType = getString(file);
+            String encodingType = getString(file);
+            int contentLength = file.getInt();
+            if (contentLength < 0 || contentLength > file.remaining() - CHECKSUM_LENGTH) {
+                throw new IOException("Truncated transmission file");
+            }
+            int contentOffset = file.position();
+            file.position(contentOffset + contentLength);
+            int checksum = file.getInt();
+
+            CRC32 crc = new CRC32();
+            crc.update(file.array(), file.arrayOffset() + start, contentOffset + contentLength - start);
+            if ((int) crc.getValue() != checksum) {
+                throw new IOException("Transmission file checksum mismatch");
+            }
+
+            byte[] content = new byte[contentLength];
+            ByteBuffer contentBuffer = file.duplicate();
+            contentBuffer.position(contentOffset);
+            contentBuffer.get(content);
+
+            Transmission transmission = new Transmission(content, contentType, encodingType, version);
+            transmission.setNumberOfSends(numberOfSends);
+            transmission.setNumberOfPersistence(numberOfPersistence);
+            return transmission;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated transmission file", e);
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) throws IOException {
+        if (value.length > 0xFFFF) {
+            throw new IOException("Value is too long to be persisted: " + value.length + " bytes");
+        }
+        buffer.putShort((short) value.length);
+        buffer.put(value);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, Charsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -21,37 +21,34 @@
 
 package com.microsoft.applicationinsights.internal.channel.common;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.InputStream;
 import java.io.InvalidClassException;
 import java.io.ObjectInput;
 import java.io.FileInputStream;
-import java.io.BufferedInputStream;
 import java.io.ObjectInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.FileOutputStream;
 import java.io.ObjectStreamClass;
-import java.io.BufferedOutputStream;
-import java.io.ObjectOutput;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
-import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicLong;
 
-import com.microsoft.applicationinsights.internal.channel.TransmissionOutputSync;
+import com.microsoft.applicationinsights.internal.channel.TransmissionStorage;
 import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
 import com.microsoft.applicationinsights.internal.util.LocalFileSystemUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,9 +61,12 @@ import org.slf4j.LoggerFactory;
  * With that data it knows how to store incoming Transmissions and store them into files that can be later
  * be read back into Transmissions.
  *
+ * Transmissions are written in the binary format of {@link TransmissionFileFormat}, files written with
+ * Java serialization by previous versions are still loaded.
+ *
  * Created by gupele on 12/18/2014.
  */
-public final class TransmissionFileSystemOutput implements TransmissionOutputSync {
+public final class TransmissionFileSystemOutput implements TransmissionStorage {
 
     private static final Logger logger = LoggerFactory.getLogger(TransmissionFileSystemOutput.class);
 
@@ -75,15 +75,15 @@ public final class TransmissionFileSystemOutput implements TransmissionOutputSyn
     private final static String TEMP_FILE_EXTENSION = ".tmp";
     private final static String TRANSMISSION_FILE_EXTENSION = ".trn";
     private final static String TRANSMISSION_FILE_EXTENSION_FOR_SEARCH = "trn";
-    private final static int NUMBER_OF_FILES_TO_CACHE = 128;
+    private final static long RESCAN_INTERVAL_IN_MILLS = 60 * 1000;
 
     private final static int MAX_RETRY_FOR_DELETE = 2;
     private final static int DELETE_TIMEOUT_ON_FAILURE_IN_MILLS = 100;
 
     public final static int DEFAULT_CAPACITY_MEGABYTES = 10;
-    private final static int MAX_CAPACITY_MEGABYTES = 1000;
-    private final static int MIN_CAPACITY_MEGABYTES = 1;
-    private static final String MAX_TRANSMISSION_STORAGE_CAPACITY_NAME = "Channel.MaxTransmissionStorageCapacityInMB";
+    final static int MAX_CAPACITY_MEGABYTES = 1000;
+    final static int MIN_CAPACITY_MEGABYTES = 1;
+    static final String MAX_TRANSMISSION_STORAGE_CAPACITY_NAME = "Channel.MaxTransmissionStorageCapacityInMB";
 
 
     /// The folder in which we save transmission files
@@ -95,11 +95,21 @@ public final class TransmissionFileSystemOutput implements TransmissionOutputSyn
     LimitsEnforcer capacityEnforcer;
 
     /// The size of the current files we have on the disk
-    private final AtomicLong size;
+    private final AtomicLong size = new AtomicLong();
+
+    /// The number of the current files we have on the disk
+    private final AtomicLong count = new AtomicLong();
 
-    /// Cache old files here to re-send to have better performance
-    private final ArrayList<File> cacheOfOldestFiles = new ArrayList<File>();
+    /// The files that are waiting to be loaded, oldest first, with the size they were counted with. The folder is only
+    /// listed when this is empty, to pick up files that were written by other processes that share the folder
+    private final TreeMap<File, Long> pendingFiles = new TreeMap<File, Long>(new Comparator<File>() {
+        @Override
+        public int compare(File file1, File file2) {
+            return file1.getName().compareTo(file2.getName());
+        }
+    });
     private final HashSet<String> filesThatAreBeingLoaded = new HashSet<String>();
+    private long lastScanInMills;
 
     public TransmissionFileSystemOutput(String folderPath, String maxTransmissionStorageCapacity) {
         if (folderPath == null) {
@@ -123,8 +133,9 @@ public final class TransmissionFileSystemOutput implements TransmissionOutputSyn
             throw new IllegalArgumentException("Folder must exist with read and write permissions");
         }
 
-        long currentSize = getTotalSizeOfTransmissionFiles();
-        size = new AtomicLong(currentSize);
+        synchronized (this) {
+            scanFolder();
+        }
     }
 
     public TransmissionFileSystemOutput() {
@@ -164,9 +175,14 @@ public final class TransmissionFileSystemOutput implements TransmissionOutputSyn
         return true;
     }
 
+    @Override
+    public Transmission fetchOldest() {
+        return fetchOldestFile();
+    }
+
     public Transmission fetchOldestFile() {
         try {
-            Optional<File> oldestFile = fetchOldestFromCache();
+            Optional<File> oldestFile = pollOldestPendingFile();
             if (!oldestFile.isPresent()) {
                 return null;
             }
@@ -209,41 +225,33 @@ public final class TransmissionFileSystemOutput implements TransmissionOutputSyn
         return null;
     }
 
-    public void setCapacity(int suggestedCapacity) {
-        this.capacityInBytes = capacityEnforcer.normalizeValue(suggestedCapacity) * 1024L * 1024L;
+    @Override
+    public long getCount() {
+        return count.get();
     }
 
-    private List<File> sortOldestLastAndTrim(Collection<File> transmissions, int limit) {
-        List<File> asList;
-        if (!(transmissions instanceof List)) {
-            asList = Lists.newArrayList(transmissions);
-        } else {
-            asList = (List<File>)transmissions;
-        }
-
-        Collections.sort(asList, new Comparator<File>() {
-            @Override
-            public int compare(File file1, File file2) {
-            	return file2.getName().compareTo(file1.getName());
-            }
-        });
-
-        if (asList.size() > limit) {
-            asList = asList.subList(0, limit);
-        }
+    @Override
+    public long getSizeInBytes() {
+        return size.get();
+    }
 
-        return asList;
+    public void setCapacity(int suggestedCapacity) {
+        this.capacityInBytes = capacityEnforcer.normalizeValue(suggestedCapacity) * 1024L * 1024L;
     }
 
-    @SuppressWarnings("lgtm[java/input-resource-leak]") // All the streams close their delegates.
     private Optional<Transmission> loadTransmission(File file) {
         Transmission transmission = null;
 
         if (file == null) {
             return Optional.absent();
         }
-        try (ObjectInput input = new SafeObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) {
-            transmission = (Transmission)input.readObject();
+        try {
+            ByteBuffer data = readFile(file);
+            if (TransmissionFileFormat.isBinaryFormat(data)) {
+                transmission = TransmissionFileFormat.read(data);
+            } else {
+                transmission = loadSerializedTransmission(data);
+            }
         } catch (FileNotFoundException e) {
             logger.error("Failed to load transmission, file not found, exception: {}", e.toString());
         } catch (ClassNotFoundException e) {
@@ -255,6 +263,31 @@ public final class TransmissionFileSystemOutput implements TransmissionOutputSyn
         return Optional.fromNullable(transmission);
     }
 
+    @SuppressWarnings("lgtm[java/input-resource-leak]") // Closing the channel closes the stream.
+    private static ByteBuffer readFile(File file) throws IOException {
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("Transmission file is too large: " + length + " bytes");
+            }
+            ByteBuffer data = ByteBuffer.allocate((int) length);
+            while (data.hasRemaining()) {
+                if (channel.read(data) == -1) {
+                    break;
+                }
+            }
+            data.flip();
+            return data;
+        }
+    }
+
+    // files persisted by previous versions
+    private static Transmission loadSerializedTransmission(ByteBuffer data) throws IOException, ClassNotFoundException {
+        try (ObjectInput input = new SafeObjectInputStream(new ByteArrayInputStream(data.array(), data.arrayOffset() + data.position(), data.remaining()))) {
+            return (Transmission)input.readObject();
+        }
+    }
+
     private final static class SafeObjectInputStream extends ObjectInputStream {
 
         public SafeObjectInputStream(InputStream in) throws IOException {
@@ -275,7 +308,9 @@ public final class TransmissionFileSystemOutput implements TransmissionOutputSyn
         try {
             long fileLength = tempTransmissionFile.length();
             FileUtils.moveFile(tempTransmissionFile, transmissionFile);
-            size.addAndGet(fileLength);
+            synchronized (this) {
+                addPendingFile(transmissionFile, fileLength);
+            }
             return true;
         } catch (Exception e) {
             logger.error("Rename To Permanent Name failed, exception: {}", e.toString());
@@ -289,7 +324,6 @@ public final class TransmissionFileSystemOutput implements TransmissionOutputSyn
         try {
             File renamedFile = new File(folder, FilenameUtils.getBaseName(tempTransmissionFile.getName()) + TEMP_FILE_EXTENSION);
             FileUtils.moveFile(tempTransmissionFile, renamedFile);
-            size.addAndGet(-renamedFile.length());
             transmissionFile = renamedFile;
         } catch (Exception ignore) {
             logger.error("Rename To Temporary Name failed, exception: {}", ignore.toString());
@@ -299,10 +333,10 @@ public final class TransmissionFileSystemOutput implements TransmissionOutputSyn
         return Optional.fromNullable(transmissionFile);
     }
 
-    @SuppressWarnings("lgtm[java/input-resource-leak]") // All the streams close their delegates.
+    @SuppressWarnings("lgtm[java/output-resource-leak]") // Closing the channel closes the stream.
     private boolean saveTransmission(File transmissionFile, Transmission transmission) {
-        try (ObjectOutput output = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(transmissionFile)))) {
-            output.writeObject(transmission);
+        try (FileChannel channel = new FileOutputStream(transmissionFile).getChannel()) {
+            TransmissionFileFormat.write(transmission, channel);
             return true;
         } catch (IOException e) {
             logger.error("Failed to save transmission, exception: {}", e.toString());
@@ -323,48 +357,46 @@ public final class TransmissionFileSystemOutput implements TransmissionOutputSyn
         return Optional.fromNullable(file);
     }
 
-    private long getTotalSizeOfTransmissionFiles() {
-        Collection<File> transmissions = FileUtils.listFiles(folder, new String[] {TRANSMISSION_FILE_EXTENSION_FOR_SEARCH}, false);
-
-        long totalSize = 0;
-        for (File file : transmissions) {
-            totalSize += file.length();
-        }
-
-        return totalSize;
-    }
-
-    private Optional<File> fetchOldestFromCache() {
+    private Optional<File> pollOldestPendingFile() {
         synchronized (this) {
-            if (cacheOfOldestFiles.isEmpty()) {
-
-                // Fill the cache
-                Collection<File> transmissions = FileUtils.listFiles(folder, new String[] {TRANSMISSION_FILE_EXTENSION_FOR_SEARCH}, false);
-
-                if (transmissions.isEmpty()) {
-                    // No files
-                    return Optional.absent();
-                }
-
-                List<File> filesToLoad = sortOldestLastAndTrim(transmissions, NUMBER_OF_FILES_TO_CACHE);
-
-                if (filesToLoad == null || filesToLoad.isEmpty()) {
-                    return Optional.absent();
-                }
+            if (pendingFiles.isEmpty() && System.currentTimeMillis() - lastScanInMills >= RESCAN_INTERVAL_IN_MILLS) {
+                scanFolder();
+            }
 
-                cacheOfOldestFiles.addAll(filesToLoad);
+            Map.Entry<File, Long> pendingFile = pendingFiles.pollFirstEntry();
+            if (pendingFile == null) {
+                return Optional.absent();
             }
+            // the file is no longer counted even if it cannot be loaded, it is counted again if a later scan finds it
+            size.addAndGet(-pendingFile.getValue());
+            count.decrementAndGet();
 
-            File fileToLoad = cacheOfOldestFiles.remove(cacheOfOldestFiles.size() - 1);
+            File fileToLoad = pendingFile.getKey();
 
-            String fileName = fileToLoad.getName();
-            if (filesThatAreBeingLoaded.contains(fileName)) {
-                return Optional.absent();
+            filesThatAreBeingLoaded.add(fileToLoad.getName());
+            return Optional.of(fileToLoad);
+        }
+    }
+
+    // must be called while holding the lock of this
+    private void scanFolder() {
+        Collection<File> transmissions = FileUtils.listFiles(folder, new String[] {TRANSMISSION_FILE_EXTENSION_FOR_SEARCH}, false);
+        for (File file : transmissions) {
+            if (!filesThatAreBeingLoaded.contains(file.getName()) && !pendingFiles.containsKey(file)) {
+                addPendingFile(file, file.length());
             }
+        }
+        lastScanInMills = System.currentTimeMillis();
+    }
 
-            filesThatAreBeingLoaded.add(fileName);
-            // Remove oldest which is the last one, this is optimized for not doing a copy
-            return Optional.fromNullable(fileToLoad);
+    // must be called while holding the lock of this
+    private void addPendingFile(File file, long fileLength) {
+        Long previousLength = pendingFiles.put(file, fileLength);
+        if (previousLength == null) {
+            count.incrementAndGet();
+            size.addAndGet(fileLength);
+        } else {
+            size.addAndGet(fileLength - previousLength);
         }
     }
 }
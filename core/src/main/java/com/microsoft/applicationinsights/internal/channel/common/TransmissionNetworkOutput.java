@@ -33,7 +33,6 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.conn.ConnectionPoolTimeoutException;
-import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,7 +56,7 @@ public final class TransmissionNetworkOutput implements TransmissionOutputSync {
 
     private static final String CONTENT_TYPE_HEADER = "Content-Type";
     private static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
-    private static final String RESPONSE_THROTTLING_HEADER = "Retry-After";
+    static final String RESPONSE_THROTTLING_HEADER = "Retry-After";
 
     public static final String DEFAULT_SERVER_URI = "https://dc.services.visualstudio.com/v2/track";
 
@@ -167,9 +166,7 @@ public final class TransmissionNetworkOutput implements TransmissionOutputSync {
                 if (code > HttpStatus.SC_PARTIAL_CONTENT && transmission.getNumberOfSends() > this.transmissionPolicyManager.getMaxInstantRetries()) {
                     return false;
                 } else if (code == HttpStatus.SC_OK) {
-                    // If we've completed then clear the back off flags as the channel does not need
-                    // to be throttled
-                    transmissionPolicyManager.clearBackoff();
+                    onSendSucceeded(transmission);
                 }
                 return true;
 
@@ -205,20 +202,8 @@ public final class TransmissionNetworkOutput implements TransmissionOutputSync {
                 }
                 httpClient.dispose(response);
 
-                if (code == HttpStatus.SC_BAD_REQUEST) {
-                    logger.error("Error sending data: {}", reason);
-                } else if (code != HttpStatus.SC_OK) {
-                    // Invoke the listeners for handling things like errors
-                    // The listeners will handle the back off logic as well as the dispatch
-                    // operation
-                    TransmissionHandlerArgs args = new TransmissionHandlerArgs();
-                    args.setTransmission(transmission);
-                    args.setTransmissionDispatcher(transmissionDispatcher);
-                    args.setResponseBody(respString);
-                    args.setResponseCode(code);
-                    args.setException(ex);
-                    args.setRetryHeader(retryAfterHeader);
-                    this.transmissionPolicyManager.onTransmissionSent(args);
+                if (code != HttpStatus.SC_OK) {
+                    onSendFailed(transmission, code, reason, respString, retryAfterHeader, ex);
                 }
             }
         }
@@ -229,19 +214,50 @@ public final class TransmissionNetworkOutput implements TransmissionOutputSync {
         return true;
     }
 
+    /**
+     * Called once a request for the transmission completed with a code other than 200, or failed with an exception.
+     */
+    void onSendFailed(Transmission transmission, int code, @Nullable String reason, @Nullable String responseBody,
+                      @Nullable Header retryAfterHeader, @Nullable Throwable ex) {
+        if (code == HttpStatus.SC_BAD_REQUEST) {
+            logger.error("Error sending data: {}", reason);
+        } else {
+            // Invoke the listeners for handling things like errors
+            // The listeners will handle the back off logic as well as the dispatch
+            // operation
+            TransmissionHandlerArgs args = new TransmissionHandlerArgs();
+            args.setTransmission(transmission);
+            args.setTransmissionDispatcher(transmissionDispatcher);
+            args.setResponseBody(responseBody);
+            args.setResponseCode(code);
+            args.setException(ex);
+            args.setRetryHeader(retryAfterHeader);
+            this.transmissionPolicyManager.onTransmissionSent(args);
+        }
+    }
+
+    /**
+     * Called once the transmission was delivered.
+     */
+    void onSendSucceeded(Transmission transmission) {
+        // If we've completed then clear the back off flags as the channel does not need
+        // to be throttled
+        transmissionPolicyManager.clearBackoff();
+        transmission.release();
+    }
+
     /**
      * Generates the HTTP POST to send to the endpoint.
      *
      * @param transmission The transmission to send.
      * @return The completed {@link HttpPost} object
      */
-    private HttpPost createTransmissionPostRequest(Transmission transmission) {
+    HttpPost createTransmissionPostRequest(Transmission transmission) {
         HttpPost request = new HttpPost(getIngestionEndpoint());
         request.addHeader(CONTENT_TYPE_HEADER, transmission.getWebContentType());
         request.addHeader(CONTENT_ENCODING_HEADER, transmission.getWebContentEncodingType());
 
-        ByteArrayEntity bae = new ByteArrayEntity(transmission.getContent());
-        request.setEntity(bae);
+        request.setEntity(new TransmissionEntity(transmission));
 
         return request;
     }
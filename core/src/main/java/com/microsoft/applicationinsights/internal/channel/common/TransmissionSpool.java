@@ -0,0 +1,574 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.internal.channel.TransmissionStorage;
+import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
+import com.microsoft.applicationinsights.internal.util.LocalFileSystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link TransmissionStorage} that appends transmissions to a log of fixed size, memory mapped segment files
+ * instead of writing one file per transmission like {@link TransmissionFileSystemOutput} does.
+ *
+ * Every record is its length (4 bytes) followed by the transmission in the {@link TransmissionFileFormat}.
+ * The length is written after the rest of the record, so a record is only visible once it is complete,
+ * and records that were torn by a crash are detected by the checksum of the format.
+ *
+ * The read position is kept in a small memory mapped cursor file which is updated on every fetch, so a
+ * transmission that was fetched is not loaded again after a restart. A segment is deleted as a whole once
+ * the read position moves past it. Only the segment that is currently written to is mapped.
+ *
+ * The folder is used by a single spool at a time, which holds an exclusive lock on a file in it until it is closed.
+ */
+public final class TransmissionSpool implements TransmissionStorage, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransmissionSpool.class);
+
+    private final static String SPOOL_DEFAULT_FOLDER = "transmission-spool";
+    private final static String SEGMENT_FILE_EXTENSION = ".seg";
+    private final static String CURSOR_FILE_NAME = "cursor";
+    private final static String LOCK_FILE_NAME = "lock";
+
+    final static int DEFAULT_SEGMENT_SIZE_IN_BYTES = 1024 * 1024;
+
+    private final static int RECORD_HEADER_LENGTH = 4;
+
+    // segment id (8 bytes), offset (4 bytes) and the crc32 of both (4 bytes)
+    private final static int CURSOR_LENGTH = 16;
+
+    private final File folder;
+    private final int segmentSize;
+    private final long capacityInBytes;
+
+    /// Segment id to segment size, the last one is the segment that is written to
+    private final TreeMap<Long, Long> segments = new TreeMap<Long, Long>();
+    private long sizeInBytes;
+
+    /// Segments that were read completely but could not be deleted yet
+    private final List<File> segmentsToDelete = new ArrayList<File>();
+
+    /// The records that were not fetched yet
+    private long pendingCount;
+    private long pendingSizeInBytes;
+
+    private long readSegmentId;
+    private int readOffset;
+
+    private long writeSegmentId;
+    private int writeOffset;
+    private MappedByteBuffer writeSegment;
+
+    private MappedByteBuffer cursor;
+    private boolean closed;
+
+    private final FileChannel lockChannel;
+
+    public TransmissionSpool(String folderPath, String maxTransmissionStorageCapacity) throws IOException {
+        this(folderPath, maxTransmissionStorageCapacity, DEFAULT_SEGMENT_SIZE_IN_BYTES);
+    }
+
+    TransmissionSpool(String folderPath, String maxTransmissionStorageCapacity, int segmentSize) throws IOException {
+        Preconditions.checkArgument(segmentSize > RECORD_HEADER_LENGTH, "segmentSize must be larger than %s", RECORD_HEADER_LENGTH);
+
+        if (folderPath == null) {
+            folderPath = new File(LocalFileSystemUtils.getTempDir(), SPOOL_DEFAULT_FOLDER).getPath();
+        }
+
+        LimitsEnforcer capacityEnforcer = LimitsEnforcer.createWithClosestLimitOnError(TransmissionFileSystemOutput.MIN_CAPACITY_MEGABYTES,
+                                                                                       TransmissionFileSystemOutput.MAX_CAPACITY_MEGABYTES,
+                                                                                       TransmissionFileSystemOutput.DEFAULT_CAPACITY_MEGABYTES,
+                                                                                       TransmissionFileSystemOutput.MAX_TRANSMISSION_STORAGE_CAPACITY_NAME,
+                                                                                       maxTransmissionStorageCapacity);
+        capacityInBytes = capacityEnforcer.getCurrentValue() * 1024L * 1024L;
+        this.segmentSize = segmentSize;
+
+        folder = new File(folderPath);
+
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+
+        if (!folder.exists() || !folder.canRead() || !folder.canWrite()) {
+            throw new IllegalArgumentException("Folder must exist with read and write permissions");
+        }
+
+        lockChannel = new RandomAccessFile(new File(folder, LOCK_FILE_NAME), "rw").getChannel();
+        try {
+            lockFolder(lockChannel);
+            recover();
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized boolean sendSync(Transmission transmission) {
+        if (closed) {
+            return false;
+        }
+
+        try {
+            ByteBuffer[] record = TransmissionFileFormat.encode(transmission);
+            int length = 0;
+            for (ByteBuffer buffer : record) {
+                length += buffer.remaining();
+            }
+
+            if (RECORD_HEADER_LENGTH + length > writeSegment.capacity() - writeOffset
+                    && !rollSegment(RECORD_HEADER_LENGTH + length)) {
+                return false;
+            }
+
+            int recordOffset = writeOffset;
+            writeSegment.position(recordOffset + RECORD_HEADER_LENGTH);
+            for (ByteBuffer buffer : record) {
+                writeSegment.put(buffer);
+            }
+            // the length commits the record, so it is written last
+            writeSegment.putInt(recordOffset, length);
+            writeOffset = recordOffset + RECORD_HEADER_LENGTH + length;
+            ++pendingCount;
+            pendingSizeInBytes += length;
+
+            logger.debug("Data persisted to spool. To be sent when the network is available.");
+            return true;
+        } catch (IOException e) {
+            logger.error("Failed to persist transmission to spool: {}", e.toString());
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized Transmission fetchOldest() {
+        if (closed) {
+            return null;
+        }
+
+        while (readSegmentId != writeSegmentId) {
+            Transmission transmission = readFromSealedSegment();
+            if (transmission != null) {
+                return transmission;
+            }
+            moveToNextSegment();
+        }
+
+        if (readOffset >= writeOffset) {
+            return null;
+        }
+
+        int length = writeSegment.getInt(readOffset);
+        try {
+            Transmission transmission = decode(writeSegment, readOffset + RECORD_HEADER_LENGTH, length);
+            moveReadOffset(length);
+            return transmission;
+        } catch (IOException e) {
+            logger.error("Failed to load transmission from spool, skipping the rest of the segment: {}", e.toString());
+            readOffset = writeOffset;
+            storeCursor();
+            clearPendingWhenAllRead();
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized long getCount() {
+        return pendingCount;
+    }
+
+    @Override
+    public synchronized long getSizeInBytes() {
+        return pendingSizeInBytes;
+    }
+
+    /**
+     * Releases the mapped files and the lock of the folder, the spool cannot be used afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        MappedByteBuffer segment = writeSegment;
+        MappedByteBuffer cursorFile = cursor;
+        writeSegment = null;
+        cursor = null;
+        unmap(segment);
+        unmap(cursorFile);
+        try {
+            // closing the channel releases the lock
+            lockChannel.close();
+        } catch (IOException e) {
+            logger.debug("Failed to release the lock of the transmission spool: {}", e.toString());
+        }
+    }
+
+    /**
+     * Every process that uses the default folder shares it, so a spool only uses a folder that is not
+     * already used by another one, in this process or in another.
+     */
+    private void lockFolder(FileChannel channel) throws IOException {
+        FileLock folderLock;
+        try {
+            folderLock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            folderLock = null;
+        }
+        if (folderLock == null) {
+            throw new IOException("The transmission spool folder " + folder + " is already in use");
+        }
+    }
+
+    private void recover() throws IOException {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Long segmentId = parseSegmentId(file.getName());
+                if (segmentId != null) {
+                    segments.put(segmentId, file.length());
+                    sizeInBytes += file.length();
+                }
+            }
+        }
+
+        cursor = map(new File(folder, CURSOR_FILE_NAME), CURSOR_LENGTH);
+        long cursorSegmentId = cursor.getLong(0);
+        int cursorOffset = cursor.getInt(8);
+        boolean validCursor = cursor.getInt(12) == cursorChecksum(cursorSegmentId, cursorOffset) && cursorOffset >= 0;
+
+        if (segments.isEmpty()) {
+            openWriteSegment(validCursor ? cursorSegmentId + 1 : 1, segmentSize);
+            readSegmentId = writeSegmentId;
+            readOffset = 0;
+            storeCursor();
+            return;
+        }
+
+        if (validCursor && segments.containsKey(cursorSegmentId)) {
+            readSegmentId = cursorSegmentId;
+            readOffset = cursorOffset;
+        } else {
+            // everything that is left is sent again rather than lost
+            readSegmentId = segments.firstKey();
+            readOffset = 0;
+        }
+
+        // the cursor moved past these but the process stopped before they were deleted
+        Iterator<Map.Entry<Long, Long>> iterator = segments.headMap(readSegmentId).entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> segment = iterator.next();
+            sizeInBytes -= segment.getValue();
+            segmentsToDelete.add(segmentFile(segment.getKey()));
+            iterator.remove();
+        }
+        deleteReadSegments();
+
+        long lastSegmentId = segments.lastKey();
+        openWriteSegment(lastSegmentId, Math.max(segments.get(lastSegmentId), segmentSize));
+        writeOffset = findEndOfRecords(writeSegment);
+        if (writeOffset < writeSegment.capacity() - RECORD_HEADER_LENGTH) {
+            // a torn record must not be taken for a complete one once the space is written again
+            writeSegment.putInt(writeOffset, 0);
+        }
+        if (readSegmentId == writeSegmentId && readOffset > writeOffset) {
+            readOffset = writeOffset;
+        }
+        storeCursor();
+        countPendingRecords();
+
+        logger.debug("Transmission spool recovered {} segments, reading from segment {} at offset {}", segments.size(), readSegmentId, readOffset);
+    }
+
+    private boolean rollSegment(int minimumSize) throws IOException {
+        long size = Math.max(segmentSize, minimumSize);
+        boolean writeSegmentWasRead = readSegmentId == writeSegmentId && readOffset >= writeOffset;
+        long sizeAfterRoll = sizeInBytes + size - (writeSegmentWasRead ? segments.get(writeSegmentId) : 0);
+        if (sizeAfterRoll > capacityInBytes) {
+            logger.error("Persistent storage max capacity has been reached; "
+                + "currently at {} bytes. Telemetry will be lost, "
+                + "please consider increasing the value of MaxTransmissionStorageFilesCapacityInMB property in the configuration file.",
+                sizeInBytes);
+            return false;
+        }
+
+        MappedByteBuffer sealed = writeSegment;
+        writeSegment = null;
+        sealed.force();
+        unmap(sealed);
+
+        openWriteSegment(writeSegmentId + 1, size);
+        if (writeSegmentWasRead) {
+            moveToNextSegment();
+        }
+        return true;
+    }
+
+    private void openWriteSegment(long segmentId, long size) throws IOException {
+        writeSegment = map(segmentFile(segmentId), size);
+        writeSegmentId = segmentId;
+        writeOffset = 0;
+
+        Long previousSize = segments.put(segmentId, size);
+        sizeInBytes += size - (previousSize == null ? 0 : previousSize);
+    }
+
+    private Transmission readFromSealedSegment() {
+        File file = segmentFile(readSegmentId);
+        try (RandomAccessFile segment = new RandomAccessFile(file, "r")) {
+            FileChannel channel = segment.getChannel();
+            long size = channel.size();
+            if (readOffset + RECORD_HEADER_LENGTH > size) {
+                return null;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+            readFully(channel, header, readOffset);
+            int length = header.getInt(0);
+            if (length <= 0) {
+                // the rest of the segment did not have room for the next record
+                return null;
+            }
+            if (length > size - readOffset - RECORD_HEADER_LENGTH) {
+                throw new IOException("Truncated record at offset " + readOffset);
+            }
+
+            ByteBuffer record = ByteBuffer.allocate(length);
+            readFully(channel, record, readOffset + RECORD_HEADER_LENGTH);
+            record.flip();
+            Transmission transmission = TransmissionFileFormat.read(record);
+            moveReadOffset(length);
+            return transmission;
+        } catch (IOException e) {
+            logger.error("Failed to load transmission from {}, skipping the rest of the segment: {}", file.getName(), e.toString());
+            return null;
+        }
+    }
+
+    private void moveReadOffset(int recordLength) {
+        readOffset += RECORD_HEADER_LENGTH + recordLength;
+        storeCursor();
+
+        --pendingCount;
+        pendingSizeInBytes -= recordLength;
+        clearPendingWhenAllRead();
+    }
+
+    // records that were skipped because they were corrupted are not counted out one by one
+    private void clearPendingWhenAllRead() {
+        if (readSegmentId == writeSegmentId && readOffset >= writeOffset) {
+            pendingCount = 0;
+            pendingSizeInBytes = 0;
+        }
+    }
+
+    private void countPendingRecords() {
+        for (long segmentId : segments.keySet()) {
+            int offset = segmentId == readSegmentId ? readOffset : 0;
+            if (segmentId == writeSegmentId) {
+                while (offset < writeOffset) {
+                    int length = writeSegment.getInt(offset);
+                    ++pendingCount;
+                    pendingSizeInBytes += length;
+                    offset += RECORD_HEADER_LENGTH + length;
+                }
+                continue;
+            }
+
+            try (RandomAccessFile segment = new RandomAccessFile(segmentFile(segmentId), "r")) {
+                FileChannel channel = segment.getChannel();
+                long size = channel.size();
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+                while (offset + RECORD_HEADER_LENGTH <= size) {
+                    header.clear();
+                    readFully(channel, header, offset);
+                    int length = header.getInt(0);
+                    if (length <= 0 || length > size - offset - RECORD_HEADER_LENGTH) {
+                        break;
+                    }
+                    ++pendingCount;
+                    pendingSizeInBytes += length;
+                    offset += RECORD_HEADER_LENGTH + length;
+                }
+            } catch (IOException e) {
+                logger.debug("Failed to count the transmissions in segment {}: {}", segmentId, e.toString());
+            }
+        }
+    }
+
+    private void moveToNextSegment() {
+        Long readSegmentSize = segments.remove(readSegmentId);
+        if (readSegmentSize != null) {
+            sizeInBytes -= readSegmentSize;
+        }
+        segmentsToDelete.add(segmentFile(readSegmentId));
+
+        readSegmentId = segments.higherKey(readSegmentId);
+        readOffset = 0;
+        // the cursor is stored first, segments before it are deleted on recovery if the process stops in between
+        storeCursor();
+        clearPendingWhenAllRead();
+
+        deleteReadSegments();
+    }
+
+    private void deleteReadSegments() {
+        Iterator<File> iterator = segmentsToDelete.iterator();
+        while (iterator.hasNext()) {
+            File file = iterator.next();
+            if (file.delete() || !file.exists()) {
+                iterator.remove();
+            } else {
+                logger.debug("Failed to delete {}, will try again later", file.getName());
+            }
+        }
+    }
+
+    private void storeCursor() {
+        cursor.putLong(0, readSegmentId);
+        cursor.putInt(8, readOffset);
+        cursor.putInt(12, cursorChecksum(readSegmentId, readOffset));
+    }
+
+    private File segmentFile(long segmentId) {
+        return new File(folder, String.format("%020d%s", segmentId, SEGMENT_FILE_EXTENSION));
+    }
+
+    private static Long parseSegmentId(String fileName) {
+        if (!fileName.endsWith(SEGMENT_FILE_EXTENSION)) {
+            return null;
+        }
+        try {
+            return Long.parseLong(fileName.substring(0, fileName.length() - SEGMENT_FILE_EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the offset after the last complete record, records are checked all the way
+     * since a crash can leave the last one partially written.
+     */
+    private static int findEndOfRecords(ByteBuffer segment) {
+        int offset = 0;
+        while (offset <= segment.capacity() - RECORD_HEADER_LENGTH) {
+            int length = segment.getInt(offset);
+            if (length <= 0 || length > segment.capacity() - offset - RECORD_HEADER_LENGTH) {
+                break;
+            }
+            try {
+                decode(segment, offset + RECORD_HEADER_LENGTH, length);
+            } catch (IOException e) {
+                logger.warn("Dropping a partially written transmission at offset {}: {}", offset, e.toString());
+                break;
+            }
+            offset += RECORD_HEADER_LENGTH + length;
+        }
+        return offset;
+    }
+
+    private static Transmission decode(ByteBuffer segment, int offset, int length) throws IOException {
+        ByteBuffer source = segment.duplicate();
+        source.position(offset);
+        source.limit(offset + length);
+        ByteBuffer record = ByteBuffer.allocate(length);
+        record.put(source);
+        record.flip();
+        return TransmissionFileFormat.read(record);
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) == -1) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static int cursorChecksum(long segmentId, int offset) {
+        ByteBuffer value = ByteBuffer.allocate(12);
+        value.putLong(segmentId);
+        value.putInt(offset);
+        CRC32 crc = new CRC32();
+        crc.update(value.array(), 0, value.capacity());
+        return (int) crc.getValue();
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            // the mapping stays valid after the file is closed
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    // a mapping is otherwise only released when the buffer is garbage collected,
+    // and a mapped file cannot be deleted on Windows
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            try {
+                Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+                Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+                theUnsafe.setAccessible(true);
+                invokeCleaner.invoke(theUnsafe.get(null), buffer);
+                return;
+            } catch (NoSuchMethodException e) {
+                // java 8 and before
+            }
+            Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(buffer);
+            if (cleaner != null) {
+                Method clean = cleaner.getClass().getMethod("clean");
+                clean.setAccessible(true);
+                clean.invoke(cleaner);
+            }
+        } catch (Exception e) {
+            logger.debug("Failed to unmap a spool segment: {}", e.toString());
+        }
+    }
+}
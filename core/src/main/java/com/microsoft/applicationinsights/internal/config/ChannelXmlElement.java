@@ -47,6 +47,16 @@ public class ChannelXmlElement {
 
     private String maxInstantRetry;
 
+    private boolean stripedTelemetryBuffer;
+
+    private boolean segmentedTransmissionSpool;
+
+    private boolean adaptiveBacklogDrain;
+
+    private boolean asyncHttpTransport;
+
+    private String maxInFlightRequests;
+
     private String type = "com.microsoft.applicationinsights.channel.concrete.inprocess.InProcessTelemetryChannel";
 
     public String getType() {
@@ -129,6 +139,46 @@ public class ChannelXmlElement {
         this.maxInstantRetry = maxInstantRetry;
     }
 
+    public boolean getStripedTelemetryBuffer() {
+        return stripedTelemetryBuffer;
+    }
+
+    public void setStripedTelemetryBuffer(boolean stripedTelemetryBuffer) {
+        this.stripedTelemetryBuffer = stripedTelemetryBuffer;
+    }
+
+    public boolean getSegmentedTransmissionSpool() {
+        return segmentedTransmissionSpool;
+    }
+
+    public void setSegmentedTransmissionSpool(boolean segmentedTransmissionSpool) {
+        this.segmentedTransmissionSpool = segmentedTransmissionSpool;
+    }
+
+    public boolean getAdaptiveBacklogDrain() {
+        return adaptiveBacklogDrain;
+    }
+
+    public void setAdaptiveBacklogDrain(boolean adaptiveBacklogDrain) {
+        this.adaptiveBacklogDrain = adaptiveBacklogDrain;
+    }
+
+    public boolean getAsyncHttpTransport() {
+        return asyncHttpTransport;
+    }
+
+    public void setAsyncHttpTransport(boolean asyncHttpTransport) {
+        this.asyncHttpTransport = asyncHttpTransport;
+    }
+
+    public String getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public void setMaxInFlightRequests(String maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
     public Map<String, String> getData() {
         HashMap<String, String> data = new HashMap<String, String>();
         if (developerMode) {
@@ -158,6 +208,26 @@ public class ChannelXmlElement {
 
         data.put("Throttling", throttling ? "true" : "false");
 
+        if (stripedTelemetryBuffer) {
+            data.put("StripedTelemetryBuffer", "true");
+        }
+
+        if (segmentedTransmissionSpool) {
+            data.put("SegmentedTransmissionSpool", "true");
+        }
+
+        if (adaptiveBacklogDrain) {
+            data.put("AdaptiveBacklogDrain", "true");
+        }
+
+        if (asyncHttpTransport) {
+            data.put("AsyncHttpTransport", "true");
+        }
+
+        if (!Strings.isNullOrEmpty(maxInFlightRequests)) {
+            data.put("MaxInFlightRequests", maxInFlightRequests);
+        }
+
         return data;
     }
 }
@@ -93,17 +93,38 @@ public enum TelemetryConfigurationFactory {
 
     public void initialize(TelemetryConfiguration configuration,
                            ApplicationInsightsXmlConfiguration applicationInsightsConfig) {
+        initializeValues(configuration, applicationInsightsConfig);
+        initializeChannelAndModules(configuration, applicationInsightsConfig);
+    }
 
+    /**
+     * Sets the instrumentation key, connection string, role and tracking disabled mode, which is quick.
+     * The rest is left to {@link #initializeChannelAndModules(TelemetryConfiguration, ApplicationInsightsXmlConfiguration)},
+     * which can then be run later, e.g. on a background thread so that it does not delay the application's startup.
+     * @param configuration The configuration that will be populated
+     * @param applicationInsightsConfig The configuration data
+     */
+    public void initializeValues(TelemetryConfiguration configuration,
+                                 ApplicationInsightsXmlConfiguration applicationInsightsConfig) {
         setInstrumentationKey(applicationInsightsConfig, configuration);
         setConnectionString(applicationInsightsConfig, configuration);
         setRoleName(applicationInsightsConfig, configuration);
         setRoleInstance(applicationInsightsConfig, configuration);
+        configuration.setTrackingIsDisabled(applicationInsightsConfig.isDisableTelemetry());
+    }
 
+    /**
+     * Creates the channel, the telemetry modules (which start the heartbeat and the performance counters)
+     * and QuickPulse.
+     * @param configuration The configuration that will be populated
+     * @param applicationInsightsConfig The configuration data
+     */
+    public void initializeChannelAndModules(TelemetryConfiguration configuration,
+                                            ApplicationInsightsXmlConfiguration applicationInsightsConfig) {
         boolean channelIsConfigured = setChannel(applicationInsightsConfig.getChannel(), configuration);
         if (!channelIsConfigured) {
             logger.warn("No channel was initialized. A channel must be set before telemetry tracking will operate correctly.");
         }
-        configuration.setTrackingIsDisabled(applicationInsightsConfig.isDisableTelemetry());
 
         setTelemetryModules(applicationInsightsConfig, configuration);
 
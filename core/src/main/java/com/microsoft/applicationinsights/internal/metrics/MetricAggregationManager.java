@@ -0,0 +1,212 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.TelemetryConfiguration;
+import com.microsoft.applicationinsights.internal.util.ThreadPoolUtils;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Owns the {@link MetricAggregator}s behind {@code TelemetryClient.getMetric} and flushes all of them from
+ * a single background thread once per aggregation period. The aggregators of a configuration are released when
+ * its clients shut down, and the thread only runs while there are aggregators.
+ *
+ * Aggregators are kept per client and metric name, so the aggregates are tracked through the client which
+ * recorded the values, with its context and instrumentation key. The period defaults to 60 seconds and can be changed with the
+ * {@value #AGGREGATION_PERIOD_SYSTEM_PROPERTY_NAME} system property.
+ */
+public enum MetricAggregationManager {
+    INSTANCE;
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricAggregationManager.class);
+
+    public static final String AGGREGATION_PERIOD_SYSTEM_PROPERTY_NAME = "APPLICATION_INSIGHTS_METRIC_AGGREGATION_PERIOD_IN_SECONDS";
+
+    public static final long DEFAULT_AGGREGATION_PERIOD_IN_SECONDS = 60;
+
+    private final ConcurrentMap<AggregatorKey, MetricAggregator> aggregators = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService flushService;
+
+    public MetricAggregator getAggregator(TelemetryClient telemetryClient, TelemetryConfiguration configuration,
+                                          String name, String... dimensionNames) {
+        Preconditions.checkArgument(!Strings.isNullOrEmpty(name), "name must be a non-empty value");
+        Preconditions.checkNotNull(dimensionNames, "dimensionNames must be a non-null value");
+        for (String dimensionName : dimensionNames) {
+            Preconditions.checkArgument(!Strings.isNullOrEmpty(dimensionName), "dimension names must be non-empty values");
+        }
+
+        AggregatorKey key = new AggregatorKey(telemetryClient, configuration, name);
+        MetricAggregator aggregator = aggregators.get(key);
+        if (aggregator == null) {
+            MetricAggregator created = new MetricAggregator(telemetryClient, name, dimensionNames, MetricAggregator.DEFAULT_MAX_SERIES);
+            aggregator = aggregators.putIfAbsent(key, created);
+            if (aggregator == null) {
+                aggregator = created;
+                startFlushing();
+            }
+        }
+        Preconditions.checkArgument(aggregator.getDimensionNames().equals(Arrays.asList(dimensionNames)),
+                "metric '%s' was already created with the dimensions %s", name, aggregator.getDimensionNames());
+        return aggregator;
+    }
+
+    /**
+     * Tracks the aggregates of every metric and starts a new aggregation period.
+     */
+    public void flush() {
+        for (MetricAggregator aggregator : aggregators.values()) {
+            flush(aggregator);
+        }
+    }
+
+    /**
+     * Tracks the aggregates of the metrics of one configuration and starts a new aggregation period for them,
+     * so that they are sent with the rest when its channel is flushed.
+     */
+    public void flush(TelemetryConfiguration configuration) {
+        for (Map.Entry<AggregatorKey, MetricAggregator> entry : aggregators.entrySet()) {
+            if (entry.getKey().configuration == configuration) {
+                flush(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Tracks the last aggregates of the metrics of one configuration and releases them, so that neither the
+     * configuration nor its clients are kept reachable after shutdown. The background thread is stopped when no
+     * metric is left, and is started again by the next one.
+     */
+    public void stop(TelemetryConfiguration configuration, long timeout, TimeUnit timeUnit) {
+        for (Map.Entry<AggregatorKey, MetricAggregator> entry : aggregators.entrySet()) {
+            if (entry.getKey().configuration == configuration && aggregators.remove(entry.getKey(), entry.getValue())) {
+                flush(entry.getValue());
+            }
+        }
+        stopFlushingIfIdle(timeout, timeUnit);
+    }
+
+    private static void flush(MetricAggregator aggregator) {
+        try {
+            for (MetricTelemetry metric : aggregator.flush()) {
+                aggregator.getTelemetryClient().trackMetric(metric);
+            }
+        } catch (ThreadDeath td) {
+            throw td;
+        } catch (Throwable t) {
+            try {
+                logger.error("Error while tracking aggregates of metric '{}'", aggregator.getName(), t);
+            } catch (ThreadDeath td) {
+                throw td;
+            } catch (Throwable t2) {
+                // chomp
+            }
+        }
+    }
+
+    static long getAggregationPeriodInSeconds() {
+        long period = Long.getLong(AGGREGATION_PERIOD_SYSTEM_PROPERTY_NAME, DEFAULT_AGGREGATION_PERIOD_IN_SECONDS);
+        if (period <= 0) {
+            logger.warn("'{}' must be a positive number, using the default of {} seconds",
+                    AGGREGATION_PERIOD_SYSTEM_PROPERTY_NAME, DEFAULT_AGGREGATION_PERIOD_IN_SECONDS);
+            return DEFAULT_AGGREGATION_PERIOD_IN_SECONDS;
+        }
+        return period;
+    }
+
+    /*@VisibleForTesting*/
+    void clear() {
+        aggregators.clear();
+    }
+
+    /*@VisibleForTesting*/
+    synchronized boolean isFlushing() {
+        return flushService != null;
+    }
+
+    private synchronized void startFlushing() {
+        if (flushService != null) {
+            return;
+        }
+        long period = getAggregationPeriodInSeconds();
+        flushService = Executors.newSingleThreadScheduledExecutor(ThreadPoolUtils.createDaemonThreadFactory(MetricAggregationManager.class));
+        flushService.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, period, period, TimeUnit.SECONDS);
+        logger.debug("metrics are aggregated every {} seconds", period);
+    }
+
+    // synchronized with startFlushing, which runs after a new aggregator is added
+    private synchronized void stopFlushingIfIdle(long timeout, TimeUnit timeUnit) {
+        if (flushService == null || !aggregators.isEmpty()) {
+            return;
+        }
+        ThreadPoolUtils.stop(flushService, timeout, timeUnit);
+        flushService = null;
+    }
+
+    private static final class AggregatorKey {
+        private final TelemetryClient telemetryClient;
+        private final TelemetryConfiguration configuration;
+        private final String name;
+
+        AggregatorKey(TelemetryClient telemetryClient, TelemetryConfiguration configuration, String name) {
+            this.telemetryClient = telemetryClient;
+            this.configuration = configuration;
+            this.name = name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof AggregatorKey)) {
+                return false;
+            }
+            AggregatorKey that = (AggregatorKey) o;
+            return telemetryClient == that.telemetryClient && name.equals(that.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(telemetryClient) + name.hashCode();
+        }
+    }
+}
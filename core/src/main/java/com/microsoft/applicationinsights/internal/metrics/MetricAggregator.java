@@ -0,0 +1,290 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+
+/**
+ * Aggregates the values of one metric locally into count, sum, min, max and standard deviation, one series
+ * per combination of dimension values, until the {@link MetricAggregationManager} flushes it.
+ *
+ * Every series accumulates into primitive doubles under its own monitor; values of different series never
+ * contend. The number of series is capped, values for further dimension combinations are folded into a
+ * single overflow series whose dimension values are all {@link #OVERFLOW_DIMENSION_VALUE}. Series that did not
+ * receive any value during a period are dropped when it is flushed, so the cap applies to the series in use.
+ *
+ * A null dimension value is the same as an empty one, both are sent as an empty value.
+ */
+public final class MetricAggregator {
+
+    public static final int DEFAULT_MAX_SERIES = 1000;
+
+    static final String OVERFLOW_DIMENSION_VALUE = "Other";
+
+    private final TelemetryClient telemetryClient;
+    private final String name;
+    private final List<String> dimensionNames;
+    private final int maxSeries;
+
+    // the series without dimensions is by far the most common, so it skips the map altogether
+    private final Series seriesWithoutDimensions;
+    private final ConcurrentMap<SeriesKey, Series> series = new ConcurrentHashMap<>();
+    private final AtomicInteger numberOfSeries = new AtomicInteger();
+    private final SeriesKey overflowKey;
+
+    MetricAggregator(TelemetryClient telemetryClient, String name, String[] dimensionNames, int maxSeries) {
+        Preconditions.checkNotNull(telemetryClient, "telemetryClient must be a non-null value");
+        Preconditions.checkArgument(maxSeries > 0, "maxSeries must be a positive number");
+        this.telemetryClient = telemetryClient;
+        this.name = name;
+        this.dimensionNames = Collections.unmodifiableList(Arrays.asList(dimensionNames.clone()));
+        this.maxSeries = maxSeries;
+        this.seriesWithoutDimensions = dimensionNames.length == 0 ? new Series(new String[0]) : null;
+
+        String[] overflowValues = new String[dimensionNames.length];
+        Arrays.fill(overflowValues, OVERFLOW_DIMENSION_VALUE);
+        this.overflowKey = new SeriesKey(overflowValues);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getDimensionNames() {
+        return dimensionNames;
+    }
+
+    TelemetryClient getTelemetryClient() {
+        return telemetryClient;
+    }
+
+    public void trackValue(double value) {
+        if (seriesWithoutDimensions != null) {
+            seriesWithoutDimensions.add(value);
+            return;
+        }
+        trackValue(value, new String[0]);
+    }
+
+    public void trackValue(double value, String... dimensionValues) {
+        if (dimensionValues.length == 0 && seriesWithoutDimensions != null) {
+            seriesWithoutDimensions.add(value);
+            return;
+        }
+        Preconditions.checkArgument(dimensionValues.length == dimensionNames.size(),
+                "metric '%s' has %s dimensions, but %s values were given", name, dimensionNames.size(), dimensionValues.length);
+        // a series that was just dropped by a flush does not take the value, it goes to the series that replaces it
+        while (!getSeries(dimensionValues).add(value)) {
+        }
+    }
+
+    int getNumberOfSeries() {
+        return seriesWithoutDimensions != null ? 1 : numberOfSeries.get();
+    }
+
+    /**
+     * Resets all series and returns the aggregates of the ones that received values since the last flush.
+     * The series that did not receive any are dropped.
+     */
+    List<MetricTelemetry> flush() {
+        List<MetricTelemetry> metrics = new ArrayList<>();
+        if (seriesWithoutDimensions != null) {
+            addIfNotEmpty(seriesWithoutDimensions.getAndReset(), metrics);
+        } else {
+            for (Map.Entry<SeriesKey, Series> entry : series.entrySet()) {
+                Series current = entry.getValue();
+                MetricTelemetry metric = current.getAndReset();
+                if (metric != null) {
+                    metrics.add(metric);
+                } else if (series.remove(entry.getKey(), current)) {
+                    numberOfSeries.decrementAndGet();
+                    // values added after the check above, before the series was removed, are still sent
+                    addIfNotEmpty(current.retire(), metrics);
+                }
+            }
+        }
+        return metrics;
+    }
+
+    private void addIfNotEmpty(MetricTelemetry metric, List<MetricTelemetry> metrics) {
+        if (metric != null) {
+            metrics.add(metric);
+        }
+    }
+
+    private Series getSeries(String[] dimensionValues) {
+        String[] values = dimensionValues;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == null) {
+                if (values == dimensionValues) {
+                    // the caller's array is not changed
+                    values = values.clone();
+                }
+                values[i] = "";
+            }
+        }
+        SeriesKey key = new SeriesKey(values);
+        Series existing = series.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        if (numberOfSeries.get() >= maxSeries) {
+            key = overflowKey;
+            existing = series.get(key);
+            if (existing != null) {
+                return existing;
+            }
+        } else {
+            // the caller may reuse its array, so the key that is kept must own a copy
+            key = new SeriesKey(key.values.clone());
+        }
+        Series created = new Series(key.values);
+        existing = series.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+        numberOfSeries.incrementAndGet();
+        return created;
+    }
+
+    private final class Series {
+        private final String[] dimensionValues;
+
+        private long count;
+        private double sum;
+        private double sumOfSquares;
+        private double min;
+        private double max;
+
+        // set once the series is no longer in the map of its aggregator
+        private boolean retired;
+
+        Series(String[] dimensionValues) {
+            this.dimensionValues = dimensionValues;
+        }
+
+        /**
+         * @return false if the series was dropped and the value was not added.
+         */
+        synchronized boolean add(double value) {
+            if (retired) {
+                return false;
+            }
+            if (count == 0) {
+                min = value;
+                max = value;
+            } else {
+                if (value < min) {
+                    min = value;
+                }
+                if (value > max) {
+                    max = value;
+                }
+            }
+            count++;
+            sum += value;
+            sumOfSquares += value * value;
+            return true;
+        }
+
+        MetricTelemetry retire() {
+            synchronized (this) {
+                retired = true;
+            }
+            return getAndReset();
+        }
+
+        MetricTelemetry getAndReset() {
+            long count;
+            double sum;
+            double sumOfSquares;
+            double min;
+            double max;
+            synchronized (this) {
+                if (this.count == 0) {
+                    return null;
+                }
+                count = this.count;
+                sum = this.sum;
+                sumOfSquares = this.sumOfSquares;
+                min = this.min;
+                max = this.max;
+                this.count = 0;
+                this.sum = 0;
+                this.sumOfSquares = 0;
+            }
+
+            double mean = sum / count;
+            double variance = Math.max(0, sumOfSquares / count - mean * mean);
+
+            MetricTelemetry metric = new MetricTelemetry(name, sum);
+            metric.setCount((int) Math.min(count, Integer.MAX_VALUE));
+            metric.setMin(min);
+            metric.setMax(max);
+            metric.setStandardDeviation(Math.sqrt(variance));
+            Map<String, String> properties = metric.getProperties();
+            for (int i = 0; i < dimensionValues.length; i++) {
+                properties.put(dimensionNames.get(i), dimensionValues[i]);
+            }
+            return metric;
+        }
+    }
+
+    private static final class SeriesKey {
+        final String[] values;
+        private final int hashCode;
+
+        SeriesKey(String[] values) {
+            this.values = values;
+            this.hashCode = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SeriesKey)) {
+                return false;
+            }
+            SeriesKey that = (SeriesKey) o;
+            return hashCode == that.hashCode && Arrays.equals(values, that.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.SupportSampling;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+
+/**
+ * Pre-aggregates requests and dependencies into per-interval series of count, duration sum, min, max and
+ * failure count, so that request rate, error rate and latency can be charted without relying on the
+ * individual (and possibly sampled) items.
+ *
+ * {@link #add(Telemetry)} is called from {@code TelemetryClient.track} for every item and never blocks:
+ * series are looked up in a concurrent map and updated with atomic instructions. Items that were kept by
+ * sampling are weighted by the inverse of their sampling percentage, so the counts are estimates of the
+ * full traffic rather than of the sampled subset.
+ *
+ * The number of series per interval is capped, further keys are folded into a single overflow series.
+ */
+public enum StandardMetricsCollector {
+    INSTANCE;
+
+    public static final String REQUEST_DURATION_METRIC_NAME = "requests/duration";
+    public static final String REQUEST_FAILED_METRIC_NAME = "requests/failed";
+    public static final String DEPENDENCY_DURATION_METRIC_NAME = "dependencies/duration";
+    public static final String DEPENDENCY_FAILED_METRIC_NAME = "dependencies/failed";
+
+    public static final String OPERATION_NAME_DIMENSION = "operation/name";
+    public static final String REQUEST_RESULT_CODE_DIMENSION = "request/resultCode";
+    public static final String DEPENDENCY_TYPE_DIMENSION = "dependency/type";
+    public static final String DEPENDENCY_TARGET_DIMENSION = "dependency/target";
+    public static final String DEPENDENCY_RESULT_CODE_DIMENSION = "dependency/resultCode";
+
+    static final String OVERFLOW_DIMENSION_VALUE = "Other";
+
+    static final int MAX_SERIES_PER_INTERVAL = 1000;
+
+    private static final SeriesKey REQUEST_OVERFLOW_KEY = new SeriesKey(true, OVERFLOW_DIMENSION_VALUE, OVERFLOW_DIMENSION_VALUE, null, null);
+    private static final SeriesKey DEPENDENCY_OVERFLOW_KEY = new SeriesKey(false, OVERFLOW_DIMENSION_VALUE, OVERFLOW_DIMENSION_VALUE, OVERFLOW_DIMENSION_VALUE, OVERFLOW_DIMENSION_VALUE);
+
+    private final AtomicReference<Series> series = new AtomicReference<>(null);
+
+    public synchronized void enable() {
+        if (series.get() == null) {
+            series.set(new Series());
+        }
+    }
+
+    public synchronized void disable() {
+        series.set(null);
+    }
+
+    public boolean isEnabled() {
+        return series.get() != null;
+    }
+
+    public void add(Telemetry telemetry) {
+        Series current = series.get();
+        if (current == null) {
+            return;
+        }
+
+        if (telemetry instanceof RequestTelemetry) {
+            RequestTelemetry request = (RequestTelemetry) telemetry;
+            SeriesKey key = new SeriesKey(true, request.getName(), request.getResponseCode(), null, null);
+            current.getAggregate(key).add(weightOf(request), request.getDuration().getTotalMilliseconds(), request.isSuccess());
+        } else if (telemetry instanceof RemoteDependencyTelemetry) {
+            RemoteDependencyTelemetry dependency = (RemoteDependencyTelemetry) telemetry;
+            SeriesKey key = new SeriesKey(false, dependency.getContext().getOperation().getName(),
+                    dependency.getResultCode(), dependency.getType(), dependency.getTarget());
+            current.getAggregate(key).add(weightOf(dependency), dependency.getDuration().getTotalMilliseconds(), dependency.getSuccess());
+        }
+    }
+
+    /**
+     * Swaps in a fresh set of series and returns the aggregates of the interval that just ended.
+     * @return The metrics to track, empty if nothing was collected or the collector is disabled.
+     */
+    public synchronized List<MetricTelemetry> getAndRestart() {
+        Series previous = series.get();
+        if (previous == null) {
+            return new ArrayList<>();
+        }
+        series.set(new Series());
+        return previous.toMetrics();
+    }
+
+    private static long weightOf(SupportSampling telemetry) {
+        Double samplingPercentage = telemetry.getSamplingPercentage();
+        if (samplingPercentage == null || samplingPercentage <= 0 || samplingPercentage >= 100) {
+            return 1;
+        }
+        // sampling percentages are of the form 100/N, so N items are represented by each kept item
+        return Math.max(1, Math.round(100.0 / samplingPercentage));
+    }
+
+    private static final class Series {
+        private final ConcurrentMap<SeriesKey, Aggregate> aggregates = new ConcurrentHashMap<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        Aggregate getAggregate(SeriesKey key) {
+            Aggregate aggregate = aggregates.get(key);
+            if (aggregate != null) {
+                return aggregate;
+            }
+            if (size.get() >= MAX_SERIES_PER_INTERVAL) {
+                key = key.isRequest ? REQUEST_OVERFLOW_KEY : DEPENDENCY_OVERFLOW_KEY;
+                aggregate = aggregates.get(key);
+                if (aggregate != null) {
+                    return aggregate;
+                }
+            }
+            aggregate = new Aggregate();
+            Aggregate existing = aggregates.putIfAbsent(key, aggregate);
+            if (existing != null) {
+                return existing;
+            }
+            size.incrementAndGet();
+            return aggregate;
+        }
+
+        List<MetricTelemetry> toMetrics() {
+            List<MetricTelemetry> metrics = new ArrayList<>(aggregates.size());
+            for (Map.Entry<SeriesKey, Aggregate> entry : aggregates.entrySet()) {
+                entry.getValue().toMetrics(entry.getKey(), metrics);
+            }
+            return metrics;
+        }
+    }
+
+    private static final class SeriesKey {
+        final boolean isRequest;
+        final String operationName;
+        final String resultCode;
+        final String type;
+        final String target;
+        private final int hashCode;
+
+        SeriesKey(boolean isRequest, String operationName, String resultCode, String type, String target) {
+            this.isRequest = isRequest;
+            this.operationName = operationName;
+            this.resultCode = resultCode;
+            this.type = type;
+            this.target = target;
+            int hash = isRequest ? 1 : 2;
+            hash = 31 * hash + hashOf(operationName);
+            hash = 31 * hash + hashOf(resultCode);
+            hash = 31 * hash + hashOf(type);
+            hash = 31 * hash + hashOf(target);
+            this.hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SeriesKey)) {
+                return false;
+            }
+            SeriesKey that = (SeriesKey) o;
+            return hashCode == that.hashCode
+                    && isRequest == that.isRequest
+                    && equal(operationName, that.operationName)
+                    && equal(resultCode, that.resultCode)
+                    && equal(type, that.type)
+                    && equal(target, that.target);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        private static int hashOf(String value) {
+            return value == null ? 0 : value.hashCode();
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    static final class Aggregate {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong durationSum = new AtomicLong();
+        private final AtomicLong durationMin = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong durationMax = new AtomicLong(Long.MIN_VALUE);
+
+        void add(long weight, long durationInMillis, boolean success) {
+            count.addAndGet(weight);
+            durationSum.addAndGet(weight * durationInMillis);
+            if (!success) {
+                failures.addAndGet(weight);
+            }
+
+            // only contend when the value actually moves the bound, which becomes rare quickly
+            long min;
+            while (durationInMillis < (min = durationMin.get())) {
+                if (durationMin.compareAndSet(min, durationInMillis)) {
+                    break;
+                }
+            }
+            long max;
+            while (durationInMillis > (max = durationMax.get())) {
+                if (durationMax.compareAndSet(max, durationInMillis)) {
+                    break;
+                }
+            }
+        }
+
+        void toMetrics(SeriesKey key, List<MetricTelemetry> metrics) {
+            long count = this.count.get();
+            if (count == 0) {
+                return;
+            }
+
+            MetricTelemetry duration = new MetricTelemetry(
+                    key.isRequest ? REQUEST_DURATION_METRIC_NAME : DEPENDENCY_DURATION_METRIC_NAME, durationSum.get());
+            duration.setCount((int) Math.min(count, Integer.MAX_VALUE));
+            duration.setMin((double) durationMin.get());
+            duration.setMax((double) durationMax.get());
+            addDimensions(key, duration);
+            metrics.add(duration);
+
+            long failures = this.failures.get();
+            if (failures > 0) {
+                MetricTelemetry failed = new MetricTelemetry(
+                        key.isRequest ? REQUEST_FAILED_METRIC_NAME : DEPENDENCY_FAILED_METRIC_NAME, failures);
+                addDimensions(key, failed);
+                metrics.add(failed);
+            }
+        }
+
+        private static void addDimensions(SeriesKey key, MetricTelemetry metric) {
+            Map<String, String> properties = metric.getProperties();
+            putIfNotNull(properties, OPERATION_NAME_DIMENSION, key.operationName);
+            if (key.isRequest) {
+                putIfNotNull(properties, REQUEST_RESULT_CODE_DIMENSION, key.resultCode);
+            } else {
+                putIfNotNull(properties, DEPENDENCY_TYPE_DIMENSION, key.type);
+                putIfNotNull(properties, DEPENDENCY_TARGET_DIMENSION, key.target);
+                putIfNotNull(properties, DEPENDENCY_RESULT_CODE_DIMENSION, key.resultCode);
+            }
+        }
+
+        private static void putIfNotNull(Map<String, String> properties, String name, String value) {
+            if (value != null) {
+                properties.put(name, value);
+            }
+        }
+    }
+}
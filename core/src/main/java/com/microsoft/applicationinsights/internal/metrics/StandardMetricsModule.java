@@ -0,0 +1,143 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.TelemetryConfiguration;
+import com.microsoft.applicationinsights.extensibility.TelemetryModule;
+import com.microsoft.applicationinsights.internal.shutdown.Stoppable;
+import com.microsoft.applicationinsights.internal.util.ThreadPoolUtils;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Enables the {@link StandardMetricsCollector} and periodically tracks its aggregates as metrics.
+ *
+ * Configured in ApplicationInsights.xml as a telemetry module, the optional "AggregationIntervalInSeconds"
+ * parameter sets the aggregation period (60 seconds by default). The aggregates of the last, partial period are
+ * tracked when the module is stopped.
+ */
+public class StandardMetricsModule implements TelemetryModule, Stoppable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StandardMetricsModule.class);
+
+    public static final String AGGREGATION_INTERVAL_IN_SECONDS_NAME = "AggregationIntervalInSeconds";
+
+    public static final long DEFAULT_AGGREGATION_INTERVAL_IN_SECONDS = 60;
+
+    private static final Object lock = new Object();
+
+    // the collector is a singleton, so only the first module to be initialized schedules the flush
+    private static ScheduledExecutorService flushService;
+    private static TelemetryClient flushTelemetryClient;
+
+    private long aggregationIntervalInSeconds = DEFAULT_AGGREGATION_INTERVAL_IN_SECONDS;
+
+    public StandardMetricsModule() {
+    }
+
+    public StandardMetricsModule(Map<String, String> properties) {
+        if (properties == null) {
+            return;
+        }
+        String interval = properties.get(AGGREGATION_INTERVAL_IN_SECONDS_NAME);
+        if (interval != null) {
+            try {
+                long value = Long.parseLong(interval.trim());
+                if (value > 0) {
+                    aggregationIntervalInSeconds = value;
+                } else {
+                    logger.warn("'{}' must be a positive number, using the default of {} seconds",
+                            AGGREGATION_INTERVAL_IN_SECONDS_NAME, DEFAULT_AGGREGATION_INTERVAL_IN_SECONDS);
+                }
+            } catch (NumberFormatException e) {
+                logger.warn("'{}' is not a number, using the default of {} seconds",
+                        AGGREGATION_INTERVAL_IN_SECONDS_NAME, DEFAULT_AGGREGATION_INTERVAL_IN_SECONDS);
+            }
+        }
+    }
+
+    public long getAggregationIntervalInSeconds() {
+        return aggregationIntervalInSeconds;
+    }
+
+    @Override
+    public void initialize(TelemetryConfiguration configuration) {
+        synchronized (lock) {
+            if (flushService != null) {
+                return;
+            }
+            final TelemetryClient telemetryClient = new TelemetryClient(configuration);
+            flushTelemetryClient = telemetryClient;
+            flushService = Executors.newSingleThreadScheduledExecutor(ThreadPoolUtils.createDaemonThreadFactory(StandardMetricsModule.class));
+            StandardMetricsCollector.INSTANCE.enable();
+            flushService.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    flush(telemetryClient);
+                }
+            }, aggregationIntervalInSeconds, aggregationIntervalInSeconds, TimeUnit.SECONDS);
+            logger.debug("standard metrics are pre-aggregated every {} seconds", aggregationIntervalInSeconds);
+        }
+    }
+
+    /**
+     * Stops the periodic flush and tracks the aggregates of the current period.
+     */
+    @Override
+    public void stop(long timeout, TimeUnit timeUnit) {
+        synchronized (lock) {
+            if (flushService == null) {
+                return;
+            }
+            ThreadPoolUtils.stop(flushService, timeout, timeUnit);
+            flush(flushTelemetryClient);
+            flushService = null;
+            flushTelemetryClient = null;
+        }
+    }
+
+    static void flush(TelemetryClient telemetryClient) {
+        try {
+            for (MetricTelemetry metric : StandardMetricsCollector.INSTANCE.getAndRestart()) {
+                telemetryClient.trackMetric(metric);
+            }
+        } catch (ThreadDeath td) {
+            throw td;
+        } catch (Throwable t) {
+            try {
+                logger.error("Error while tracking standard metrics", t);
+            } catch (ThreadDeath td) {
+                throw td;
+            } catch (Throwable t2) {
+                // chomp
+            }
+        }
+    }
+}
@@ -21,24 +21,34 @@
 
 package com.microsoft.applicationinsights.internal.perfcounter;
 
+import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import com.microsoft.applicationinsights.TelemetryConfiguration;
 import com.microsoft.applicationinsights.extensibility.TelemetryModule;
+import com.microsoft.applicationinsights.internal.shutdown.Stoppable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A base class for performance modules.
  *
+ * Performance counters that hold resources, e.g. listeners or open files, implement {@link Closeable}
+ * and are closed when the module is stopped, or right away if they could not be registered.
+ *
  * Created by gupele on 3/12/2015.
  */
-public abstract class AbstractPerformanceCounterModule implements TelemetryModule {
+public abstract class AbstractPerformanceCounterModule implements TelemetryModule, Stoppable {
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractPerformanceCounterModule.class);
 
     protected final PerformanceCountersFactory factory;
 
+    private final List<PerformanceCounter> registeredCounters = new ArrayList<PerformanceCounter>();
+
     protected AbstractPerformanceCounterModule(PerformanceCountersFactory factory) {
         this.factory = factory;
     }
@@ -52,7 +62,13 @@ public abstract class AbstractPerformanceCounterModule implements TelemetryModul
         Collection<PerformanceCounter> performanceCounters = factory.getPerformanceCounters();
         for (PerformanceCounter performanceCounter : performanceCounters) {
             try {
-                PerformanceCounterContainer.INSTANCE.register(performanceCounter);
+                if (PerformanceCounterContainer.INSTANCE.register(performanceCounter)) {
+                    synchronized (registeredCounters) {
+                        registeredCounters.add(performanceCounter);
+                    }
+                } else {
+                    close(performanceCounter);
+                }
             } catch (ThreadDeath td) {
                 throw td;
             } catch (Throwable e) {
@@ -67,4 +83,39 @@ public abstract class AbstractPerformanceCounterModule implements TelemetryModul
             }
         }
     }
+
+    /**
+     * Un-registers the performance counters of this module and closes the ones that hold resources.
+     */
+    @Override
+    public void stop(long timeout, TimeUnit timeUnit) {
+        List<PerformanceCounter> counters;
+        synchronized (registeredCounters) {
+            counters = new ArrayList<PerformanceCounter>(registeredCounters);
+            registeredCounters.clear();
+        }
+        for (PerformanceCounter performanceCounter : counters) {
+            PerformanceCounterContainer.INSTANCE.unregister(performanceCounter);
+            close(performanceCounter);
+        }
+    }
+
+    private static void close(PerformanceCounter performanceCounter) {
+        if (!(performanceCounter instanceof Closeable)) {
+            return;
+        }
+        try {
+            ((Closeable) performanceCounter).close();
+        } catch (ThreadDeath td) {
+            throw td;
+        } catch (Throwable t) {
+            try {
+                logger.error("Failed to close performance counter '{}': '{}'", performanceCounter.getId(), t.toString());
+            } catch (ThreadDeath td) {
+                throw td;
+            } catch (Throwable t2) {
+                // chomp
+            }
+        }
+    }
 }
@@ -48,6 +48,17 @@ public final class Constants {
     public final static String PROCESS_IO_PC_METRIC_NAME = "\\Process(??APP_WIN32_PROC??)\\IO Data Bytes/sec";
     public final static String PROCESS_IO_PC_COUNTER_NAME = "IO Data Bytes/sec";
 
+    public final static String PROCESS_STATS_PC_ID = PERFORMANCE_COUNTER_PREFIX + "ProcessStatsPerformanceCounter";
+    public final static String PROCESS_RESIDENT_MEMORY_METRIC_NAME = "Process Resident Memory Bytes";
+    public final static String PROCESS_VIRTUAL_MEMORY_METRIC_NAME = "Process Virtual Memory Bytes";
+    public final static String PROCESS_THREADS_METRIC_NAME = "Process Threads";
+    public final static String PROCESS_OPEN_FILE_DESCRIPTORS_METRIC_NAME = "Process Open File Descriptors";
+    public final static String PROCESS_MAJOR_PAGE_FAULTS_METRIC_NAME = "Process Major Page Faults/sec";
+    public final static String PROCESS_VOLUNTARY_CONTEXT_SWITCHES_METRIC_NAME = "Process Voluntary Context Switches/sec";
+    public final static String PROCESS_INVOLUNTARY_CONTEXT_SWITCHES_METRIC_NAME = "Process Involuntary Context Switches/sec";
+    public final static String CGROUP_CPU_THROTTLED_PERIODS_METRIC_NAME = "CGroup CPU Throttled Periods %";
+    public final static String CGROUP_CPU_THROTTLED_TIME_METRIC_NAME = "CGroup CPU Throttled Time";
+
     public final static String INSTANCE_NAME_TOTAL = "_Total";
 
     public final static String PROCESS_CATEGORY = "Process";
@@ -44,9 +44,13 @@ public final class CpuPerformanceCounterCalculator {
 
     private ObjectName osBean;
 
+    // avoids going through the MBeanServer for every sample when the JVM exposes the attribute directly
+    private final com.sun.management.OperatingSystemMXBean sunOsBean;
+
     public CpuPerformanceCounterCalculator() {
         OperatingSystemMXBean operatingSystemMXBean = ManagementFactory.getOperatingSystemMXBean();
         numberOfCpus = operatingSystemMXBean.getAvailableProcessors();
+        sunOsBean = getSunOperatingSystemMXBean(operatingSystemMXBean);
 
     }
 
@@ -75,10 +79,24 @@ public final class CpuPerformanceCounterCalculator {
     }
 
     private long getProcessCpuTime() throws Exception {
+        if (sunOsBean != null) {
+            return sunOsBean.getProcessCpuTime();
+        }
         MBeanServer bsvr = ManagementFactory.getPlatformMBeanServer();
         if (osBean == null) {
             osBean = ObjectName.getInstance(ManagementFactory.OPERATING_SYSTEM_MXBEAN_NAME);
         }
         return (Long) bsvr.getAttribute(osBean, "ProcessCpuTime");
     }
+
+    private static com.sun.management.OperatingSystemMXBean getSunOperatingSystemMXBean(OperatingSystemMXBean operatingSystemMXBean) {
+        try {
+            if (operatingSystemMXBean instanceof com.sun.management.OperatingSystemMXBean) {
+                return (com.sun.management.OperatingSystemMXBean) operatingSystemMXBean;
+            }
+        } catch (LinkageError e) {
+            // not a HotSpot based JVM, fall back to the MBeanServer
+        }
+        return null;
+    }
 }
@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.HashSet;
 
 import com.microsoft.applicationinsights.internal.perfcounter.jvm.DeadLockDetectorPerformanceCounter;
+import com.microsoft.applicationinsights.internal.perfcounter.jvm.GCNotificationPerformanceCounter;
 import com.microsoft.applicationinsights.internal.perfcounter.jvm.GCPerformanceCounter;
 import com.microsoft.applicationinsights.internal.perfcounter.jvm.JvmHeapMemoryUsedPerformanceCounter;
 import org.slf4j.Logger;
@@ -50,6 +51,7 @@ public class JvmPerformanceCountersFactory implements PerformanceCountersFactory
             addDeadLockDetector(pcs);
             addJvmMemoryPerformanceCounter(pcs);
             addGCPerformanceCounter(pcs);
+            addGCNotificationPerformanceCounter(pcs);
         } else {
             logger.trace("JvmPerformanceCountersFactory is disabled");
         }
@@ -126,6 +128,28 @@ public class JvmPerformanceCountersFactory implements PerformanceCountersFactory
         }
     }
 
+    private void addGCNotificationPerformanceCounter(ArrayList<PerformanceCounter> pcs) {
+        try {
+            if (disabledJvmPCs.contains(GCNotificationPerformanceCounter.NAME)) {
+                return;
+            }
+
+            GCNotificationPerformanceCounter gcpc = new GCNotificationPerformanceCounter();
+            pcs.add(gcpc);
+        } catch (ThreadDeath td) {
+            throw td;
+        } catch (Throwable t) {
+            // e.g. a JVM without com.sun.management
+            try {
+                logger.error("Failed to create GCNotificationPerformanceCounter", t);
+            } catch (ThreadDeath td) {
+                throw td;
+            } catch (Throwable t2) {
+                // chomp
+            }
+        }
+    }
+
     public void setIsEnabled(boolean isEnabled) {
         this.isEnabled = isEnabled;
     }
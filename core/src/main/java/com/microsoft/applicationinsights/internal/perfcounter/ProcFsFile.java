@@ -0,0 +1,224 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A procfs (or cgroupfs) file which is read over and over again.
+ *
+ * The channel stays open between samples and the content is read from offset 0 into a reused direct buffer,
+ * so taking a sample does not open a file nor allocate. The accessors parse numbers straight from the bytes
+ * of the last sample, without creating Strings.
+ *
+ * Instances are not thread safe; every performance counter is reported by a single thread at a time.
+ */
+final class ProcFsFile implements Closeable {
+
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_CAPACITY = 1024 * 1024;
+
+    private final File file;
+    private final int maxCapacity;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private int length;
+
+    ProcFsFile(String path) {
+        this(new File(path));
+    }
+
+    ProcFsFile(File file) {
+        this(file, MAX_CAPACITY);
+    }
+
+    /**
+     * @param maxCapacity the number of bytes sampled at most, e.g. to read only the head of a large file
+     */
+    ProcFsFile(File file, int maxCapacity) {
+        this.file = file;
+        this.maxCapacity = maxCapacity;
+        this.buffer = ByteBuffer.allocateDirect(Math.min(DEFAULT_CAPACITY, maxCapacity));
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Takes a new sample of the whole file.
+     */
+    void read() throws IOException {
+        if (channel == null) {
+            channel = new RandomAccessFile(file, "r").getChannel();
+        }
+        try {
+            while (true) {
+                buffer.clear();
+                long position = 0;
+                int read;
+                while (buffer.hasRemaining() && (read = channel.read(buffer, position)) != -1) {
+                    position += read;
+                }
+                if (buffer.hasRemaining() || buffer.capacity() >= maxCapacity) {
+                    length = buffer.position();
+                    return;
+                }
+                // the file did not fit, sample it again as a whole with a larger buffer
+                buffer = ByteBuffer.allocateDirect(Math.min(buffer.capacity() * 2, maxCapacity));
+            }
+        } catch (IOException e) {
+            length = 0;
+            close();
+            throw e;
+        }
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Returns the number which follows {@code key} at the start of a line, e.g. {@code "VmRSS:\t 1234 kB"}
+     * or {@code "nr_throttled 5"}, or -1 when there is no such line.
+     */
+    long getLong(byte[] key) {
+        int lineStart = 0;
+        while (lineStart < length) {
+            if (startsWith(lineStart, key)) {
+                return parseLong(lineStart + key.length);
+            }
+            lineStart = indexOf((byte) '\n', lineStart) + 1;
+            if (lineStart == 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the whitespace separated numbers from {@code offset} up to the end of its line, e.g. the fields of
+     * {@code /proc/self/stat}. Fields which are not numbers are stored as -1.
+     *
+     * @return the number of fields parsed
+     */
+    int getLongs(int offset, long[] values) {
+        int count = 0;
+        int i = offset;
+        while (count < values.length) {
+            while (i < length && (buffer.get(i) == ' ' || buffer.get(i) == '\t')) {
+                i++;
+            }
+            if (i >= length || buffer.get(i) == '\n') {
+                break;
+            }
+            int fieldStart = i;
+            while (i < length && buffer.get(i) != ' ' && buffer.get(i) != '\t' && buffer.get(i) != '\n') {
+                i++;
+            }
+            values[count++] = parseDigits(fieldStart, i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the index of the first occurrence of {@code b} from {@code from} on, or -1.
+     */
+    int indexOf(byte b, int from) {
+        for (int i = from; i < length; i++) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the last occurrence of {@code b}, or -1.
+     */
+    int lastIndexOf(byte b) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing to do, the channel is dropped either way
+            }
+            channel = null;
+        }
+    }
+
+    private boolean startsWith(int offset, byte[] key) {
+        if (offset + key.length > length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(offset + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // skips the separator after a key, then parses the digits
+    private long parseLong(int offset) {
+        int i = offset;
+        while (i < length && (buffer.get(i) == ':' || buffer.get(i) == ' ' || buffer.get(i) == '\t')) {
+            i++;
+        }
+        int end = i;
+        while (end < length && buffer.get(end) >= '0' && buffer.get(end) <= '9') {
+            end++;
+        }
+        return parseDigits(i, end);
+    }
+
+    private long parseDigits(int start, int end) {
+        if (start == end) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+}
@@ -21,8 +21,8 @@
 
 package com.microsoft.applicationinsights.internal.perfcounter;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.Closeable;
+import java.nio.charset.Charset;
 
 import com.microsoft.applicationinsights.TelemetryClient;
 import com.microsoft.applicationinsights.internal.system.SystemInformation;
@@ -41,18 +41,25 @@ import static com.microsoft.applicationinsights.internal.perfcounter.Constants.P
  *
  * Created by gupele on 3/8/2015.
  */
-final class UnixProcessIOPerformanceCounter extends AbstractUnixPerformanceCounter {
+final class UnixProcessIOPerformanceCounter extends AbstractUnixPerformanceCounter implements Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(UnixProcessIOPerformanceCounter.class);
 
     private final static double NANOS_IN_SECOND = 1000000000.0;
 
+    private static final byte[] READ_BYTES_PART = "read_bytes:".getBytes(Charset.forName("US-ASCII"));
+    private static final byte[] WRITE_BYTES_PART = "write_bytes:".getBytes(Charset.forName("US-ASCII"));
+
+    // kept open between collections
+    private final ProcFsFile ioFile;
+
     private double prevProcessIO;
 
     private long lastCollectionInNanos = -1;
 
     public UnixProcessIOPerformanceCounter() {
         super("/proc/" + SystemInformation.INSTANCE.getProcessId() + "/io");
+        ioFile = new ProcFsFile(getProcessFile());
     }
 
     @Override
@@ -60,6 +67,11 @@ final class UnixProcessIOPerformanceCounter extends AbstractUnixPerformanceCount
         return Constants.PROCESS_IO_PC_ID;
     }
 
+    @Override
+    public void close() {
+        ioFile.close();
+    }
+
     @Override
     public void report(TelemetryClient telemetryClient) {
         long currentCollectionInNanos = System.nanoTime();
@@ -90,31 +102,18 @@ final class UnixProcessIOPerformanceCounter extends AbstractUnixPerformanceCount
      * @return the current IO for current process, or null if the datum could not be measured.
      */
     public Double getCurrentIOForCurrentProcess() {
-        BufferedReader bufferedReader = null;
-
-        Double result = null;
-        UnixProcessIOtParser parser = new UnixProcessIOtParser();
         try {
-            bufferedReader = new BufferedReader(new FileReader(getProcessFile()));
-            String line;
-            while (!parser.done() && (line = bufferedReader.readLine()) != null) {
-                parser.process(line);
+            ioFile.read();
+            long readBytes = ioFile.getLong(READ_BYTES_PART);
+            long writeBytes = ioFile.getLong(WRITE_BYTES_PART);
+            if (readBytes == -1 || writeBytes == -1) {
+                logPerfCounterErrorError("Error while parsing file: '{}'", PROCESS_IO_PC_METRIC_NAME);
+                return null;
             }
-
-            result = parser.getValue();
+            return (double) (readBytes + writeBytes);
         } catch (Exception e) {
-            result = null;
             logPerfCounterErrorError("Error while parsing file: '{}'", PROCESS_IO_PC_METRIC_NAME, e);
-        } finally {
-            if (bufferedReader != null ) {
-                try {
-                    bufferedReader.close();
-                } catch (Exception e) {
-                    logPerfCounterErrorError("Error while closing file : '{}'", e);
-                }
-            }
+            return null;
         }
-
-        return result;
     }
 }
@@ -0,0 +1,253 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.internal.system.SystemInformation;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.microsoft.applicationinsights.internal.perfcounter.Constants.CGROUP_CPU_THROTTLED_PERIODS_METRIC_NAME;
+import static com.microsoft.applicationinsights.internal.perfcounter.Constants.CGROUP_CPU_THROTTLED_TIME_METRIC_NAME;
+import static com.microsoft.applicationinsights.internal.perfcounter.Constants.PROCESS_INVOLUNTARY_CONTEXT_SWITCHES_METRIC_NAME;
+import static com.microsoft.applicationinsights.internal.perfcounter.Constants.PROCESS_MAJOR_PAGE_FAULTS_METRIC_NAME;
+import static com.microsoft.applicationinsights.internal.perfcounter.Constants.PROCESS_OPEN_FILE_DESCRIPTORS_METRIC_NAME;
+import static com.microsoft.applicationinsights.internal.perfcounter.Constants.PROCESS_RESIDENT_MEMORY_METRIC_NAME;
+import static com.microsoft.applicationinsights.internal.perfcounter.Constants.PROCESS_THREADS_METRIC_NAME;
+import static com.microsoft.applicationinsights.internal.perfcounter.Constants.PROCESS_VIRTUAL_MEMORY_METRIC_NAME;
+import static com.microsoft.applicationinsights.internal.perfcounter.Constants.PROCESS_VOLUNTARY_CONTEXT_SWITCHES_METRIC_NAME;
+
+/**
+ * The class supplies process level statistics of the current process under the Unix OS, sampled from
+ * {@code /proc/[pid]/stat}, {@code /proc/[pid]/status}, {@code /proc/[pid]/fd} and, when the process runs in
+ * a cgroup with a CPU quota, the {@code cpu.stat} file of the cgroup (v1 or v2).
+ *
+ * The files are kept open and parsed through {@link ProcFsFile}, so a sample costs a few reads and no garbage,
+ * which keeps short collection intervals cheap.
+ */
+final class UnixProcessStatsPerformanceCounter extends AbstractUnixPerformanceCounter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnixProcessStatsPerformanceCounter.class);
+
+    private final static double NANOS_IN_SECOND = 1000000000.0;
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+    private static final byte[] VM_RSS = "VmRSS:".getBytes(US_ASCII);
+    private static final byte[] THREADS = "Threads:".getBytes(US_ASCII);
+    private static final byte[] VOLUNTARY_CONTEXT_SWITCHES = "voluntary_ctxt_switches:".getBytes(US_ASCII);
+    private static final byte[] INVOLUNTARY_CONTEXT_SWITCHES = "nonvoluntary_ctxt_switches:".getBytes(US_ASCII);
+    private static final byte[] NR_PERIODS = "nr_periods ".getBytes(US_ASCII);
+    private static final byte[] NR_THROTTLED = "nr_throttled ".getBytes(US_ASCII);
+    private static final byte[] THROTTLED_USEC = "throttled_usec ".getBytes(US_ASCII); // cgroup v2
+    private static final byte[] THROTTLED_TIME = "throttled_time ".getBytes(US_ASCII); // cgroup v1, in nanoseconds
+
+    private static final String[] CGROUP_CPU_STAT_FILES = {
+            "/sys/fs/cgroup/cpu.stat",
+            "/sys/fs/cgroup/cpu,cpuacct/cpu.stat",
+            "/sys/fs/cgroup/cpu/cpu.stat"
+    };
+
+    // the fields of /proc/[pid]/stat which follow the command name, starting with field 3 (state)
+    private static final int STAT_MAJOR_FAULTS = 12 - 3;
+    private static final int STAT_VIRTUAL_MEMORY = 23 - 3;
+
+    private final ProcFsFile stat;
+    private final ProcFsFile status;
+    private final File fdDirectory;
+    private final ProcFsFile cgroupCpuStat;
+    private final long[] statFields = new long[STAT_VIRTUAL_MEMORY + 1];
+
+    private long lastCollectionInNanos = -1;
+    private long prevMajorFaults = -1;
+    private long prevVoluntaryContextSwitches = -1;
+    private long prevInvoluntaryContextSwitches = -1;
+    private long prevPeriods = -1;
+    private long prevThrottledPeriods = -1;
+    private long prevThrottledNanos = -1;
+
+    public UnixProcessStatsPerformanceCounter() {
+        this("/proc/" + SystemInformation.INSTANCE.getProcessId(), findCgroupCpuStat());
+    }
+
+    /* Visible for testing */ UnixProcessStatsPerformanceCounter(String processDirectory, File cgroupCpuStat) {
+        super(processDirectory + "/stat");
+        stat = new ProcFsFile(getProcessFile());
+        status = new ProcFsFile(processDirectory + "/status");
+        fdDirectory = new File(processDirectory + "/fd");
+        this.cgroupCpuStat = cgroupCpuStat == null ? null : new ProcFsFile(cgroupCpuStat);
+    }
+
+    @Override
+    public String getId() {
+        return Constants.PROCESS_STATS_PC_ID;
+    }
+
+    @Override
+    public void close() {
+        stat.close();
+        status.close();
+        if (cgroupCpuStat != null) {
+            cgroupCpuStat.close();
+        }
+    }
+
+    @Override
+    public void report(TelemetryClient telemetryClient) {
+        long currentCollectionInNanos = System.nanoTime();
+        double elapsedSeconds = lastCollectionInNanos == -1
+                ? 0 : (currentCollectionInNanos - lastCollectionInNanos) / NANOS_IN_SECOND;
+        lastCollectionInNanos = currentCollectionInNanos;
+
+        try {
+            reportStat(telemetryClient, elapsedSeconds);
+        } catch (IOException e) {
+            logPerfCounterErrorTrace("Error while reading stat: {}", e.toString());
+        }
+        try {
+            reportStatus(telemetryClient, elapsedSeconds);
+        } catch (IOException e) {
+            logPerfCounterErrorTrace("Error while reading status: {}", e.toString());
+        }
+        try {
+            track(telemetryClient, PROCESS_OPEN_FILE_DESCRIPTORS_METRIC_NAME, countOpenFileDescriptors());
+        } catch (IOException e) {
+            logPerfCounterErrorTrace("Error while listing file descriptors: {}", e.toString());
+        }
+        if (cgroupCpuStat != null) {
+            try {
+                reportCgroupCpuStat(telemetryClient);
+            } catch (IOException e) {
+                logPerfCounterErrorTrace("Error while reading {}: {}", cgroupCpuStat.getFile(), e.toString());
+            }
+        }
+    }
+
+    private void reportStat(TelemetryClient telemetryClient, double elapsedSeconds) throws IOException {
+        stat.read();
+        // the command name is in parentheses and may itself contain spaces and parentheses
+        int commandEnd = stat.lastIndexOf((byte) ')');
+        if (commandEnd == -1 || stat.getLongs(commandEnd + 1, statFields) < statFields.length) {
+            return;
+        }
+        track(telemetryClient, PROCESS_VIRTUAL_MEMORY_METRIC_NAME, statFields[STAT_VIRTUAL_MEMORY]);
+        long majorFaults = statFields[STAT_MAJOR_FAULTS];
+        trackRate(telemetryClient, PROCESS_MAJOR_PAGE_FAULTS_METRIC_NAME, majorFaults, prevMajorFaults, elapsedSeconds);
+        prevMajorFaults = majorFaults;
+    }
+
+    private void reportStatus(TelemetryClient telemetryClient, double elapsedSeconds) throws IOException {
+        status.read();
+        long residentKb = status.getLong(VM_RSS);
+        if (residentKb != -1) {
+            track(telemetryClient, PROCESS_RESIDENT_MEMORY_METRIC_NAME, residentKb * 1024);
+        }
+        track(telemetryClient, PROCESS_THREADS_METRIC_NAME, status.getLong(THREADS));
+
+        long voluntaryContextSwitches = status.getLong(VOLUNTARY_CONTEXT_SWITCHES);
+        trackRate(telemetryClient, PROCESS_VOLUNTARY_CONTEXT_SWITCHES_METRIC_NAME,
+                voluntaryContextSwitches, prevVoluntaryContextSwitches, elapsedSeconds);
+        prevVoluntaryContextSwitches = voluntaryContextSwitches;
+
+        long involuntaryContextSwitches = status.getLong(INVOLUNTARY_CONTEXT_SWITCHES);
+        trackRate(telemetryClient, PROCESS_INVOLUNTARY_CONTEXT_SWITCHES_METRIC_NAME,
+                involuntaryContextSwitches, prevInvoluntaryContextSwitches, elapsedSeconds);
+        prevInvoluntaryContextSwitches = involuntaryContextSwitches;
+    }
+
+    private void reportCgroupCpuStat(TelemetryClient telemetryClient) throws IOException {
+        cgroupCpuStat.read();
+        long periods = cgroupCpuStat.getLong(NR_PERIODS);
+        long throttledPeriods = cgroupCpuStat.getLong(NR_THROTTLED);
+        long throttledNanos;
+        long throttledMicros = cgroupCpuStat.getLong(THROTTLED_USEC);
+        if (throttledMicros != -1) {
+            throttledNanos = throttledMicros * 1000;
+        } else {
+            throttledNanos = cgroupCpuStat.getLong(THROTTLED_TIME);
+        }
+        // the root cgroup has no quota, hence no periods
+        if (periods == -1 || throttledPeriods == -1 || throttledNanos == -1) {
+            return;
+        }
+        if (prevPeriods != -1) {
+            long elapsedPeriods = periods - prevPeriods;
+            double throttledPercentage = elapsedPeriods > 0 ? 100.0 * (throttledPeriods - prevThrottledPeriods) / elapsedPeriods : 0;
+            telemetryClient.track(new MetricTelemetry(CGROUP_CPU_THROTTLED_PERIODS_METRIC_NAME, throttledPercentage));
+            // in milliseconds over the collection interval
+            telemetryClient.track(new MetricTelemetry(CGROUP_CPU_THROTTLED_TIME_METRIC_NAME,
+                    (throttledNanos - prevThrottledNanos) / 1000000.0));
+        }
+        prevPeriods = periods;
+        prevThrottledPeriods = throttledPeriods;
+        prevThrottledNanos = throttledNanos;
+    }
+
+    private long countOpenFileDescriptors() throws IOException {
+        long count = 0;
+        DirectoryStream<Path> fds = Files.newDirectoryStream(fdDirectory.toPath());
+        try {
+            for (Path ignored : fds) {
+                count++;
+            }
+        } finally {
+            fds.close();
+        }
+        return count;
+    }
+
+    private static void track(TelemetryClient telemetryClient, String name, long value) {
+        if (value == -1) {
+            return;
+        }
+        logger.trace("Sending Performance Counter: {}: {}", name, value);
+        telemetryClient.track(new MetricTelemetry(name, value));
+    }
+
+    private static void trackRate(TelemetryClient telemetryClient, String name, long value, long prevValue, double elapsedSeconds) {
+        if (value == -1 || prevValue == -1 || elapsedSeconds <= 0) {
+            return;
+        }
+        double rate = (value - prevValue) / elapsedSeconds;
+        logger.trace("Sending Performance Counter: {}: {}", name, rate);
+        telemetryClient.track(new MetricTelemetry(name, rate));
+    }
+
+    private static File findCgroupCpuStat() {
+        for (String path : CGROUP_CPU_STAT_FILES) {
+            File file = new File(path);
+            if (file.canRead()) {
+                return file;
+            }
+        }
+        return null;
+    }
+}
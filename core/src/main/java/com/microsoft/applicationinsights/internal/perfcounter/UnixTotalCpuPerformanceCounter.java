@@ -21,14 +21,10 @@
 
 package com.microsoft.applicationinsights.internal.perfcounter;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.util.ArrayList;
+import java.io.Closeable;
 
 import com.microsoft.applicationinsights.TelemetryClient;
 import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
-
-import com.google.common.base.Strings;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,17 +35,25 @@ import static com.microsoft.applicationinsights.internal.perfcounter.Constants.T
  *
  * Created by gupele on 3/8/2015.
  */
-final class UnixTotalCpuPerformanceCounter extends AbstractUnixPerformanceCounter {
+final class UnixTotalCpuPerformanceCounter extends AbstractUnixPerformanceCounter implements Closeable {
 
     private static final Logger logger = LoggerFactory.getLogger(UnixTotalCpuPerformanceCounter.class);
 
     private final static String STAT_FILE = "/proc/stat";
 
+    // the first line of /proc/stat: "cpu" followed by the time spent in each state, idle being the 4th
+    private static final int IDLE_INDEX = 3;
+    private static final int MAX_CPU_STATES = 16;
+
+    private final ProcFsFile statFile;
+    private final long[] cpuCounters = new long[MAX_CPU_STATES];
     private long[] prevCpuCounters;
     private long prevTotalCpuValue;
 
     public UnixTotalCpuPerformanceCounter() {
         super(STAT_FILE);
+        // the cpu line comes first, the rest of the file grows with the number of cpus and interrupts
+        statFile = new ProcFsFile(getProcessFile(), 4096);
         prevCpuCounters = null;
     }
 
@@ -59,84 +63,65 @@ final class UnixTotalCpuPerformanceCounter extends AbstractUnixPerformanceCounte
     }
 
     @Override
-    public void report(TelemetryClient telemetryClient) {
-        String line = getLineOfData();
-
-        if (!Strings.isNullOrEmpty(line)) {
-            String[] rawStringValues = line.split(" ");
-
-            ArrayList<String> stringValues = new ArrayList<String>(rawStringValues.length - 1);
-            for (int i = 1; i < rawStringValues.length; ++i) {
-                String stringValue = rawStringValues[i];
-                if (Strings.isNullOrEmpty(stringValue)) {
-                    continue;
-                }
-
-                stringValues.add(stringValue);
-            }
+    public void close() {
+        statFile.close();
+    }
 
-            String[] array = stringValues.toArray(new String[stringValues.size()]);
+    @Override
+    public void report(TelemetryClient telemetryClient) {
+        int count = readCpuCounters();
+        if (count <= IDLE_INDEX) {
+            return;
+        }
 
-            if (prevCpuCounters == null) {
-                getCountersForTheFirstTime(array);
-                return;
-            }
+        if (prevCpuCounters == null) {
+            getCountersForTheFirstTime(count);
+            return;
+        }
 
-            double totalCpuUsage = calculateTotalCpuUsage(array);
+        double totalCpuUsage = calculateTotalCpuUsage(count);
 
-            logger.trace("Sending Performance Counter: {}: {}", TOTAL_CPU_PC_METRIC_NAME, totalCpuUsage);
-            MetricTelemetry telemetry = new MetricTelemetry(TOTAL_CPU_PC_METRIC_NAME, totalCpuUsage);
-            telemetryClient.track(telemetry);
-        }
+        logger.trace("Sending Performance Counter: {}: {}", TOTAL_CPU_PC_METRIC_NAME, totalCpuUsage);
+        MetricTelemetry telemetry = new MetricTelemetry(TOTAL_CPU_PC_METRIC_NAME, totalCpuUsage);
+        telemetryClient.track(telemetry);
     }
 
-    private String getLineOfData() {
-        BufferedReader bufferedReader = null;
-
-        String line = null;
+    // returns the number of counters read into cpuCounters
+    private int readCpuCounters() {
         try {
-            bufferedReader = new BufferedReader(new FileReader(getProcessFile()));
-            line = bufferedReader.readLine();
+            statFile.read();
+            int labelEnd = statFile.indexOf((byte) ' ', 0);
+            if (labelEnd == -1) {
+                return 0;
+            }
+            return statFile.getLongs(labelEnd, cpuCounters);
         } catch (Exception e) {
             logPerfCounterErrorError("Error while parsing file: ", e);
-        } finally {
-            if (bufferedReader != null ) {
-                try {
-                    bufferedReader.close();
-                } catch (Exception e) {
-                    logPerfCounterErrorError("Error while closing file: ", e);
-                }
-            }
+            return 0;
         }
-
-        return line;
     }
 
-    private void getCountersForTheFirstTime(String[] stringValues) {
-        prevCpuCounters = new long[stringValues.length];
+    private void getCountersForTheFirstTime(int count) {
+        prevCpuCounters = new long[count];
         prevTotalCpuValue = 0;
-        for (int i = 0; i < stringValues.length; ++i) {
-            String stringValue = stringValues[i];
-            long value = Long.parseLong(stringValue);
+        for (int i = 0; i < count; ++i) {
+            long value = cpuCounters[i];
             prevCpuCounters[i] = value;
             prevTotalCpuValue += value;
         }
     }
 
-    private double calculateTotalCpuUsage(String[] stringValues) {
-        long[] cpuCounters = new long[stringValues.length];
+    private double calculateTotalCpuUsage(int count) {
+        count = Math.min(count, prevCpuCounters.length);
         long totalCpuValue = 0;
         double diffIdle = 0.0;
-        for (int i = 0; i < stringValues.length; ++i) {
-            String stringValue = stringValues[i];
-            long value = Long.parseLong(stringValue);
-            cpuCounters[i] = value - prevCpuCounters[i];
+        for (int i = 0; i < count; ++i) {
+            long value = cpuCounters[i];
+            if (i == IDLE_INDEX) {
+                diffIdle = value - prevCpuCounters[i];
+            }
             prevCpuCounters[i] = value;
-
             totalCpuValue += value;
-            if (i == 3) {
-                diffIdle = cpuCounters[i];
-            }
         }
 
         double totalDiff = totalCpuValue - prevTotalCpuValue;
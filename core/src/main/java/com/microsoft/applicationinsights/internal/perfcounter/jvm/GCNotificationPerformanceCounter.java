@@ -0,0 +1,316 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.perfcounter.jvm;
+
+import java.io.Closeable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationFilter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.internal.perfcounter.PerformanceCounter;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The class reports every garbage collection as it happens, instead of polling the collectors' totals.
+ *
+ * It listens to the {@link GarbageCollectionNotificationInfo} notifications of each collector and reports,
+ * per collection interval:
+ * <ul>
+ *     <li>the pause times per collector and cause: total, count, min, max and the 99th percentile estimated
+ *     from a fixed bucket histogram (the phases of concurrent collectors are reported apart)</li>
+ *     <li>the allocation rate, from the young generation usage before a collection minus its usage after
+ *     the previous one</li>
+ *     <li>the bytes promoted to the old generation by minor collections</li>
+ * </ul>
+ *
+ * Notifications arrive on a JMX service thread, which only updates the histograms. The listeners are removed
+ * when the counter is closed.
+ */
+public final class GCNotificationPerformanceCounter implements PerformanceCounter, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(GCNotificationPerformanceCounter.class);
+
+    public final static String NAME = "GCNotifications";
+
+    static final String GC_PAUSE_TIME = "GC Pause Time";
+    static final String GC_PAUSE_TIME_P99 = "GC Pause Time 99th Percentile";
+    static final String GC_CONCURRENT_PHASE_TIME = "GC Concurrent Phase Time";
+    static final String GC_ALLOCATION_RATE = "GC Allocation Rate";
+    static final String GC_PROMOTED_BYTES = "GC Promoted Bytes";
+
+    static final String COLLECTOR_PROPERTY = "collector";
+    static final String CAUSE_PROPERTY = "cause";
+
+    private static final String MINOR_GC_ACTION = "end of minor GC";
+
+    // upper bounds in milliseconds, the last bucket counts everything above
+    private static final long[] BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    /**
+     * The pauses of one collector for one cause during a collection interval.
+     */
+    static final class PauseHistogram {
+        final String collector;
+        final String cause;
+        final boolean concurrent;
+        final long[] buckets = new long[BUCKET_BOUNDS.length + 1];
+        long count;
+        long totalMillis;
+        long minMillis = Long.MAX_VALUE;
+        long maxMillis;
+
+        PauseHistogram(String collector, String cause, boolean concurrent) {
+            this.collector = collector;
+            this.cause = cause;
+            this.concurrent = concurrent;
+        }
+
+        void record(long millis) {
+            int bucket = 0;
+            while (bucket < BUCKET_BOUNDS.length && millis > BUCKET_BOUNDS[bucket]) {
+                bucket++;
+            }
+            buckets[bucket]++;
+            count++;
+            totalMillis += millis;
+            minMillis = Math.min(minMillis, millis);
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        // the upper bound of the bucket holding the percentile, capped by the longest pause
+        long getPercentile(double percentile) {
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank) {
+                    return Math.min(BUCKET_BOUNDS[i], maxMillis);
+                }
+            }
+            return maxMillis;
+        }
+    }
+
+    // null when the heap has no such pool, e.g. with ZGC
+    private final String youngPoolName;
+    private final String oldPoolName;
+
+    private Map<String, PauseHistogram> histograms = new LinkedHashMap<String, PauseHistogram>();
+    private long allocatedBytes;
+    private long promotedBytes;
+    private long youngUsedAfterLastGc;
+    private long lastReportNanos = System.nanoTime();
+
+    private NotificationListener listener;
+    private NotificationFilter filter;
+    private final List<NotificationEmitter> emitters = new ArrayList<NotificationEmitter>();
+
+    /**
+     * Subscribes to the notifications of all the garbage collectors of this JVM.
+     */
+    public GCNotificationPerformanceCounter() {
+        this(findHeapPool(ManagementFactory.getMemoryPoolMXBeans(), "Eden"),
+                findHeapPool(ManagementFactory.getMemoryPoolMXBeans(), "Old Gen", "Tenured"));
+
+        listener = new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                try {
+                    onNotification(notification);
+                } catch (ThreadDeath td) {
+                    throw td;
+                } catch (Throwable t) {
+                    try {
+                        logger.error("Failed to record garbage collection", t);
+                    } catch (ThreadDeath td) {
+                        throw td;
+                    } catch (Throwable t2) {
+                        // chomp
+                    }
+                }
+            }
+        };
+        filter = new NotificationFilter() {
+            @Override
+            public boolean isNotificationEnabled(Notification notification) {
+                return GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType());
+            }
+        };
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) gc;
+                emitter.addNotificationListener(listener, filter, null);
+                emitters.add(emitter);
+            }
+        }
+    }
+
+    /* Visible for testing */ GCNotificationPerformanceCounter(String youngPoolName, String oldPoolName) {
+        this.youngPoolName = youngPoolName;
+        this.oldPoolName = oldPoolName;
+    }
+
+    @Override
+    public String getId() {
+        return "GCNotificationPerformanceCounter";
+    }
+
+    /**
+     * Unsubscribes from the notifications of the garbage collectors.
+     */
+    @Override
+    public synchronized void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener, filter, null);
+            } catch (ListenerNotFoundException e) {
+                // already removed
+            }
+        }
+        emitters.clear();
+    }
+
+    @Override
+    public void report(TelemetryClient telemetryClient) {
+        Collection<PauseHistogram> intervalHistograms;
+        long intervalAllocatedBytes;
+        long intervalPromotedBytes;
+        long intervalNanos;
+        synchronized (this) {
+            intervalHistograms = histograms.values();
+            histograms = new LinkedHashMap<String, PauseHistogram>();
+            intervalAllocatedBytes = allocatedBytes;
+            allocatedBytes = 0;
+            intervalPromotedBytes = promotedBytes;
+            promotedBytes = 0;
+            long now = System.nanoTime();
+            intervalNanos = now - lastReportNanos;
+            lastReportNanos = now;
+        }
+
+        for (PauseHistogram histogram : intervalHistograms) {
+            MetricTelemetry pauseTime = new MetricTelemetry(
+                    histogram.concurrent ? GC_CONCURRENT_PHASE_TIME : GC_PAUSE_TIME, histogram.totalMillis);
+            pauseTime.setCount((int) Math.min(histogram.count, Integer.MAX_VALUE));
+            pauseTime.setMin((double) histogram.minMillis);
+            pauseTime.setMax((double) histogram.maxMillis);
+            track(telemetryClient, pauseTime, histogram);
+            if (!histogram.concurrent) {
+                track(telemetryClient, new MetricTelemetry(GC_PAUSE_TIME_P99, histogram.getPercentile(99)), histogram);
+            }
+        }
+        if (youngPoolName != null && intervalNanos > 0) {
+            double bytesPerSecond = intervalAllocatedBytes / (intervalNanos / (double) TimeUnit.SECONDS.toNanos(1));
+            telemetryClient.track(new MetricTelemetry(GC_ALLOCATION_RATE, bytesPerSecond));
+        }
+        if (oldPoolName != null) {
+            telemetryClient.track(new MetricTelemetry(GC_PROMOTED_BYTES, intervalPromotedBytes));
+        }
+    }
+
+    /* Visible for testing */ synchronized void onGarbageCollection(String collector, String action, String cause,
+                                                                     long durationMillis,
+                                                                     Map<String, MemoryUsage> usageBeforeGc,
+                                                                     Map<String, MemoryUsage> usageAfterGc) {
+        String key = collector + '|' + cause;
+        PauseHistogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new PauseHistogram(collector, cause, isConcurrentPhase(collector, cause));
+            histograms.put(key, histogram);
+        }
+        histogram.record(durationMillis);
+
+        if (youngPoolName != null) {
+            MemoryUsage before = usageBeforeGc.get(youngPoolName);
+            MemoryUsage after = usageAfterGc.get(youngPoolName);
+            if (before != null && after != null) {
+                long allocated = before.getUsed() - youngUsedAfterLastGc;
+                if (allocated > 0) {
+                    allocatedBytes += allocated;
+                }
+                youngUsedAfterLastGc = after.getUsed();
+            }
+        }
+        if (oldPoolName != null && MINOR_GC_ACTION.equals(action)) {
+            MemoryUsage before = usageBeforeGc.get(oldPoolName);
+            MemoryUsage after = usageAfterGc.get(oldPoolName);
+            if (before != null && after != null) {
+                long promoted = after.getUsed() - before.getUsed();
+                if (promoted > 0) {
+                    promotedBytes += promoted;
+                }
+            }
+        }
+    }
+
+    private void onNotification(Notification notification) {
+        GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+        onGarbageCollection(info.getGcName(), info.getGcAction(), info.getGcCause(), gcInfo.getDuration(),
+                gcInfo.getMemoryUsageBeforeGc(), gcInfo.getMemoryUsageAfterGc());
+    }
+
+    private static void track(TelemetryClient telemetryClient, MetricTelemetry metric, PauseHistogram histogram) {
+        metric.getProperties().put(COLLECTOR_PROPERTY, histogram.collector);
+        metric.getProperties().put(CAUSE_PROPERTY, histogram.cause);
+        telemetryClient.track(metric);
+    }
+
+    // the "pauses" of these collectors are the durations of phases running alongside the application
+    private static boolean isConcurrentPhase(String collector, String cause) {
+        return "No GC".equals(cause) || "ZGC Cycles".equals(collector) || "Shenandoah Cycles".equals(collector);
+    }
+
+    private static String findHeapPool(Iterable<MemoryPoolMXBean> pools, String... nameParts) {
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() != MemoryType.HEAP) {
+                continue;
+            }
+            for (String namePart : nameParts) {
+                if (pool.getName().contains(namePart)) {
+                    return pool.getName();
+                }
+            }
+        }
+        return null;
+    }
+}
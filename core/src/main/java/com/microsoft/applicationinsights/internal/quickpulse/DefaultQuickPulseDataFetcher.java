@@ -21,12 +21,16 @@
 
 package com.microsoft.applicationinsights.internal.quickpulse;
 
+import java.io.IOException;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.microsoft.applicationinsights.TelemetryConfiguration;
 import com.microsoft.applicationinsights.internal.util.PropertyHelper;
+import com.squareup.moshi.JsonWriter;
+import okio.Buffer;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ByteArrayEntity;
 
@@ -45,7 +49,8 @@ final class DefaultQuickPulseDataFetcher implements QuickPulseDataFetcher {
     private final TelemetryConfiguration config;
     private final String ikey;
     private final QuickPulseNetworkHelper networkHelper = new QuickPulseNetworkHelper();
-    private String postPrefix;
+    private final String instanceName;
+    private final String quickPulseId;
     private final String sdkVersion;
 
     public DefaultQuickPulseDataFetcher(ArrayBlockingQueue<HttpPost> sendQueue, TelemetryConfiguration config,
@@ -62,16 +67,9 @@ final class DefaultQuickPulseDataFetcher implements QuickPulseDataFetcher {
         this.sendQueue = sendQueue;
         this.config = config;
         this.ikey = ikey;
+        this.instanceName = instanceName;
+        this.quickPulseId = quickPulseId;
         sdkVersion = getCurrentSdkVersion();
-        final StringBuilder sb = new StringBuilder();
-        sb.append("[{");
-        formatDocuments(sb);
-        sb.append("\"Instance\": \"").append(instanceName).append("\",");
-        sb.append("\"InstrumentationKey\": \"").append(ikey).append("\",");
-        sb.append("\"InvariantVersion\": 1,");
-        sb.append("\"MachineName\": \"").append(instanceName).append("\",");
-        sb.append("\"StreamId\": \"").append(quickPulseId).append("\",");
-        postPrefix = sb.toString();
         if (logger.isTraceEnabled()) {
             logger.trace("{} using endpoint {}", DefaultQuickPulseDataFetcher.class.getSimpleName(), getQuickPulseEndpoint());
         }
@@ -92,6 +90,7 @@ final class DefaultQuickPulseDataFetcher implements QuickPulseDataFetcher {
 
             final Date currentDate = new Date();
             final HttpPost request = networkHelper.buildRequest(currentDate, getEndpointUrl());
+            networkHelper.setConfigurationETag(request, QuickPulseDataCollector.INSTANCE.getCollectionConfiguration().getETag());
 
             final ByteArrayEntity postEntity = buildPostEntity(counters);
 
@@ -130,46 +129,68 @@ final class DefaultQuickPulseDataFetcher implements QuickPulseDataFetcher {
         }
     }
 
-    private ByteArrayEntity buildPostEntity(QuickPulseDataCollector.FinalCounters counters) {
-        StringBuilder sb = new StringBuilder(postPrefix);
-        formatMetrics(counters, sb);
-        sb.append("\"Timestamp\": \"\\/Date(");
-        long ms = System.currentTimeMillis();
-        sb.append(ms);
-        sb.append(")\\/\",");
-        sb.append("\"Version\": \"");
-        sb.append(sdkVersion);
-        sb.append("\"}]");
-        return new ByteArrayEntity(sb.toString().getBytes());
+    /* Visible for testing */ ByteArrayEntity buildPostEntity(QuickPulseDataCollector.FinalCounters counters) throws IOException {
+        Buffer buffer = new Buffer();
+        JsonWriter writer = JsonWriter.of(buffer);
+        writer.beginArray();
+        writer.beginObject();
+        writeDocuments(writer, counters.documents);
+        writer.name("Instance").value(instanceName);
+        writer.name("InstrumentationKey").value(getInstrumentationKey());
+        writer.name("InvariantVersion").value(1);
+        writer.name("MachineName").value(instanceName);
+        writer.name("StreamId").value(quickPulseId);
+        writeMetrics(writer, counters);
+        // the service expects the escaped slashes of the .NET JSON date format, which JsonWriter would not write
+        writer.name("Timestamp").value(new Buffer().writeUtf8("\"\\/Date(" + System.currentTimeMillis() + ")\\/\""));
+        writer.name("Version").value(sdkVersion);
+        writer.endObject();
+        writer.endArray();
+        writer.close();
+        return new ByteArrayEntity(buffer.readByteArray());
     }
 
-    private void formatDocuments(StringBuilder sb) {
-        sb.append("\"Documents\": [] ,");
+    private static void writeDocuments(JsonWriter writer, List<QuickPulseDocument> documents) throws IOException {
+        writer.name("Documents").beginArray();
+        for (QuickPulseDocument document : documents) {
+            document.write(writer);
+        }
+        writer.endArray();
     }
 
-    private void formatSingleMetric(StringBuilder sb, String metricName, double metricValue, int metricWeight, Boolean includeComma) {
-        String comma = includeComma ? "," : "";
-        sb.append(String.format("{\"Name\": \"%s\",\"Value\": %s,\"Weight\": %s}%s", metricName, metricValue, metricWeight, comma));
+    private static void writeMetric(JsonWriter writer, String metricName, double metricValue, long metricWeight) throws IOException {
+        writer.beginObject();
+        writer.name("Name").value(metricName);
+        writer.name("Value").value(Double.isNaN(metricValue) || Double.isInfinite(metricValue) ? 0 : metricValue);
+        writer.name("Weight").value(metricWeight);
+        writer.endObject();
     }
 
-    private void formatSingleMetric(StringBuilder sb, String metricName, long metricValue, int metricWeight, Boolean includeComma) {
-        String comma = includeComma ? "," : "";
-        sb.append(String.format("{\"Name\": \"%s\",\"Value\": %s,\"Weight\": %s}%s", metricName, metricValue, metricWeight, comma));
+    private static void writeMetric(JsonWriter writer, String metricName, long metricValue, long metricWeight) throws IOException {
+        writer.beginObject();
+        writer.name("Name").value(metricName);
+        writer.name("Value").value(metricValue);
+        writer.name("Weight").value(metricWeight);
+        writer.endObject();
     }
 
-    private void formatMetrics(QuickPulseDataCollector.FinalCounters counters, StringBuilder sb) {
-        sb.append("\"Metrics\":[");
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Requests\\/Sec", counters.requests, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Request Duration", counters.requestsDuration, (int)counters.requests, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Requests Failed\\/Sec", counters.unsuccessfulRequests, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Requests Succeeded\\/Sec", (counters.requests - counters.unsuccessfulRequests), 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Dependency Calls\\/Sec", counters.rdds, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Dependency Call Duration", counters.rddsDuration, (int)counters.rdds, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Dependency Calls Failed\\/Sec", counters.unsuccessfulRdds, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Dependency Calls Succeeded\\/Sec", counters.rdds - counters.unsuccessfulRdds, 1, true);
-        formatSingleMetric(sb, "\\\\ApplicationInsights\\\\Exceptions\\/Sec", counters.exceptions, 1, true);
-        formatSingleMetric(sb, "\\\\Memory\\\\Committed Bytes", counters.memoryCommitted, 1, true);
-        formatSingleMetric(sb, "\\\\Processor(_Total)\\\\% Processor Time", counters.cpuUsage, 1, false);
-        sb.append("],");
+    private static void writeMetrics(JsonWriter writer, QuickPulseDataCollector.FinalCounters counters) throws IOException {
+        writer.name("Metrics").beginArray();
+        writeMetric(writer, "\\ApplicationInsights\\Requests/Sec", counters.requests, 1);
+        writeMetric(writer, "\\ApplicationInsights\\Request Duration", counters.requestsDuration, (int) counters.requests);
+        writeMetric(writer, "\\ApplicationInsights\\Requests Failed/Sec", counters.unsuccessfulRequests, 1);
+        writeMetric(writer, "\\ApplicationInsights\\Requests Succeeded/Sec", counters.requests - counters.unsuccessfulRequests, 1);
+        writeMetric(writer, "\\ApplicationInsights\\Dependency Calls/Sec", counters.rdds, 1);
+        writeMetric(writer, "\\ApplicationInsights\\Dependency Call Duration", counters.rddsDuration, (int) counters.rdds);
+        writeMetric(writer, "\\ApplicationInsights\\Dependency Calls Failed/Sec", counters.unsuccessfulRdds, 1);
+        writeMetric(writer, "\\ApplicationInsights\\Dependency Calls Succeeded/Sec", counters.rdds - counters.unsuccessfulRdds, 1);
+        writeMetric(writer, "\\ApplicationInsights\\Exceptions/Sec", counters.exceptions, 1);
+        writeMetric(writer, "\\Memory\\Committed Bytes", counters.memoryCommitted, 1);
+        writeMetric(writer, "\\Processor(_Total)\\% Processor Time", counters.cpuUsage, 1);
+        List<QuickPulseCollectionConfiguration.DerivedMetric> derivedMetrics = counters.configuration.getMetrics();
+        for (int i = 0; i < derivedMetrics.size(); i++) {
+            writeMetric(writer, derivedMetrics.get(i).getId(), counters.derivedMetrics[i], 1);
+        }
+        writer.endArray();
     }
 }
@@ -24,16 +24,22 @@ package com.microsoft.applicationinsights.internal.quickpulse;
 import java.io.IOException;
 import java.util.concurrent.ArrayBlockingQueue;
 
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.util.EntityUtils;
 
 import com.microsoft.applicationinsights.internal.channel.common.ApacheSender;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Created by gupele on 12/12/2016.
  */
 final class DefaultQuickPulseDataSender implements QuickPulseDataSender {
 
+    private static final Logger logger = LoggerFactory.getLogger(DefaultQuickPulseDataSender.class);
+
     private final QuickPulseNetworkHelper networkHelper = new QuickPulseNetworkHelper();
     private final ApacheSender apacheSender;
     private volatile QuickPulseStatus quickPulseStatus;
@@ -67,6 +73,7 @@ final class DefaultQuickPulseDataSender implements QuickPulseDataSender {
                             case QP_IS_ON:
                                 lastValidTransmission = sendTime;
                                 quickPulseStatus = quickPulseResultStatus;
+                                updateCollectionConfiguration(response);
                                 break;
 
                             case ERROR:
@@ -117,6 +124,31 @@ final class DefaultQuickPulseDataSender implements QuickPulseDataSender {
         quickPulseStatus = QuickPulseStatus.ERROR;
     }
 
+    // the service only sends a configuration when its etag differs from the one that was posted
+    private void updateCollectionConfiguration(HttpResponse response) {
+        String etag = networkHelper.getConfigurationETag(response);
+        QuickPulseDataCollector collector = QuickPulseDataCollector.INSTANCE;
+        if (etag == null || etag.equals(collector.getCollectionConfiguration().getETag())) {
+            return;
+        }
+        HttpEntity entity = response.getEntity();
+        if (entity == null) {
+            return;
+        }
+        try {
+            String body = EntityUtils.toString(entity, "UTF-8");
+            if (body.isEmpty()) {
+                return;
+            }
+            QuickPulseCollectionConfiguration configuration = QuickPulseCollectionConfiguration.parse(body);
+            collector.setCollectionConfiguration(configuration);
+            logger.debug("Live metrics collection configuration updated to etag {}", configuration.getETag());
+        } catch (Exception e) {
+            // keep collecting with the current configuration
+            logger.warn("Live metrics collection configuration could not be read: {}", e.toString());
+        }
+    }
+
     private void onPostError(long sendTime) {
         if (stopped) {
             return;
@@ -0,0 +1,670 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.quickpulse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.microsoft.applicationinsights.internal.schemav2.ExceptionDetails;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.squareup.moshi.JsonReader;
+import okio.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The derived metrics and document streams the QuickPulse service asks for, parsed from the body of a post
+ * response whose configuration etag differs from the one we sent.
+ *
+ * Instances are immutable and are swapped in as a whole by {@link QuickPulseDataCollector}, so the request path
+ * evaluates the filters without any locking. Filters on telemetry types or fields this SDK does not collect
+ * never match.
+ */
+final class QuickPulseCollectionConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuickPulseCollectionConfiguration.class);
+
+    private static final String CUSTOM_DIMENSIONS_PREFIX = "CustomDimensions.";
+
+    // used until the service sends its own configuration
+    private static final String DEFAULT_JSON = "{\"ETag\":\"\",\"Metrics\":[],\"DocumentStreams\":[{"
+            + "\"Id\":\"all-types-default\",\"DocumentFilterGroups\":["
+            + "{\"TelemetryType\":\"Request\",\"Filters\":{\"Filters\":["
+            + "{\"FieldName\":\"Success\",\"Predicate\":\"Equal\",\"Comparand\":\"false\"}]}},"
+            + "{\"TelemetryType\":\"Dependency\",\"Filters\":{\"Filters\":["
+            + "{\"FieldName\":\"Success\",\"Predicate\":\"Equal\",\"Comparand\":\"false\"}]}},"
+            + "{\"TelemetryType\":\"Dependency\",\"Filters\":{\"Filters\":["
+            + "{\"FieldName\":\"Duration\",\"Predicate\":\"GreaterThan\",\"Comparand\":\"00:00:01\"}]}},"
+            + "{\"TelemetryType\":\"Exception\",\"Filters\":{\"Filters\":[]}}]}]}";
+
+    static final QuickPulseCollectionConfiguration DEFAULT;
+
+    static {
+        try {
+            DEFAULT = parse(DEFAULT_JSON);
+        } catch (IOException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    enum TelemetryType {
+        Request, Dependency, Exception;
+
+        static TelemetryType of(Telemetry telemetry) {
+            if (telemetry instanceof RequestTelemetry) {
+                return Request;
+            } else if (telemetry instanceof RemoteDependencyTelemetry) {
+                return Dependency;
+            } else if (telemetry instanceof ExceptionTelemetry) {
+                return Exception;
+            }
+            return null;
+        }
+
+        private static TelemetryType parse(String value) {
+            for (TelemetryType type : values()) {
+                if (type.name().equalsIgnoreCase(value)) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    enum Predicate {
+        Equal, NotEqual, LessThan, GreaterThan, LessThanOrEqual, GreaterThanOrEqual, Contains, DoesNotContain
+    }
+
+    enum Aggregation {
+        Avg, Sum, Min, Max
+    }
+
+    private enum Field {
+        NAME, SUCCESS, DURATION, RESPONSE_CODE, RESULT_CODE, URL, TARGET, TYPE, DATA, EXCEPTION_TYPE, EXCEPTION_MESSAGE,
+        CUSTOM_DIMENSION, UNKNOWN;
+
+        private static Field parse(String fieldName) {
+            if (fieldName == null) {
+                return UNKNOWN;
+            }
+            if (fieldName.startsWith(CUSTOM_DIMENSIONS_PREFIX)) {
+                return CUSTOM_DIMENSION;
+            }
+            switch (fieldName.toLowerCase(Locale.ROOT)) {
+                case "name": return NAME;
+                case "success": return SUCCESS;
+                case "duration": return DURATION;
+                case "responsecode": return RESPONSE_CODE;
+                case "resultcode": return RESULT_CODE;
+                case "url": return URL;
+                case "target": return TARGET;
+                case "type": return TYPE;
+                case "data": return DATA;
+                case "exception.type": return EXCEPTION_TYPE;
+                case "exception.message": return EXCEPTION_MESSAGE;
+                default: return UNKNOWN;
+            }
+        }
+    }
+
+    /**
+     * A single {@code <field> <predicate> <comparand>} condition. Strings are compared ignoring case, durations
+     * are compared in milliseconds and accept either a number of milliseconds or a {@code [d.]hh:mm:ss[.fffffff]}
+     * comparand.
+     */
+    static final class Filter {
+
+        private final Field field;
+        private final String customDimension;
+        private final Predicate predicate;
+        private final String comparand;
+        private final double numericComparand;
+
+        Filter(String fieldName, Predicate predicate, String comparand) {
+            this.field = Field.parse(fieldName);
+            this.customDimension = field == Field.CUSTOM_DIMENSION
+                    ? fieldName.substring(CUSTOM_DIMENSIONS_PREFIX.length()) : null;
+            this.predicate = predicate;
+            this.comparand = comparand == null ? "" : comparand;
+            this.numericComparand = field == Field.DURATION ? parseDurationMillis(this.comparand) : parseDouble(this.comparand);
+        }
+
+        boolean matches(Telemetry telemetry) {
+            if (field == Field.UNKNOWN || predicate == null) {
+                return false;
+            }
+            if (field == Field.DURATION) {
+                double millis = getDurationMillis(telemetry);
+                return !Double.isNaN(millis) && compareNumber(millis);
+            }
+            if (field == Field.SUCCESS) {
+                Boolean success = getSuccess(telemetry);
+                return success != null && compareBoolean(success);
+            }
+            return compareString(getStringValue(telemetry));
+        }
+
+        private boolean compareNumber(double value) {
+            if (Double.isNaN(numericComparand)) {
+                return false;
+            }
+            switch (predicate) {
+                case Equal: return value == numericComparand;
+                case NotEqual: return value != numericComparand;
+                case LessThan: return value < numericComparand;
+                case GreaterThan: return value > numericComparand;
+                case LessThanOrEqual: return value <= numericComparand;
+                case GreaterThanOrEqual: return value >= numericComparand;
+                default: return false;
+            }
+        }
+
+        private boolean compareBoolean(boolean value) {
+            switch (predicate) {
+                case Equal: return comparand.equalsIgnoreCase(Boolean.toString(value));
+                case NotEqual: return !comparand.equalsIgnoreCase(Boolean.toString(value));
+                default: return false;
+            }
+        }
+
+        private boolean compareString(String value) {
+            if (value == null) {
+                return predicate == Predicate.NotEqual || predicate == Predicate.DoesNotContain;
+            }
+            switch (predicate) {
+                case Equal: return value.equalsIgnoreCase(comparand);
+                case NotEqual: return !value.equalsIgnoreCase(comparand);
+                case Contains: return containsIgnoreCase(value, comparand);
+                case DoesNotContain: return !containsIgnoreCase(value, comparand);
+                default:
+                    // e.g. ResponseCode GreaterThanOrEqual 500
+                    double number = parseDouble(value);
+                    return !Double.isNaN(number) && compareNumber(number);
+            }
+        }
+
+        private String getStringValue(Telemetry telemetry) {
+            if (field == Field.CUSTOM_DIMENSION) {
+                return telemetry.getProperties().get(customDimension);
+            }
+            if (telemetry instanceof RequestTelemetry) {
+                RequestTelemetry request = (RequestTelemetry) telemetry;
+                switch (field) {
+                    case NAME: return request.getName();
+                    case RESPONSE_CODE: return request.getResponseCode();
+                    case URL: return request.getUrlString();
+                    default: return null;
+                }
+            }
+            if (telemetry instanceof RemoteDependencyTelemetry) {
+                RemoteDependencyTelemetry dependency = (RemoteDependencyTelemetry) telemetry;
+                switch (field) {
+                    case NAME: return dependency.getName();
+                    case RESULT_CODE: return dependency.getResultCode();
+                    case TARGET: return dependency.getTarget();
+                    case TYPE: return dependency.getType();
+                    case DATA: return dependency.getCommandName();
+                    default: return null;
+                }
+            }
+            if (telemetry instanceof ExceptionTelemetry) {
+                ExceptionDetails details = getOutermostException((ExceptionTelemetry) telemetry);
+                if (details == null) {
+                    return null;
+                }
+                switch (field) {
+                    case EXCEPTION_TYPE: return details.getTypeName();
+                    case EXCEPTION_MESSAGE: return details.getMessage();
+                    default: return null;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Matches when every filter of the group matches.
+     */
+    static final class FilterGroup {
+
+        private final TelemetryType telemetryType;
+        private final List<Filter> filters;
+
+        FilterGroup(TelemetryType telemetryType, List<Filter> filters) {
+            this.telemetryType = telemetryType;
+            this.filters = filters;
+        }
+
+        boolean matches(Telemetry telemetry, TelemetryType type) {
+            if (telemetryType != type) {
+                return false;
+            }
+            for (int i = 0; i < filters.size(); i++) {
+                if (!filters.get(i).matches(telemetry)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    static final class DerivedMetric {
+
+        private final String id;
+        private final List<FilterGroup> filterGroups;
+        private final Field projection;
+        private final String customDimension;
+        private final Aggregation aggregation;
+
+        DerivedMetric(String id, TelemetryType telemetryType, List<List<Filter>> filterGroups, String projection,
+                      Aggregation aggregation) {
+            this.id = id;
+            List<FilterGroup> groups = new ArrayList<FilterGroup>();
+            for (List<Filter> filters : filterGroups) {
+                groups.add(new FilterGroup(telemetryType, filters));
+            }
+            if (groups.isEmpty()) {
+                // no filters means every item of the telemetry type
+                groups.add(new FilterGroup(telemetryType, Collections.<Filter>emptyList()));
+            }
+            this.filterGroups = groups;
+            this.projection = "Count()".equalsIgnoreCase(projection) ? null : Field.parse(projection);
+            this.customDimension = this.projection == Field.CUSTOM_DIMENSION
+                    ? projection.substring(CUSTOM_DIMENSIONS_PREFIX.length()) : null;
+            this.aggregation = aggregation == null ? Aggregation.Sum : aggregation;
+        }
+
+        String getId() {
+            return id;
+        }
+
+        Aggregation getAggregation() {
+            return aggregation;
+        }
+
+        boolean matches(Telemetry telemetry, TelemetryType type) {
+            return anyMatches(filterGroups, telemetry, type);
+        }
+
+        /**
+         * Returns the value this item contributes to the metric, or {@code NaN} when it has none.
+         */
+        double project(Telemetry telemetry) {
+            if (projection == null) {
+                return 1;
+            }
+            switch (projection) {
+                case DURATION:
+                    return getDurationMillis(telemetry);
+                case CUSTOM_DIMENSION:
+                    String value = telemetry.getProperties().get(customDimension);
+                    return value == null ? Double.NaN : parseDouble(value);
+                default:
+                    return Double.NaN;
+            }
+        }
+    }
+
+    static final class DocumentStream {
+
+        private final String id;
+        private final List<FilterGroup> filterGroups;
+
+        DocumentStream(String id, List<FilterGroup> filterGroups) {
+            this.id = id;
+            this.filterGroups = filterGroups;
+        }
+
+        String getId() {
+            return id;
+        }
+    }
+
+    private final String etag;
+    private final List<DerivedMetric> metrics;
+    private final List<DocumentStream> documentStreams;
+
+    QuickPulseCollectionConfiguration(String etag, List<DerivedMetric> metrics, List<DocumentStream> documentStreams) {
+        this.etag = etag;
+        this.metrics = metrics;
+        this.documentStreams = documentStreams;
+    }
+
+    String getETag() {
+        return etag;
+    }
+
+    List<DerivedMetric> getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns the ids of the document streams that want this item, or {@code null} when none does.
+     */
+    String[] getMatchingDocumentStreamIds(Telemetry telemetry, TelemetryType type) {
+        String[] ids = null;
+        int count = 0;
+        for (int i = 0; i < documentStreams.size(); i++) {
+            DocumentStream stream = documentStreams.get(i);
+            if (anyMatches(stream.filterGroups, telemetry, type)) {
+                if (ids == null) {
+                    ids = new String[documentStreams.size() - i];
+                }
+                ids[count++] = stream.id;
+            }
+        }
+        if (ids != null && count < ids.length) {
+            String[] trimmed = new String[count];
+            System.arraycopy(ids, 0, trimmed, 0, count);
+            return trimmed;
+        }
+        return ids;
+    }
+
+    static QuickPulseCollectionConfiguration parse(String json) throws IOException {
+        JsonReader reader = JsonReader.of(new Buffer().writeUtf8(json));
+        String etag = null;
+        List<DerivedMetric> metrics = new ArrayList<DerivedMetric>();
+        List<DocumentStream> documentStreams = new ArrayList<DocumentStream>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "ETag":
+                    etag = nextStringOrNull(reader);
+                    break;
+                case "Metrics":
+                    if (isNull(reader)) {
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        metrics.add(readDerivedMetric(reader));
+                    }
+                    reader.endArray();
+                    break;
+                case "DocumentStreams":
+                    if (isNull(reader)) {
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        documentStreams.add(readDocumentStream(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new QuickPulseCollectionConfiguration(etag, Collections.unmodifiableList(metrics),
+                Collections.unmodifiableList(documentStreams));
+    }
+
+    private static DerivedMetric readDerivedMetric(JsonReader reader) throws IOException {
+        String id = null;
+        TelemetryType telemetryType = null;
+        List<List<Filter>> filterGroups = new ArrayList<List<Filter>>();
+        String projection = null;
+        Aggregation aggregation = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "Id":
+                    id = nextStringOrNull(reader);
+                    break;
+                case "TelemetryType":
+                    telemetryType = TelemetryType.parse(nextStringOrNull(reader));
+                    break;
+                case "FilterGroups":
+                    if (isNull(reader)) {
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        filterGroups.add(readFilterConjunction(reader));
+                    }
+                    reader.endArray();
+                    break;
+                case "Projection":
+                    projection = nextStringOrNull(reader);
+                    break;
+                case "Aggregation":
+                    aggregation = parseEnum(Aggregation.class, nextStringOrNull(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        if (telemetryType == null) {
+            logger.debug("Live metrics derived metric {} uses a telemetry type which is not collected", id);
+        }
+        return new DerivedMetric(id, telemetryType, filterGroups, projection, aggregation);
+    }
+
+    private static DocumentStream readDocumentStream(JsonReader reader) throws IOException {
+        String id = null;
+        List<FilterGroup> filterGroups = new ArrayList<FilterGroup>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "Id":
+                    id = nextStringOrNull(reader);
+                    break;
+                case "DocumentFilterGroups":
+                    if (isNull(reader)) {
+                        break;
+                    }
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        filterGroups.add(readDocumentFilterGroup(reader));
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new DocumentStream(id, filterGroups);
+    }
+
+    private static FilterGroup readDocumentFilterGroup(JsonReader reader) throws IOException {
+        TelemetryType telemetryType = null;
+        List<Filter> filters = Collections.emptyList();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "TelemetryType":
+                    telemetryType = TelemetryType.parse(nextStringOrNull(reader));
+                    break;
+                case "Filters":
+                    if (isNull(reader)) {
+                        break;
+                    }
+                    filters = readFilterConjunction(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new FilterGroup(telemetryType, filters);
+    }
+
+    // {"Filters": [{"FieldName": ..., "Predicate": ..., "Comparand": ...}, ...]}
+    private static List<Filter> readFilterConjunction(JsonReader reader) throws IOException {
+        List<Filter> filters = new ArrayList<Filter>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("Filters".equals(reader.nextName()) && !isNull(reader)) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    filters.add(readFilter(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return filters;
+    }
+
+    private static Filter readFilter(JsonReader reader) throws IOException {
+        String fieldName = null;
+        Predicate predicate = null;
+        String comparand = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "FieldName":
+                    fieldName = nextStringOrNull(reader);
+                    break;
+                case "Predicate":
+                    predicate = parseEnum(Predicate.class, nextStringOrNull(reader));
+                    break;
+                case "Comparand":
+                    comparand = nextStringOrNull(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new Filter(fieldName, predicate, comparand);
+    }
+
+    private static boolean isNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonReader.Token.NULL) {
+            reader.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        return isNull(reader) ? null : reader.nextString();
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String value) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        return null;
+    }
+
+    private static boolean anyMatches(List<FilterGroup> filterGroups, Telemetry telemetry, TelemetryType type) {
+        for (int i = 0; i < filterGroups.size(); i++) {
+            if (filterGroups.get(i).matches(telemetry, type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double getDurationMillis(Telemetry telemetry) {
+        if (telemetry instanceof RequestTelemetry) {
+            return ((RequestTelemetry) telemetry).getDuration().getTotalMilliseconds();
+        } else if (telemetry instanceof RemoteDependencyTelemetry) {
+            return ((RemoteDependencyTelemetry) telemetry).getDuration().getTotalMilliseconds();
+        }
+        return Double.NaN;
+    }
+
+    private static Boolean getSuccess(Telemetry telemetry) {
+        if (telemetry instanceof RequestTelemetry) {
+            return ((RequestTelemetry) telemetry).isSuccess();
+        } else if (telemetry instanceof RemoteDependencyTelemetry) {
+            return ((RemoteDependencyTelemetry) telemetry).getSuccess();
+        }
+        return null;
+    }
+
+    static ExceptionDetails getOutermostException(ExceptionTelemetry telemetry) {
+        List<ExceptionDetails> exceptions = telemetry.getExceptions();
+        return exceptions == null || exceptions.isEmpty() ? null : exceptions.get(0);
+    }
+
+    private static boolean containsIgnoreCase(String value, String part) {
+        int max = value.length() - part.length();
+        for (int i = 0; i <= max; i++) {
+            if (value.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // accepts milliseconds or a .NET TimeSpan, [-][d.]hh:mm:ss[.fffffff]
+    static double parseDurationMillis(String value) {
+        if (value.indexOf(':') == -1) {
+            return parseDouble(value);
+        }
+        try {
+            String timeSpan = value.trim();
+            boolean negative = timeSpan.startsWith("-");
+            if (negative) {
+                timeSpan = timeSpan.substring(1);
+            }
+            String[] parts = timeSpan.split(":");
+            if (parts.length != 3) {
+                return Double.NaN;
+            }
+            long days = 0;
+            String hours = parts[0];
+            int dayDot = hours.indexOf('.');
+            if (dayDot != -1) {
+                days = Long.parseLong(hours.substring(0, dayDot));
+                hours = hours.substring(dayDot + 1);
+            }
+            double millis = ((days * 24 + Long.parseLong(hours)) * 60 + Long.parseLong(parts[1])) * 60000.0
+                    + Double.parseDouble(parts[2]) * 1000;
+            return negative ? -millis : millis;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
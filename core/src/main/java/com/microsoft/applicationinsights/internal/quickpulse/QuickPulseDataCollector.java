@@ -24,9 +24,10 @@ package com.microsoft.applicationinsights.internal.quickpulse;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.microsoft.applicationinsights.TelemetryConfiguration;
 import com.microsoft.applicationinsights.internal.perfcounter.CpuPerformanceCounterCalculator;
@@ -42,8 +43,12 @@ import org.slf4j.LoggerFactory;
 public enum QuickPulseDataCollector {
     INSTANCE;
 
-    private String ikey;
+    // add() runs on the request path for every tracked item, so it only ever reads these volatile
+    // fields; the configured ikey is resolved under the lock and refreshed once per collection interval
+    private volatile String ikey;
     private TelemetryConfiguration config;
+    // the configuration sent by the service, picked up by the counters of the next collection interval
+    private volatile QuickPulseCollectionConfiguration collectionConfiguration = QuickPulseCollectionConfiguration.DEFAULT;
 
     static class FinalCounters {
         public final double exceptions;
@@ -55,6 +60,10 @@ public enum QuickPulseDataCollector {
         public final long unsuccessfulRdds;
         public final long memoryCommitted;
         public final double cpuUsage;
+        public final QuickPulseCollectionConfiguration configuration;
+        // in the order of configuration.getMetrics()
+        public final double[] derivedMetrics;
+        public final List<QuickPulseDocument> documents;
 
         public FinalCounters(Counters currentCounters, MemoryMXBean memory, CpuPerformanceCounterCalculator cpuPerformanceCounterCalculator) {
             if (memory != null && memory.getHeapMemoryUsage() != null) {
@@ -71,56 +80,101 @@ public enum QuickPulseDataCollector {
             } else {
                 cpuUsage = -1;
             }
-            exceptions = currentCounters.exceptions.get();
+            exceptions = currentCounters.exceptions.sum();
 
-            CountAndDuration countAndDuration = Counters.decodeCountAndDuration(currentCounters.requestsAndDurations.get());
-            requests = countAndDuration.count;
-            this.requestsDuration = countAndDuration.duration;
-            this.unsuccessfulRequests = currentCounters.unsuccessfulRequests.get();
+            requests = currentCounters.requests.sum();
+            this.requestsDuration = currentCounters.requestsDuration.sum();
+            this.unsuccessfulRequests = currentCounters.unsuccessfulRequests.sum();
 
-            countAndDuration = Counters.decodeCountAndDuration(currentCounters.rddsAndDuations.get());
-            this.rdds = countAndDuration.count;
-            this.rddsDuration = countAndDuration.duration;
-            this.unsuccessfulRdds = currentCounters.unsuccessfulRdds.get();
-        }
-    }
-
-    static class CountAndDuration {
-        public final long count;
-        public final long duration;
+            this.rdds = currentCounters.rdds.sum();
+            this.rddsDuration = currentCounters.rddsDuration.sum();
+            this.unsuccessfulRdds = currentCounters.unsuccessfulRdds.sum();
 
-        private CountAndDuration(long count, long duration) {
-            this.count = count;
-            this.duration = duration;
+            this.configuration = currentCounters.configuration;
+            this.derivedMetrics = new double[currentCounters.derivedMetrics.length];
+            for (int i = 0; i < derivedMetrics.length; i++) {
+                derivedMetrics[i] = currentCounters.derivedMetrics[i].get();
+            }
+            this.documents = currentCounters.documents.drain();
         }
     }
 
+    /**
+     * Counts and durations are kept apart, so neither can overflow into the other.
+     */
     static class Counters {
-        private static final long MAX_COUNT = 524287L;
-        private static final long MAX_DURATION = 17592186044415L;
-
-        public final AtomicInteger exceptions = new AtomicInteger(0);
-
-        final AtomicLong requestsAndDurations = new AtomicLong(0);
-        final AtomicInteger unsuccessfulRequests = new AtomicInteger(0);
-
-        final AtomicLong rddsAndDuations = new AtomicLong(0);
-        final AtomicInteger unsuccessfulRdds = new AtomicInteger(0);
+        final LongAdder exceptions = new LongAdder();
+
+        final LongAdder requests = new LongAdder();
+        final LongAdder requestsDuration = new LongAdder();
+        final LongAdder unsuccessfulRequests = new LongAdder();
+
+        final LongAdder rdds = new LongAdder();
+        final LongAdder rddsDuration = new LongAdder();
+        final LongAdder unsuccessfulRdds = new LongAdder();
+
+        final QuickPulseCollectionConfiguration configuration;
+        final DerivedMetricAccumulator[] derivedMetrics;
+        final QuickPulseDocumentBuffer documents = new QuickPulseDocumentBuffer();
+
+        Counters(QuickPulseCollectionConfiguration configuration) {
+            this.configuration = configuration;
+            List<QuickPulseCollectionConfiguration.DerivedMetric> metrics = configuration.getMetrics();
+            derivedMetrics = new DerivedMetricAccumulator[metrics.size()];
+            for (int i = 0; i < derivedMetrics.length; i++) {
+                derivedMetrics[i] = new DerivedMetricAccumulator(metrics.get(i).getAggregation());
+            }
+        }
+    }
 
-        static long encodeCountAndDuration(long  count, long duration) {
-            if (count > MAX_COUNT || duration > MAX_DURATION) {
-                return 0;
+    /**
+     * Aggregates the values of one derived metric over a collection interval with compare-and-set loops;
+     * derived metrics are only collected while someone is looking at a chart which asks for them.
+     */
+    static final class DerivedMetricAccumulator {
+        private final QuickPulseCollectionConfiguration.Aggregation aggregation;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong valueBits;
+
+        DerivedMetricAccumulator(QuickPulseCollectionConfiguration.Aggregation aggregation) {
+            this.aggregation = aggregation;
+            double initial;
+            switch (aggregation) {
+                case Min: initial = Double.POSITIVE_INFINITY; break;
+                case Max: initial = Double.NEGATIVE_INFINITY; break;
+                default: initial = 0; break;
             }
+            valueBits = new AtomicLong(Double.doubleToRawLongBits(initial));
+        }
 
-            return (count << 44) + duration;
+        void add(double value) {
+            count.incrementAndGet();
+            while (true) {
+                long currentBits = valueBits.get();
+                double current = Double.longBitsToDouble(currentBits);
+                double updated;
+                switch (aggregation) {
+                    case Min: updated = Math.min(current, value); break;
+                    case Max: updated = Math.max(current, value); break;
+                    default: updated = current + value; break;
+                }
+                if (updated == current || valueBits.compareAndSet(currentBits, Double.doubleToRawLongBits(updated))) {
+                    return;
+                }
+            }
         }
 
-        static CountAndDuration decodeCountAndDuration(long countAndDuration) {
-            return new CountAndDuration(countAndDuration >> 44, countAndDuration & MAX_DURATION);
+        double get() {
+            long count = this.count.get();
+            if (count == 0) {
+                return 0;
+            }
+            double value = Double.longBitsToDouble(valueBits.get());
+            return aggregation == QuickPulseCollectionConfiguration.Aggregation.Avg ? value / count : value;
         }
     }
 
-    private AtomicReference<Counters> counters = new AtomicReference<Counters>(null);
+    private final AtomicReference<Counters> counters = new AtomicReference<Counters>(null);
     private final MemoryMXBean memory;
     private final CpuPerformanceCounterCalculator cpuPerformanceCounterCalculator;
 
@@ -147,30 +201,41 @@ public enum QuickPulseDataCollector {
 
     public synchronized void disable() {
         counters.set(null);
+        // a new session starts over with the default configuration until the service sends its own
+        collectionConfiguration = QuickPulseCollectionConfiguration.DEFAULT;
     }
 
     @Deprecated
     public synchronized void enable(final String ikey) {
-        this.ikey = ikey;
         this.config = null;
-        counters.set(new Counters());
+        this.ikey = ikey;
+        counters.set(new Counters(collectionConfiguration));
     }
 
     public synchronized void enable(TelemetryConfiguration config) {
         this.config = config;
-        this.ikey = null;
-        counters.set(new Counters());
+        this.ikey = config.getInstrumentationKey();
+        counters.set(new Counters(collectionConfiguration));
     }
 
     public synchronized FinalCounters getAndRestart() {
-        final Counters currentCounters = counters.getAndSet(new Counters());
+        final Counters currentCounters = counters.getAndSet(new Counters(collectionConfiguration));
         if (currentCounters != null) {
+            refreshInstrumentationKey();
             return new FinalCounters(currentCounters, memory, cpuPerformanceCounterCalculator);
         }
 
         return null;
     }
 
+    QuickPulseCollectionConfiguration getCollectionConfiguration() {
+        return collectionConfiguration;
+    }
+
+    void setCollectionConfiguration(QuickPulseCollectionConfiguration collectionConfiguration) {
+        this.collectionConfiguration = collectionConfiguration;
+    }
+
     /*@VisibleForTesting*/
     synchronized FinalCounters peek() {
         final Counters currentCounters = this.counters.get(); // this should be the only differece
@@ -181,58 +246,66 @@ public enum QuickPulseDataCollector {
     }
 
     public void add(Telemetry telemetry) {
-        if (!telemetry.getContext().getInstrumentationKey().equals(getInstrumentationKey())) {
+        Counters counters = this.counters.get();
+        if (counters == null) {
+            return;
+        }
+
+        String ikey = this.ikey;
+        if (ikey == null || !ikey.equals(telemetry.getContext().getInstrumentationKey())) {
             return;
         }
 
         if (telemetry instanceof RequestTelemetry) {
-            RequestTelemetry requestTelemetry = (RequestTelemetry)telemetry;
-            addRequest(requestTelemetry);
+            addRequest(counters, (RequestTelemetry) telemetry);
+            sample(counters, telemetry, QuickPulseCollectionConfiguration.TelemetryType.Request);
         } else if (telemetry instanceof RemoteDependencyTelemetry) {
-            addDependency((RemoteDependencyTelemetry) telemetry);
+            addDependency(counters, (RemoteDependencyTelemetry) telemetry);
+            sample(counters, telemetry, QuickPulseCollectionConfiguration.TelemetryType.Dependency);
         } else if (telemetry instanceof ExceptionTelemetry) {
-            addException();
+            counters.exceptions.increment();
+            sample(counters, telemetry, QuickPulseCollectionConfiguration.TelemetryType.Exception);
         }
     }
 
-    private synchronized String getInstrumentationKey() {
-        if (config != null) {
-            return config.getInstrumentationKey();
-        } else {
-            return ikey;
-        }
-    }
-
-    private void addDependency(RemoteDependencyTelemetry telemetry) {
-        Counters counters = this.counters.get();
-        if (counters == null) {
-            return;
+    // feeds the derived metrics and the document streams of the configuration the counters were created with
+    private static void sample(Counters counters, Telemetry telemetry, QuickPulseCollectionConfiguration.TelemetryType type) {
+        List<QuickPulseCollectionConfiguration.DerivedMetric> metrics = counters.configuration.getMetrics();
+        for (int i = 0; i < metrics.size(); i++) {
+            QuickPulseCollectionConfiguration.DerivedMetric metric = metrics.get(i);
+            if (metric.matches(telemetry, type)) {
+                double value = metric.project(telemetry);
+                if (!Double.isNaN(value)) {
+                    counters.derivedMetrics[i].add(value);
+                }
+            }
         }
-        counters.rddsAndDuations.addAndGet(
-                Counters.encodeCountAndDuration(1, telemetry.getDuration().getTotalMilliseconds()));
-        if (!telemetry.getSuccess()) {
-            counters.unsuccessfulRdds.incrementAndGet();
+        String[] documentStreamIds = counters.configuration.getMatchingDocumentStreamIds(telemetry, type);
+        if (documentStreamIds != null) {
+            counters.documents.add(new QuickPulseDocument(telemetry, type, documentStreamIds));
         }
     }
 
-    private void addException() {
-        Counters counters = this.counters.get();
-        if (counters == null) {
-            return;
+    // the instrumentation key of the configuration may be changed at runtime
+    private void refreshInstrumentationKey() {
+        if (config != null) {
+            ikey = config.getInstrumentationKey();
         }
-
-        counters.exceptions.incrementAndGet();
     }
 
-    private void addRequest(RequestTelemetry requestTelemetry) {
-        Counters counters = this.counters.get();
-        if (counters == null) {
-            return;
+    private static void addDependency(Counters counters, RemoteDependencyTelemetry telemetry) {
+        counters.rdds.increment();
+        counters.rddsDuration.add(telemetry.getDuration().getTotalMilliseconds());
+        if (!telemetry.getSuccess()) {
+            counters.unsuccessfulRdds.increment();
         }
+    }
 
-        counters.requestsAndDurations.addAndGet(Counters.encodeCountAndDuration(1, requestTelemetry.getDuration().getTotalMilliseconds()));
+    private static void addRequest(Counters counters, RequestTelemetry requestTelemetry) {
+        counters.requests.increment();
+        counters.requestsDuration.add(requestTelemetry.getDuration().getTotalMilliseconds());
         if (!requestTelemetry.isSuccess()) {
-            counters.unsuccessfulRequests.incrementAndGet();
+            counters.unsuccessfulRequests.increment();
         }
     }
 }
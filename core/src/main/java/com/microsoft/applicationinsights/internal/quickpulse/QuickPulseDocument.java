@@ -0,0 +1,211 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.quickpulse;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.microsoft.applicationinsights.internal.schemav2.ExceptionDetails;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import com.squareup.moshi.JsonWriter;
+
+/**
+ * A snapshot of one sampled telemetry item, as shown in the Live Metrics sample telemetry pane.
+ *
+ * The fields are copied when the item is sampled, since the telemetry object may be changed or reused
+ * by the application before the interval is sent.
+ */
+final class QuickPulseDocument {
+
+    private final QuickPulseCollectionConfiguration.TelemetryType telemetryType;
+    private final String[] documentStreamIds;
+    private final String operationId;
+    private final String[] properties; // key, value, key, value, ...
+
+    // request and dependency
+    private final String name;
+    private final boolean success;
+    private final String duration;
+    private final String resultCode;
+
+    // request
+    private final String url;
+
+    // dependency
+    private final String target;
+    private final String commandName;
+    private final String dependencyType;
+
+    // exception
+    private final String exceptionType;
+    private final String exceptionMessage;
+    private final String exception;
+
+    QuickPulseDocument(Telemetry telemetry, QuickPulseCollectionConfiguration.TelemetryType telemetryType,
+                       String[] documentStreamIds) {
+        this.telemetryType = telemetryType;
+        this.documentStreamIds = documentStreamIds;
+        this.operationId = telemetry.getContext().getOperation().getId();
+        this.properties = copyProperties(telemetry.getProperties());
+
+        String name = null;
+        boolean success = false;
+        String duration = null;
+        String resultCode = null;
+        String url = null;
+        String target = null;
+        String commandName = null;
+        String dependencyType = null;
+        String exceptionType = null;
+        String exceptionMessage = null;
+        String exception = null;
+        switch (telemetryType) {
+            case Request:
+                RequestTelemetry request = (RequestTelemetry) telemetry;
+                name = request.getName();
+                success = request.isSuccess();
+                duration = String.valueOf(request.getDuration());
+                resultCode = request.getResponseCode();
+                url = request.getUrlString();
+                break;
+            case Dependency:
+                RemoteDependencyTelemetry dependency = (RemoteDependencyTelemetry) telemetry;
+                name = dependency.getName();
+                success = dependency.getSuccess();
+                duration = String.valueOf(dependency.getDuration());
+                resultCode = dependency.getResultCode();
+                target = dependency.getTarget();
+                commandName = dependency.getCommandName();
+                dependencyType = dependency.getType();
+                break;
+            case Exception:
+                ExceptionDetails details = QuickPulseCollectionConfiguration.getOutermostException((ExceptionTelemetry) telemetry);
+                if (details != null) {
+                    exceptionType = details.getTypeName();
+                    exceptionMessage = details.getMessage();
+                    exception = details.getStack() != null ? details.getStack() : exceptionType + ": " + exceptionMessage;
+                }
+                break;
+            default:
+                break;
+        }
+        this.name = name;
+        this.success = success;
+        this.duration = duration;
+        this.resultCode = resultCode;
+        this.url = url;
+        this.target = target;
+        this.commandName = commandName;
+        this.dependencyType = dependencyType;
+        this.exceptionType = exceptionType;
+        this.exceptionMessage = exceptionMessage;
+        this.exception = exception;
+    }
+
+    QuickPulseCollectionConfiguration.TelemetryType getTelemetryType() {
+        return telemetryType;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void write(JsonWriter writer) throws IOException {
+        writer.beginObject();
+        switch (telemetryType) {
+            case Request:
+                writer.name("__type").value("RequestTelemetryDocument");
+                writer.name("DocumentType").value("Request");
+                writeCommon(writer);
+                writer.name("Name").value(name);
+                writer.name("Success").value(success);
+                writer.name("Duration").value(duration);
+                writer.name("ResponseCode").value(resultCode);
+                writer.name("Url").value(url);
+                break;
+            case Dependency:
+                writer.name("__type").value("DependencyTelemetryDocument");
+                writer.name("DocumentType").value("RemoteDependency");
+                writeCommon(writer);
+                writer.name("Name").value(name);
+                writer.name("Target").value(target);
+                writer.name("Success").value(success);
+                writer.name("Duration").value(duration);
+                writer.name("ResultCode").value(resultCode);
+                writer.name("CommandName").value(commandName);
+                writer.name("DependencyTypeName").value(dependencyType);
+                break;
+            case Exception:
+                writer.name("__type").value("ExceptionTelemetryDocument");
+                writer.name("DocumentType").value("Exception");
+                writeCommon(writer);
+                writer.name("Exception").value(exception);
+                writer.name("ExceptionMessage").value(exceptionMessage);
+                writer.name("ExceptionType").value(exceptionType);
+                break;
+            default:
+                break;
+        }
+        writer.endObject();
+    }
+
+    private void writeCommon(JsonWriter writer) throws IOException {
+        writer.name("Version").value("1.0");
+        writer.name("OperationId").value(operationId);
+        writer.name("DocumentStreamIds").beginArray();
+        for (String id : documentStreamIds) {
+            writer.value(id);
+        }
+        writer.endArray();
+        writer.name("Properties").beginArray();
+        for (int i = 0; i < properties.length; i += 2) {
+            writer.beginObject();
+            writer.name("key").value(properties[i]);
+            writer.name("value").value(properties[i + 1]);
+            writer.endObject();
+        }
+        writer.endArray();
+    }
+
+    private static String[] copyProperties(Map<String, String> properties) {
+        String[] copy = new String[properties.size() * 2];
+        int i = 0;
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            if (i == copy.length) {
+                // the map grew while copying it
+                break;
+            }
+            copy[i++] = entry.getKey();
+            copy[i++] = entry.getValue();
+        }
+        if (i < copy.length) {
+            String[] trimmed = new String[i];
+            System.arraycopy(copy, 0, trimmed, 0, i);
+            return trimmed;
+        }
+        return copy;
+    }
+}
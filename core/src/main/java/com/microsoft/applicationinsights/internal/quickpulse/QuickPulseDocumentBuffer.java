@@ -0,0 +1,82 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.quickpulse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size ring of the documents sampled during one collection interval.
+ *
+ * Writers claim a slot with a single atomic increment and never wait for each other. Once the ring is full,
+ * every new document overwrites the oldest one, so a burst of failures costs at most {@code capacity} documents
+ * of memory per interval. The ring is drained once, after the interval's counters have been swapped out.
+ */
+final class QuickPulseDocumentBuffer {
+
+    static final int DEFAULT_CAPACITY = 128;
+
+    private final AtomicReferenceArray<QuickPulseDocument> slots;
+    private final int mask;
+    private final AtomicLong writeIndex = new AtomicLong();
+
+    QuickPulseDocumentBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    QuickPulseDocumentBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a positive power of two: " + capacity);
+        }
+        slots = new AtomicReferenceArray<QuickPulseDocument>(capacity);
+        mask = capacity - 1;
+    }
+
+    void add(QuickPulseDocument document) {
+        long index = writeIndex.getAndIncrement();
+        slots.set((int) (index & mask), document);
+    }
+
+    /**
+     * Returns the documents still held by the ring, oldest first, and empties it.
+     * A writer that is still in the middle of {@link #add} while the ring is drained may lose its document.
+     */
+    List<QuickPulseDocument> drain() {
+        long end = writeIndex.get();
+        long start = Math.max(0, end - slots.length());
+        List<QuickPulseDocument> documents = new ArrayList<QuickPulseDocument>((int) (end - start));
+        for (long i = start; i < end; i++) {
+            QuickPulseDocument document = slots.getAndSet((int) (i & mask), null);
+            if (document != null) {
+                documents.add(document);
+            }
+        }
+        return documents;
+    }
+
+    long getDroppedCount() {
+        return Math.max(0, writeIndex.get() - slots.length());
+    }
+}
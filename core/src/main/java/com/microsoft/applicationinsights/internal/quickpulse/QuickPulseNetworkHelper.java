@@ -34,6 +34,7 @@ final class QuickPulseNetworkHelper {
     private final static long TICKS_AT_EPOCH = 621355968000000000L;
     private static final String HEADER_TRANSMISSION_TIME = "x-ms-qps-transmission-time";
     private final static String QP_STATUS_HEADER = "x-ms-qps-subscribed";
+    private final static String QP_CONFIGURATION_ETAG_HEADER = "x-ms-qps-configuration-etag";
 
     public HttpPost buildRequest(Date currentDate, String address) {
         final long ticks = currentDate.getTime() * 10000 + TICKS_AT_EPOCH;
@@ -43,6 +44,17 @@ final class QuickPulseNetworkHelper {
         return request;
     }
 
+    public void setConfigurationETag(HttpPost request, String etag) {
+        if (etag != null && !etag.isEmpty()) {
+            request.addHeader(QP_CONFIGURATION_ETAG_HEADER, etag);
+        }
+    }
+
+    public String getConfigurationETag(HttpResponse response) {
+        Header header = response.getFirstHeader(QP_CONFIGURATION_ETAG_HEADER);
+        return header == null ? null : header.getValue();
+    }
+
     public boolean isSuccess(HttpResponse response) {
         final int responseCode = response.getStatusLine().getStatusCode();
         return responseCode == 200;
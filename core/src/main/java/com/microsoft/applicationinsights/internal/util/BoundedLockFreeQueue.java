@@ -0,0 +1,150 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A bounded, lock-free, array based queue.
+ *
+ * Each slot carries a sequence number which tells producers and consumers whether the slot is free
+ * for the current lap around the ring, so neither {@link #offer(Object)} nor {@link #poll()} ever block
+ * or take a monitor. When the queue is full {@link #offer(Object)} simply returns false and it is up to
+ * the caller to decide what to do with the item (typically count it and drop it).
+ *
+ * The capacity is rounded up to the next power of two.
+ */
+public final class BoundedLockFreeQueue<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> elements;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public BoundedLockFreeQueue(int capacity) {
+        Preconditions.checkArgument(capacity > 0, "capacity must be a positive number");
+        Preconditions.checkArgument(capacity <= (1 << 30), "capacity must not exceed 2^30");
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        elements = new AtomicReferenceArray<>(size);
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds the item to the tail of the queue.
+     *
+     * @param item The item to add, must be non-null.
+     * @return true if the item was added, false if the queue was full.
+     */
+    public boolean offer(T item) {
+        Preconditions.checkNotNull(item, "item must be non-null value");
+        while (true) {
+            long currentTail = tail.get();
+            int index = (int) currentTail & mask;
+            long sequence = sequences.get(index);
+            long diff = sequence - currentTail;
+            if (diff == 0) {
+                if (tail.compareAndSet(currentTail, currentTail + 1)) {
+                    elements.lazySet(index, item);
+                    sequences.set(index, currentTail + 1);
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+            // else another producer claimed this slot, retry with the new tail
+        }
+    }
+
+    /**
+     * Removes the item at the head of the queue.
+     *
+     * @return The removed item, or null if the queue is empty.
+     */
+    public T poll() {
+        while (true) {
+            long currentHead = head.get();
+            int index = (int) currentHead & mask;
+            long sequence = sequences.get(index);
+            long diff = sequence - (currentHead + 1);
+            if (diff == 0) {
+                if (head.compareAndSet(currentHead, currentHead + 1)) {
+                    T item = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, currentHead + mask + 1);
+                    return item;
+                }
+            } else if (diff < 0) {
+                return null;
+            }
+            // else another consumer took this slot, retry with the new head
+        }
+    }
+
+    /**
+     * Moves up to {@code maxItems} items from the head of the queue into {@code target}.
+     *
+     * @return The number of items that were moved.
+     */
+    public int drainTo(Collection<? super T> target, int maxItems) {
+        int count = 0;
+        while (count < maxItems) {
+            T item = poll();
+            if (item == null) {
+                break;
+            }
+            target.add(item);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * The returned value is only an estimate when producers or consumers are concurrently active.
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, capacity());
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
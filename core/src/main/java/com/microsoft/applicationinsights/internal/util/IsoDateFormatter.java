@@ -0,0 +1,148 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.io.IOException;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import com.google.common.base.Charsets;
+import okio.BufferedSink;
+
+/**
+ * Formats timestamps exactly like {@link LocalStringsUtils#getDateFormatter()} ("yyyy-MM-dd'T'HH:mm:ss.SSSZZ"),
+ * but writes the ASCII bytes into a reusable scratch array instead of going through {@link java.util.Calendar}
+ * and a {@link StringBuffer}, so formatting into a sink does not allocate.
+ *
+ * Like {@link java.text.SimpleDateFormat}, an instance uses the time zone it was created with and is not thread safe.
+ */
+public final class IsoDateFormatter {
+
+    // "yyyy-MM-ddTHH:mm:ss.SSS+hhmm"
+    public static final int LENGTH = 28;
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    // days from 0000-03-01 to 1970-01-01 in the proleptic gregorian calendar
+    private static final long DAYS_0000_TO_1970 = 719468L;
+
+    private final TimeZone timeZone;
+
+    private final byte[] scratch = new byte[LENGTH];
+
+    // only used for dates the calendar arithmetic below does not cover (before the gregorian cutover, after 9999)
+    private DateFormat fallback;
+
+    public IsoDateFormatter() {
+        this(TimeZone.getDefault());
+    }
+
+    public IsoDateFormatter(TimeZone timeZone) {
+        this.timeZone = timeZone;
+    }
+
+    public String format(long millis) {
+        if (!formatToScratch(millis)) {
+            return fallbackFormat(millis);
+        }
+        return new String(scratch, 0, LENGTH, Charsets.US_ASCII);
+    }
+
+    public void writeTo(long millis, BufferedSink sink) throws IOException {
+        if (!formatToScratch(millis)) {
+            sink.writeUtf8(fallbackFormat(millis));
+            return;
+        }
+        sink.write(scratch, 0, LENGTH);
+    }
+
+    private boolean formatToScratch(long millis) {
+        int offsetMillis = timeZone.getOffset(millis);
+        long localMillis = millis + offsetMillis;
+
+        long days = localMillis / MILLIS_PER_DAY;
+        long millisOfDay = localMillis % MILLIS_PER_DAY;
+        if (millisOfDay < 0) {
+            days--;
+            millisOfDay += MILLIS_PER_DAY;
+        }
+
+        // civil date from days, see http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        long z = days + DAYS_0000_TO_1970;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (year <= 1582 || year > 9999) {
+            return false;
+        }
+
+        int time = (int) millisOfDay;
+        byte[] b = scratch;
+        writeDigits(b, 0, (int) year, 4);
+        b[4] = '-';
+        writeDigits(b, 5, month, 2);
+        b[7] = '-';
+        writeDigits(b, 8, day, 2);
+        b[10] = 'T';
+        writeDigits(b, 11, time / 3600000, 2);
+        b[13] = ':';
+        writeDigits(b, 14, (time / 60000) % 60, 2);
+        b[16] = ':';
+        writeDigits(b, 17, (time / 1000) % 60, 2);
+        b[19] = '.';
+        writeDigits(b, 20, time % 1000, 3);
+
+        int offsetMinutes = offsetMillis / 60000;
+        if (offsetMinutes < 0) {
+            b[23] = '-';
+            offsetMinutes = -offsetMinutes;
+        } else {
+            b[23] = '+';
+        }
+        writeDigits(b, 24, offsetMinutes / 60, 2);
+        writeDigits(b, 26, offsetMinutes % 60, 2);
+        return true;
+    }
+
+    private String fallbackFormat(long millis) {
+        if (fallback == null) {
+            fallback = LocalStringsUtils.getDateFormatter();
+            fallback.setTimeZone(timeZone);
+        }
+        return fallback.format(new Date(millis));
+    }
+
+    private static void writeDigits(byte[] b, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            b[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+}
@@ -29,6 +29,7 @@ import com.microsoft.applicationinsights.internal.util.Sanitizer;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -50,6 +51,10 @@ public final class ExceptionTelemetry extends BaseSampleSourceTelemetry<Exceptio
      */
     public static final String BASE_TYPE = "ExceptionData";
 
+    private static final int MAX_CACHED_FRAME_METHODS = 10000;
+
+    private static final ConcurrentMap<StackTraceElement, String> FRAME_METHODS =
+            new ConcurrentHashMap<StackTraceElement, String>();
 
     public ExceptionTelemetry() {
         super();
@@ -216,19 +221,12 @@ public final class ExceptionTelemetry extends BaseSampleSourceTelemetry<Exceptio
                     continue;
                 }
 
-                String className = elem.getClassName();
-
                 StackFrame frame = new StackFrame();
                 frame.setLevel(idx);
                 frame.setFileName(elem.getFileName());
                 frame.setLine(elem.getLineNumber());
 
-                if (!Strings.isNullOrEmpty(className)) {
-                    frame.setMethod(elem.getClassName() + "." + elem.getMethodName());
-                }
-                else {
-                    frame.setMethod(elem.getMethodName());
-                }
+                frame.setMethod(getFrameMethod(elem));
 
                 stack.add(frame);
             }
@@ -238,6 +236,26 @@ public final class ExceptionTelemetry extends BaseSampleSourceTelemetry<Exceptio
 
         return exceptionDetails;
     }
+
+    // the same frames show up again and again, so their method names are built once
+    /* Visible for testing */ static String getFrameMethod(StackTraceElement elem) {
+        String method = FRAME_METHODS.get(elem);
+        if (method != null) {
+            return method;
+        }
+        String className = elem.getClassName();
+        if (!Strings.isNullOrEmpty(className)) {
+            method = className + "." + elem.getMethodName();
+        }
+        else {
+            method = elem.getMethodName();
+        }
+        if (FRAME_METHODS.size() < MAX_CACHED_FRAME_METHODS) {
+            FRAME_METHODS.putIfAbsent(elem, method);
+        }
+        return method;
+    }
+
     @Override
     public String getEnvelopName() {
         return ENVELOPE_NAME;
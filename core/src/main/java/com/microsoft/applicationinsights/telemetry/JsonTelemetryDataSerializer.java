@@ -28,8 +28,9 @@ import java.util.Map;
 
 import com.google.common.base.Strings;
 import com.microsoft.applicationinsights.internal.schemav2.DataPointType;
-import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
+import com.microsoft.applicationinsights.internal.util.IsoDateFormatter;
 import com.squareup.moshi.JsonWriter;
+import okio.Buffer;
 
 /**
  * This class knows how to transform data that is relevant to {@link Telemetry} instances into JSON.
@@ -38,10 +39,27 @@ public final class JsonTelemetryDataSerializer {
 
     private JsonWriter out;
 
+    // created on first use, most telemetry data has no date fields
+    private IsoDateFormatter dateFormatter;
+    private Buffer dateBuffer;
+
     public JsonTelemetryDataSerializer(JsonWriter out) throws IOException {
         reset(out);
     }
 
+    private JsonTelemetryDataSerializer() {
+    }
+
+    /**
+     * Creates a serializer that does not begin an object, {@link JsonTelemetryEnvelopeWriter} writes
+     * the envelope itself and uses the serializer for the maps and the data it contains.
+     */
+    static JsonTelemetryDataSerializer forEnvelopeWriter(JsonWriter out) {
+        JsonTelemetryDataSerializer serializer = new JsonTelemetryDataSerializer();
+        serializer.out = out;
+        return serializer;
+    }
+
     public void reset(JsonWriter out) throws IOException {
         this.out = out;
         this.out.beginObject();
@@ -155,8 +173,16 @@ public final class JsonTelemetryDataSerializer {
             return;
         }
 
+        if (dateFormatter == null) {
+            dateFormatter = new IsoDateFormatter();
+            dateBuffer = new Buffer();
+        }
         writeName(name);
-        out.value(LocalStringsUtils.getDateFormatter().format(value));
+        // the formatted date never needs escaping, so it is written as a raw json value
+        dateBuffer.writeByte('"');
+        dateFormatter.writeTo(value.getTime(), dateBuffer);
+        dateBuffer.writeByte('"');
+        out.value(dateBuffer);
     }
 
     public void write(String name, String value, int len) throws IOException {
@@ -196,6 +222,10 @@ public final class JsonTelemetryDataSerializer {
         }
 
         writeName(name);
+        writeMap(map);
+    }
+
+    <T> void writeMap(Map<String, T> map) throws IOException {
         out.beginObject();
 
         for (Map.Entry<String, T> entry : map.entrySet()) {
@@ -0,0 +1,230 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.telemetry;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.microsoft.applicationinsights.internal.schemav2.Domain;
+import com.microsoft.applicationinsights.internal.schemav2.Envelope;
+import com.microsoft.applicationinsights.internal.util.IsoDateFormatter;
+import com.microsoft.applicationinsights.internal.util.LocalStringsUtils;
+import com.squareup.moshi.JsonWriter;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ByteString;
+
+/**
+ * Writes {@link Telemetry} envelopes straight into a sink, one envelope after the other.
+ *
+ * For {@link BaseTelemetry} instances the envelope is written directly instead of building
+ * {@link Envelope} and {@link com.microsoft.applicationinsights.internal.schemav2.Data} objects:
+ * the field names are pre-encoded, the encoded envelope names, base types and instrumentation key are cached,
+ * and the timestamp is formatted without allocating. The output is the same as {@link Telemetry#serialize}.
+ *
+ * An instance is meant to be used by a single thread for one batch of telemetry.
+ */
+public final class JsonTelemetryEnvelopeWriter {
+
+    private static final ByteString ENVELOPE_START = ByteString.encodeUtf8("{\"ver\":1,\"name\":");
+    private static final ByteString TIME = ByteString.encodeUtf8(",\"time\":");
+    private static final ByteString DEFAULT_TIME = ByteString.encodeUtf8("\"DEFAULT time\"");
+    private static final ByteString SAMPLE_RATE = ByteString.encodeUtf8(",\"sampleRate\":");
+    private static final ByteString FULL_SAMPLE_RATE = ByteString.encodeUtf8("100.0");
+    private static final ByteString ZERO = ByteString.encodeUtf8("0");
+    private static final ByteString SEQ = ByteString.encodeUtf8(",\"seq\":");
+    private static final ByteString IKEY = ByteString.encodeUtf8(",\"iKey\":");
+    private static final ByteString TAGS = ByteString.encodeUtf8(",\"tags\":");
+    private static final ByteString DATA_START = ByteString.encodeUtf8(",\"data\":{\"baseType\":");
+    private static final ByteString BASE_DATA = ByteString.encodeUtf8(",\"baseData\":");
+    private static final ByteString ENVELOPE_END = ByteString.encodeUtf8("}}");
+
+    // telemetry classes that customize the envelope are written through Telemetry.serialize()
+    private static final ClassValue<Boolean> directWriteSupported = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return !overrides(type, "serialize", JsonTelemetryDataSerializer.class)
+                    && !overrides(type, "setSampleRate", Envelope.class);
+        }
+    };
+
+    private final BufferedSink sink;
+    private final JsonWriter jsonWriter;
+    private final JsonTelemetryDataSerializer dataSerializer;
+    private final IsoDateFormatter dateFormatter = new IsoDateFormatter();
+
+    // the encoded names depend on the instrumentation key, which is normally the same for the whole batch
+    private String normalizedInstrumentationKey;
+    private final Map<String, ByteString> encodedNames = new HashMap<String, ByteString>();
+    private final Map<String, ByteString> encodedBaseTypes = new HashMap<String, ByteString>();
+    private String instrumentationKey;
+    private ByteString encodedInstrumentationKey;
+
+    public JsonTelemetryEnvelopeWriter(BufferedSink sink) {
+        Preconditions.checkNotNull(sink, "sink must be non-null value");
+        this.sink = sink;
+        this.jsonWriter = JsonWriter.of(sink);
+        // every envelope is a top level value
+        this.jsonWriter.setLenient(true);
+        this.dataSerializer = JsonTelemetryDataSerializer.forEnvelopeWriter(jsonWriter);
+    }
+
+    /**
+     * Writes the envelope of the telemetry, it does not flush nor close the sink.
+     */
+    public void write(Telemetry telemetry) throws IOException {
+        if (telemetry instanceof BaseTelemetry && directWriteSupported.get(telemetry.getClass())) {
+            writeEnvelope((BaseTelemetry<?>) telemetry);
+        } else {
+            dataSerializer.reset(jsonWriter);
+            telemetry.serialize(dataSerializer);
+            dataSerializer.close();
+        }
+    }
+
+    // must stay in line with BaseTelemetry.serialize() and Envelope.serializeContent()
+    private void writeEnvelope(BaseTelemetry<?> telemetry) throws IOException {
+        TelemetryContext context = telemetry.getContext();
+
+        sink.write(ENVELOPE_START);
+        sink.write(encodedName(context.getNormalizedInstrumentationKey(), telemetry.getEnvelopName()));
+
+        sink.write(TIME);
+        Date timestamp = telemetry.getTimestamp();
+        if (timestamp == null) {
+            sink.write(DEFAULT_TIME);
+        } else {
+            sink.writeByte('"');
+            dateFormatter.writeTo(timestamp.getTime(), sink);
+            sink.writeByte('"');
+        }
+
+        double sampleRate = 100.0;
+        if (telemetry instanceof BaseSampleSourceTelemetry) {
+            Double samplingPercentage = ((BaseSampleSourceTelemetry<?>) telemetry).getSamplingPercentage();
+            if (samplingPercentage != null) {
+                sampleRate = samplingPercentage;
+            }
+        }
+        if (sampleRate > 0.0) {
+            sink.write(SAMPLE_RATE);
+            if (sampleRate == 100.0) {
+                sink.write(FULL_SAMPLE_RATE);
+            } else if (Double.isInfinite(sampleRate)) {
+                sink.write(ZERO);
+            } else {
+                jsonWriter.value(sampleRate);
+            }
+        }
+
+        String sequence = telemetry.getSequence();
+        if (!LocalStringsUtils.isNullOrEmpty(sequence)) {
+            sink.write(SEQ);
+            jsonWriter.value(truncate(sequence, 64));
+        }
+
+        String iKey = context.getInstrumentationKey();
+        if (!LocalStringsUtils.isNullOrEmpty(iKey)) {
+            sink.write(IKEY);
+            sink.write(encodedInstrumentationKey(iKey));
+        }
+
+        Map<String, String> tags = context.getTags();
+        if (tags != null && !tags.isEmpty()) {
+            sink.write(TAGS);
+            dataSerializer.writeMap(tags);
+        }
+
+        sink.write(DATA_START);
+        sink.write(encodedBaseType(telemetry.getBaseTypeName()));
+        Domain data = telemetry.getData();
+        if (data != null) {
+            sink.write(BASE_DATA);
+            dataSerializer.reset(jsonWriter);
+            data.serialize(dataSerializer);
+            dataSerializer.close();
+        }
+        sink.write(ENVELOPE_END);
+    }
+
+    private ByteString encodedName(String normalizedInstrumentationKey, String envelopName) throws IOException {
+        if (!normalizedInstrumentationKey.equals(this.normalizedInstrumentationKey)) {
+            this.normalizedInstrumentationKey = normalizedInstrumentationKey;
+            encodedNames.clear();
+        }
+        ByteString encoded = encodedNames.get(envelopName);
+        if (encoded == null) {
+            String name = BaseTelemetry.getTelemetryName(normalizedInstrumentationKey, envelopName);
+            encoded = encode(truncate(name, 1024));
+            encodedNames.put(envelopName, encoded);
+        }
+        return encoded;
+    }
+
+    private ByteString encodedBaseType(String baseType) throws IOException {
+        if (LocalStringsUtils.isNullOrEmpty(baseType)) {
+            return encode("DEFAULT baseType");
+        }
+        ByteString encoded = encodedBaseTypes.get(baseType);
+        if (encoded == null) {
+            encoded = encode(truncate(baseType, 1000));
+            encodedBaseTypes.put(baseType, encoded);
+        }
+        return encoded;
+    }
+
+    private ByteString encodedInstrumentationKey(String iKey) throws IOException {
+        if (!iKey.equals(instrumentationKey)) {
+            encodedInstrumentationKey = encode(truncate(iKey, 40));
+            instrumentationKey = iKey;
+        }
+        return encodedInstrumentationKey;
+    }
+
+    private static ByteString encode(String value) throws IOException {
+        Buffer buffer = new Buffer();
+        JsonWriter writer = JsonWriter.of(buffer);
+        writer.value(value);
+        writer.flush();
+        return buffer.readByteString();
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    private static boolean overrides(Class<?> type, String methodName, Class<?> parameterType) {
+        for (Class<?> c = type; c != BaseTelemetry.class && c != BaseSampleSourceTelemetry.class && c != null; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod(methodName, parameterType);
+                return true;
+            } catch (NoSuchMethodException e) {
+                // not declared here, try the super class
+            }
+        }
+        return false;
+    }
+}
@@ -31,6 +31,9 @@ import java.util.concurrent.TimeUnit;
 
 import com.microsoft.applicationinsights.channel.TelemetryChannel;
 import com.microsoft.applicationinsights.extensibility.ContextInitializer;
+import com.microsoft.applicationinsights.internal.metrics.MetricAggregationManager;
+import com.microsoft.applicationinsights.internal.metrics.StandardMetricsCollector;
+import com.microsoft.applicationinsights.internal.metrics.StandardMetricsModule;
 import com.microsoft.applicationinsights.telemetry.*;
 
 import org.junit.Before;
@@ -474,6 +477,84 @@ public final class TelemetryClientTests {
 
     // endregion Track tests
 
+    @Test
+    public void testGetMetricAggregatesValues() {
+        Metric metric = client.getMetric("AggregatedMetric", "dim");
+        metric.trackValue(1, "a");
+        metric.trackValue(3, "a");
+        metric.trackValue(5, "a");
+        verify(channel, times(0)).send(any(Telemetry.class));
+
+        MetricAggregationManager.INSTANCE.flush();
+        MetricTelemetry mt = (MetricTelemetry) verifyAndGetLastEventSent();
+
+        assertEquals("getName", "AggregatedMetric", mt.getName());
+        assertEquals("getValue", 9.0, mt.getValue(), 0.0);
+        assertEquals("getCount", Integer.valueOf(3), mt.getCount());
+        assertEquals("getMin", 1.0, mt.getMin(), 0.0);
+        assertEquals("getMax", 5.0, mt.getMax(), 0.0);
+        assertEquals("getStandardDeviation", Math.sqrt(8.0 / 3), mt.getStandardDeviation(), 1e-9);
+        assertEquals("a", mt.getProperties().get("dim"));
+    }
+
+    @Test
+    public void testFlushTracksAggregatedMetrics() {
+        client.getMetric("FlushedMetric").trackValue(2);
+
+        client.flush();
+
+        MetricTelemetry mt = (MetricTelemetry) verifyAndGetLastEventSent();
+        assertEquals("FlushedMetric", mt.getName());
+        assertEquals(2.0, mt.getValue(), 0.0);
+        verify(channel).flush();
+    }
+
+    @Test
+    public void testGetMetricTracksThroughTheRecordingClient() {
+        TelemetryClient otherClient = new TelemetryClient(configuration);
+        otherClient.getContext().getProperties().put("client", "other");
+        client.getMetric("SharedMetric").trackValue(1);
+        otherClient.getMetric("SharedMetric").trackValue(2);
+
+        client.flush();
+
+        assertEquals(2, eventsSent.size());
+        for (Telemetry telemetry : eventsSent) {
+            MetricTelemetry mt = (MetricTelemetry) telemetry;
+            assertEquals(mt.getValue() == 2 ? "other" : null, mt.getContext().getProperties().get("client"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetMetricWithOtherDimensions() {
+        client.getMetric("MetricWithDimensions", "dim1");
+        client.getMetric("MetricWithDimensions", "dim2");
+    }
+
+    @Test
+    public void testShutdownTracksTheLastStandardMetrics() throws InterruptedException {
+        StandardMetricsModule module = new StandardMetricsModule();
+        configuration.getTelemetryModules().add(module);
+        module.initialize(configuration);
+        try {
+            client.trackRequest(new RequestTelemetry("GET /", new Date(), 10, "200", true));
+            client.shutdown(1, TimeUnit.SECONDS);
+        } finally {
+            StandardMetricsCollector.INSTANCE.disable();
+        }
+
+        boolean tracked = false;
+        for (Telemetry telemetry : eventsSent) {
+            if (telemetry instanceof MetricTelemetry
+                    && StandardMetricsCollector.REQUEST_DURATION_METRIC_NAME.equals(((MetricTelemetry) telemetry).getName())) {
+                tracked = true;
+            }
+        }
+        assertTrue("the aggregates of the last period were not tracked", tracked);
+        verify(channel).flush();
+        verify(channel).shutdown(1, TimeUnit.SECONDS);
+    }
+
     // region Private methods
 
     private static void verifyTraceTelemetry(Telemetry telemetry, SeverityLevel expectedSeverityLevel, Map<String, String> expectedProperties) {
@@ -30,6 +30,7 @@ import org.mockito.Mockito;
 
 import org.apache.commons.io.FileUtils;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyObject;
@@ -82,6 +83,46 @@ public class ActiveTransmissionLoaderTest {
         testFilesOnDiskAreLoaded(2, false);
     }
 
+    @Test
+    public void testFilesOnDiskAreLoadedWithDrainRate() throws Exception {
+        File folder = null;
+        ActiveTransmissionLoader tested = null;
+        try {
+            String filesPath = System.getProperty("java.io.tmpdir") + File.separator + TEMP_TEST_FOLDER;
+            folder = new File(filesPath);
+            if (folder.exists()) {
+                FileUtils.deleteDirectory(folder);
+            }
+            folder.mkdir();
+
+            TransmissionFileSystemOutput fileSystem = new TransmissionFileSystemOutput(filesPath);
+            for (int i = 0; i < 20; ++i) {
+                fileSystem.sendSync(new Transmission(new byte[2], "MockContentType", "MockEncodingType"));
+            }
+            assertEquals(20, fileSystem.getCount());
+
+            TransmissionDispatcher mockDispatcher = Mockito.mock(TransmissionDispatcher.class);
+            tested = new ActiveTransmissionLoader(fileSystem, mockDispatcher, mockStateFetcher(), 4, new BacklogDrainRate(50, 50, 100));
+            assertEquals(20, tested.getBacklogCount());
+            assertTrue(tested.getBacklogSizeInBytes() > 0);
+
+            assertTrue("Failed to load", tested.load(true));
+
+            // at 50 per second the fixed 100 ms sleeps of the default mode would need 500 ms for the same amount
+            Mockito.verify(mockDispatcher, Mockito.timeout(5000).times(20)).dispatch((Transmission) anyObject());
+            assertEquals(0, tested.getBacklogCount());
+            assertEquals(0, tested.getBacklogSizeInBytes());
+        } finally {
+            if (tested != null) {
+                tested.shutdown();
+            }
+
+            if (folder != null && folder.exists()) {
+                FileUtils.deleteDirectory(folder);
+            }
+        }
+    }
+
     private void testFilesOnDiskAreLoaded(int amount, boolean putFilesFirst) throws IOException, InterruptedException {
         File folder = null;
         ActiveTransmissionLoader tested = null;
@@ -0,0 +1,232 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.internal.channel.TransmissionDispatcher;
+import com.microsoft.applicationinsights.internal.channel.TransmissionHandler;
+import com.microsoft.applicationinsights.internal.channel.TransmissionHandlerArgs;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public final class AsyncTransmissionNetworkOutputTest {
+    private final static String MOCK_CONTENT_TYPE = "application/x-json-stream";
+    private final static String MOCK_ENCODING_TYPE = "gzip";
+
+    private HttpServer server;
+    private final BlockingQueue<byte[]> receivedBodies = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> receivedContentTypes = new LinkedBlockingQueue<>();
+    private volatile int responseCode = 200;
+    private volatile CountDownLatch responseLatch;
+
+    private final BlockingQueue<TransmissionHandlerArgs> handledFailures = new LinkedBlockingQueue<>();
+    private TransmissionPolicyManager transmissionPolicyManager;
+    private AsyncTransmissionNetworkOutput tested;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/v2/track", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                receivedBodies.add(readFully(exchange.getRequestBody()));
+                receivedContentTypes.add(exchange.getRequestHeaders().getFirst("Content-Type"));
+                CountDownLatch latch = responseLatch;
+                if (latch != null) {
+                    try {
+                        latch.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                exchange.sendResponseHeaders(responseCode, -1);
+                exchange.close();
+            }
+        });
+        // the requests that are held back by the latch need their own threads
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        transmissionPolicyManager = new TransmissionPolicyManager(true);
+        transmissionPolicyManager.addTransmissionHandler(new TransmissionHandler() {
+            @Override
+            public void onTransmissionSent(TransmissionHandlerArgs args) {
+                handledFailures.add(args);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        if (tested != null) {
+            tested.shutdown(5, TimeUnit.SECONDS);
+        }
+        server.stop(0);
+    }
+
+    @Test
+    public void testContentIsSent() throws Exception {
+        tested = createOutput(4);
+        byte[] content = "MockContent".getBytes();
+
+        assertTrue(tested.sendAsync(new Transmission(content, MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+
+        assertArrayEquals(content, receivedBodies.poll(10, TimeUnit.SECONDS));
+        assertEquals(MOCK_CONTENT_TYPE, receivedContentTypes.poll(10, TimeUnit.SECONDS));
+        waitForNoRequestsInFlight();
+        assertNull(handledFailures.poll());
+    }
+
+    @Test
+    public void testBufferContentIsSentInChunks() throws Exception {
+        tested = createOutput(4);
+        byte[] content = new byte[100 * 1024];
+        for (int i = 0; i < content.length; ++i) {
+            content[i] = (byte) i;
+        }
+        Buffer buffer = new Buffer();
+        buffer.write(content);
+
+        assertTrue(tested.sendAsync(new Transmission(buffer, MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+
+        assertArrayEquals(content, receivedBodies.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailedResponseIsHandledByThePolicyManager() throws Exception {
+        tested = createOutput(4);
+        responseCode = 503;
+        Transmission transmission = new Transmission("MockContent".getBytes(), MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE);
+
+        assertTrue(tested.sendAsync(transmission));
+
+        TransmissionHandlerArgs args = handledFailures.poll(10, TimeUnit.SECONDS);
+        assertEquals(503, args.getResponseCode());
+        assertEquals(transmission, args.getTransmission());
+    }
+
+    @Test
+    public void testConnectionFailureIsHandledByThePolicyManager() throws Exception {
+        tested = createOutput(4);
+        server.stop(0);
+
+        assertTrue(tested.sendAsync(new Transmission("MockContent".getBytes(), MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+
+        TransmissionHandlerArgs args = handledFailures.poll(10, TimeUnit.SECONDS);
+        assertTrue(args.getException() != null);
+    }
+
+    @Test
+    public void testCancelledRequestIsHandledByThePolicyManager() throws Exception {
+        tested = createOutput(4);
+        Transmission transmission = new Transmission("MockContent".getBytes(), MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE);
+
+        tested.new SendCallback(transmission).cancelled();
+
+        TransmissionHandlerArgs args = handledFailures.poll(10, TimeUnit.SECONDS);
+        assertEquals(transmission, args.getTransmission());
+        assertTrue(args.getException() instanceof CancellationException);
+    }
+
+    @Test
+    public void testMaxInFlightRequestsAreEnforced() throws Exception {
+        tested = createOutput(2);
+        responseLatch = new CountDownLatch(1);
+
+        assertTrue(tested.sendAsync(new Transmission("1".getBytes(), MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+        assertTrue(tested.sendAsync(new Transmission("2".getBytes(), MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+        assertFalse(tested.sendAsync(new Transmission("3".getBytes(), MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+        assertEquals(2, tested.getNumberOfInFlightRequests());
+
+        responseLatch.countDown();
+        waitForNoRequestsInFlight();
+        assertTrue(tested.sendAsync(new Transmission("4".getBytes(), MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+    }
+
+    @Test
+    public void testNotSentWhenBlocked() {
+        tested = createOutput(4);
+        transmissionPolicyManager.suspendInSeconds(TransmissionPolicy.BLOCKED_BUT_CAN_BE_PERSISTED, 10);
+
+        assertFalse(tested.sendAsync(new Transmission("MockContent".getBytes(), MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+        transmissionPolicyManager.stop(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testMaxInFlightRequestsIsNormalized() {
+        TransmissionNetworkOutput actualOutput = TransmissionNetworkOutput.create("http://localhost/v2/track", transmissionPolicyManager);
+        assertEquals(AsyncTransmissionNetworkOutput.DEFAULT_MAX_IN_FLIGHT_REQUESTS,
+                AsyncTransmissionNetworkOutput.create(actualOutput, transmissionPolicyManager.getTransmissionPolicyState(), null).getMaxInFlightRequests());
+        assertEquals(AsyncTransmissionNetworkOutput.DEFAULT_MAX_IN_FLIGHT_REQUESTS,
+                AsyncTransmissionNetworkOutput.create(actualOutput, transmissionPolicyManager.getTransmissionPolicyState(), "abc").getMaxInFlightRequests());
+        assertEquals(1,
+                AsyncTransmissionNetworkOutput.create(actualOutput, transmissionPolicyManager.getTransmissionPolicyState(), "0").getMaxInFlightRequests());
+        assertEquals(16,
+                AsyncTransmissionNetworkOutput.create(actualOutput, transmissionPolicyManager.getTransmissionPolicyState(), "16").getMaxInFlightRequests());
+    }
+
+    private AsyncTransmissionNetworkOutput createOutput(int maxInFlightRequests) {
+        String endpoint = "http://localhost:" + server.getAddress().getPort() + "/v2/track";
+        TransmissionNetworkOutput actualOutput = TransmissionNetworkOutput.create(endpoint, transmissionPolicyManager);
+        actualOutput.setTransmissionDispatcher(Mockito.mock(TransmissionDispatcher.class));
+        return new AsyncTransmissionNetworkOutput(actualOutput, transmissionPolicyManager.getTransmissionPolicyState(), maxInFlightRequests);
+    }
+
+    private void waitForNoRequestsInFlight() throws InterruptedException {
+        for (int i = 0; i < 100 && tested.getNumberOfInFlightRequests() > 0; ++i) {
+            Thread.sleep(100);
+        }
+        assertEquals(0, tested.getNumberOfInFlightRequests());
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        int read;
+        while ((read = in.read(chunk)) != -1) {
+            out.write(chunk, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public final class BacklogDrainRateTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroMinimum() {
+        new BacklogDrainRate(0, 10, 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInitialAboveMaximum() {
+        new BacklogDrainRate(1, 200, 100);
+    }
+
+    @Test
+    public void testPermitsAreSpacedByTheTarget() {
+        BacklogDrainRate tested = new BacklogDrainRate(1, 10, 100);
+        long now = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+
+        assertEquals(0, tested.reserve(now));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), tested.reserve(now));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), tested.reserve(now));
+    }
+
+    @Test
+    public void testIdleTimeIsNotSavedUp() {
+        BacklogDrainRate tested = new BacklogDrainRate(1, 10, 100);
+        long now = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        tested.reserve(now);
+
+        long later = now + TimeUnit.SECONDS.toNanos(10);
+        assertEquals(0, tested.reserve(later));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), tested.reserve(later));
+    }
+
+    @Test
+    public void testTargetGrowsWhileDraining() {
+        BacklogDrainRate tested = new BacklogDrainRate(1, 10, 100);
+        // ten transmissions at 10 per second stand for one second of sending
+        for (int i = 0; i < 10; ++i) {
+            tested.onDrained();
+        }
+
+        double target = tested.getTargetPerSecond();
+        assertTrue("Target did not grow " + target, target > 14 && target < 15);
+    }
+
+    @Test
+    public void testTargetIsCappedAtTheMaximum() {
+        BacklogDrainRate tested = new BacklogDrainRate(1, 10, 20);
+        for (int i = 0; i < 10000; ++i) {
+            tested.onDrained();
+        }
+
+        assertEquals(20, tested.getTargetPerSecond(), 0);
+    }
+
+    @Test
+    public void testThrottlingHalvesTheTargetOncePerPeriod() {
+        BacklogDrainRate tested = new BacklogDrainRate(1, 40, 100);
+
+        tested.onThrottled();
+        tested.onThrottled();
+        assertEquals(20, tested.getTargetPerSecond(), 0);
+
+        tested.onDrained();
+        tested.onThrottled();
+        assertTrue(tested.getTargetPerSecond() < 11);
+    }
+
+    @Test
+    public void testThrottlingStopsAtTheMinimum() {
+        BacklogDrainRate tested = new BacklogDrainRate(4, 4, 100);
+
+        tested.onThrottled();
+        assertEquals(4, tested.getTargetPerSecond(), 0);
+    }
+}
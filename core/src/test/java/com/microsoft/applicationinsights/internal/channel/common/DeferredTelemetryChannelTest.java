@@ -0,0 +1,127 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.channel.TelemetryChannel;
+import com.microsoft.applicationinsights.telemetry.EventTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public final class DeferredTelemetryChannelTest {
+
+    @Test
+    public void bufferedTelemetryIsReplayedInOrder() {
+        DeferredTelemetryChannel channel = new DeferredTelemetryChannel();
+        Telemetry first = new EventTelemetry("first");
+        Telemetry second = new EventTelemetry("second");
+        Telemetry third = new EventTelemetry("third");
+        channel.send(first);
+        channel.send(second);
+
+        TelemetryChannel delegate = mock(TelemetryChannel.class);
+        channel.setDelegate(delegate);
+        channel.send(third);
+
+        InOrder inOrder = inOrder(delegate);
+        inOrder.verify(delegate).send(first);
+        inOrder.verify(delegate).send(second);
+        inOrder.verify(delegate).send(third);
+        assertTrue(channel.isDelegateSet());
+    }
+
+    @Test
+    public void telemetryOverTheLimitIsDropped() {
+        DeferredTelemetryChannel channel = new DeferredTelemetryChannel(1);
+        Telemetry first = new EventTelemetry("first");
+        Telemetry second = new EventTelemetry("second");
+        channel.send(first);
+        channel.send(second);
+
+        TelemetryChannel delegate = mock(TelemetryChannel.class);
+        channel.setDelegate(delegate);
+
+        verify(delegate).send(first);
+        verify(delegate, never()).send(second);
+    }
+
+    @Test
+    public void developerModeIsAppliedToTheDelegate() {
+        DeferredTelemetryChannel channel = new DeferredTelemetryChannel();
+        channel.setDeveloperMode(true);
+        assertTrue(channel.isDeveloperMode());
+
+        TelemetryChannel delegate = mock(TelemetryChannel.class);
+        channel.setDelegate(delegate);
+
+        verify(delegate).setDeveloperMode(true);
+    }
+
+    @Test
+    public void flushAndShutdownBeforeTheDelegateIsSetDoNothing() throws InterruptedException {
+        DeferredTelemetryChannel channel = new DeferredTelemetryChannel();
+        channel.send(new EventTelemetry("dropped"));
+        channel.flush();
+        channel.shutdown(1, TimeUnit.SECONDS);
+        assertFalse(channel.isDelegateSet());
+
+        TelemetryChannel delegate = mock(TelemetryChannel.class);
+        channel.setDelegate(delegate);
+        channel.flush();
+        channel.shutdown(1, TimeUnit.SECONDS);
+
+        verify(delegate, never()).send(any(Telemetry.class));
+        verify(delegate).flush();
+        verify(delegate).shutdown(1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void delegateCanOnlyBeSetOnce() {
+        DeferredTelemetryChannel channel = new DeferredTelemetryChannel();
+        channel.setDelegate(mock(TelemetryChannel.class));
+        channel.setDelegate(mock(TelemetryChannel.class));
+    }
+
+    @Test
+    public void delegateCannotBeItself() {
+        DeferredTelemetryChannel channel = new DeferredTelemetryChannel();
+        try {
+            channel.setDelegate(channel);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertFalse(channel.isDelegateSet());
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.internal.channel.TelemetriesTransmitter;
+import com.microsoft.applicationinsights.internal.util.LimitsEnforcer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class StripedTelemetryBufferTest {
+    private final static String MOCK_PROPERTY_NAME = "MockProperty";
+
+    private static class StubTelemetriesTransmitter implements TelemetriesTransmitter<String> {
+        private final ConcurrentLinkedQueue<Collection<String>> sentNow = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedQueue<TelemetriesFetcher<String>> scheduled = new ConcurrentLinkedQueue<>();
+
+        @Override
+        public boolean scheduleSend(TelemetriesFetcher telemetriesFetcher, long value, TimeUnit timeUnit) {
+            scheduled.add(telemetriesFetcher);
+            return true;
+        }
+
+        @Override
+        public boolean sendNow(Collection<String> telemetries) {
+            sentNow.add(telemetries);
+            return true;
+        }
+
+        @Override
+        public void shutdown(long timeout, TimeUnit timeUnit) {
+        }
+
+        private int runScheduled() {
+            int count = 0;
+            TelemetriesFetcher<String> fetcher;
+            while ((fetcher = scheduled.poll()) != null) {
+                count += fetcher.fetch().size();
+            }
+            return count;
+        }
+
+        private int sentNowCount() {
+            int count = 0;
+            for (Collection<String> telemetries : sentNow) {
+                count += telemetries.size();
+            }
+            return count;
+        }
+    }
+
+    @Test
+    public void testAddOneTelemetrySchedulesOnePickUp() {
+        StubTelemetriesTransmitter sender = new StubTelemetriesTransmitter();
+        StripedTelemetryBuffer<String> testedBuffer = new StripedTelemetryBuffer<>(sender, createEnforcerWithCurrentValue(128), createDefaultSenderTimeoutEnforcer(), 4);
+
+        testedBuffer.add("mockTelemetry1");
+        testedBuffer.add("mockTelemetry2");
+
+        assertEquals(1, sender.scheduled.size());
+        assertEquals(2, sender.runScheduled());
+        assertTrue(sender.sentNow.isEmpty());
+    }
+
+    @Test
+    public void testSendWhenBufferIsFull() {
+        StubTelemetriesTransmitter sender = new StubTelemetriesTransmitter();
+        StripedTelemetryBuffer<String> testedBuffer = new StripedTelemetryBuffer<>(sender, createEnforcerWithCurrentValue(3), createDefaultSenderTimeoutEnforcer(), 4);
+
+        for (int i = 0; i < 7; ++i) {
+            testedBuffer.add("mockTelemetry" + i);
+        }
+
+        assertEquals(2, sender.sentNow.size());
+        for (Collection<String> batch : sender.sentNow) {
+            assertEquals(3, batch.size());
+        }
+        assertEquals(1, sender.runScheduled());
+    }
+
+    @Test
+    public void testFlushSendsEverythingInBatches() {
+        StubTelemetriesTransmitter sender = new StubTelemetriesTransmitter();
+        StripedTelemetryBuffer<String> testedBuffer = new StripedTelemetryBuffer<>(sender, createEnforcerWithCurrentValue(1, 10), createDefaultSenderTimeoutEnforcer(), 4);
+
+        for (int i = 0; i < 9; ++i) {
+            testedBuffer.add("mockTelemetry" + i);
+        }
+        testedBuffer.setMaxTelemetriesInBatch(4);
+
+        assertEquals(9, sender.sentNowCount());
+        for (Collection<String> batch : sender.sentNow) {
+            assertTrue(batch.size() <= 4);
+        }
+        assertEquals(0, sender.runScheduled());
+    }
+
+    @Test
+    public void testConcurrentAddsAreAllSent() throws InterruptedException {
+        final int threads = 8;
+        final int telemetriesPerThread = 5000;
+        final StubTelemetriesTransmitter sender = new StubTelemetriesTransmitter();
+        final StripedTelemetryBuffer<String> testedBuffer = new StripedTelemetryBuffer<>(sender, createEnforcerWithCurrentValue(1, 500), createDefaultSenderTimeoutEnforcer(), threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < telemetriesPerThread; i++) {
+                        testedBuffer.add("mockTelemetry" + i);
+                    }
+                    done.countDown();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        testedBuffer.flush();
+
+        for (Collection<String> batch : sender.sentNow) {
+            assertTrue(batch.size() <= 500);
+        }
+        assertEquals(threads * telemetriesPerThread, sender.sentNowCount() + sender.runScheduled());
+    }
+
+    private LimitsEnforcer createDefaultSenderTimeoutEnforcer() {
+        return LimitsEnforcer.createWithClosestLimitOnError(MOCK_PROPERTY_NAME, 1, 12000, 1200, 1200);
+    }
+
+    private LimitsEnforcer createEnforcerWithCurrentValue(int minimum) {
+        return createEnforcerWithCurrentValue(minimum, minimum);
+    }
+
+    private LimitsEnforcer createEnforcerWithCurrentValue(int minimum, int defaultValue) {
+        return LimitsEnforcer.createWithClosestLimitOnError(MOCK_PROPERTY_NAME, minimum, 1000, defaultValue, null);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public final class TransmissionFileFormatTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        byte[] content = new byte[100000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        Transmission original = new Transmission(content, "application/x-json-stream", "gzip", 2);
+        original.setNumberOfSends(5);
+        original.setNumberOfPersistence(3);
+
+        ByteBuffer data = write(original);
+        assertTrue(TransmissionFileFormat.isBinaryFormat(data));
+        Transmission transmission = TransmissionFileFormat.read(data);
+
+        assertEquals(2, transmission.getVersion());
+        assertEquals(5, transmission.getNumberOfSends());
+        assertEquals(3, transmission.getNumberOfPersistence());
+        assertEquals("application/x-json-stream", transmission.getWebContentType());
+        assertEquals("gzip", transmission.getWebContentEncodingType());
+        assertArrayEquals(content, transmission.getContent());
+    }
+
+    @Test
+    public void testJavaSerializationIsNotBinaryFormat() {
+        assertFalse(TransmissionFileFormat.isBinaryFormat(ByteBuffer.wrap(new byte[] {(byte) 0xAC, (byte) 0xED, 0, 5})));
+        assertFalse(TransmissionFileFormat.isBinaryFormat(ByteBuffer.wrap(new byte[] {'A', 'I'})));
+    }
+
+    @Test(expected = IOException.class)
+    public void testChecksumMismatch() throws Exception {
+        ByteBuffer data = write(new Transmission(new byte[] {1, 2, 3}, "type", "encoding"));
+        data.put(data.limit() - 5, (byte) 4);
+
+        TransmissionFileFormat.read(data);
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncated() throws Exception {
+        ByteBuffer data = write(new Transmission(new byte[] {1, 2, 3}, "type", "encoding"));
+        data.limit(data.limit() - 2);
+
+        TransmissionFileFormat.read(data);
+    }
+
+    private ByteBuffer write(Transmission transmission) throws IOException {
+        File file = tmpFolder.newFile();
+        try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+            TransmissionFileFormat.write(transmission, channel);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] data = new byte[(int) raf.length()];
+            raf.readFully(data);
+            return ByteBuffer.wrap(data);
+        }
+    }
+}
@@ -26,6 +26,9 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
 import java.util.Collection;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.io.FileUtils;
@@ -103,6 +106,102 @@ public final class TransmissionFileSystemOutputTest {
         }
     }
 
+    @Test
+    public void testSendCountersAreKept() throws Exception {
+        File folder = tmpFolder.newFolder(TEMP_TEST_FOLDER);
+        TransmissionFileSystemOutput tested = new TransmissionFileSystemOutput(folder.getAbsolutePath());
+        Transmission original = new Transmission(MOCK_CONTENT.getBytes(), MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE, 3);
+        original.setNumberOfSends(2);
+        original.setNumberOfPersistence(1);
+
+        tested.sendSync(original);
+        Transmission transmission = tested.fetchOldestFile();
+
+        assertNotNull(transmission);
+        assertEquals(3, transmission.getVersion());
+        assertEquals(2, transmission.getNumberOfSends());
+        assertEquals(1, transmission.getNumberOfPersistence());
+        assertEquals(MOCK_CONTENT, new String(transmission.getContent()));
+    }
+
+    @Test
+    public void testLoadJavaSerializedTransmission() throws Exception {
+        File folder = tmpFolder.newFolder(TEMP_TEST_FOLDER);
+        Transmission original = new Transmission(MOCK_CONTENT.getBytes(), MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE);
+        original.setNumberOfSends(4);
+        // the format used by previous versions
+        try (ObjectOutputStream output = new ObjectOutputStream(new FileOutputStream(new File(folder, "Transmission-1-1.trn")))) {
+            output.writeObject(original);
+        }
+        TransmissionFileSystemOutput tested = new TransmissionFileSystemOutput(folder.getAbsolutePath());
+
+        Transmission transmission = tested.fetchOldestFile();
+
+        assertNotNull(transmission);
+        assertEquals(4, transmission.getNumberOfSends());
+        assertEquals(MOCK_CONTENT_TYPE_BASE, transmission.getWebContentType());
+        assertEquals(MOCK_ENCODING_TYPE_BASE, transmission.getWebContentEncodingType());
+        assertEquals(MOCK_CONTENT, new String(transmission.getContent()));
+    }
+
+    @Test
+    public void testCorruptedFileIsNotLoaded() throws Exception {
+        File folder = tmpFolder.newFolder(TEMP_TEST_FOLDER);
+        TransmissionFileSystemOutput tested = new TransmissionFileSystemOutput(folder.getAbsolutePath());
+        tested.sendSync(new Transmission(MOCK_CONTENT.getBytes(), MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE));
+        File file = FileUtils.listFiles(folder, new String[]{TRANSMISSION_FILE_EXTENSION}, false).iterator().next();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() - 6);
+            raf.write('X');
+        }
+
+        assertNull(tested.fetchOldestFile());
+        assertEquals(0, FileUtils.listFiles(folder, new String[]{TRANSMISSION_FILE_EXTENSION}, false).size());
+    }
+
+    @Test
+    public void testCountAndSizeAreKept() throws Exception {
+        File folder = tmpFolder.newFolder(TEMP_TEST_FOLDER);
+        TransmissionFileSystemOutput tested = new TransmissionFileSystemOutput(folder.getAbsolutePath());
+        assertEquals(0, tested.getCount());
+        assertEquals(0, tested.getSizeInBytes());
+
+        tested.sendSync(new Transmission(MOCK_CONTENT.getBytes(), MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE));
+        tested.sendSync(new Transmission(MOCK_CONTENT.getBytes(), MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE));
+        assertEquals(2, tested.getCount());
+        assertEquals(FileUtils.sizeOfDirectory(folder), tested.getSizeInBytes());
+
+        // files that are already on disk are indexed when created
+        TransmissionFileSystemOutput reopened = new TransmissionFileSystemOutput(folder.getAbsolutePath());
+        assertEquals(2, reopened.getCount());
+
+        assertNotNull(reopened.fetchOldestFile());
+        assertEquals(1, reopened.getCount());
+        assertNotNull(reopened.fetchOldestFile());
+        assertEquals(0, reopened.getCount());
+        assertEquals(0, reopened.getSizeInBytes());
+        assertNull(reopened.fetchOldestFile());
+    }
+
+    @Test
+    public void testFilesThatFailToLoadAreNoLongerCounted() throws Exception {
+        File folder = tmpFolder.newFolder(TEMP_TEST_FOLDER);
+        TransmissionFileSystemOutput tested = new TransmissionFileSystemOutput(folder.getAbsolutePath());
+        tested.sendSync(new Transmission(MOCK_CONTENT.getBytes(), MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE));
+        tested.sendSync(new Transmission(MOCK_CONTENT.getBytes(), MOCK_CONTENT_TYPE_BASE, MOCK_ENCODING_TYPE_BASE));
+
+        // another process that shares the folder loads the files first
+        TransmissionFileSystemOutput other = new TransmissionFileSystemOutput(folder.getAbsolutePath());
+        assertNotNull(other.fetchOldestFile());
+        assertNotNull(other.fetchOldestFile());
+
+        assertEquals(2, tested.getCount());
+        assertNull(tested.fetchOldestFile());
+        assertNull(tested.fetchOldestFile());
+        assertEquals(0, tested.getCount());
+        assertEquals(0, tested.getSizeInBytes());
+    }
+
     private TransmissionFileSystemOutput testSuccessfulSends(int amount) throws Exception {
         return testSuccessfulSends(amount, amount, null, null);
     }
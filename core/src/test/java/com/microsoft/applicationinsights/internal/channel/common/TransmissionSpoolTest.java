@@ -0,0 +1,289 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+package com.microsoft.applicationinsights.internal.channel.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class TransmissionSpoolTest {
+    private final static String MOCK_CONTENT = "MockContent";
+    private final static String MOCK_CONTENT_TYPE = "MockContentType";
+    private final static String MOCK_ENCODING_TYPE = "MockEncodingType";
+
+    // room for a few of the small mock transmissions in each segment
+    private final static int SEGMENT_SIZE = 256;
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private File folder;
+    private TransmissionSpool tested;
+
+    @Before
+    public void setUp() throws Exception {
+        folder = tmpFolder.newFolder("TransmissionSpoolTests");
+        tested = open();
+    }
+
+    @After
+    public void tearDown() {
+        tested.close();
+    }
+
+    @Test
+    public void testFetchInTheOrderSent() {
+        for (int i = 1; i <= 10; ++i) {
+            assertTrue(tested.sendSync(createTransmission(i)));
+        }
+
+        for (int i = 1; i <= 10; ++i) {
+            assertTransmission(i, tested.fetchOldest());
+        }
+        assertNull(tested.fetchOldest());
+    }
+
+    @Test
+    public void testFetchWhenEmpty() {
+        assertNull(tested.fetchOldest());
+    }
+
+    @Test
+    public void testCountAndSizeAreKeptAcrossRestarts() throws Exception {
+        assertEquals(0, tested.getCount());
+        for (int i = 1; i <= 10; ++i) {
+            tested.sendSync(createTransmission(i));
+        }
+        assertEquals(10, tested.getCount());
+        assertTrue(tested.getSizeInBytes() > 0);
+
+        tested.fetchOldest();
+        assertEquals(9, tested.getCount());
+        long sizeOfNine = tested.getSizeInBytes();
+
+        tested.close();
+        tested = open();
+        assertEquals(9, tested.getCount());
+        assertEquals(sizeOfNine, tested.getSizeInBytes());
+
+        while (tested.fetchOldest() != null) {
+        }
+        assertEquals(0, tested.getCount());
+        assertEquals(0, tested.getSizeInBytes());
+    }
+
+    @Test
+    public void testCountersAreKept() {
+        Transmission transmission = createTransmission(1);
+        transmission.incrementNumberOfSends();
+        transmission.incrementNumberOfSends();
+        transmission.incrementNumberOfPersistence();
+        tested.sendSync(transmission);
+
+        Transmission fetched = tested.fetchOldest();
+        assertEquals(2, fetched.getNumberOfSends());
+        assertEquals(1, fetched.getNumberOfPersistence());
+    }
+
+    @Test
+    public void testReadSegmentsAreDeleted() {
+        for (int i = 1; i <= 10; ++i) {
+            tested.sendSync(createTransmission(i));
+        }
+        int segments = segmentFiles().length;
+        assertTrue("Expected the transmissions to span several segments", segments > 2);
+
+        for (int i = 1; i <= 10; ++i) {
+            tested.fetchOldest();
+        }
+        assertNull(tested.fetchOldest());
+        assertEquals(1, segmentFiles().length);
+    }
+
+    @Test
+    public void testCursorIsKeptAcrossRestarts() throws Exception {
+        for (int i = 1; i <= 10; ++i) {
+            tested.sendSync(createTransmission(i));
+        }
+        for (int i = 1; i <= 4; ++i) {
+            assertTransmission(i, tested.fetchOldest());
+        }
+
+        tested.close();
+        tested = open();
+
+        for (int i = 5; i <= 10; ++i) {
+            assertTransmission(i, tested.fetchOldest());
+        }
+        assertNull(tested.fetchOldest());
+    }
+
+    @Test
+    public void testSendAfterRestartAppends() throws Exception {
+        tested.sendSync(createTransmission(1));
+        tested.sendSync(createTransmission(2));
+
+        tested.close();
+        tested = open();
+
+        tested.sendSync(createTransmission(3));
+        for (int i = 1; i <= 3; ++i) {
+            assertTransmission(i, tested.fetchOldest());
+        }
+        assertNull(tested.fetchOldest());
+    }
+
+    @Test
+    public void testTornRecordIsDroppedOnRecovery() throws Exception {
+        tested.sendSync(createTransmission(1));
+        tested.sendSync(createTransmission(2));
+        tested.close();
+
+        // corrupt the content of the second record, as if the process stopped while it was written
+        File segment = segmentFiles()[0];
+        byte[] data = Files.readAllBytes(segment.toPath());
+        int secondRecord = 4 + readInt(data, 0);
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(secondRecord + 4 + 20);
+            file.write(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF});
+        }
+
+        tested = open();
+        assertTransmission(1, tested.fetchOldest());
+        assertNull(tested.fetchOldest());
+
+        // the space of the torn record is used again
+        tested.sendSync(createTransmission(3));
+        assertTransmission(3, tested.fetchOldest());
+        assertNull(tested.fetchOldest());
+    }
+
+    @Test
+    public void testCorruptedCursorSendsEverythingAgain() throws Exception {
+        tested.sendSync(createTransmission(1));
+        tested.sendSync(createTransmission(2));
+        assertTransmission(1, tested.fetchOldest());
+        tested.close();
+
+        try (RandomAccessFile file = new RandomAccessFile(new File(folder, "cursor"), "rw")) {
+            file.seek(12);
+            file.writeInt(0);
+        }
+
+        tested = open();
+        assertTransmission(1, tested.fetchOldest());
+        assertTransmission(2, tested.fetchOldest());
+        assertNull(tested.fetchOldest());
+    }
+
+    @Test
+    public void testTransmissionLargerThanSegment() {
+        byte[] content = new byte[SEGMENT_SIZE * 3];
+        Arrays.fill(content, (byte) 'x');
+        tested.sendSync(createTransmission(1));
+        assertTrue(tested.sendSync(new Transmission(content, MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+        tested.sendSync(createTransmission(3));
+
+        assertTransmission(1, tested.fetchOldest());
+        assertTrue(Arrays.equals(content, tested.fetchOldest().getContent()));
+        assertTransmission(3, tested.fetchOldest());
+        assertNull(tested.fetchOldest());
+    }
+
+    @Test
+    public void testCapacityIsEnforced() throws Exception {
+        tested.close();
+        tested = new TransmissionSpool(folder.getAbsolutePath(), "1", 512 * 1024);
+
+        byte[] content = new byte[400 * 1024];
+        assertTrue(tested.sendSync(new Transmission(content, MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+        assertTrue(tested.sendSync(new Transmission(content, MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+        assertFalse(tested.sendSync(new Transmission(content, MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+
+        // once read the space can be used again
+        assertNotNull(tested.fetchOldest());
+        assertNotNull(tested.fetchOldest());
+        assertTrue(tested.sendSync(new Transmission(content, MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+        assertTrue(tested.sendSync(new Transmission(content, MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE)));
+    }
+
+    @Test
+    public void testFolderIsUsedByOneSpoolAtATime() throws Exception {
+        try {
+            open();
+            fail("Expected the folder to be locked by the open spool");
+        } catch (IOException e) {
+            // expected
+        }
+
+        tested.sendSync(createTransmission(1));
+        tested.close();
+        tested = open();
+        assertTransmission(1, tested.fetchOldest());
+    }
+
+    private TransmissionSpool open() throws Exception {
+        return new TransmissionSpool(folder.getAbsolutePath(), null, SEGMENT_SIZE);
+    }
+
+    private File[] segmentFiles() {
+        File[] files = folder.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.endsWith(".seg");
+            }
+        });
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16) | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
+
+    private static Transmission createTransmission(int index) {
+        return new Transmission((MOCK_CONTENT + index).getBytes(), MOCK_CONTENT_TYPE, MOCK_ENCODING_TYPE);
+    }
+
+    private static void assertTransmission(int index, Transmission transmission) {
+        assertNotNull(transmission);
+        assertEquals(MOCK_CONTENT + index, new String(transmission.getContent()));
+        assertEquals(MOCK_CONTENT_TYPE, transmission.getWebContentType());
+        assertEquals(MOCK_ENCODING_TYPE, transmission.getWebContentEncodingType());
+    }
+}
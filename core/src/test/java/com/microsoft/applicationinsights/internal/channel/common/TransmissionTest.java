@@ -21,6 +21,12 @@
 
 package com.microsoft.applicationinsights.internal.channel.common;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import okio.Buffer;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -55,7 +61,7 @@ public final class TransmissionTest {
 
     @Test(expected = NullPointerException.class)
     public void testNullContent() throws Exception {
-        new Transmission(null, MOCK_WEB_CONTENT_TYPE, MOCK_WEB_ENCODING_TYPE);
+        new Transmission((byte[]) null, MOCK_WEB_CONTENT_TYPE, MOCK_WEB_ENCODING_TYPE);
     }
 
     @Test
@@ -103,6 +109,43 @@ public final class TransmissionTest {
         assertSame(mockContent, tested.getContent());
     }
 
+    @Test(expected = NullPointerException.class)
+    public void testNullBufferContent() throws Exception {
+        new Transmission((Buffer) null, MOCK_WEB_CONTENT_TYPE, MOCK_WEB_ENCODING_TYPE);
+    }
+
+    @Test
+    public void testWriteBufferContentIsRepeatable() throws Exception {
+        Transmission tested = new Transmission(new Buffer().writeUtf8("content"), MOCK_WEB_CONTENT_TYPE, MOCK_WEB_ENCODING_TYPE);
+
+        assertEquals(7, tested.getContentLength());
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            tested.writeContentTo(out);
+            assertEquals("content", out.toString("UTF-8"));
+        }
+        assertEquals("content", new String(tested.getContent(), "UTF-8"));
+        assertEquals(7, tested.getContentLength());
+    }
+
+    @Test
+    public void testBufferContentSurvivesSerialization() throws Exception {
+        Transmission tested = new Transmission(new Buffer().writeUtf8("content"), MOCK_WEB_CONTENT_TYPE, MOCK_WEB_ENCODING_TYPE);
+        tested.incrementNumberOfSends();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(tested);
+        oos.close();
+
+        ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(out.toByteArray()));
+        Transmission loaded = (Transmission) ois.readObject();
+
+        assertEquals("content", new String(loaded.getContent(), "UTF-8"));
+        assertEquals(1, loaded.getNumberOfSends());
+        assertEquals(MOCK_WEB_CONTENT_TYPE, loaded.getWebContentType());
+    }
+
     @Test
     public void testGetWebContentType() throws Exception {
         Transmission tested = createMockTransmission();
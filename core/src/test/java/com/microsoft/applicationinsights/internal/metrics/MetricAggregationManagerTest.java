@@ -0,0 +1,85 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.TelemetryConfiguration;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public final class MetricAggregationManagerTest {
+
+    private final TelemetryConfiguration configuration = new TelemetryConfiguration();
+    private final TelemetryClient telemetryClient = Mockito.mock(TelemetryClient.class);
+
+    @Before
+    public void setUp() {
+        MetricAggregationManager.INSTANCE.clear();
+    }
+
+    @Test
+    public void stopTracksAndReleasesTheMetricsOfTheConfiguration() {
+        TelemetryConfiguration otherConfiguration = new TelemetryConfiguration();
+        TelemetryClient otherClient = Mockito.mock(TelemetryClient.class);
+        MetricAggregator aggregator = MetricAggregationManager.INSTANCE.getAggregator(telemetryClient, configuration, "metric");
+        MetricAggregationManager.INSTANCE.getAggregator(otherClient, otherConfiguration, "metric").trackValue(1);
+        aggregator.trackValue(2);
+
+        MetricAggregationManager.INSTANCE.stop(configuration, 1, TimeUnit.SECONDS);
+
+        verify(telemetryClient).trackMetric(any(MetricTelemetry.class));
+        verify(otherClient, never()).trackMetric(any(MetricTelemetry.class));
+        assertNotSame(aggregator, MetricAggregationManager.INSTANCE.getAggregator(telemetryClient, configuration, "metric"));
+        assertTrue(MetricAggregationManager.INSTANCE.isFlushing());
+
+        MetricAggregationManager.INSTANCE.stop(configuration, 1, TimeUnit.SECONDS);
+        MetricAggregationManager.INSTANCE.stop(otherConfiguration, 1, TimeUnit.SECONDS);
+
+        verify(otherClient, times(1)).trackMetric(any(MetricTelemetry.class));
+        assertFalse(MetricAggregationManager.INSTANCE.isFlushing());
+    }
+
+    @Test
+    public void flushingStartsAgainAfterStop() {
+        MetricAggregationManager.INSTANCE.getAggregator(telemetryClient, configuration, "metric");
+        MetricAggregationManager.INSTANCE.stop(configuration, 1, TimeUnit.SECONDS);
+        assertFalse(MetricAggregationManager.INSTANCE.isFlushing());
+
+        MetricAggregationManager.INSTANCE.getAggregator(telemetryClient, configuration, "metric");
+
+        assertTrue(MetricAggregationManager.INSTANCE.isFlushing());
+        MetricAggregationManager.INSTANCE.stop(configuration, 1, TimeUnit.SECONDS);
+    }
+}
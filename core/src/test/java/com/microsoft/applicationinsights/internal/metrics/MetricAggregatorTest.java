@@ -0,0 +1,207 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class MetricAggregatorTest {
+
+    private final TelemetryClient telemetryClient = Mockito.mock(TelemetryClient.class);
+
+    @Test
+    public void valuesWithoutDimensionsAreAggregated() {
+        MetricAggregator aggregator = new MetricAggregator(telemetryClient, "metric", new String[0], 10);
+        aggregator.trackValue(2);
+        aggregator.trackValue(4);
+
+        List<MetricTelemetry> metrics = aggregator.flush();
+        assertEquals(1, metrics.size());
+        MetricTelemetry metric = metrics.get(0);
+        assertEquals("metric", metric.getName());
+        assertEquals(6.0, metric.getValue(), 0.0);
+        assertEquals(Integer.valueOf(2), metric.getCount());
+        assertEquals(2.0, metric.getMin(), 0.0);
+        assertEquals(4.0, metric.getMax(), 0.0);
+        assertEquals(1.0, metric.getStandardDeviation(), 1e-9);
+        assertTrue(metric.getProperties().isEmpty());
+    }
+
+    @Test
+    public void flushResetsTheSeries() {
+        MetricAggregator aggregator = new MetricAggregator(telemetryClient, "metric", new String[] {"dim"}, 10);
+        aggregator.trackValue(1, "a");
+        assertEquals(1, aggregator.flush().size());
+        assertTrue(aggregator.flush().isEmpty());
+
+        aggregator.trackValue(-5, "a");
+        MetricTelemetry metric = aggregator.flush().get(0);
+        assertEquals(-5.0, metric.getMin(), 0.0);
+        assertEquals(-5.0, metric.getMax(), 0.0);
+        assertEquals(0.0, metric.getStandardDeviation(), 0.0);
+    }
+
+    @Test
+    public void valuesAreSplitByDimensions() {
+        MetricAggregator aggregator = new MetricAggregator(telemetryClient, "metric", new String[] {"dim1", "dim2"}, 10);
+        aggregator.trackValue(1, "a", "x");
+        aggregator.trackValue(2, "a", "y");
+        aggregator.trackValue(3, "a", "x");
+        aggregator.trackValue(4, "b", null);
+
+        List<MetricTelemetry> metrics = aggregator.flush();
+        assertEquals(3, metrics.size());
+        MetricTelemetry ax = find(metrics, "a", "x");
+        assertEquals(4.0, ax.getValue(), 0.0);
+        assertEquals(Integer.valueOf(2), ax.getCount());
+        assertEquals(4.0, find(metrics, "b", "").getValue(), 0.0);
+    }
+
+    @Test
+    public void callerArrayIsNotKept() {
+        MetricAggregator aggregator = new MetricAggregator(telemetryClient, "metric", new String[] {"dim"}, 10);
+        String[] values = {"a"};
+        aggregator.trackValue(1, values);
+        values[0] = "b";
+        aggregator.trackValue(1, values);
+
+        assertEquals(2, aggregator.flush().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void wrongNumberOfDimensionValues() {
+        MetricAggregator aggregator = new MetricAggregator(telemetryClient, "metric", new String[] {"dim"}, 10);
+        aggregator.trackValue(1, "a", "b");
+    }
+
+    @Test
+    public void seriesAboveTheCapGoToOverflow() {
+        MetricAggregator aggregator = new MetricAggregator(telemetryClient, "metric", new String[] {"dim"}, 2);
+        aggregator.trackValue(1, "a");
+        aggregator.trackValue(1, "b");
+        aggregator.trackValue(1, "c");
+        aggregator.trackValue(1, "d");
+        aggregator.trackValue(1, "a");
+
+        List<MetricTelemetry> metrics = aggregator.flush();
+        assertEquals(3, metrics.size());
+        assertEquals(3, aggregator.getNumberOfSeries());
+        assertEquals(Integer.valueOf(2), find(metrics, MetricAggregator.OVERFLOW_DIMENSION_VALUE).getCount());
+        assertEquals(Integer.valueOf(2), find(metrics, "a").getCount());
+    }
+
+    @Test
+    public void seriesWithoutValuesAreDroppedAtFlush() {
+        MetricAggregator aggregator = new MetricAggregator(telemetryClient, "metric", new String[] {"dim"}, 2);
+        aggregator.trackValue(1, "a");
+        aggregator.trackValue(1, "b");
+        assertEquals(2, aggregator.flush().size());
+        assertEquals(2, aggregator.getNumberOfSeries());
+
+        assertTrue(aggregator.flush().isEmpty());
+        assertEquals(0, aggregator.getNumberOfSeries());
+
+        // the cap applies to the series in use, not to every series ever seen
+        aggregator.trackValue(1, "c");
+        aggregator.trackValue(1, "d");
+        List<MetricTelemetry> metrics = aggregator.flush();
+        assertEquals(2, metrics.size());
+        assertEquals(Integer.valueOf(1), find(metrics, "c").getCount());
+        assertEquals(Integer.valueOf(1), find(metrics, "d").getCount());
+    }
+
+    @Test
+    public void nullAndEmptyDimensionValuesAreTheSameSeries() {
+        MetricAggregator aggregator = new MetricAggregator(telemetryClient, "metric", new String[] {"dim"}, 10);
+        String[] values = {null};
+        aggregator.trackValue(1, values);
+        aggregator.trackValue(2, "");
+
+        List<MetricTelemetry> metrics = aggregator.flush();
+        assertEquals(1, metrics.size());
+        assertEquals(Integer.valueOf(2), find(metrics, "").getCount());
+        assertNull(values[0]);
+    }
+
+    @Test
+    public void concurrentValuesAreAllCounted() throws InterruptedException {
+        final MetricAggregator aggregator = new MetricAggregator(telemetryClient, "metric", new String[] {"dim"}, 10);
+        final int numberOfThreads = 8;
+        final int valuesPerThread = 10000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[numberOfThreads];
+        for (int i = 0; i < numberOfThreads; i++) {
+            final String dimensionValue = i % 2 == 0 ? "even" : "odd";
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < valuesPerThread; j++) {
+                        aggregator.trackValue(1, dimensionValue);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        List<MetricTelemetry> metrics = aggregator.flush();
+        assertEquals(Integer.valueOf(numberOfThreads * valuesPerThread / 2), find(metrics, "even").getCount());
+        assertEquals(Integer.valueOf(numberOfThreads * valuesPerThread / 2), find(metrics, "odd").getCount());
+    }
+
+    private static MetricTelemetry find(List<MetricTelemetry> metrics, String... dimensionValues) {
+        for (MetricTelemetry metric : metrics) {
+            boolean matches = true;
+            int i = 1;
+            for (String value : dimensionValues) {
+                if (!value.equals(metric.getProperties().get("dim" + (dimensionValues.length == 1 ? "" : i)))) {
+                    matches = false;
+                }
+                i++;
+            }
+            if (matches) {
+                return metric;
+            }
+        }
+        fail("series not found");
+        return null;
+    }
+}
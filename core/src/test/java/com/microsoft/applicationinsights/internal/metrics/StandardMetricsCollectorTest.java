@@ -0,0 +1,173 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.metrics;
+
+import java.util.Date;
+import java.util.List;
+
+import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public final class StandardMetricsCollectorTest {
+
+    @Before
+    public void setUp() {
+        StandardMetricsCollector.INSTANCE.disable();
+    }
+
+    @After
+    public void tearDown() {
+        StandardMetricsCollector.INSTANCE.disable();
+    }
+
+    @Test
+    public void nothingIsCollectedWhenDisabled() {
+        StandardMetricsCollector.INSTANCE.add(newRequest("GET /", "200", 10, true));
+        assertTrue(StandardMetricsCollector.INSTANCE.getAndRestart().isEmpty());
+    }
+
+    @Test
+    public void requestsAreAggregatedPerOperationAndResultCode() {
+        StandardMetricsCollector.INSTANCE.enable();
+        StandardMetricsCollector.INSTANCE.add(newRequest("GET /", "200", 10, true));
+        StandardMetricsCollector.INSTANCE.add(newRequest("GET /", "200", 30, true));
+        StandardMetricsCollector.INSTANCE.add(newRequest("GET /", "500", 5, false));
+
+        List<MetricTelemetry> metrics = StandardMetricsCollector.INSTANCE.getAndRestart();
+        assertEquals(3, metrics.size());
+
+        MetricTelemetry ok = find(metrics, StandardMetricsCollector.REQUEST_DURATION_METRIC_NAME, "200");
+        assertEquals(40.0, ok.getValue(), 0.0);
+        assertEquals(Integer.valueOf(2), ok.getCount());
+        assertEquals(10.0, ok.getMin(), 0.0);
+        assertEquals(30.0, ok.getMax(), 0.0);
+        assertEquals("GET /", ok.getProperties().get(StandardMetricsCollector.OPERATION_NAME_DIMENSION));
+
+        MetricTelemetry error = find(metrics, StandardMetricsCollector.REQUEST_DURATION_METRIC_NAME, "500");
+        assertEquals(Integer.valueOf(1), error.getCount());
+
+        MetricTelemetry failed = find(metrics, StandardMetricsCollector.REQUEST_FAILED_METRIC_NAME, "500");
+        assertEquals(1.0, failed.getValue(), 0.0);
+
+        assertTrue(StandardMetricsCollector.INSTANCE.getAndRestart().isEmpty());
+    }
+
+    @Test
+    public void dependenciesAreAggregatedPerTypeAndTarget() {
+        StandardMetricsCollector.INSTANCE.enable();
+        StandardMetricsCollector.INSTANCE.add(newDependency("SQL", "db", 4, true));
+        StandardMetricsCollector.INSTANCE.add(newDependency("SQL", "db", 6, false));
+        StandardMetricsCollector.INSTANCE.add(newDependency("Http", "example.com", 100, true));
+
+        List<MetricTelemetry> metrics = StandardMetricsCollector.INSTANCE.getAndRestart();
+        assertEquals(3, metrics.size());
+
+        MetricTelemetry sql = null;
+        for (MetricTelemetry metric : metrics) {
+            if (metric.getName().equals(StandardMetricsCollector.DEPENDENCY_DURATION_METRIC_NAME)
+                    && "db".equals(metric.getProperties().get(StandardMetricsCollector.DEPENDENCY_TARGET_DIMENSION))) {
+                sql = metric;
+            }
+        }
+        assertNotNull(sql);
+        assertEquals("SQL", sql.getProperties().get(StandardMetricsCollector.DEPENDENCY_TYPE_DIMENSION));
+        assertEquals(10.0, sql.getValue(), 0.0);
+        assertEquals(Integer.valueOf(2), sql.getCount());
+    }
+
+    @Test
+    public void sampledItemsAreWeighted() {
+        StandardMetricsCollector.INSTANCE.enable();
+        RequestTelemetry request = newRequest("GET /", "200", 10, true);
+        request.setSamplingPercentage(10.0);
+        StandardMetricsCollector.INSTANCE.add(request);
+
+        MetricTelemetry metric = StandardMetricsCollector.INSTANCE.getAndRestart().get(0);
+        assertEquals(Integer.valueOf(10), metric.getCount());
+        assertEquals(100.0, metric.getValue(), 0.0);
+        assertEquals(10.0, metric.getMin(), 0.0);
+        assertEquals(10.0, metric.getMax(), 0.0);
+    }
+
+    @Test
+    public void seriesAboveTheCapAreFoldedIntoOverflow() {
+        StandardMetricsCollector.INSTANCE.enable();
+        int total = StandardMetricsCollector.MAX_SERIES_PER_INTERVAL + 10;
+        for (int i = 0; i < total; i++) {
+            StandardMetricsCollector.INSTANCE.add(newRequest("GET /" + i, "200", 1, true));
+        }
+
+        List<MetricTelemetry> metrics = StandardMetricsCollector.INSTANCE.getAndRestart();
+        assertEquals(StandardMetricsCollector.MAX_SERIES_PER_INTERVAL + 1, metrics.size());
+        MetricTelemetry overflow = null;
+        long count = 0;
+        for (MetricTelemetry metric : metrics) {
+            count += metric.getCount();
+            if (StandardMetricsCollector.OVERFLOW_DIMENSION_VALUE.equals(metric.getProperties().get(StandardMetricsCollector.OPERATION_NAME_DIMENSION))) {
+                overflow = metric;
+            }
+        }
+        assertNotNull(overflow);
+        assertEquals(Integer.valueOf(10), overflow.getCount());
+        assertEquals(total, count);
+    }
+
+    @Test
+    public void otherTelemetryIsIgnored() {
+        StandardMetricsCollector.INSTANCE.enable();
+        StandardMetricsCollector.INSTANCE.add(new MetricTelemetry("some metric", 1));
+        assertTrue(StandardMetricsCollector.INSTANCE.getAndRestart().isEmpty());
+    }
+
+    private static MetricTelemetry find(List<MetricTelemetry> metrics, String name, String resultCode) {
+        for (MetricTelemetry metric : metrics) {
+            if (metric.getName().equals(name)
+                    && resultCode.equals(metric.getProperties().get(StandardMetricsCollector.REQUEST_RESULT_CODE_DIMENSION))) {
+                return metric;
+            }
+        }
+        fail("metric " + name + " with result code " + resultCode + " not found");
+        return null;
+    }
+
+    private static RequestTelemetry newRequest(String name, String responseCode, long durationInMillis, boolean success) {
+        return new RequestTelemetry(name, new Date(), durationInMillis, responseCode, success);
+    }
+
+    private static RemoteDependencyTelemetry newDependency(String type, String target, long durationInMillis, boolean success) {
+        RemoteDependencyTelemetry dependency = new RemoteDependencyTelemetry("query", "command", new Duration(durationInMillis), success);
+        dependency.setType(type);
+        dependency.setTarget(target);
+        return dependency;
+    }
+}
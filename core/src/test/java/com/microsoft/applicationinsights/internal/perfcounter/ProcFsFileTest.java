@@ -0,0 +1,148 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public final class ProcFsFileTest {
+
+    private static final Charset US_ASCII = Charset.forName("US-ASCII");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parsesKeyedValues() throws IOException {
+        File file = write(folder.newFile(), "rchar: 1661777\nwchar: 7431\nread_bytes: 7335936\n"
+                + "cancelled_write_bytes: 0\nwrite_bytes: 12288\n");
+        ProcFsFile procFsFile = new ProcFsFile(file);
+        procFsFile.read();
+
+        assertEquals(7335936, procFsFile.getLong(bytes("read_bytes:")));
+        // keys only match at the start of a line
+        assertEquals(12288, procFsFile.getLong(bytes("write_bytes:")));
+        assertEquals(-1, procFsFile.getLong(bytes("syscr:")));
+        procFsFile.close();
+    }
+
+    @Test
+    public void parsesStatusLines() throws IOException {
+        File file = write(folder.newFile(), "Name:\tjava\nVmRSS:\t  123456 kB\nThreads:\t42\n"
+                + "voluntary_ctxt_switches:\t10\nnonvoluntary_ctxt_switches:\t3");
+        ProcFsFile procFsFile = new ProcFsFile(file);
+        procFsFile.read();
+
+        assertEquals(123456, procFsFile.getLong(bytes("VmRSS:")));
+        assertEquals(42, procFsFile.getLong(bytes("Threads:")));
+        assertEquals(10, procFsFile.getLong(bytes("voluntary_ctxt_switches:")));
+        assertEquals(3, procFsFile.getLong(bytes("nonvoluntary_ctxt_switches:")));
+        procFsFile.close();
+    }
+
+    @Test
+    public void parsesFieldsOfALine() throws IOException {
+        File file = write(folder.newFile(), "1234 (java (main) x) S 1 1234 -5 7\nsecond line 99\n");
+        ProcFsFile procFsFile = new ProcFsFile(file);
+        procFsFile.read();
+
+        long[] fields = new long[10];
+        int count = procFsFile.getLongs(procFsFile.lastIndexOf((byte) ')') + 1, fields);
+        assertEquals(5, count);
+        assertEquals(-1, fields[0]); // the state is not a number
+        assertEquals(1, fields[1]);
+        assertEquals(1234, fields[2]);
+        assertEquals(-1, fields[3]);
+        assertEquals(7, fields[4]);
+        procFsFile.close();
+    }
+
+    @Test
+    public void sampleReflectsTheCurrentContent() throws IOException {
+        File file = write(folder.newFile(), "nr_periods 10\nnr_throttled 1\n");
+        ProcFsFile procFsFile = new ProcFsFile(file);
+        procFsFile.read();
+        assertEquals(10, procFsFile.getLong(bytes("nr_periods ")));
+
+        write(file, "nr_periods 200\nnr_throttled 5\n");
+        procFsFile.read();
+        assertEquals(200, procFsFile.getLong(bytes("nr_periods ")));
+        assertEquals(5, procFsFile.getLong(bytes("nr_throttled ")));
+        procFsFile.close();
+    }
+
+    @Test
+    public void growsForLargeFiles() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            content.append("key").append(i).append(": ").append(i).append('\n');
+        }
+        File file = write(folder.newFile(), content.toString());
+        ProcFsFile procFsFile = new ProcFsFile(file);
+        procFsFile.read();
+        assertEquals(content.length(), procFsFile.length());
+        assertEquals(1999, procFsFile.getLong(bytes("key1999:")));
+
+        ProcFsFile head = new ProcFsFile(file, 64);
+        head.read();
+        assertEquals(64, head.length());
+        assertEquals(1, head.getLong(bytes("key1:")));
+        procFsFile.close();
+        head.close();
+    }
+
+    @Test
+    public void readsProcSelf() throws IOException {
+        File status = new File("/proc/self/status");
+        assumeTrue(status.canRead());
+        ProcFsFile procFsFile = new ProcFsFile(status);
+        procFsFile.read();
+        procFsFile.read();
+        assertTrue(procFsFile.getLong(bytes("Threads:")) > 0);
+        procFsFile.close();
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(US_ASCII);
+    }
+
+    private static File write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(US_ASCII));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
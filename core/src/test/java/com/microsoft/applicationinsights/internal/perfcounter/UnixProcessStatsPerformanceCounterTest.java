@@ -0,0 +1,181 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.perfcounter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.internal.system.SystemInformation;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public final class UnixProcessStatsPerformanceCounterTest {
+
+    private static final class TelemetryClientStub extends TelemetryClient {
+        final List<MetricTelemetry> metrics = new ArrayList<MetricTelemetry>();
+
+        @Override
+        public void track(Telemetry telemetry) {
+            metrics.add((MetricTelemetry) telemetry);
+        }
+
+        Double get(String name) {
+            for (MetricTelemetry metric : metrics) {
+                if (metric.getName().equals(name)) {
+                    return metric.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File processDirectory;
+    private File cpuStat;
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(SystemInformation.INSTANCE.isUnix());
+        processDirectory = folder.newFolder("1234");
+        File fd = new File(processDirectory, "fd");
+        assertTrue(fd.mkdir());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(new File(fd, String.valueOf(i)).createNewFile());
+        }
+        cpuStat = folder.newFile("cpu.stat");
+    }
+
+    @Test
+    public void reportsProcessStatistics() throws IOException {
+        writeStat(10, 4096000);
+        writeStatus(2048, 25, 100, 7);
+        write(cpuStat, "usage_usec 1000\nnr_periods 100\nnr_throttled 10\nthrottled_usec 5000\n");
+        UnixProcessStatsPerformanceCounter pc = new UnixProcessStatsPerformanceCounter(processDirectory.getPath(), cpuStat);
+
+        TelemetryClientStub first = new TelemetryClientStub();
+        pc.report(first);
+        assertEquals(4096000, first.get(Constants.PROCESS_VIRTUAL_MEMORY_METRIC_NAME), 0);
+        assertEquals(2048 * 1024, first.get(Constants.PROCESS_RESIDENT_MEMORY_METRIC_NAME), 0);
+        assertEquals(25, first.get(Constants.PROCESS_THREADS_METRIC_NAME), 0);
+        assertEquals(3, first.get(Constants.PROCESS_OPEN_FILE_DESCRIPTORS_METRIC_NAME), 0);
+        // rates need a previous sample
+        assertNull(first.get(Constants.PROCESS_MAJOR_PAGE_FAULTS_METRIC_NAME));
+        assertNull(first.get(Constants.PROCESS_VOLUNTARY_CONTEXT_SWITCHES_METRIC_NAME));
+        assertNull(first.get(Constants.CGROUP_CPU_THROTTLED_PERIODS_METRIC_NAME));
+
+        writeStat(30, 4096000);
+        writeStatus(4096, 26, 150, 7);
+        write(cpuStat, "usage_usec 2000\nnr_periods 200\nnr_throttled 35\nthrottled_usec 45000\n");
+        TelemetryClientStub second = new TelemetryClientStub();
+        pc.report(second);
+        assertTrue(second.get(Constants.PROCESS_MAJOR_PAGE_FAULTS_METRIC_NAME) > 0);
+        assertTrue(second.get(Constants.PROCESS_VOLUNTARY_CONTEXT_SWITCHES_METRIC_NAME) > 0);
+        assertEquals(0, second.get(Constants.PROCESS_INVOLUNTARY_CONTEXT_SWITCHES_METRIC_NAME), 0);
+        assertEquals(4096 * 1024, second.get(Constants.PROCESS_RESIDENT_MEMORY_METRIC_NAME), 0);
+        assertEquals(25, second.get(Constants.CGROUP_CPU_THROTTLED_PERIODS_METRIC_NAME), 1e-9);
+        assertEquals(40, second.get(Constants.CGROUP_CPU_THROTTLED_TIME_METRIC_NAME), 1e-9);
+    }
+
+    @Test
+    public void cgroupV1ThrottledTimeIsInNanoseconds() throws IOException {
+        writeStat(0, 0);
+        writeStatus(1, 1, 1, 1);
+        write(cpuStat, "nr_periods 10\nnr_throttled 0\nthrottled_time 0\n");
+        UnixProcessStatsPerformanceCounter pc = new UnixProcessStatsPerformanceCounter(processDirectory.getPath(), cpuStat);
+        pc.report(new TelemetryClientStub());
+
+        write(cpuStat, "nr_periods 20\nnr_throttled 2\nthrottled_time 3000000\n");
+        TelemetryClientStub client = new TelemetryClientStub();
+        pc.report(client);
+        assertEquals(20, client.get(Constants.CGROUP_CPU_THROTTLED_PERIODS_METRIC_NAME), 1e-9);
+        assertEquals(3, client.get(Constants.CGROUP_CPU_THROTTLED_TIME_METRIC_NAME), 1e-9);
+    }
+
+    @Test
+    public void missingFilesAreSkipped() {
+        UnixProcessStatsPerformanceCounter pc = new UnixProcessStatsPerformanceCounter(
+                new File(folder.getRoot(), "gone").getPath(), null);
+        TelemetryClientStub client = new TelemetryClientStub();
+        pc.report(client);
+        assertTrue(client.metrics.isEmpty());
+    }
+
+    @Test
+    public void readsTheCurrentProcess() {
+        assumeTrue(new File("/proc/self/stat").canRead());
+        UnixProcessStatsPerformanceCounter pc = new UnixProcessStatsPerformanceCounter();
+        TelemetryClientStub client = new TelemetryClientStub();
+        pc.report(client);
+        assertTrue(client.get(Constants.PROCESS_THREADS_METRIC_NAME) > 0);
+        assertTrue(client.get(Constants.PROCESS_RESIDENT_MEMORY_METRIC_NAME) > 0);
+        assertTrue(client.get(Constants.PROCESS_OPEN_FILE_DESCRIPTORS_METRIC_NAME) > 0);
+    }
+
+    @Test
+    public void closeReleasesTheOpenFiles() {
+        File fd = new File("/proc/self/fd");
+        assumeTrue(fd.canRead());
+        UnixProcessStatsPerformanceCounter pc = new UnixProcessStatsPerformanceCounter();
+        pc.report(new TelemetryClientStub());
+        int open = fd.list().length;
+
+        pc.close();
+        assertTrue(fd.list().length <= open - 2);
+    }
+
+    private void writeStat(long majorFaults, long virtualMemory) throws IOException {
+        // fields 3 to 24: state, ppid, pgrp, session, tty, tpgid, flags, minflt, cminflt, majflt, ...
+        write(new File(processDirectory, "stat"), "1234 (java (x)) S 1 1234 1234 0 -1 4194560 500 0 " + majorFaults
+                + " 0 60 20 0 0 20 0 25 0 9999 " + virtualMemory + " 512 18446744073709551615\n");
+    }
+
+    private void writeStatus(long residentKb, long threads, long voluntary, long involuntary) throws IOException {
+        write(new File(processDirectory, "status"), "Name:\tjava\nVmRSS:\t" + residentKb + " kB\nThreads:\t" + threads
+                + "\nvoluntary_ctxt_switches:\t" + voluntary + "\nnonvoluntary_ctxt_switches:\t" + involuntary + "\n");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes(Charset.forName("US-ASCII")));
+        } finally {
+            out.close();
+        }
+    }
+}
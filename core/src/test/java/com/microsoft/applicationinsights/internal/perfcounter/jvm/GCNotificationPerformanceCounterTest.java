@@ -0,0 +1,170 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.perfcounter.jvm;
+
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.microsoft.applicationinsights.TelemetryClient;
+import com.microsoft.applicationinsights.telemetry.MetricTelemetry;
+import com.microsoft.applicationinsights.telemetry.Telemetry;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class GCNotificationPerformanceCounterTest {
+
+    private static final String EDEN = "PS Eden Space";
+    private static final String OLD = "PS Old Gen";
+
+    private static final class TelemetryClientStub extends TelemetryClient {
+        final List<MetricTelemetry> metrics = new ArrayList<MetricTelemetry>();
+
+        @Override
+        public void track(Telemetry telemetry) {
+            metrics.add((MetricTelemetry) telemetry);
+        }
+
+        MetricTelemetry find(String name, String collector, String cause) {
+            for (MetricTelemetry metric : metrics) {
+                if (metric.getName().equals(name)
+                        && (collector == null || collector.equals(metric.getProperties().get(GCNotificationPerformanceCounter.COLLECTOR_PROPERTY)))
+                        && (cause == null || cause.equals(metric.getProperties().get(GCNotificationPerformanceCounter.CAUSE_PROPERTY)))) {
+                    return metric;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Test
+    public void pausesAreReportedPerCollectorAndCause() {
+        GCNotificationPerformanceCounter pc = new GCNotificationPerformanceCounter(EDEN, OLD);
+        for (int i = 0; i < 99; i++) {
+            minorGc(pc, "Allocation Failure", 3, 0, 0, 0, 0);
+        }
+        minorGc(pc, "Allocation Failure", 700, 0, 0, 0, 0);
+        pc.onGarbageCollection("PS MarkSweep", "end of major GC", "System.gc()", 150,
+                usage(0, 0), usage(0, 0));
+
+        TelemetryClientStub client = new TelemetryClientStub();
+        pc.report(client);
+
+        MetricTelemetry minor = client.find(GCNotificationPerformanceCounter.GC_PAUSE_TIME, "PS Scavenge", "Allocation Failure");
+        assertNotNull(minor);
+        assertEquals(99 * 3 + 700, minor.getValue(), 0);
+        assertEquals(100, (int) minor.getCount());
+        assertEquals(3, minor.getMin(), 0);
+        assertEquals(700, minor.getMax(), 0);
+        MetricTelemetry minorP99 = client.find(GCNotificationPerformanceCounter.GC_PAUSE_TIME_P99, "PS Scavenge", "Allocation Failure");
+        assertEquals(5, minorP99.getValue(), 0);
+
+        MetricTelemetry major = client.find(GCNotificationPerformanceCounter.GC_PAUSE_TIME, "PS MarkSweep", "System.gc()");
+        assertEquals(150, major.getValue(), 0);
+        assertEquals(150, client.find(GCNotificationPerformanceCounter.GC_PAUSE_TIME_P99, "PS MarkSweep", null).getValue(), 0);
+
+        // the next interval starts empty
+        TelemetryClientStub next = new TelemetryClientStub();
+        pc.report(next);
+        assertNull(next.find(GCNotificationPerformanceCounter.GC_PAUSE_TIME, null, null));
+    }
+
+    @Test
+    public void concurrentPhasesAreReportedApart() {
+        GCNotificationPerformanceCounter pc = new GCNotificationPerformanceCounter(null, null);
+        pc.onGarbageCollection("ZGC Cycles", "end of GC cycle", "Proactive", 40,
+                new HashMap<String, MemoryUsage>(), new HashMap<String, MemoryUsage>());
+
+        TelemetryClientStub client = new TelemetryClientStub();
+        pc.report(client);
+        assertEquals(40, client.find(GCNotificationPerformanceCounter.GC_CONCURRENT_PHASE_TIME, "ZGC Cycles", "Proactive").getValue(), 0);
+        assertNull(client.find(GCNotificationPerformanceCounter.GC_PAUSE_TIME_P99, null, null));
+        // without generational pools there is nothing to derive allocations from
+        assertNull(client.find(GCNotificationPerformanceCounter.GC_ALLOCATION_RATE, null, null));
+        assertNull(client.find(GCNotificationPerformanceCounter.GC_PROMOTED_BYTES, null, null));
+    }
+
+    @Test
+    public void allocationsAndPromotionsAreDerivedFromPoolUsage() {
+        GCNotificationPerformanceCounter pc = new GCNotificationPerformanceCounter(EDEN, OLD);
+        // eden 1000 -> 100, old 5000 -> 5300
+        minorGc(pc, "Allocation Failure", 1, 1000, 100, 5000, 5300);
+        // eden 900 -> 0, old 5300 -> 5350
+        minorGc(pc, "Allocation Failure", 1, 900, 0, 5300, 5350);
+        // major collections shrink the old generation, which is not a promotion
+        pc.onGarbageCollection("PS MarkSweep", "end of major GC", "Ergonomics", 10,
+                usage(500, 5350), usage(0, 1000));
+
+        TelemetryClientStub client = new TelemetryClientStub();
+        pc.report(client);
+        assertEquals(350, client.find(GCNotificationPerformanceCounter.GC_PROMOTED_BYTES, null, null).getValue(), 0);
+        // 1000 + (900 - 100) + (500 - 0) bytes over the interval
+        MetricTelemetry allocationRate = client.find(GCNotificationPerformanceCounter.GC_ALLOCATION_RATE, null, null);
+        assertNotNull(allocationRate);
+        assertTrue(allocationRate.getValue() > 0);
+    }
+
+    @Test
+    public void subscribesToThisJvm() {
+        GCNotificationPerformanceCounter pc = new GCNotificationPerformanceCounter();
+        System.gc();
+        TelemetryClientStub client = new TelemetryClientStub();
+        pc.report(client);
+        assertEquals("GCNotificationPerformanceCounter", pc.getId());
+        pc.close();
+    }
+
+    @Test
+    public void nothingIsRecordedAfterClose() throws InterruptedException {
+        GCNotificationPerformanceCounter pc = new GCNotificationPerformanceCounter();
+        pc.close();
+        // closing twice does no harm
+        pc.close();
+
+        System.gc();
+        // notifications are delivered asynchronously
+        Thread.sleep(200);
+        TelemetryClientStub client = new TelemetryClientStub();
+        pc.report(client);
+        assertNull(client.find(GCNotificationPerformanceCounter.GC_PAUSE_TIME, null, null));
+    }
+
+    private static void minorGc(GCNotificationPerformanceCounter pc, String cause, long millis,
+                                long edenBefore, long edenAfter, long oldBefore, long oldAfter) {
+        pc.onGarbageCollection("PS Scavenge", "end of minor GC", cause, millis,
+                usage(edenBefore, oldBefore), usage(edenAfter, oldAfter));
+    }
+
+    private static Map<String, MemoryUsage> usage(long eden, long old) {
+        Map<String, MemoryUsage> usage = new HashMap<String, MemoryUsage>();
+        usage.put(EDEN, new MemoryUsage(0, eden, Math.max(eden, 1), -1));
+        usage.put(OLD, new MemoryUsage(0, old, Math.max(old, 1), -1));
+        return usage;
+    }
+}
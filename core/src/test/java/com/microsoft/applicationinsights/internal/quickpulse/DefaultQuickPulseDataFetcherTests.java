@@ -1,12 +1,16 @@
 package com.microsoft.applicationinsights.internal.quickpulse;
 
 import com.microsoft.applicationinsights.TelemetryConfiguration;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import org.apache.http.entity.ByteArrayEntity;
 import org.junit.*;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.io.ByteArrayOutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Date;
 
 import static org.junit.Assert.*;
 
@@ -47,4 +51,29 @@ public class DefaultQuickPulseDataFetcherTests {
             fail("Not a valid uri: "+endpointUrl);
         }
     }
+
+    @Test
+    public void postEntityContainsMetricsAndDocuments() throws Exception {
+        QuickPulseDataCollector.INSTANCE.enable("fake-ikey");
+        try {
+            RequestTelemetry failed = new RequestTelemetry("GET /\"quoted\"", new Date(), 10L, "500", false);
+            failed.getContext().setInstrumentationKey("fake-ikey");
+            QuickPulseDataCollector.INSTANCE.add(failed);
+
+            DefaultQuickPulseDataFetcher dataFetcher = new DefaultQuickPulseDataFetcher(null, "fake-ikey", "instance", "stream-id");
+            ByteArrayEntity entity = dataFetcher.buildPostEntity(QuickPulseDataCollector.INSTANCE.getAndRestart());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeTo(out);
+            String json = out.toString("UTF-8");
+
+            assertTrue(json, json.startsWith("[{\"Documents\":[{\"__type\":\"RequestTelemetryDocument\""));
+            assertTrue(json, json.contains("\"Name\":\"GET /\\\"quoted\\\"\""));
+            assertTrue(json, json.contains("\"InstrumentationKey\":\"fake-ikey\",\"InvariantVersion\":1"));
+            assertTrue(json, json.contains("{\"Name\":\"\\\\ApplicationInsights\\\\Requests Failed/Sec\",\"Value\":1,\"Weight\":1}"));
+            assertTrue(json, json.matches(".*\"Timestamp\":\"\\\\/Date\\(\\d+\\)\\\\/\".*"));
+            assertTrue(json, json.endsWith("}]"));
+        } finally {
+            QuickPulseDataCollector.INSTANCE.disable();
+        }
+    }
 }
@@ -0,0 +1,122 @@
+package com.microsoft.applicationinsights.internal.quickpulse;
+
+import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseCollectionConfiguration.Aggregation;
+import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseCollectionConfiguration.DerivedMetric;
+import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseCollectionConfiguration.Filter;
+import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseCollectionConfiguration.Predicate;
+import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseCollectionConfiguration.TelemetryType;
+import com.microsoft.applicationinsights.telemetry.Duration;
+import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
+import com.microsoft.applicationinsights.telemetry.RemoteDependencyTelemetry;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import org.junit.*;
+
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.Assert.*;
+
+public class QuickPulseCollectionConfigurationTests {
+
+    private static final String CONFIGURATION = "{"
+            + "\"ETag\":\"etag-1\","
+            + "\"Metrics\":[{\"Id\":\"slow-checkout\",\"TelemetryType\":\"Request\","
+            + "\"FilterGroups\":[{\"Filters\":[{\"FieldName\":\"Name\",\"Predicate\":\"Contains\",\"Comparand\":\"checkout\"}]}],"
+            + "\"Projection\":\"Duration\",\"Aggregation\":\"Max\",\"BackEndAggregation\":\"Avg\"},"
+            + "{\"Id\":\"unknown\",\"TelemetryType\":\"Event\",\"FilterGroups\":null,\"Projection\":\"Count()\",\"Aggregation\":\"Sum\"}],"
+            + "\"DocumentStreams\":[{\"Id\":\"server-errors\",\"DocumentFilterGroups\":["
+            + "{\"TelemetryType\":\"Request\",\"Filters\":{\"Filters\":["
+            + "{\"FieldName\":\"ResponseCode\",\"Predicate\":\"GreaterThanOrEqual\",\"Comparand\":\"500\"},"
+            + "{\"FieldName\":\"CustomDimensions.tenant\",\"Predicate\":\"Equal\",\"Comparand\":\"Contoso\"}]}}]},"
+            + "{\"Id\":\"all-exceptions\",\"DocumentFilterGroups\":[{\"TelemetryType\":\"Exception\",\"Filters\":{\"Filters\":[]}}]}],"
+            + "\"QuotaInfo\":null}";
+
+    @Test
+    public void parsesServiceConfiguration() throws IOException {
+        QuickPulseCollectionConfiguration configuration = QuickPulseCollectionConfiguration.parse(CONFIGURATION);
+        assertEquals("etag-1", configuration.getETag());
+        assertEquals(2, configuration.getMetrics().size());
+
+        DerivedMetric metric = configuration.getMetrics().get(0);
+        assertEquals("slow-checkout", metric.getId());
+        assertEquals(Aggregation.Max, metric.getAggregation());
+
+        RequestTelemetry checkout = new RequestTelemetry("POST /checkout", new Date(), 1234L, "200", true);
+        assertTrue(metric.matches(checkout, TelemetryType.Request));
+        assertEquals(1234, metric.project(checkout), 0);
+        RequestTelemetry home = new RequestTelemetry("GET /", new Date(), 10L, "200", true);
+        assertFalse(metric.matches(home, TelemetryType.Request));
+
+        // metrics on telemetry types which are not collected never match
+        assertFalse(configuration.getMetrics().get(1).matches(home, TelemetryType.Request));
+    }
+
+    @Test
+    public void matchesDocumentStreams() throws IOException {
+        QuickPulseCollectionConfiguration configuration = QuickPulseCollectionConfiguration.parse(CONFIGURATION);
+
+        RequestTelemetry request = new RequestTelemetry("GET /", new Date(), 10L, "503", false);
+        assertNull(configuration.getMatchingDocumentStreamIds(request, TelemetryType.Request));
+        request.getProperties().put("tenant", "contoso");
+        assertArrayEquals(new String[] {"server-errors"}, configuration.getMatchingDocumentStreamIds(request, TelemetryType.Request));
+
+        ExceptionTelemetry exception = new ExceptionTelemetry(new IllegalStateException("boom"));
+        assertArrayEquals(new String[] {"all-exceptions"}, configuration.getMatchingDocumentStreamIds(exception, TelemetryType.Exception));
+    }
+
+    @Test
+    public void defaultConfigurationSamplesFailuresAndSlowDependencies() {
+        QuickPulseCollectionConfiguration configuration = QuickPulseCollectionConfiguration.DEFAULT;
+
+        assertNull(configuration.getMatchingDocumentStreamIds(
+                new RequestTelemetry("ok", new Date(), 10L, "200", true), TelemetryType.Request));
+        assertNotNull(configuration.getMatchingDocumentStreamIds(
+                new RequestTelemetry("failed", new Date(), 10L, "500", false), TelemetryType.Request));
+
+        assertNull(configuration.getMatchingDocumentStreamIds(
+                new RemoteDependencyTelemetry("fast", "cmd", new Duration(10), true), TelemetryType.Dependency));
+        assertNotNull(configuration.getMatchingDocumentStreamIds(
+                new RemoteDependencyTelemetry("slow", "cmd", new Duration(1500), true), TelemetryType.Dependency));
+        assertNotNull(configuration.getMatchingDocumentStreamIds(
+                new RemoteDependencyTelemetry("failed", "cmd", new Duration(10), false), TelemetryType.Dependency));
+
+        assertNotNull(configuration.getMatchingDocumentStreamIds(
+                new ExceptionTelemetry(new Exception()), TelemetryType.Exception));
+    }
+
+    @Test
+    public void filterPredicates() {
+        RequestTelemetry request = new RequestTelemetry("GET /Orders", new Date(), 250L, "404", false);
+
+        assertTrue(new Filter("Name", Predicate.Equal, "get /orders").matches(request));
+        assertFalse(new Filter("Name", Predicate.NotEqual, "GET /ORDERS").matches(request));
+        assertTrue(new Filter("Name", Predicate.Contains, "ORDER").matches(request));
+        assertTrue(new Filter("Name", Predicate.DoesNotContain, "users").matches(request));
+        assertTrue(new Filter("Success", Predicate.Equal, "False").matches(request));
+        assertTrue(new Filter("Duration", Predicate.GreaterThan, "200").matches(request));
+        assertTrue(new Filter("Duration", Predicate.LessThan, "00:00:00.3").matches(request));
+        assertTrue(new Filter("Duration", Predicate.LessThanOrEqual, "250").matches(request));
+        assertTrue(new Filter("ResponseCode", Predicate.GreaterThanOrEqual, "400").matches(request));
+        assertFalse(new Filter("ResponseCode", Predicate.GreaterThanOrEqual, "not a number").matches(request));
+        assertTrue(new Filter("CustomDimensions.missing", Predicate.NotEqual, "x").matches(request));
+        assertFalse(new Filter("CustomDimensions.missing", Predicate.Equal, "x").matches(request));
+        assertFalse(new Filter("NoSuchField", Predicate.NotEqual, "x").matches(request));
+
+        ExceptionTelemetry exception = new ExceptionTelemetry(new IllegalStateException("connection refused"));
+        assertTrue(new Filter("Exception.Type", Predicate.Contains, "IllegalState").matches(exception));
+        assertTrue(new Filter("Exception.Message", Predicate.Contains, "refused").matches(exception));
+    }
+
+    @Test
+    public void parsesDurations() {
+        assertEquals(1500, QuickPulseCollectionConfiguration.parseDurationMillis("1500"), 0);
+        assertEquals(1500, QuickPulseCollectionConfiguration.parseDurationMillis("00:00:01.5"), 1e-9);
+        assertEquals(90061000, QuickPulseCollectionConfiguration.parseDurationMillis("1.01:01:01"), 0);
+        assertTrue(Double.isNaN(QuickPulseCollectionConfiguration.parseDurationMillis("soon")));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsMalformedConfiguration() throws IOException {
+        QuickPulseCollectionConfiguration.parse("{\"ETag\":");
+    }
+}
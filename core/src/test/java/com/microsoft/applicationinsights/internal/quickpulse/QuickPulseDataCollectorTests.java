@@ -1,7 +1,5 @@
 package com.microsoft.applicationinsights.internal.quickpulse;
 
-import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseDataCollector.CountAndDuration;
-import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseDataCollector.Counters;
 import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseDataCollector.FinalCounters;
 import com.microsoft.applicationinsights.telemetry.Duration;
 import com.microsoft.applicationinsights.telemetry.ExceptionTelemetry;
@@ -144,13 +142,104 @@ public class QuickPulseDataCollectorTests {
     }
 
     @Test
-    public void encodeDecodeIsIdentity() {
-        final long count = 456L;
-        final long duration = 112233L;
-        final long encoded = Counters.encodeCountAndDuration(count, duration);
-        final CountAndDuration inputs = Counters.decodeCountAndDuration(encoded);
-        assertEquals(count, inputs.count);
-        assertEquals(duration, inputs.duration);
+    public void largeDurationsAreNotDropped() {
+        QuickPulseDataCollector.INSTANCE.enable(FAKE_INSTRUMENTATION_KEY);
+
+        // with a packed count and duration this would overflow and reset to zero
+        final long duration = 20000000000000L;
+        for (int i = 0; i < 2; i++) {
+            RequestTelemetry rt = new RequestTelemetry("request-test", new Date(), duration, "200", true);
+            rt.getContext().setInstrumentationKey(FAKE_INSTRUMENTATION_KEY);
+            QuickPulseDataCollector.INSTANCE.add(rt);
+        }
+
+        FinalCounters counters = QuickPulseDataCollector.INSTANCE.getAndRestart();
+        assertEquals(2, counters.requests);
+        assertEquals(2 * duration, counters.requestsDuration, Math.ulp(2.0 * duration));
+    }
+
+    @Test
+    public void telemetryOfOtherInstrumentationKeyIsIgnored() {
+        QuickPulseDataCollector.INSTANCE.enable(FAKE_INSTRUMENTATION_KEY);
+
+        ExceptionTelemetry et = new ExceptionTelemetry(new Exception());
+        et.getContext().setInstrumentationKey("some-other-key");
+        QuickPulseDataCollector.INSTANCE.add(et);
+
+        assertCountersReset(QuickPulseDataCollector.INSTANCE.peek());
+    }
+
+    @Test
+    public void concurrentlyAddedTelemetryIsCounted() throws InterruptedException {
+        QuickPulseDataCollector.INSTANCE.enable(FAKE_INSTRUMENTATION_KEY);
+
+        final int numberOfThreads = 8;
+        final int requestsPerThread = 1000;
+        Thread[] threads = new Thread[numberOfThreads];
+        for (int i = 0; i < numberOfThreads; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < requestsPerThread; j++) {
+                        RequestTelemetry rt = new RequestTelemetry("request-test", new Date(), 3L, "500", false);
+                        rt.getContext().setInstrumentationKey(FAKE_INSTRUMENTATION_KEY);
+                        QuickPulseDataCollector.INSTANCE.add(rt);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        FinalCounters counters = QuickPulseDataCollector.INSTANCE.getAndRestart();
+        assertEquals(numberOfThreads * requestsPerThread, counters.requests);
+        assertEquals(numberOfThreads * requestsPerThread, counters.unsuccessfulRequests);
+        assertEquals(3.0 * numberOfThreads * requestsPerThread, counters.requestsDuration, Math.ulp(1.0));
+    }
+
+    @Test
+    public void failedRequestsAreSampledAsDocuments() {
+        QuickPulseDataCollector.INSTANCE.enable(FAKE_INSTRUMENTATION_KEY);
+
+        RequestTelemetry ok = new RequestTelemetry("request-ok", new Date(), 10L, "200", true);
+        ok.getContext().setInstrumentationKey(FAKE_INSTRUMENTATION_KEY);
+        QuickPulseDataCollector.INSTANCE.add(ok);
+        RequestTelemetry failed = new RequestTelemetry("request-failed", new Date(), 10L, "500", false);
+        failed.getContext().setInstrumentationKey(FAKE_INSTRUMENTATION_KEY);
+        QuickPulseDataCollector.INSTANCE.add(failed);
+
+        FinalCounters counters = QuickPulseDataCollector.INSTANCE.getAndRestart();
+        assertEquals(1, counters.documents.size());
+        assertEquals("request-failed", counters.documents.get(0).getName());
+        assertTrue(QuickPulseDataCollector.INSTANCE.getAndRestart().documents.isEmpty());
+    }
+
+    @Test
+    public void collectionConfigurationAppliesFromTheNextInterval() throws Exception {
+        QuickPulseDataCollector.INSTANCE.enable(FAKE_INSTRUMENTATION_KEY);
+        QuickPulseDataCollector.INSTANCE.setCollectionConfiguration(QuickPulseCollectionConfiguration.parse(
+                "{\"ETag\":\"1\",\"Metrics\":[{\"Id\":\"avg-duration\",\"TelemetryType\":\"Request\","
+                        + "\"FilterGroups\":[],\"Projection\":\"Duration\",\"Aggregation\":\"Avg\"}],"
+                        + "\"DocumentStreams\":[]}"));
+        // the current interval still runs with the default configuration
+        assertEquals(0, QuickPulseDataCollector.INSTANCE.getAndRestart().derivedMetrics.length);
+
+        for (long duration : new long[] {10, 20, 60}) {
+            RequestTelemetry rt = new RequestTelemetry("request", new Date(), duration, "500", false);
+            rt.getContext().setInstrumentationKey(FAKE_INSTRUMENTATION_KEY);
+            QuickPulseDataCollector.INSTANCE.add(rt);
+        }
+        FinalCounters counters = QuickPulseDataCollector.INSTANCE.getAndRestart();
+        assertEquals(1, counters.derivedMetrics.length);
+        assertEquals(30.0, counters.derivedMetrics[0], 1e-9);
+        // no document stream was asked for
+        assertTrue(counters.documents.isEmpty());
+
+        // a new session starts over with the default configuration
+        QuickPulseDataCollector.INSTANCE.disable();
+        assertSame(QuickPulseCollectionConfiguration.DEFAULT, QuickPulseDataCollector.INSTANCE.getCollectionConfiguration());
     }
 
     private void assertCountersReset(FinalCounters counters) {
@@ -0,0 +1,81 @@
+package com.microsoft.applicationinsights.internal.quickpulse;
+
+import com.microsoft.applicationinsights.internal.quickpulse.QuickPulseCollectionConfiguration.TelemetryType;
+import com.microsoft.applicationinsights.telemetry.RequestTelemetry;
+import org.junit.*;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QuickPulseDocumentBufferTests {
+
+    @Test
+    public void drainReturnsDocumentsInOrder() {
+        QuickPulseDocumentBuffer buffer = new QuickPulseDocumentBuffer(4);
+        buffer.add(document("a"));
+        buffer.add(document("b"));
+
+        List<QuickPulseDocument> documents = buffer.drain();
+        assertEquals(2, documents.size());
+        assertEquals("a", documents.get(0).getName());
+        assertEquals("b", documents.get(1).getName());
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void oldestDocumentsAreDroppedWhenFull() {
+        QuickPulseDocumentBuffer buffer = new QuickPulseDocumentBuffer(4);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(document("request-" + i));
+        }
+
+        List<QuickPulseDocument> documents = buffer.drain();
+        assertEquals(4, documents.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals("request-" + (6 + i), documents.get(i).getName());
+        }
+        assertEquals(6, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void drainEmptiesTheBuffer() {
+        QuickPulseDocumentBuffer buffer = new QuickPulseDocumentBuffer(4);
+        buffer.add(document("a"));
+        buffer.drain();
+        assertTrue(buffer.drain().isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBeAPowerOfTwo() {
+        new QuickPulseDocumentBuffer(100);
+    }
+
+    @Test
+    public void concurrentWritersNeverExceedCapacity() throws InterruptedException {
+        final QuickPulseDocumentBuffer buffer = new QuickPulseDocumentBuffer(16);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        buffer.add(document("request"));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(16, buffer.drain().size());
+        assertEquals(40000 - 16, buffer.getDroppedCount());
+    }
+
+    private static QuickPulseDocument document(String name) {
+        RequestTelemetry request = new RequestTelemetry(name, new Date(), 10L, "500", false);
+        return new QuickPulseDocument(request, TelemetryType.Request, new String[] {"stream"});
+    }
+}
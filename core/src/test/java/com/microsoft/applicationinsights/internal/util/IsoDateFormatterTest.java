@@ -0,0 +1,84 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.internal.util;
+
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import okio.Buffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public final class IsoDateFormatterTest {
+
+    private static final String[] TIME_ZONES = {"UTC", "America/Los_Angeles", "Asia/Kolkata", "Australia/Lord_Howe", "America/St_Johns"};
+
+    @Test
+    public void testMatchesSimpleDateFormat() {
+        Random random = new Random(17);
+        for (String id : TIME_ZONES) {
+            TimeZone timeZone = TimeZone.getTimeZone(id);
+            IsoDateFormatter tested = new IsoDateFormatter(timeZone);
+            DateFormat expected = LocalStringsUtils.getDateFormatter();
+            expected.setTimeZone(timeZone);
+
+            assertSameFormat(expected, tested, 0);
+            assertSameFormat(expected, tested, -1);
+            assertSameFormat(expected, tested, 951782400000L); // 2000-02-29
+            assertSameFormat(expected, tested, System.currentTimeMillis());
+            for (int i = 0; i < 10000; i++) {
+                // between 1600 and 2400
+                long millis = -11676096000000L + (long) (random.nextDouble() * 25245129600000L);
+                assertSameFormat(expected, tested, millis);
+            }
+        }
+    }
+
+    @Test
+    public void testFallsBackOutsideOfSupportedYears() {
+        TimeZone timeZone = TimeZone.getTimeZone("UTC");
+        IsoDateFormatter tested = new IsoDateFormatter(timeZone);
+        DateFormat expected = LocalStringsUtils.getDateFormatter();
+        expected.setTimeZone(timeZone);
+
+        assertSameFormat(expected, tested, -15000000000000L); // 1494
+        assertSameFormat(expected, tested, 253402300800000L); // 10000-01-01
+    }
+
+    @Test
+    public void testWriteTo() throws Exception {
+        IsoDateFormatter tested = new IsoDateFormatter(TimeZone.getTimeZone("America/Los_Angeles"));
+        Buffer buffer = new Buffer();
+
+        tested.writeTo(1577880000123L, buffer);
+
+        assertEquals("2020-01-01T04:00:00.123-0800", buffer.readUtf8());
+    }
+
+    private static void assertSameFormat(DateFormat expected, IsoDateFormatter tested, long millis) {
+        assertEquals(expected.format(new Date(millis)), tested.format(millis));
+    }
+}
@@ -98,6 +98,17 @@ public final class ExceptionTelemetryTest {
         assertSame(error, telemetry.getThrowable());
     }
 
+    @Test
+    public void testFrameMethods() {
+        StackTraceElement withClass = new StackTraceElement("com.example.Foo", "bar", "Foo.java", 12);
+        StackTraceElement withoutClass = new StackTraceElement("", "bar", null, -1);
+
+        assertEquals("com.example.Foo.bar", ExceptionTelemetry.getFrameMethod(withClass));
+        assertEquals("bar", ExceptionTelemetry.getFrameMethod(withoutClass));
+        assertSame(ExceptionTelemetry.getFrameMethod(withClass),
+                ExceptionTelemetry.getFrameMethod(new StackTraceElement("com.example.Foo", "bar", "Foo.java", 12)));
+    }
+
     private static void testSeverityLevel(SeverityLevel severityLevel) {
         ExceptionTelemetry telemetry = new ExceptionTelemetry(new IllegalArgumentException("mockb"));
 
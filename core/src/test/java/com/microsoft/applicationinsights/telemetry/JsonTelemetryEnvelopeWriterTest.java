@@ -0,0 +1,207 @@
+/*
+ * ApplicationInsights-Java
+ * Copyright (c) Microsoft Corporation
+ * All rights reserved.
+ *
+ * MIT License
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this
+ * software and associated documentation files (the ""Software""), to deal in the Software
+ * without restriction, including without limitation the rights to use, copy, modify, merge,
+ * publish, distribute, sublicense, and/or sell copies of the Software, and to permit
+ * persons to whom the Software is furnished to do so, subject to the following conditions:
+ * The above copyright notice and this permission notice shall be included in all copies or
+ * substantial portions of the Software.
+ * THE SOFTWARE IS PROVIDED *AS IS*, WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED,
+ * INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR
+ * PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE
+ * FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.microsoft.applicationinsights.telemetry;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.microsoft.applicationinsights.internal.schemav2.Envelope;
+import com.microsoft.applicationinsights.internal.schemav2.EventData;
+import com.squareup.moshi.JsonWriter;
+import okio.Buffer;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class JsonTelemetryEnvelopeWriterTest {
+
+    private static class TelemetryWithCustomSampleRate extends BaseTelemetry<EventData> {
+        private final EventData data = new EventData();
+
+        TelemetryWithCustomSampleRate() {
+            initialize(new ConcurrentHashMap<String, String>());
+            data.setName("custom");
+        }
+
+        @Override
+        public int getVer() {
+            return 2;
+        }
+
+        @Override
+        protected void additionalSanitize() {
+        }
+
+        @Override
+        protected EventData getData() {
+            return data;
+        }
+
+        @Override
+        public String getEnvelopName() {
+            return EventTelemetry.ENVELOPE_NAME;
+        }
+
+        @Override
+        public String getBaseTypeName() {
+            return EventTelemetry.BASE_TYPE;
+        }
+
+        @Override
+        protected void setSampleRate(Envelope envelope) {
+            envelope.setSampleRate(12.5);
+        }
+    }
+
+    @Test
+    public void testSameOutputAsTelemetrySerialize() throws IOException {
+        for (Telemetry telemetry : createTelemetries()) {
+            assertEquals(serializeWithDataSerializer(telemetry), serializeWithEnvelopeWriter(telemetry));
+        }
+    }
+
+    @Test
+    public void testMultipleEnvelopesWithDifferentInstrumentationKeys() throws IOException {
+        List<Telemetry> telemetries = createTelemetries();
+        telemetries.get(1).getContext().setInstrumentationKey("00000000-0000-0000-0000-000000000001");
+
+        Buffer buffer = new Buffer();
+        JsonTelemetryEnvelopeWriter tested = new JsonTelemetryEnvelopeWriter(buffer);
+        StringBuilder expected = new StringBuilder();
+        for (Telemetry telemetry : telemetries) {
+            tested.write(telemetry);
+            buffer.writeUtf8("\n");
+            expected.append(serializeWithDataSerializer(telemetry)).append('\n');
+        }
+
+        assertEquals(expected.toString(), buffer.readUtf8());
+    }
+
+    @Test
+    public void testCustomSampleRateIsHonored() throws IOException {
+        Telemetry telemetry = new TelemetryWithCustomSampleRate();
+
+        String json = serializeWithEnvelopeWriter(telemetry);
+
+        assertTrue(json.contains("\"sampleRate\":12.5"));
+        assertEquals(serializeWithDataSerializer(telemetry), json);
+    }
+
+    @Test
+    public void testAllocatesLessPerItemThanDataSerializer() throws IOException {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        List<Telemetry> telemetries = new ArrayList<Telemetry>();
+        for (int i = 0; i < 500; i++) {
+            telemetries.addAll(createTelemetries());
+        }
+
+        // warm up both paths first
+        long legacyPerItem = 0;
+        long writerPerItem = 0;
+        for (int i = 0; i < 3; i++) {
+            legacyPerItem = allocatedPerItem(threadBean, telemetries, true);
+            writerPerItem = allocatedPerItem(threadBean, telemetries, false);
+        }
+
+        assertTrue("allocated per item: envelope writer " + writerPerItem + ", data serializer " + legacyPerItem,
+                writerPerItem < legacyPerItem);
+    }
+
+    private static long allocatedPerItem(com.sun.management.ThreadMXBean threadBean, List<Telemetry> telemetries,
+                                         boolean dataSerializer) throws IOException {
+        Buffer buffer = new Buffer();
+        long threadId = Thread.currentThread().getId();
+        long before = threadBean.getThreadAllocatedBytes(threadId);
+        if (dataSerializer) {
+            for (Telemetry telemetry : telemetries) {
+                JsonTelemetryDataSerializer serializer = new JsonTelemetryDataSerializer(JsonWriter.of(buffer));
+                telemetry.serialize(serializer);
+                serializer.close();
+            }
+        } else {
+            JsonTelemetryEnvelopeWriter writer = new JsonTelemetryEnvelopeWriter(buffer);
+            for (Telemetry telemetry : telemetries) {
+                writer.write(telemetry);
+            }
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+        buffer.clear();
+        return allocated / telemetries.size();
+    }
+
+    private static List<Telemetry> createTelemetries() {
+        List<Telemetry> telemetries = new ArrayList<Telemetry>();
+
+        RequestTelemetry request = new RequestTelemetry("GET /index", new Date(1577880000123L), 123, "200", true);
+        request.setSamplingPercentage(33.3);
+        request.getProperties().put("key", "value \"quoted\"");
+        telemetries.add(request);
+
+        EventTelemetry event = new EventTelemetry("event");
+        event.setTimestamp(new Date(1577880000456L));
+        event.setSequence("seq:1");
+        event.getMetrics().put("metric", 1.5);
+        telemetries.add(event);
+
+        TraceTelemetry trace = new TraceTelemetry("message\nwith\tescapes \u00e9", SeverityLevel.Warning);
+        trace.setSamplingPercentage(100.0);
+        telemetries.add(trace);
+
+        telemetries.add(new MetricTelemetry("metric", 42));
+        telemetries.add(new RemoteDependencyTelemetry("dependency", "SELECT 1", new Duration(5), true));
+        telemetries.add(new ExceptionTelemetry(new IllegalStateException("exception")));
+        telemetries.add(new PageViewTelemetry("page"));
+        telemetries.add(new PerformanceCounterTelemetry("category", "counter", "instance", 3.25));
+
+        for (Telemetry telemetry : telemetries) {
+            telemetry.getContext().setInstrumentationKey("00000000-0000-0000-0000-000000000000");
+            telemetry.getContext().getCloud().setRole("role");
+            telemetry.getContext().getOperation().setId("operation-id");
+        }
+        return telemetries;
+    }
+
+    private static String serializeWithDataSerializer(Telemetry telemetry) throws IOException {
+        Buffer buffer = new Buffer();
+        JsonTelemetryDataSerializer serializer = new JsonTelemetryDataSerializer(JsonWriter.of(buffer));
+        telemetry.serialize(serializer);
+        serializer.close();
+        return buffer.readUtf8();
+    }
+
+    private static String serializeWithEnvelopeWriter(Telemetry telemetry) throws IOException {
+        Buffer buffer = new Buffer();
+        new JsonTelemetryEnvelopeWriter(buffer).write(telemetry);
+        return buffer.readUtf8();
+    }
+}